@@ -0,0 +1,84 @@
+package me.mrs.bench;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.matcher.Matchers;
+import me.mrs.CacheService;
+import me.mrs.Cacheable;
+import me.mrs.MemoryCache;
+import me.mrs.MyService;
+import me.mrs.MyServiceCacheDecorator;
+import me.mrs.UppercaseService;
+import me.mrs.aop.AopCacheInterceptorService;
+import me.mrs.proxy.CachedProxyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache hit cost of the same {@link MyService} through each interception backend, against a direct call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BackendBenchmark {
+    @Param({"direct", "proxy", "aop", "generated"})
+    public String backend;
+
+    private UppercaseService service;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setup() {
+        final CacheService cache = new MemoryCache();
+        switch (backend) {
+            case "direct":
+                service = new MyService();
+                break;
+            case "proxy":
+                service = CachedProxyService.instance(new MyService(), () -> cache, UppercaseService.class);
+                break;
+            case "aop":
+                service = Guice.createInjector(new AbstractModule() {
+                            @Override
+                            protected void configure() {
+                                bind(UppercaseService.class).to(MyService.class);
+                                bind(CacheService.class).toInstance(cache);
+                                bindInterceptor(Matchers.any(), Matchers.annotatedWith(Cacheable.class),
+                                        new AopCacheInterceptorService(getProvider(CacheService.class)));
+                            }
+                        })
+                        .getInstance(UppercaseService.class);
+                break;
+            case "generated":
+                service = new MyServiceCacheDecorator(new MyService(), () -> cache);
+                break;
+            default:
+                throw new IllegalArgumentException(backend);
+        }
+    }
+
+    @Benchmark
+    public String apply() {
+        return service.apply("text");
+    }
+
+    @Benchmark
+    public String applyWithPrefix() {
+        return service.applyWithPrefix("text", "Prefix");
+    }
+}
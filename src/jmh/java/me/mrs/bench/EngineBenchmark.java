@@ -0,0 +1,84 @@
+package me.mrs.bench;
+
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency distribution of each {@link CacheService} engine for a key space four times larger than the
+ * bounded engines, under each {@link KeyDistribution}, so both hits and misses with their evictions are measured.
+ * <p>
+ * Thread counts are a JMH option: run with {@code -t 4}, or through {@link ScalingRunner} for 1..N threads at once.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EngineBenchmark {
+    private static final int KEY_SPACE = Engines.CAPACITY * 4;
+    private static final int TRACE_LENGTH = 1 << 20;
+
+    @Param({"memory", "bounded", "segmented", "offheap", "tiered", "persistent"})
+    public String engine;
+
+    @Param({"UNIFORM", "ZIPF", "SCAN"})
+    public KeyDistribution distribution;
+
+    private final Engines engines = new Engines();
+    private CacheService cache;
+    private CacheKey[] keys;
+    private int[] trace;
+
+    @Setup
+    public void setup() throws IOException {
+        cache = engines.create(engine);
+        keys = Engines.keys(KEY_SPACE);
+        trace = distribution.indexes(KEY_SPACE, TRACE_LENGTH, 42);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        engines.close();
+    }
+
+    @Benchmark
+    public Object read(final Cursor cursor) {
+        return cache.apply(Engines.SPEC, keys[trace[cursor.next()]], Engines.RESOLVER);
+    }
+
+    /**
+     * Per-thread position in the trace, starting at a random offset so threads don't walk it in lockstep.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            position = ThreadLocalRandom.current()
+                    .nextInt(TRACE_LENGTH);
+        }
+
+        int next() {
+            return position = (position + 1) & (TRACE_LENGTH - 1);
+        }
+    }
+}
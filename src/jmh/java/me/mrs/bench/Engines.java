@@ -0,0 +1,74 @@
+package me.mrs.bench;
+
+import me.mrs.BoundedCache;
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import me.mrs.CacheSpec;
+import me.mrs.MemoryCache;
+import me.mrs.NamespaceConfig;
+import me.mrs.SegmentedCache;
+import me.mrs.TieredCache;
+import me.mrs.offheap.OffHeapCache;
+import me.mrs.offheap.PersistentCache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Creates the benchmarked {@link CacheService} engines by name, with comparable capacities, and releases their
+ * resources.
+ */
+final class Engines implements Closeable {
+    static final int CAPACITY = 1 << 14;
+    static final CacheSpec SPEC = CacheSpec.ofTtl(TimeUnit.MINUTES.toMillis(10));
+    static final Function<CacheKey, Object> RESOLVER = k -> "value-" + k.get(0);
+
+    private final List<Closeable> resources = new ArrayList<>();
+
+    CacheService create(final String name) throws IOException {
+        switch (name) {
+            case "memory":
+                return new MemoryCache();
+            case "bounded":
+                return new BoundedCache(CAPACITY);
+            case "segmented":
+                return new SegmentedCache(NamespaceConfig.bounded(CAPACITY));
+            case "offheap":
+                return new OffHeapCache(CAPACITY * 64L);
+            case "tiered":
+                return new TieredCache(new BoundedCache(CAPACITY / 8), new OffHeapCache(CAPACITY * 64L));
+            case "persistent":
+                final Path file = Files.createTempFile("benchmark", ".snapshot");
+                Files.delete(file);
+                final var cache = new PersistentCache(file);
+                resources.add(cache);
+                resources.add(() -> Files.deleteIfExists(file));
+                return cache;
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    static CacheKey[] keys(final int count) {
+        final var keys = new CacheKey[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = CacheKey.of("bench", i);
+        }
+        return keys;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (final var resource : resources) {
+            resource.close();
+        }
+        resources.clear();
+    }
+}
@@ -0,0 +1,64 @@
+package me.mrs.bench;
+
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import me.mrs.FrontCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit throughput on a handful of very hot keys shared by all threads, with and without a {@link FrontCache}; meant to
+ * be run through {@link ScalingRunner}, e.g. {@code -Djmh.args="FrontCacheBenchmark -t 64"} for 1..64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrontCacheBenchmark {
+    private static final int HOT_KEYS = 16;
+
+    @Param({"memory", "bounded", "segmented"})
+    public String engine;
+
+    @Param({"false", "true"})
+    public boolean front;
+
+    private final Engines engines = new Engines();
+    private CacheService cache;
+    private CacheKey[] keys;
+
+    @Setup
+    public void setup() throws IOException {
+        final var shared = engines.create(engine);
+        cache = front ? new FrontCache(shared) : shared;
+        keys = Engines.keys(HOT_KEYS);
+        for (final var key : keys) {
+            cache.apply(Engines.SPEC, key, Engines.RESOLVER);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        engines.close();
+    }
+
+    @Benchmark
+    public Object hit(final EngineBenchmark.Cursor cursor) {
+        return cache.apply(Engines.SPEC, keys[cursor.next() & (HOT_KEYS - 1)], Engines.RESOLVER);
+    }
+}
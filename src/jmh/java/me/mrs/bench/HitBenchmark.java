@@ -0,0 +1,61 @@
+package me.mrs.bench;
+
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a hit in each {@link CacheService} engine, cycling through a small preloaded set of keys; the number to
+ * watch for hot-path regressions, together with {@code -prof gc} for allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HitBenchmark {
+    private static final int HOT_KEYS = 1 << 10;
+
+    @Param({"memory", "bounded", "segmented", "offheap", "tiered", "persistent"})
+    public String engine;
+
+    private final Engines engines = new Engines();
+    private CacheService cache;
+    private CacheKey[] keys;
+
+    @Setup
+    public void setup() throws Exception {
+        cache = engines.create(engine);
+        keys = Engines.keys(HOT_KEYS);
+        for (final var key : keys) {
+            cache.apply(Engines.SPEC, key, Engines.RESOLVER);
+        }
+        // let the persistent engine's writer catch up so its hits are served from the file
+        Thread.sleep(100);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        engines.close();
+    }
+
+    @Benchmark
+    public Object hit(final EngineBenchmark.Cursor cursor) {
+        return cache.apply(Engines.SPEC, keys[cursor.next() & (HOT_KEYS - 1)], Engines.RESOLVER);
+    }
+}
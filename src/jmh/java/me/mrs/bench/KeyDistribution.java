@@ -0,0 +1,64 @@
+package me.mrs.bench;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Access patterns replayed by the benchmarks, as precomputed key indexes so generating them costs nothing while
+ * measuring.
+ */
+public enum KeyDistribution {
+    /**
+     * Every key equally likely: hit rate is about the cached share of the key space.
+     */
+    UNIFORM {
+        @Override
+        int[] indexes(final int keySpace, final int length, final long seed) {
+            final var random = new SplittableRandom(seed);
+            final var indexes = new int[length];
+            for (int i = 0; i < length; i++) {
+                indexes[i] = random.nextInt(keySpace);
+            }
+            return indexes;
+        }
+    },
+    /**
+     * Zipfian with exponent 0.99, the usual model of popularity-skewed cache traffic.
+     */
+    ZIPF {
+        @Override
+        int[] indexes(final int keySpace, final int length, final long seed) {
+            final var cumulative = new double[keySpace];
+            double sum = 0;
+            for (int i = 0; i < keySpace; i++) {
+                sum += 1 / Math.pow(i + 1, 0.99);
+                cumulative[i] = sum;
+            }
+            final var random = new SplittableRandom(seed);
+            final var indexes = new int[length];
+            for (int i = 0; i < length; i++) {
+                final int found = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+                indexes[i] = Math.min(keySpace - 1, found >= 0 ? found : -found - 1);
+            }
+            return indexes;
+        }
+    },
+    /**
+     * Sequential pass over the whole key space, the worst case of an LRU-like policy.
+     */
+    SCAN {
+        @Override
+        int[] indexes(final int keySpace, final int length, final long seed) {
+            final var indexes = new int[length];
+            for (int i = 0; i < length; i++) {
+                indexes[i] = (int) ((seed + i) % keySpace);
+            }
+            return indexes;
+        }
+    };
+
+    /**
+     * @return {@code length} key indexes in {@code [0, keySpace)}
+     */
+    abstract int[] indexes(int keySpace, int length, long seed);
+}
@@ -0,0 +1,58 @@
+package me.mrs.bench;
+
+import me.mrs.CacheKey;
+import me.mrs.LongCacheService;
+import me.mrs.MemoryCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+
+/**
+ * Hit on a {@code long} id through a boxed {@link CacheKey} versus the {@link LongCacheService} of the same
+ * {@link MemoryCache}; run with {@code -prof gc} to see the key allocation go away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimitiveKeyBenchmark {
+    private static final int HOT_KEYS = 1 << 10;
+    private static final String NAMESPACE = "ids";
+    private static final LongFunction<Object> LONG_RESOLVER = id -> "value-" + id;
+
+    private final MemoryCache cache = new MemoryCache();
+    private LongCacheService longKeys;
+
+    @Setup
+    public void setup() {
+        longKeys = cache.longKeys(NAMESPACE);
+        for (long id = 0; id < HOT_KEYS; id++) {
+            cache.apply(Engines.SPEC, CacheKey.of(NAMESPACE, id), Engines.RESOLVER);
+            longKeys.apply(Engines.SPEC, id, LONG_RESOLVER);
+        }
+    }
+
+    @Benchmark
+    public Object cacheKey(final EngineBenchmark.Cursor cursor) {
+        final long id = cursor.next() & (HOT_KEYS - 1);
+        return cache.apply(Engines.SPEC, CacheKey.of(NAMESPACE, id), Engines.RESOLVER);
+    }
+
+    @Benchmark
+    public Object longKey(final EngineBenchmark.Cursor cursor) {
+        final long id = cursor.next() & (HOT_KEYS - 1);
+        return longKeys.apply(Engines.SPEC, id, LONG_RESOLVER);
+    }
+}
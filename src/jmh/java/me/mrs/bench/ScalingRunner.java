@@ -0,0 +1,70 @@
+package me.mrs.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs the selected benchmarks once per thread count, doubling from 1 to the number of processors, or to the JMH
+ * thread option {@code -t} when given, with the GC profiler on, then prints throughput and allocated bytes per
+ * operation side by side.
+ * <p>
+ * Takes regular JMH arguments, e.g. {@code mvn -Pjmh test-compile exec:exec -Djmh.main=me.mrs.bench.ScalingRunner
+ * -Djmh.args="EngineBenchmark -bm thrpt -p distribution=ZIPF"}.
+ */
+public final class ScalingRunner {
+    private ScalingRunner() {
+    }
+
+    public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+        final var options = new CommandLineOptions(args);
+        final int maximum = options.getThreads()
+                .orElse(Runtime.getRuntime()
+                        .availableProcessors());
+        final List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < maximum; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maximum);
+
+        final Map<String, Map<Integer, RunResult>> results = new TreeMap<>();
+        for (final int threads : threadCounts) {
+            final Collection<RunResult> run = new Runner(new OptionsBuilder().parent(options)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build()).run();
+            for (final var result : run) {
+                final var params = result.getParams();
+                final var name = params.getBenchmark() + ' ' + params.getMode()
+                        .shortLabel() + ' ' + params.getParamsKeys()
+                        .stream()
+                        .map(key -> key + '=' + params.getParam(key))
+                        .reduce((a, b) -> a + ',' + b)
+                        .orElse("");
+                results.computeIfAbsent(name, n -> new TreeMap<>())
+                        .put(threads, result);
+            }
+        }
+
+        System.out.printf("%n%-90s %8s %14s %10s %14s%n", "Benchmark", "Threads", "Score", "Unit", "B/op");
+        results.forEach((name, byThreads) -> byThreads.forEach((threads, result) -> {
+            final var primary = result.getPrimaryResult();
+            final var secondary = result.getSecondaryResults();
+            // older JMH versions prefix profiler results with a middle dot
+            final var allocation = secondary.containsKey("gc.alloc.rate.norm") ? secondary.get("gc.alloc.rate.norm")
+                    : secondary.get("\u00b7gc.alloc.rate.norm");
+            System.out.printf("%-90s %8d %14.3f %10s %14.1f%n", name, threads, primary.getScore(), primary.getScoreUnit(),
+                    allocation == null ? Double.NaN : allocation.getScore());
+        }));
+    }
+}
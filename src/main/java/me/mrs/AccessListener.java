@@ -0,0 +1,27 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Observer of the keys served by an interceptor, like a {@link me.mrs.trace.TraceRecorder} or a
+ * {@link me.mrs.hotkeys.HotKeyTracker}. Bulk calls aren't reported.
+ */
+public interface AccessListener {
+    /**
+     * Decides whether the current call is reported to {@link #access(CacheKey)}, before its key is even built. This
+     * default reports every call.
+     */
+    default boolean sampled() {
+        return true;
+    }
+
+    /**
+     * Reports a request for {@code key} selected by {@link #sampled()}, whether it hits or not.
+     */
+    void access(@Nonnull CacheKey key);
+
+    /**
+     * Reports a load of {@code key} that took {@code nanos}; every load is reported.
+     */
+    void load(@Nonnull CacheKey key, long nanos);
+}
@@ -0,0 +1,498 @@
+package me.mrs;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Size-bounded {@link MemoryCache} using the W-TinyLFU policy.
+ * <p>
+ * New entries land in a small LRU window (1% of the capacity). Entries leaving the window compete with the eldest
+ * entry of the main segmented LRU, and a {@link FrequencySketch} of recent accesses decides which one is kept. This
+ * keeps one-hit wonders from a scan out of the main space while the window still absorbs bursts of new keys.
+ * <p>
+ * Reads and writes are only recorded in buffers on the caller's thread; the policy itself is maintained in batches by
+ * the {@code executor}, which also runs background reloads, so the hot path never waits for the policy lock.
+ * Capacities apply per {@link CacheKey#namespace()}; namespaces without an explicit capacity share the default one.
+ * Only namespaces with their own capacity get primitive tables, bounded by it and evicting with CLOCK instead of
+ * W-TinyLFU; the shared capacity can't be split with them.
+ * <p>
+ * With a {@link Weigher} capacities are total weights, e.g. heap bytes with {@link Weigher#heapSize()}, and the
+ * policy's queues are bounded by the weight of their entries. Weighted caches have no primitive tables.
+ * <p>
+ * Entries of {@link #pin(CacheKey) pinned} keys still count against their capacity but are passed over by eviction,
+ * unless nothing but pinned entries is left to evict.
+ */
+@Slf4j
+public class BoundedCache extends MemoryCache {
+    private static final int WRITE_BUFFER_MAX = 1024;
+    // entries a weighted capacity is assumed to hold at most, sizing the frequency sketch
+    private static final long MINIMUM_WEIGHT_PER_ENTRY = 256;
+    private static final long MAXIMUM_WEIGHTED_SKETCH = 1 << 20;
+
+    private final Policy defaultPolicy;
+    private final Map<String, Policy> namespacePolicies;
+    private final Executor executor;
+    private final Weigher weigher;
+
+    public BoundedCache(final long maximumSize) {
+        this(maximumSize, Map.of());
+    }
+
+    /**
+     * @param maximumSize         capacity shared by namespaces missing in {@code namespaceCapacities}
+     * @param namespaceCapacities capacity by {@link Cacheable#namespace()}
+     */
+    public BoundedCache(final long maximumSize, @Nonnull final Map<String, Long> namespaceCapacities) {
+        this(maximumSize, namespaceCapacities, ForkJoinPool.commonPool());
+    }
+
+    public BoundedCache(final long maximumSize, @Nonnull final Map<String, Long> namespaceCapacities, @Nonnull final Executor executor) {
+        this(maximumSize, namespaceCapacities, Weigher.unit(), executor);
+    }
+
+    /**
+     * @param maximumWeight       total weight of the entries of namespaces missing in {@code namespaceCapacities}
+     * @param namespaceCapacities total weight by {@link Cacheable#namespace()}
+     */
+    public BoundedCache(final long maximumWeight, @Nonnull final Map<String, Long> namespaceCapacities, @Nonnull final Weigher weigher,
+                        @Nonnull final Executor executor) {
+        this(maximumWeight, namespaceCapacities, weigher, executor, System::nanoTime);
+    }
+
+    protected BoundedCache(final long maximumSize, @Nonnull final Map<String, Long> namespaceCapacities, @Nonnull final Executor executor,
+                           @Nonnull final LongSupplier ticker) {
+        this(maximumSize, namespaceCapacities, Weigher.unit(), executor, ticker);
+    }
+
+    protected BoundedCache(final long maximumWeight, @Nonnull final Map<String, Long> namespaceCapacities, @Nonnull final Weigher weigher,
+                           @Nonnull final Executor executor, @Nonnull final LongSupplier ticker) {
+        super(executor, ticker);
+        this.executor = executor;
+        this.weigher = weigher;
+        this.defaultPolicy = new Policy(maximumWeight);
+        final var policies = new HashMap<String, Policy>();
+        namespaceCapacities.forEach((namespace, capacity) -> policies.put(namespace, new Policy(capacity)));
+        this.namespacePolicies = Map.copyOf(policies);
+    }
+
+    /**
+     * @return a cache of at most {@code maximumBytes} of estimated heap, see {@link Weigher#heapSize()}
+     */
+    @Nonnull
+    public static BoundedCache ofBytes(final long maximumBytes) {
+        return new BoundedCache(maximumBytes, Map.of(), Weigher.heapSize(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return total weight of the entries known to the policy, the number of entries without a weigher
+     */
+    public long weightedSize() {
+        long size = defaultPolicy.weightedSize();
+        for (final var policy : namespacePolicies.values()) {
+            size += policy.weightedSize();
+        }
+        return size;
+    }
+
+    /**
+     * Runs pending maintenance on the caller's thread.
+     */
+    public void cleanUp() {
+        defaultPolicy.maintenance();
+        namespacePolicies.values()
+                .forEach(Policy::maintenance);
+    }
+
+    @Override
+    Entry newEntry(final CacheKey key, final Object value, final long now, final long ttl, final long refreshAfter, final long staleFor) {
+        final int weight = weigher == HeapEstimator.UNIT ? 1 : Math.max(0, weigher.weigh(key, value));
+        return new Node(key, value, now, ttl, refreshAfter, staleFor, policyFor(key), weight);
+    }
+
+    @Override
+    void onHit(final Entry entry) {
+        final var node = (Node) entry;
+        node.policy.recordRead(node);
+    }
+
+    @Override
+    void onWrite(final Entry entry) {
+        final var node = (Node) entry;
+        node.policy.recordWrite(node);
+    }
+
+    @Override
+    void onRemoval(final Entry entry) {
+        final var node = (Node) entry;
+        node.policy.recordWrite(node);
+    }
+
+    @Override
+    long primitiveCapacity(@Nonnull final String namespace) {
+        final var policy = weigher == HeapEstimator.UNIT ? namespacePolicies.get(namespace) : null;
+        return policy == null ? 0 : policy.maximumSize;
+    }
+
+    private Policy policyFor(final CacheKey key) {
+        return namespacePolicies.isEmpty() ? defaultPolicy : namespacePolicies.getOrDefault(key.namespace(), defaultPolicy);
+    }
+
+    private static final byte UNLINKED = 0;
+    private static final byte WINDOW = 1;
+    private static final byte PROBATION = 2;
+    private static final byte PROTECTED = 3;
+
+    static final class Node extends Entry {
+        private final CacheKey key;
+        private final Policy policy;
+        private final int weight;
+        // guarded by policy.lock
+        private byte queue;
+        private Node prev;
+        private Node next;
+
+        private Node(final CacheKey key, final Object value, final long now, final long ttl, final long refreshAfter, final long staleFor,
+                     final Policy policy, final int weight) {
+            super(value, now, ttl, refreshAfter, staleFor);
+            this.key = key;
+            this.policy = policy;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * W-TinyLFU over the entries of a capacity; sizes are weights, which are entry counts without a weigher.
+     */
+    private final class Policy {
+        private final long maximumSize;
+        private final long windowMaximum;
+        private final long protectedMaximum;
+        private final FrequencySketch sketch;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ReadBuffer readBuffer = new ReadBuffer();
+        private final Queue<Node> writeBuffer = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingWrites = new AtomicInteger();
+        private final AtomicBoolean drainScheduled = new AtomicBoolean();
+        private final Deque window = new Deque();
+        private final Deque probation = new Deque();
+        private final Deque protectedQueue = new Deque();
+        private long windowSize;
+        private long mainSize;
+        private long protectedSize;
+
+        private Policy(final long maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+            }
+            this.maximumSize = maximumSize;
+            this.windowMaximum = Math.max(1, maximumSize / 100);
+            this.protectedMaximum = (long) ((maximumSize - windowMaximum) * 0.8);
+            this.sketch = new FrequencySketch(weigher == HeapEstimator.UNIT
+                    ? maximumSize : Math.min(Math.max(1, maximumSize / MINIMUM_WEIGHT_PER_ENTRY), MAXIMUM_WEIGHTED_SKETCH));
+        }
+
+        private long weightedSize() {
+            lock.lock();
+            try {
+                return windowSize + mainSize;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void recordRead(final Node node) {
+            if (!readBuffer.offer(node)) {
+                scheduleDrain();
+            }
+        }
+
+        private void recordWrite(final Node node) {
+            writeBuffer.add(node);
+            if (pendingWrites.incrementAndGet() > WRITE_BUFFER_MAX) {
+                maintenance();
+            } else {
+                scheduleDrain();
+            }
+        }
+
+        private void scheduleDrain() {
+            if (drainScheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(() -> {
+                        drainScheduled.set(false);
+                        maintenance();
+                    });
+                } catch (RejectedExecutionException e) {
+                    log.warn("Maintenance rejected, running on caller", e);
+                    drainScheduled.set(false);
+                    maintenance();
+                }
+            }
+        }
+
+        private void maintenance() {
+            lock.lock();
+            try {
+                readBuffer.drain(this);
+                drainWrites();
+                evictEntries();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void drainWrites() {
+            Node node;
+            while ((node = writeBuffer.poll()) != null) {
+                pendingWrites.decrementAndGet();
+                if (node.retired) {
+                    unlink(node);
+                } else if (node.queue == UNLINKED) {
+                    sketch.increment(node.key);
+                    node.queue = WINDOW;
+                    window.addLast(node);
+                    windowSize += node.weight;
+                }
+            }
+        }
+
+        private void onAccess(final Node node) {
+            sketch.increment(node.key);
+            switch (node.queue) {
+                case WINDOW:
+                    window.moveToLast(node);
+                    break;
+                case PROBATION:
+                    probation.remove(node);
+                    node.queue = PROTECTED;
+                    protectedQueue.addLast(node);
+                    protectedSize += node.weight;
+                    while (protectedSize > protectedMaximum) {
+                        final var demoted = protectedQueue.pollFirst();
+                        protectedSize -= demoted.weight;
+                        demoted.queue = PROBATION;
+                        probation.addLast(demoted);
+                    }
+                    break;
+                case PROTECTED:
+                    protectedQueue.moveToLast(node);
+                    break;
+                default:
+                    // retired or not yet added
+            }
+        }
+
+        private void evictEntries() {
+            Node candidate = null;
+            while (windowSize > windowMaximum) {
+                final var node = window.pollFirst();
+                windowSize -= node.weight;
+                node.queue = PROBATION;
+                probation.addLast(node);
+                mainSize += node.weight;
+                if (candidate == null) {
+                    candidate = node;
+                }
+            }
+
+            Node firstSpared = null;
+            while (windowSize + mainSize > maximumSize) {
+                var victim = probation.first;
+                if (victim == null) {
+                    victim = protectedQueue.first != null ? protectedQueue.first : window.first;
+                }
+                if (victim != candidate && victim != firstSpared && victim.queue != WINDOW && isPinned(victim.key)) {
+                    // once the first spared victim comes round again, only pinned entries are left
+                    if (firstSpared == null) {
+                        firstSpared = victim;
+                    }
+                    spare(victim);
+                } else if (candidate == null || candidate == victim) {
+                    candidate = candidate == null ? null : candidate.next;
+                    evict(victim);
+                } else if (admit(candidate, victim)) {
+                    evict(victim);
+                } else {
+                    final var rejected = candidate;
+                    candidate = candidate.next;
+                    evict(rejected);
+                }
+            }
+        }
+
+        /**
+         * Moves a pinned victim to the most recent end of the protected queue.
+         */
+        private void spare(final Node node) {
+            if (node.queue == PROBATION) {
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedQueue.addLast(node);
+                protectedSize += node.weight;
+            } else {
+                protectedQueue.moveToLast(node);
+            }
+        }
+
+        private boolean admit(final Node candidate, final Node victim) {
+            if (isPinned(candidate.key)) {
+                return true;
+            }
+            final int candidateFrequency = sketch.frequency(candidate.key);
+            final int victimFrequency = sketch.frequency(victim.key);
+            if (candidateFrequency > victimFrequency) {
+                return true;
+            }
+            // a little randomness stops an attacker from pinning a warm victim with colliding keys
+            return candidateFrequency > 5 && (ThreadLocalRandom.current()
+                    .nextInt() & 127) == 0;
+        }
+
+        private void evict(final Node node) {
+            node.retired = true;
+            unlink(node);
+            if (remove(node.key, node)) {
+                recordEviction();
+            }
+        }
+
+        private void unlink(final Node node) {
+            switch (node.queue) {
+                case WINDOW:
+                    window.remove(node);
+                    windowSize -= node.weight;
+                    break;
+                case PROBATION:
+                    probation.remove(node);
+                    mainSize -= node.weight;
+                    break;
+                case PROTECTED:
+                    protectedQueue.remove(node);
+                    protectedSize -= node.weight;
+                    mainSize -= node.weight;
+                    break;
+                default:
+                    return;
+            }
+            node.queue = UNLINKED;
+        }
+    }
+
+    /**
+     * Intrusive access-ordered list of nodes, eldest first.
+     */
+    private static final class Deque {
+        private Node first;
+        private Node last;
+
+        private void addLast(final Node node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        private Node pollFirst() {
+            final var node = first;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        private void moveToLast(final Node node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private void remove(final Node node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+    }
+
+    /**
+     * Lossy striped ring buffers of recent reads. A full stripe drops the read, which only costs some precision of the
+     * recency order.
+     */
+    private static final class ReadBuffer {
+        private static final int STRIPES = Integer.highestOneBit(Math.min(16, Runtime.getRuntime()
+                .availableProcessors())) * 2;
+        private static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Node> buffer = new AtomicReferenceArray<>(STRIPES * SIZE);
+        private final AtomicLong[] writeCounters = new AtomicLong[STRIPES];
+        private final AtomicLongArray readCounters = new AtomicLongArray(STRIPES);
+
+        private ReadBuffer() {
+            for (int i = 0; i < STRIPES; i++) {
+                writeCounters[i] = new AtomicLong();
+            }
+        }
+
+        private boolean offer(final Node node) {
+            final int stripe = (int) Thread.currentThread()
+                    .getId() & (STRIPES - 1);
+            final var counter = writeCounters[stripe];
+            final long tail = counter.get();
+            final long head = readCounters.get(stripe);
+            if (tail - head >= SIZE) {
+                return false;
+            }
+            if (counter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet(stripe * SIZE + (int) (tail & MASK), node);
+            }
+            return true;
+        }
+
+        private void drain(final Policy policy) {
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                long head = readCounters.get(stripe);
+                final long tail = writeCounters[stripe].get();
+                for (; head != tail; head++) {
+                    final int index = stripe * SIZE + (int) (head & MASK);
+                    final var node = buffer.get(index);
+                    if (node == null) {
+                        break;
+                    }
+                    buffer.lazySet(index, null);
+                    policy.onAccess(node);
+                }
+                readCounters.lazySet(stripe, head);
+            }
+        }
+    }
+}
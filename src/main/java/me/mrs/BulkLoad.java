@@ -0,0 +1,59 @@
+package me.mrs;
+
+import me.mrs.metrics.LoadTimer;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Caches a bulk method {@code Map<E, V> m(Collection<E> elements)} per element: every element is its own
+ * {@link CacheKey} and only the elements missing from the cache are passed to one call of the method.
+ */
+public final class BulkLoad {
+    private BulkLoad() {
+    }
+
+    /**
+     * @param loader the bulk method, called at most once with the missing elements, in request order and as a
+     *               {@link Set} when {@code elements} is one
+     * @return values of the requested elements, in request order, without the ones the loader didn't return
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public static <E> Map<E, Object> apply(@Nonnull final CacheService cache, @Nonnull final CacheSpec spec, @Nonnull final String namespace,
+                                           @Nonnull final Collection<? extends E> elements,
+                                           @Nonnull final Function<Collection<E>, ? extends Map<?, ?>> loader, @Nonnull final LoadTimer timer) {
+        final var keys = new ArrayList<CacheKey>(elements.size());
+        for (final E element : elements) {
+            keys.add(CacheKey.of(namespace, element));
+        }
+        final var values = cache.applyAll(spec, keys, missing -> {
+            final Collection<E> subset = elements instanceof Set ? new LinkedHashSet<>(missing.size() * 2) : new ArrayList<>(missing.size());
+            for (final var key : missing) {
+                subset.add((E) key.get(0));
+            }
+            final long start = System.nanoTime();
+            final Map<?, ?> loaded;
+            try {
+                loaded = loader.apply(subset);
+            } finally {
+                timer.record(System.nanoTime() - start);
+            }
+            final var byKey = new HashMap<CacheKey, Object>(missing.size() * 2);
+            if (loaded != null) {
+                loaded.forEach((element, value) -> byKey.put(CacheKey.of(namespace, element), value));
+            }
+            return byKey;
+        });
+        final var result = new LinkedHashMap<E, Object>(values.size() * 2);
+        values.forEach((key, value) -> result.put((E) key.get(0), value));
+        return result;
+    }
+}
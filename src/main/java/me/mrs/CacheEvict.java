@@ -0,0 +1,29 @@
+package me.mrs;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Discards the entry a {@link Cacheable} method of the same namespace cached for the method's {@link Cacheable.Key}
+ * arguments, or all of them when none is annotated, once the method returned. Evictions issued concurrently through
+ * the same method are applied together, in one {@link CacheService#invalidateAll(java.util.Collection)} call per cache.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CacheEvict {
+    String namespace();
+
+    /**
+     * Drops every entry of the namespace with {@link CacheService#invalidateNamespace(String)} instead of the one of the
+     * key arguments.
+     */
+    boolean allEntries() default false;
+
+    /**
+     * Evicts before calling the method, so even when it fails; by default only a method returning normally, or a future
+     * completing normally, evicts.
+     */
+    boolean beforeInvocation() default false;
+}
@@ -0,0 +1,276 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Composite cache key: a namespace plus the key arguments of an invocation.
+ * <p>
+ * Arguments are held by reference and compared one by one, so {@code ("a.b", "c")} and {@code ("a", "b.c")} are
+ * different keys and nothing is stringified to build or look up a key. The hash is computed once at construction.
+ * Keys of up to three arguments have dedicated fields instead of an array. Arguments must not be mutated while
+ * cached.
+ */
+public abstract class CacheKey {
+    private final String namespace;
+    private final int hash;
+
+    CacheKey(final String namespace, final int hash) {
+        this.namespace = namespace;
+        this.hash = hash;
+    }
+
+    @Nonnull
+    public static CacheKey of(@Nonnull final String namespace) {
+        return new Key0(namespace);
+    }
+
+    @Nonnull
+    public static CacheKey of(@Nonnull final String namespace, @Nullable final Object a) {
+        return new Key1(namespace, a);
+    }
+
+    @Nonnull
+    public static CacheKey of(@Nonnull final String namespace, @Nullable final Object a, @Nullable final Object b) {
+        return new Key2(namespace, a, b);
+    }
+
+    @Nonnull
+    public static CacheKey of(@Nonnull final String namespace, @Nullable final Object a, @Nullable final Object b, @Nullable final Object c) {
+        return new Key3(namespace, a, b, c);
+    }
+
+    @Nonnull
+    public static CacheKey of(@Nonnull final String namespace, @Nonnull final Object... arguments) {
+        return of(namespace, arguments, null);
+    }
+
+    /**
+     * Builds the key of an invocation from the arguments at {@code indexes}, or all of them when {@code null}.
+     */
+    @Nonnull
+    public static CacheKey of(@Nonnull final String namespace, @Nonnull final Object[] arguments, @Nullable final int[] indexes) {
+        final int size = indexes == null ? arguments.length : indexes.length;
+        switch (size) {
+            case 0:
+                return new Key0(namespace);
+            case 1:
+                return new Key1(namespace, arguments[index(indexes, 0)]);
+            case 2:
+                return new Key2(namespace, arguments[index(indexes, 0)], arguments[index(indexes, 1)]);
+            case 3:
+                return new Key3(namespace, arguments[index(indexes, 0)], arguments[index(indexes, 1)], arguments[index(indexes, 2)]);
+            default:
+                final var copy = new Object[size];
+                for (int i = 0; i < size; i++) {
+                    copy[i] = arguments[index(indexes, i)];
+                }
+                return new KeyN(namespace, copy);
+        }
+    }
+
+    @Nonnull
+    public final String namespace() {
+        return namespace;
+    }
+
+    public abstract int size();
+
+    @Nullable
+    public abstract Object get(int index);
+
+    @Override
+    public final int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public final boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || o.getClass() != getClass()) {
+            return false;
+        }
+        final var that = (CacheKey) o;
+        return hash == that.hash && namespace.equals(that.namespace) && argumentsEqual(that);
+    }
+
+    abstract boolean argumentsEqual(CacheKey that);
+
+    @Override
+    public String toString() {
+        final var sb = new StringBuilder(namespace);
+        for (int i = 0; i < size(); i++) {
+            sb.append(i == 0 ? '(' : ',');
+            final var argument = get(i);
+            sb.append(argument != null && argument.getClass()
+                    .isArray() ? Arrays.deepToString(new Object[]{argument}) : String.valueOf(argument));
+        }
+        return size() == 0 ? sb.toString() : sb.append(')')
+                .toString();
+    }
+
+    private static int index(final int[] indexes, final int i) {
+        return indexes == null ? i : indexes[i];
+    }
+
+    static int hash(final Object argument) {
+        if (argument == null) {
+            return 0;
+        }
+        return argument.getClass()
+                .isArray() ? Arrays.deepHashCode(new Object[]{argument}) : argument.hashCode();
+    }
+
+    static boolean equal(final Object a, final Object b) {
+        return a == b || a != null && b != null && (a.getClass()
+                .isArray() ? Objects.deepEquals(a, b) : a.equals(b));
+    }
+
+    private static final class Key0 extends CacheKey {
+        private Key0(final String namespace) {
+            super(namespace, namespace.hashCode());
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public Object get(final int index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        @Override
+        boolean argumentsEqual(final CacheKey that) {
+            return true;
+        }
+    }
+
+    private static final class Key1 extends CacheKey {
+        private final Object a;
+
+        private Key1(final String namespace, final Object a) {
+            super(namespace, 31 * namespace.hashCode() + hash(a));
+            this.a = a;
+        }
+
+        @Override
+        public int size() {
+            return 1;
+        }
+
+        @Override
+        public Object get(final int index) {
+            if (index != 0) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return a;
+        }
+
+        @Override
+        boolean argumentsEqual(final CacheKey that) {
+            return equal(a, ((Key1) that).a);
+        }
+    }
+
+    private static final class Key2 extends CacheKey {
+        private final Object a;
+        private final Object b;
+
+        private Key2(final String namespace, final Object a, final Object b) {
+            super(namespace, 31 * (31 * namespace.hashCode() + hash(a)) + hash(b));
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public int size() {
+            return 2;
+        }
+
+        @Override
+        public Object get(final int index) {
+            switch (index) {
+                case 0:
+                    return a;
+                case 1:
+                    return b;
+                default:
+                    throw new IndexOutOfBoundsException(index);
+            }
+        }
+
+        @Override
+        boolean argumentsEqual(final CacheKey that) {
+            final var other = (Key2) that;
+            return equal(a, other.a) && equal(b, other.b);
+        }
+    }
+
+    private static final class Key3 extends CacheKey {
+        private final Object a;
+        private final Object b;
+        private final Object c;
+
+        private Key3(final String namespace, final Object a, final Object b, final Object c) {
+            super(namespace, 31 * (31 * (31 * namespace.hashCode() + hash(a)) + hash(b)) + hash(c));
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+
+        @Override
+        public int size() {
+            return 3;
+        }
+
+        @Override
+        public Object get(final int index) {
+            switch (index) {
+                case 0:
+                    return a;
+                case 1:
+                    return b;
+                case 2:
+                    return c;
+                default:
+                    throw new IndexOutOfBoundsException(index);
+            }
+        }
+
+        @Override
+        boolean argumentsEqual(final CacheKey that) {
+            final var other = (Key3) that;
+            return equal(a, other.a) && equal(b, other.b) && equal(c, other.c);
+        }
+    }
+
+    private static final class KeyN extends CacheKey {
+        private final Object[] arguments;
+
+        private KeyN(final String namespace, final Object[] arguments) {
+            super(namespace, 31 * namespace.hashCode() + Arrays.deepHashCode(arguments));
+            this.arguments = arguments;
+        }
+
+        @Override
+        public int size() {
+            return arguments.length;
+        }
+
+        @Override
+        public Object get(final int index) {
+            return arguments[index];
+        }
+
+        @Override
+        boolean argumentsEqual(final CacheKey that) {
+            return Arrays.deepEquals(arguments, ((KeyN) that).arguments);
+        }
+    }
+}
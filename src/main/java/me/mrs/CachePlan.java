@@ -0,0 +1,385 @@
+package me.mrs;
+
+import lombok.extern.slf4j.Slf4j;
+import me.mrs.metrics.CacheMetrics;
+import me.mrs.metrics.LoadTimer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Everything an interceptor needs to cache one method, resolved once: namespace, {@link CacheSpec}, key argument
+ * indexes, a {@link MethodHandle} invoker and the {@link LoadTimer} of its resolver. Methods without {@link Cacheable} get a pass-through plan.
+ * <p>
+ * Methods annotated with {@link CacheEvict} or {@link CachePut} instead update the cache with {@link #update} after
+ * every call, keyed like a {@link Cacheable} method with the same key arguments. Single-key evictions go through the
+ * plan's {@link EvictionBatcher}, so concurrent ones are applied in one pass per cache.
+ * <p>
+ * A method returning a {@link Map} whose only {@link Cacheable.Key} parameter is a {@link Collection}, {@link List} or
+ * {@link Set} is a bulk method, cached per element through {@link BulkLoad}. A method keyed by a single {@code long} or
+ * {@code int} parameter, or its wrapper, is cached in the primitive tables of {@link CacheService#longKeys(String)} and
+ * {@link CacheService#intKeys(String)} when the service has them and the spec needs neither background reloads nor
+ * negative caching.
+ * <p>
+ * Plans are kept per implementation class in a {@link ClassValue}, so the hot path is a class-value read plus a map
+ * lookup, with no annotation parsing or reflective {@link Method#invoke}.
+ */
+@Slf4j
+public final class CachePlan {
+    private static final ClassValue<Map<Method, CachePlan>> PLANS = new ClassValue<>() {
+        @Override
+        protected Map<Method, CachePlan> computeValue(final Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final Method method;
+    @Nullable
+    private final Cacheable annotation;
+    @Nullable
+    private final CacheEvict evict;
+    @Nullable
+    private final CachePut put;
+    @Nullable
+    private final String namespace;
+    @Nullable
+    private final CacheSpec spec;
+    private final int[] keyIndexes;
+    private final boolean async;
+    private final int bulkIndex;
+    @Nullable
+    private final Class<?> primitiveKey;
+    private final Invoker invoker;
+    @Nullable
+    private final LoadTimer loadTimer;
+    @Nullable
+    private final EvictionBatcher evictions;
+
+    private CachePlan(final Method method, @Nullable final Cacheable annotation, @Nullable final CacheEvict evict, @Nullable final CachePut put,
+                      final int[] keyIndexes, final int bulkIndex, final Invoker invoker, @Nullable final LoadTimer loadTimer) {
+        this.method = method;
+        this.annotation = annotation;
+        this.evict = evict;
+        this.put = put;
+        this.namespace = annotation != null ? annotation.namespace() : evict != null ? evict.namespace() : put != null ? put.namespace() : null;
+        this.spec = annotation != null ? CacheSpec.of(annotation) : put != null ? CacheSpec.of(put) : null;
+        this.keyIndexes = keyIndexes;
+        this.async = CompletableFuture.class.isAssignableFrom(method.getReturnType());
+        this.bulkIndex = bulkIndex;
+        this.primitiveKey = annotation == null || async || bulkIndex >= 0 || spec.refreshAfter() > 0 || spec.staleFor() > 0 || spec.cachesNegatives()
+                ? null : primitiveKey(method, keyIndexes);
+        this.invoker = invoker;
+        this.loadTimer = loadTimer;
+        this.evictions = evict != null && !evict.allEntries() ? new EvictionBatcher() : null;
+    }
+
+    /**
+     * @param targetClass class of the instance the call is dispatched to, whose annotations apply
+     * @param method      invoked method, declared by {@code targetClass} or one of its interfaces
+     */
+    @Nonnull
+    public static CachePlan of(@Nonnull final Class<?> targetClass, @Nonnull final Method method) {
+        final var plans = PLANS.get(targetClass);
+        final var plan = plans.get(method);
+        return plan != null ? plan : plans.computeIfAbsent(method, m -> compile(targetClass, m));
+    }
+
+    public boolean isCacheable() {
+        return annotation != null;
+    }
+
+    /**
+     * @return whether the method is annotated with {@link CacheEvict} or {@link CachePut}, to be called through
+     * {@link #update}
+     */
+    public boolean updatesCache() {
+        return evict != null || put != null;
+    }
+
+    /**
+     * @return whether the method returns a {@link CompletableFuture} to cache with
+     * {@link CacheService#applyAsync(CacheSpec, CacheKey, java.util.function.Function)}
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * @return whether the method is cached per element of its collection parameter with {@link #applyAll}
+     */
+    public boolean isBulk() {
+        return bulkIndex >= 0;
+    }
+
+    @Nonnull
+    public Method method() {
+        return method;
+    }
+
+    @Nonnull
+    public String namespace() {
+        return requireNamespace();
+    }
+
+    @Nonnull
+    public CacheSpec spec() {
+        requireNamespace();
+        return spec;
+    }
+
+    @Nonnull
+    public CacheKey key(@Nullable final Object[] arguments) {
+        return CacheKey.of(requireNamespace(), arguments == null ? NO_ARGUMENTS : arguments, keyIndexes);
+    }
+
+    /**
+     * @return timer of the method's resolver calls, registered in {@link CacheMetrics}
+     */
+    @Nonnull
+    public LoadTimer loadTimer() {
+        requireCacheable();
+        return loadTimer;
+    }
+
+    /**
+     * Serves a synchronous method from {@code cache}, through its primitive tables when the key is a single non-null
+     * {@code long} or {@code int}. The {@link CacheKey} passed to {@code resolver} is then only built on a miss.
+     */
+    public Object apply(@Nonnull final CacheService cache, @Nullable final Object[] arguments, @Nonnull final Function<CacheKey, Object> resolver) {
+        final var argument = primitiveKey == null ? null : arguments[keyIndexes[0]];
+        if (argument != null) {
+            if (primitiveKey == long.class) {
+                final var longKeys = cache.longKeys(annotation.namespace());
+                if (longKeys != null) {
+                    return longKeys.apply(spec, (Long) argument, k -> resolver.apply(key(arguments)));
+                }
+            } else {
+                final var intKeys = cache.intKeys(annotation.namespace());
+                if (intKeys != null) {
+                    return intKeys.apply(spec, (Integer) argument, k -> resolver.apply(key(arguments)));
+                }
+            }
+        }
+        return cache.apply(spec(), key(arguments), resolver);
+    }
+
+    public Object invoke(@Nonnull final Object target, @Nullable final Object[] arguments) throws Throwable {
+        return invoker.invoke(target, arguments);
+    }
+
+    /**
+     * Calls a {@link CacheEvict} or {@link CachePut} method through {@code invocation}, then evicts its key or caches
+     * its result in {@code cache}. For a method returning a future that happens once the future completed normally,
+     * and the returned future completes after it.
+     */
+    public Object update(@Nonnull final CacheService cache, @Nullable final Object[] arguments, @Nonnull final Invocation invocation) throws Throwable {
+        if (!updatesCache()) {
+            throw new IllegalStateException(method + " is neither @CacheEvict nor @CachePut");
+        }
+        if (evict != null && evict.beforeInvocation()) {
+            evict(cache, arguments);
+            return invocation.proceed();
+        }
+        final var result = invocation.proceed();
+        if (async && result != null) {
+            return ((CompletableFuture<?>) result).thenApply(value -> {
+                afterInvocation(cache, arguments, value);
+                return value;
+            });
+        }
+        afterInvocation(cache, arguments, result);
+        return result;
+    }
+
+    /**
+     * Serves a bulk method from {@code cache}, passing only the missing elements to {@code invoker}, which calls the
+     * method with the given arguments. A {@code null} collection goes straight to the method.
+     */
+    @Nullable
+    public Object applyAll(@Nonnull final CacheService cache, @Nonnull final Object[] arguments, @Nonnull final Function<Object[], Object> invoker) {
+        if (!isBulk()) {
+            throw new IllegalStateException(method + " is not a bulk @Cacheable method");
+        }
+        final var elements = (Collection<?>) arguments[bulkIndex];
+        if (elements == null) {
+            return invoker.apply(arguments);
+        }
+        return BulkLoad.apply(cache, spec, annotation.namespace(), elements, missing -> {
+            final var copy = arguments.clone();
+            copy[bulkIndex] = missing;
+            return (Map<?, ?>) invoker.apply(copy);
+        }, loadTimer);
+    }
+
+    private void afterInvocation(final CacheService cache, final Object[] arguments, final Object value) {
+        if (evict != null) {
+            evict(cache, arguments);
+        } else if (async) {
+            // async services keep futures their own way, so the value is cached as if loaded by applyAsync
+            final var key = key(arguments);
+            cache.invalidate(key);
+            if (value != null) {
+                cache.applyAsync(spec, key, k -> CompletableFuture.completedFuture(value));
+            }
+        } else {
+            cache.put(spec, key(arguments), value);
+        }
+    }
+
+    private void evict(final CacheService cache, final Object[] arguments) {
+        if (evict.allEntries()) {
+            cache.invalidateNamespace(namespace);
+        } else {
+            evictions.evict(cache, key(arguments));
+        }
+    }
+
+    private String requireNamespace() {
+        if (namespace == null) {
+            throw new IllegalStateException(method + " is neither @Cacheable, @CacheEvict nor @CachePut");
+        }
+        return namespace;
+    }
+
+    private Cacheable requireCacheable() {
+        if (annotation == null) {
+            throw new IllegalStateException(method + " is not @Cacheable");
+        }
+        return annotation;
+    }
+
+    private static CachePlan compile(final Class<?> targetClass, final Method method) {
+        final var implementation = implementation(targetClass, method);
+        final var annotation = implementation.getAnnotation(Cacheable.class);
+        final var evict = implementation.getAnnotation(CacheEvict.class);
+        final var put = implementation.getAnnotation(CachePut.class);
+        if ((annotation != null ? 1 : 0) + (evict != null ? 1 : 0) + (put != null ? 1 : 0) > 1) {
+            throw new IllegalStateException(implementation + " can only have one of @Cacheable, @CacheEvict and @CachePut");
+        }
+        if (evict != null || put != null) {
+            final var plan = new CachePlan(method, null, evict, put, extractParametersIndex(implementation), -1, invoker(method), null);
+            log.debug("Compiled update plan of {} for {}: {}", method, targetClass, evict != null ? evict : put);
+            return plan;
+        }
+        if (annotation == null) {
+            log.debug("Compiled pass-through plan of {} for {}", method, targetClass);
+            return new CachePlan(method, null, null, null, new int[0], -1, invoker(method), null);
+        }
+        final var keyIndexes = extractParametersIndex(implementation);
+        final var plan = new CachePlan(method, annotation, null, null, keyIndexes, bulkIndex(implementation, keyIndexes), invoker(method),
+                CacheMetrics.loadTimer(annotation.namespace(), implementation));
+        log.debug("Compiled plan of {} for {}: {}", method, targetClass, annotation);
+        return plan;
+    }
+
+    private static Method implementation(final Class<?> targetClass, final Method method) {
+        if (method.getDeclaringClass() == targetClass) {
+            return method;
+        }
+        try {
+            return targetClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            return method;
+        }
+    }
+
+    private static Invoker invoker(final Method method) {
+        try {
+            final var handle = MethodHandles.publicLookup()
+                    .unreflect(method)
+                    .asType(MethodType.genericMethodType(method.getParameterCount() + 1))
+                    .asSpreader(Object[].class, method.getParameterCount());
+            return (target, arguments) -> handle.invokeExact(target, arguments);
+        } catch (IllegalAccessException e) {
+            log.debug("No public access to {}, using reflection", method);
+            return (target, arguments) -> {
+                try {
+                    return method.invoke(target, arguments);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            };
+        }
+    }
+
+    private static int bulkIndex(final Method method, final int[] keyIndexes) {
+        if (method.getReturnType() != Map.class || keyIndexes.length != 1 || !isKey(method, keyIndexes[0])) {
+            return -1;
+        }
+        final var type = method.getParameterTypes()[keyIndexes[0]];
+        return type == Collection.class || type == List.class || type == Set.class ? keyIndexes[0] : -1;
+    }
+
+    private static Class<?> primitiveKey(final Method method, final int[] keyIndexes) {
+        if (keyIndexes.length != 1) {
+            return null;
+        }
+        final var type = method.getParameterTypes()[keyIndexes[0]];
+        if (type == long.class || type == Long.class) {
+            return long.class;
+        }
+        return type == int.class || type == Integer.class ? int.class : null;
+    }
+
+    private static boolean isKey(final Method method, final int parameter) {
+        for (final var annotation : method.getParameterAnnotations()[parameter]) {
+            if (annotation.annotationType() == Cacheable.Key.class) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("java:S881")
+    private static int[] extractParametersIndex(final Method serviceMethod) {
+        final Annotation[][] annotations = serviceMethod.getParameterAnnotations();
+        final int[] index = new int[annotations.length];
+        int size = 0;
+
+        for (int pi = 0; pi < annotations.length; pi++) {
+            for (int ai = annotations[pi].length; --ai >= 0; ) {
+                if (annotations[pi][ai].annotationType() == Cacheable.Key.class) {
+                    index[size++] = pi;
+                    break;
+                }
+            }
+        }
+
+        if (size == 0) {
+            for (int pi = 0; pi < annotations.length; pi++) {
+                index[size++] = pi;
+            }
+        }
+
+        return Arrays.copyOf(index, size);
+    }
+
+    @FunctionalInterface
+    public interface Invoker {
+        Object invoke(Object target, Object[] arguments) throws Throwable;
+    }
+
+    /**
+     * Call of the intercepted method with its own arguments.
+     */
+    @FunctionalInterface
+    public interface Invocation {
+        Object proceed() throws Throwable;
+    }
+}
@@ -0,0 +1,26 @@
+package me.mrs;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Always calls the method and caches its result under the key a {@link Cacheable} method of the same namespace would
+ * use for the method's {@link Cacheable.Key} arguments, or all of them when none is annotated, replacing the cached
+ * value. A {@code null} result evicts it.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CachePut {
+    String namespace();
+
+    /**
+     * Time to live, {@code 0} never expires. Left unset, the namespace default of a {@link SegmentedCache} applies, and
+     * caches without one reject the call, so a forgotten TTL doesn't cache forever.
+     */
+    long ttl() default CacheSpec.DEFAULT_TTL;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -1,14 +1,157 @@
 package me.mrs;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 @FunctionalInterface
 public interface CacheService {
-    Object apply(long ttl, @Nonnull String key, @Nonnull Function<String, Object> resolver);
+    /**
+     * Returns the cached value for {@code key}, calling {@code resolver} on a miss.
+     *
+     * @param ttl time to live in milliseconds, {@code 0} or less never expires; a {@link SegmentedCache} replaces
+     *            {@link CacheSpec#DEFAULT_TTL} with the namespace default
+     */
+    Object apply(long ttl, @Nonnull CacheKey key, @Nonnull Function<CacheKey, Object> resolver);
 
-    default BiFunction<String, Function<String, Object>, Object> withTtl(long ttl) {
+    /**
+     * Variant of {@link #apply(long, CacheKey, Function)} honouring refresh-ahead and stale windows and negative caching;
+     * services without them only apply its {@link CacheSpec#ttl()}.
+     */
+    default Object apply(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        return apply(spec.ttl(), key, resolver);
+    }
+
+    /**
+     * Asynchronous variant of {@link #apply(long, CacheKey, Function)}: the future itself is cached, so callers arriving
+     * while it is still running share it, and a future that completes exceptionally is evicted.
+     *
+     * @param ttl time to live in milliseconds, counted from the moment the resolver returned the future
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    default CompletableFuture<Object> applyAsync(final long ttl, @Nonnull final CacheKey key,
+                                                 @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        final var future = (CompletableFuture<Object>) apply(ttl, key, resolver::apply);
+        future.whenComplete((v, e) -> {
+            if (e != null) {
+                invalidate(key);
+            }
+        });
+        return future;
+    }
+
+    @Nonnull
+    default CompletableFuture<Object> applyAsync(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key,
+                                                 @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        return applyAsync(spec.ttl(), key, resolver);
+    }
+
+    /**
+     * Bulk variant of {@link #apply(CacheSpec, CacheKey, Function)}: returns the values of {@code keys}, calling
+     * {@code resolver} with the missing ones. Keys the resolver leaves out are neither cached nor returned.
+     * <p>
+     * This default resolves every miss on its own; services able to look entries up without loading them override it
+     * to resolve all misses in one call.
+     *
+     * @return values by key, in the iteration order of {@code keys}
+     */
+    @Nonnull
+    default Map<CacheKey, Object> applyAll(@Nonnull final CacheSpec spec, @Nonnull final Collection<CacheKey> keys,
+                                           @Nonnull final Function<Set<CacheKey>, Map<CacheKey, Object>> resolver) {
+        final var values = new LinkedHashMap<CacheKey, Object>();
+        for (final var key : keys) {
+            final var value = apply(spec, key, k -> resolver.apply(Set.of(k))
+                    .get(k));
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the cache of {@code namespace} for keys made of a single {@code long}, or {@code null} if this service
+     * only caches {@link CacheKey}s.
+     */
+    @Nullable
+    default LongCacheService longKeys(@Nonnull final String namespace) {
+        return null;
+    }
+
+    /**
+     * {@code int} counterpart of {@link #longKeys(String)}.
+     */
+    @Nullable
+    default IntCacheService intKeys(@Nonnull final String namespace) {
+        return null;
+    }
+
+    /**
+     * Discards the entry of {@code key}, if any. This default does nothing, which suits services that keep no entries,
+     * like pass-through lambdas; services that do keep them must override it, or the failed futures the default
+     * {@link #applyAsync(long, CacheKey, Function)} evicts through it stay cached.
+     */
+    default void invalidate(@Nonnull final CacheKey key) {
+    }
+
+    /**
+     * Milliseconds the entry of {@code key} has left to live, so a cache in front of this one can drop its copy at the
+     * same time. This default doesn't track expiry.
+     *
+     * @return {@link Long#MAX_VALUE} if the entry never expires, {@code -1} if there is none or it is unknown
+     */
+    default long timeToLive(@Nonnull final CacheKey key) {
+        return -1;
+    }
+
+    /**
+     * Discards the entries of {@code keys}. This default invalidates them one at a time; services override it to
+     * remove them in a single pass.
+     */
+    default void invalidateAll(@Nonnull final Collection<CacheKey> keys) {
+        for (final var key : keys) {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Discards every entry of {@code namespace}.
+     *
+     * @throws UnsupportedOperationException if this service can't remove entries by namespace
+     */
+    default void invalidateNamespace(@Nonnull final String namespace) {
+        throw new UnsupportedOperationException("invalidateNamespace");
+    }
+
+    /**
+     * Caches {@code value} for {@code key}, replacing the cached one; {@code null} just invalidates it. This default
+     * invalidates the key, then caches the value unless another caller loaded the key meanwhile.
+     */
+    default void put(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nullable final Object value) {
+        invalidate(key);
+        if (value != null) {
+            apply(spec, key, k -> value);
+        }
+    }
+
+    /**
+     * Marks {@code key} as hot: services that can keep it through eviction and refresh it ahead of expiry do so until
+     * {@link #unpin(CacheKey)}. This default ignores it.
+     */
+    default void pin(@Nonnull final CacheKey key) {
+    }
+
+    default void unpin(@Nonnull final CacheKey key) {
+    }
+
+    default BiFunction<CacheKey, Function<CacheKey, Object>, Object> withTtl(long ttl) {
         return (k, r) -> apply(ttl, k, r);
     }
 }
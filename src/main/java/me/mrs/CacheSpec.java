@@ -0,0 +1,165 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expiration settings of a cached method, all in milliseconds.
+ * <p>
+ * An entry is fresh for {@link #refreshAfter()}, then served while one reload runs in the background. It expires
+ * after {@link #ttl()}, but may still be served for {@link #staleFor()} more while a reload replaces it. Non-positive
+ * values disable the corresponding window, except a {@link #DEFAULT_TTL} left to the namespace.
+ * <p>
+ * Negative results can be remembered too: {@code null} for {@link #nullTtl()}, and failures of the
+ * {@link #exceptionTypes()} for {@link #exceptionTtl()}, so a missing key or a failing backend isn't called again on
+ * every request. Both are off by default.
+ */
+public final class CacheSpec {
+    /**
+     * TTL of a method leaving it to the namespace default of a {@link SegmentedCache}.
+     */
+    public static final long DEFAULT_TTL = -1;
+
+    private final long ttl;
+    private final long refreshAfter;
+    private final long staleFor;
+    private final long nullTtl;
+    private final long exceptionTtl;
+    private final List<Class<? extends Throwable>> exceptionTypes;
+
+    private CacheSpec(final long ttl, final long refreshAfter, final long staleFor, final long nullTtl, final long exceptionTtl,
+                      final List<Class<? extends Throwable>> exceptionTypes) {
+        this.ttl = ttl;
+        this.refreshAfter = refreshAfter;
+        this.staleFor = staleFor;
+        this.nullTtl = nullTtl;
+        this.exceptionTtl = exceptionTtl;
+        this.exceptionTypes = exceptionTypes;
+    }
+
+    @Nonnull
+    public static CacheSpec ofTtl(final long ttl) {
+        return new CacheSpec(ttl, 0, 0, 0, 0, List.of());
+    }
+
+    @Nonnull
+    public static CacheSpec of(@Nonnull final Cacheable annotation) {
+        final var unit = annotation.unit();
+        return new CacheSpec(ttl(annotation.ttl(), unit), unit.toMillis(annotation.refreshAfter()), unit.toMillis(annotation.staleFor()),
+                unit.toMillis(annotation.nullTtl()), unit.toMillis(annotation.exceptionTtl()), List.of(annotation.cacheExceptions()));
+    }
+
+    @Nonnull
+    public static CacheSpec of(@Nonnull final CachePut annotation) {
+        return ofTtl(ttl(annotation.ttl(), annotation.unit()));
+    }
+
+    private static long ttl(final long ttl, final TimeUnit unit) {
+        return ttl == DEFAULT_TTL ? DEFAULT_TTL : unit.toMillis(ttl);
+    }
+
+    @Nonnull
+    public CacheSpec withTtl(final long ttl) {
+        return new CacheSpec(ttl, refreshAfter, staleFor, nullTtl, exceptionTtl, exceptionTypes);
+    }
+
+    @Nonnull
+    public CacheSpec withRefreshAfter(final long refreshAfter) {
+        return new CacheSpec(ttl, refreshAfter, staleFor, nullTtl, exceptionTtl, exceptionTypes);
+    }
+
+    @Nonnull
+    public CacheSpec withStaleFor(final long staleFor) {
+        return new CacheSpec(ttl, refreshAfter, staleFor, nullTtl, exceptionTtl, exceptionTypes);
+    }
+
+    /**
+     * @param nullTtl how long a {@code null} result is remembered, non-positive doesn't cache it
+     */
+    @Nonnull
+    public CacheSpec withNullTtl(final long nullTtl) {
+        return new CacheSpec(ttl, refreshAfter, staleFor, nullTtl, exceptionTtl, exceptionTypes);
+    }
+
+    /**
+     * @param exceptionTtl how long a failure is remembered and rethrown, non-positive doesn't cache it
+     * @param types        failures to remember, matching the thrown exception or its cause
+     */
+    @SafeVarargs
+    @Nonnull
+    public final CacheSpec withExceptionTtl(final long exceptionTtl, @Nonnull final Class<? extends Throwable>... types) {
+        return new CacheSpec(ttl, refreshAfter, staleFor, nullTtl, exceptionTtl, List.of(types));
+    }
+
+    /**
+     * @throws IllegalStateException if the TTL is the {@link #DEFAULT_TTL} no namespace default replaced
+     */
+    public long ttl() {
+        if (ttl == DEFAULT_TTL) {
+            throw new IllegalStateException("No TTL: the method leaves it to a namespace default, which this cache doesn't have");
+        }
+        return ttl;
+    }
+
+    /**
+     * @return whether the TTL is left to the namespace default
+     */
+    public boolean usesDefaultTtl() {
+        return ttl == DEFAULT_TTL;
+    }
+
+    /**
+     * Age after which a hit starts a background reload. It calls the resolver captured by that hit on a cache thread,
+     * so the resolver must not depend on the caller's context: transactions, security context and MDC are not there.
+     * A failed reload is retried no sooner than a second later.
+     */
+    public long refreshAfter() {
+        return refreshAfter;
+    }
+
+    public long staleFor() {
+        return staleFor;
+    }
+
+    public long nullTtl() {
+        return nullTtl;
+    }
+
+    public long exceptionTtl() {
+        return exceptionTtl;
+    }
+
+    @Nonnull
+    public List<Class<? extends Throwable>> exceptionTypes() {
+        return exceptionTypes;
+    }
+
+    /**
+     * @return whether {@code null} results or some failures are cached
+     */
+    public boolean cachesNegatives() {
+        return nullTtl > 0 || exceptionTtl > 0 && !exceptionTypes.isEmpty();
+    }
+
+    /**
+     * @return whether {@code failure}, or the cause it wraps, is one of the {@link #exceptionTypes()} to remember
+     */
+    public boolean cachesException(@Nonnull final Throwable failure) {
+        if (exceptionTtl <= 0) {
+            return false;
+        }
+        for (final var type : exceptionTypes) {
+            if (type.isInstance(failure) || failure.getCause() != null && type.isInstance(failure.getCause())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheSpec{ttl=" + ttl + ", refreshAfter=" + refreshAfter + ", staleFor=" + staleFor + ", nullTtl=" + nullTtl + ", exceptionTtl="
+                + exceptionTtl + ", exceptionTypes=" + exceptionTypes + '}';
+    }
+}
@@ -0,0 +1,95 @@
+package me.mrs;
+
+/**
+ * Point-in-time statistics of a cache. Callers waiting for a concurrent load of their key count as hits; background
+ * reloads count as loads but not as misses.
+ */
+public final class CacheStats {
+    static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0);
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadCount;
+    private final long loadFailureCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long size;
+
+    CacheStats(final long hitCount, final long missCount, final long loadCount, final long loadFailureCount, final long evictionCount,
+               final long expirationCount, final long size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadCount = loadCount;
+        this.loadFailureCount = loadFailureCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.size = size;
+    }
+
+    CacheStats plus(final CacheStats other) {
+        return new CacheStats(hitCount + other.hitCount, missCount + other.missCount, loadCount + other.loadCount,
+                loadFailureCount + other.loadFailureCount, evictionCount + other.evictionCount, expirationCount + other.expirationCount,
+                size + other.size);
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return requests that called the resolver
+     */
+    public long missCount() {
+        return missCount;
+    }
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return ratio of hits to requests, {@code 1} without requests
+     */
+    public double hitRate() {
+        final long requests = requestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * @return resolver calls that returned a value, or whose future completed with one
+     */
+    public long loadCount() {
+        return loadCount;
+    }
+
+    /**
+     * @return resolver calls that threw, or whose future failed
+     */
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * @return entries removed to respect a size bound
+     */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return entries removed because they expired
+     */
+    public long expirationCount() {
+        return expirationCount;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hitCount + ", misses=" + missCount + ", loads=" + loadCount + ", loadFailures=" + loadFailureCount
+                + ", evictions=" + evictionCount + ", expirations=" + expirationCount + ", size=" + size + '}';
+    }
+}
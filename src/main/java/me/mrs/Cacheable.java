@@ -4,13 +4,49 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
 
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface Cacheable {
     String namespace();
 
-    long ttl();
+    /**
+     * Time to live, {@code 0} never expires. Left unset, the namespace default of a {@link SegmentedCache} applies, and
+     * caches without one reject the call, so a forgotten TTL doesn't cache forever.
+     */
+    long ttl() default CacheSpec.DEFAULT_TTL;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * Age after which a hit still returns the cached value but starts a single background reload, {@code 0} disables
+     * refresh-ahead. The reload runs on a cache thread, outside the caller's context: no transaction, security
+     * context or MDC of the request that triggered it.
+     */
+    long refreshAfter() default 0;
+
+    /**
+     * How long past {@link #ttl()} an expired value may still be served while it is reloaded in the background,
+     * {@code 0} makes expired entries a miss.
+     */
+    long staleFor() default 0;
+
+    /**
+     * How long a {@code null} result is remembered, {@code 0} calls the method again on every request.
+     */
+    long nullTtl() default 0;
+
+    /**
+     * How long a failure listed in {@link #cacheExceptions()} is remembered; the same exception instance is rethrown
+     * until then instead of calling the method.
+     */
+    long exceptionTtl() default 0;
+
+    /**
+     * Failures cached for {@link #exceptionTtl()}, matching the thrown exception or the cause it wraps.
+     */
+    Class<? extends Throwable>[] cacheExceptions() default {};
 
     @Retention(RetentionPolicy.RUNTIME)
     @Target(ElementType.PARAMETER)
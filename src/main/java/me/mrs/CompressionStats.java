@@ -0,0 +1,93 @@
+package me.mrs;
+
+/**
+ * Point-in-time counters of the value compression of a namespace, see {@link NamespaceConfig#withCompression(int)}.
+ */
+public final class CompressionStats {
+    static final CompressionStats EMPTY = new CompressionStats(0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final long compressedCount;
+    private final long incompressibleCount;
+    private final long originalBytes;
+    private final long compressedBytes;
+    private final long compressionNanos;
+    private final long decompressionCount;
+    private final long decompressionNanos;
+    private final long hotHitCount;
+
+    CompressionStats(final long compressedCount, final long incompressibleCount, final long originalBytes, final long compressedBytes,
+                     final long compressionNanos, final long decompressionCount, final long decompressionNanos, final long hotHitCount) {
+        this.compressedCount = compressedCount;
+        this.incompressibleCount = incompressibleCount;
+        this.originalBytes = originalBytes;
+        this.compressedBytes = compressedBytes;
+        this.compressionNanos = compressionNanos;
+        this.decompressionCount = decompressionCount;
+        this.decompressionNanos = decompressionNanos;
+        this.hotHitCount = hotHitCount;
+    }
+
+    /**
+     * @return values stored compressed
+     */
+    public long compressedCount() {
+        return compressedCount;
+    }
+
+    /**
+     * @return values above the threshold stored as is, as compressing didn't make them smaller
+     */
+    public long incompressibleCount() {
+        return incompressibleCount;
+    }
+
+    /**
+     * @return size of the values stored compressed, before compression
+     */
+    public long originalBytes() {
+        return originalBytes;
+    }
+
+    public long compressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return bytes saved by the values stored compressed so far, including those since evicted or expired
+     */
+    public long savedBytes() {
+        return originalBytes - compressedBytes;
+    }
+
+    /**
+     * @return time spent compressing, including values found incompressible
+     */
+    public long compressionNanos() {
+        return compressionNanos;
+    }
+
+    /**
+     * @return hits that had to decompress their value
+     */
+    public long decompressionCount() {
+        return decompressionCount;
+    }
+
+    public long decompressionNanos() {
+        return decompressionNanos;
+    }
+
+    /**
+     * @return hits served a value decompressed before
+     */
+    public long hotHitCount() {
+        return hotHitCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats{compressed=" + compressedCount + ", incompressible=" + incompressibleCount + ", saved=" + savedBytes()
+                + "B, compression=" + compressionNanos + "ns, decompressions=" + decompressionCount + ", decompression=" + decompressionNanos
+                + "ns, hotHits=" + hotHitCount + '}';
+    }
+}
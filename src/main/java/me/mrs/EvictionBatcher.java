@@ -0,0 +1,108 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Combines evictions issued concurrently through one {@link CacheEvict} method into one
+ * {@link CacheService#invalidateAll(java.util.Collection)} call per cache.
+ * <p>
+ * Callers queue their key, then take turns on a lock: whoever holds it drains the queue and invalidates everything
+ * queued so far, including the keys of callers still waiting for the lock, which then find their key done. A caller
+ * returns only once its key was invalidated, so an eviction is still visible as soon as the evicting method returned,
+ * while a burst of evictions is applied in a few passes instead of one per key. Each caller gets only the failure of
+ * its own key: when a batch fails, its keys are invalidated one by one to tell whose they were.
+ * <p>
+ * Every plan has its own batcher, so evictions through unrelated methods never wait for each other.
+ */
+final class EvictionBatcher {
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongAdder passes = new LongAdder();
+
+    /**
+     * Invalidates {@code key} in {@code cache}, together with the keys other threads are evicting meanwhile.
+     *
+     * @throws RuntimeException the failure of {@code cache} invalidating {@code key}
+     */
+    void evict(@Nonnull final CacheService cache, @Nonnull final CacheKey key) {
+        final var pending = new Pending(cache, key);
+        queue.add(pending);
+        lock.lock();
+        try {
+            drain();
+        } finally {
+            lock.unlock();
+        }
+        if (pending.failure != null) {
+            throw pending.failure;
+        }
+    }
+
+    /**
+     * @return batches invalidated so far
+     */
+    long passes() {
+        return passes.sum();
+    }
+
+    /**
+     * @return estimate of the threads waiting for their turn
+     */
+    int waitingThreads() {
+        return lock.getQueueLength();
+    }
+
+    /**
+     * Runs under the lock, which every caller takes after queueing, so a caller reads its outcome after the pass that
+     * set it.
+     */
+    private void drain() {
+        var pending = queue.poll();
+        if (pending == null) {
+            return;
+        }
+        final Map<CacheService, List<Pending>> batches = new IdentityHashMap<>();
+        for (; pending != null; pending = queue.poll()) {
+            batches.computeIfAbsent(pending.cache, c -> new ArrayList<>())
+                    .add(pending);
+        }
+        for (final var batch : batches.entrySet()) {
+            final var cache = batch.getKey();
+            final var keys = new ArrayList<CacheKey>(batch.getValue()
+                    .size());
+            batch.getValue()
+                    .forEach(p -> keys.add(p.key));
+            try {
+                cache.invalidateAll(keys);
+            } catch (RuntimeException e) {
+                for (final var p : batch.getValue()) {
+                    try {
+                        cache.invalidate(p.key);
+                    } catch (RuntimeException f) {
+                        p.failure = f;
+                    }
+                }
+            }
+        }
+        passes.increment();
+    }
+
+    private static final class Pending {
+        private final CacheService cache;
+        private final CacheKey key;
+        private RuntimeException failure;
+
+        private Pending(final CacheService cache, final CacheKey key) {
+            this.cache = cache;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package me.mrs;
+
+/**
+ * Count-Min sketch of 4-bit counters used as the TinyLFU admission filter.
+ * <p>
+ * Each {@code long} packs sixteen counters; an element touches four of them, one per row, all within the same word
+ * group so a lookup stays within a couple of cache lines. Once the number of increments reaches ten times the cache
+ * capacity every counter is halved, so the sketch keeps tracking recent popularity instead of all-time totals. Not
+ * thread-safe: callers must hold the policy lock.
+ */
+final class FrequencySketch {
+    private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(final long maximumSize) {
+        final int capacity = (int) Math.min(Math.max(maximumSize, 16), 1 << 30);
+        table = new long[ceilingPowerOfTwo(capacity)];
+        tableMask = table.length - 1;
+        sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+    }
+
+    int frequency(final Object element) {
+        final int hash = spread(element.hashCode());
+        final int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            final int index = indexOf(hash, i);
+            final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(final Object element) {
+        final int hash = spread(element.hashCode());
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(final int index, final int counter) {
+        final int offset = counter << 2;
+        final long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    private int indexOf(final int hash, final int row) {
+        long h = (hash + SEED[row]) * SEED[row];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    private static int spread(final int hash) {
+        int x = hash;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(final int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
@@ -0,0 +1,205 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Tiny per-thread L1 in front of a shared {@link MemoryCache} or {@link SegmentedCache}, so hits on the hottest keys
+ * read nothing but the thread's own array and the immutable entry they found.
+ * <p>
+ * Each thread keeps a direct-mapped array of the shared entries it last read. A slot is served only while its entry is
+ * still in the shared map, of the shared cache's current generation, and neither due for refresh nor expired; anything
+ * else goes to the shared cache, which also handles refreshes, stale values and loads. Invalidations therefore take
+ * effect in every thread at once. One hit in {@value #SAMPLE} per slot is reported to the shared cache, keeping its
+ * hit count and its eviction policy's view of the hot keys up to date.
+ * <p>
+ * Only synchronous {@code apply} calls go through the L1; {@code null} results and remembered failures are never held
+ * by it. Removed values stay reachable from a thread's array until their slot is reused.
+ */
+public final class FrontCache implements CacheService {
+    private static final int SAMPLE = 16;
+
+    private final CacheService shared;
+    private final int mask;
+    private final ThreadLocal<Slots> slots;
+
+    public FrontCache(@Nonnull final CacheService shared) {
+        this(shared, 64);
+    }
+
+    /**
+     * @param shared         a {@link MemoryCache}, including a {@link BoundedCache}, or a {@link SegmentedCache}
+     * @param slotsPerThread entries each thread keeps, rounded up to a power of two
+     */
+    public FrontCache(@Nonnull final CacheService shared, final int slotsPerThread) {
+        if (!(shared instanceof MemoryCache || shared instanceof SegmentedCache)) {
+            throw new IllegalArgumentException("No L1 in front of " + shared.getClass()
+                    .getName());
+        }
+        if (slotsPerThread <= 0 || slotsPerThread > 1 << 16) {
+            throw new IllegalArgumentException("slotsPerThread must be between 1 and 65536: " + slotsPerThread);
+        }
+        this.shared = shared;
+        final int size = slotsPerThread == 1 ? 1 : Integer.highestOneBit(slotsPerThread - 1) << 1;
+        this.mask = size - 1;
+        this.slots = ThreadLocal.withInitial(() -> new Slots(size));
+    }
+
+    @Override
+    public Object apply(final long ttl, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        final var local = slots.get();
+        final int index = index(key);
+        final var entry = local.entries[index];
+        if (entry != null && isLive(local, index, key, entry)) {
+            return entry.value;
+        }
+        final var value = shared.apply(ttl, key, resolver);
+        remember(local, index, key, value);
+        return value;
+    }
+
+    @Override
+    public Object apply(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        final var local = slots.get();
+        final int index = index(key);
+        final var entry = local.entries[index];
+        if (entry != null && isLive(local, index, key, entry)) {
+            return entry.value;
+        }
+        final var value = shared.apply(spec, key, resolver);
+        remember(local, index, key, value);
+        return value;
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(final long ttl, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        return shared.applyAsync(ttl, key, resolver);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        return shared.applyAsync(spec, key, resolver);
+    }
+
+    @Nonnull
+    @Override
+    public Map<CacheKey, Object> applyAll(@Nonnull final CacheSpec spec, @Nonnull final Collection<CacheKey> keys,
+                                          @Nonnull final Function<Set<CacheKey>, Map<CacheKey, Object>> resolver) {
+        return shared.applyAll(spec, keys, resolver);
+    }
+
+    @Nullable
+    @Override
+    public LongCacheService longKeys(@Nonnull final String namespace) {
+        return shared.longKeys(namespace);
+    }
+
+    @Nullable
+    @Override
+    public IntCacheService intKeys(@Nonnull final String namespace) {
+        return shared.intKeys(namespace);
+    }
+
+    @Override
+    public void invalidate(@Nonnull final CacheKey key) {
+        shared.invalidate(key);
+    }
+
+    @Override
+    public long timeToLive(@Nonnull final CacheKey key) {
+        return shared.timeToLive(key);
+    }
+
+    @Override
+    public void invalidateAll(@Nonnull final Collection<CacheKey> keys) {
+        shared.invalidateAll(keys);
+    }
+
+    @Override
+    public void invalidateNamespace(@Nonnull final String namespace) {
+        shared.invalidateNamespace(namespace);
+    }
+
+    @Override
+    public void put(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nullable final Object value) {
+        shared.put(spec, key, value);
+    }
+
+    @Override
+    public void pin(@Nonnull final CacheKey key) {
+        shared.pin(key);
+    }
+
+    @Override
+    public void unpin(@Nonnull final CacheKey key) {
+        shared.unpin(key);
+    }
+
+    private int index(final CacheKey key) {
+        final int hash = key.hashCode();
+        return (hash ^ hash >>> 16) & mask;
+    }
+
+    private boolean isLive(final Slots local, final int index, final CacheKey key, final MemoryCache.Entry entry) {
+        final var owner = local.owners[index];
+        final var cached = local.keys[index];
+        if ((cached != key && !cached.equals(key)) || entry.retired || entry.generation != owner.generation()
+                || !(entry.isAlwaysFresh() || entry.isFresh(owner.now()))) {
+            return false;
+        }
+        if (++local.hits[index] == SAMPLE) {
+            local.hits[index] = 0;
+            owner.recordHits(entry, SAMPLE);
+        }
+        return true;
+    }
+
+    /**
+     * Keeps the shared entry holding {@code value} in the slot, if it still holds it.
+     */
+    private void remember(final Slots local, final int index, final CacheKey key, final Object value) {
+        if (value == null) {
+            return;
+        }
+        final var owner = shared instanceof SegmentedCache ? ((SegmentedCache) shared).engine(key.namespace()) : (MemoryCache) shared;
+        final var entry = owner.peek(key);
+        if (entry == null || entry.value != value || entry.retired || entry.generation != owner.generation()) {
+            return;
+        }
+        final var previous = local.entries[index];
+        if (previous != null && local.hits[index] > 0) {
+            local.owners[index].recordHits(previous, local.hits[index]);
+        }
+        local.keys[index] = key;
+        local.entries[index] = entry;
+        local.owners[index] = owner;
+        local.hits[index] = 0;
+    }
+
+    /**
+     * A thread's slots, as parallel arrays so that a miss allocates nothing.
+     */
+    private static final class Slots {
+        private final CacheKey[] keys;
+        private final MemoryCache.Entry[] entries;
+        private final MemoryCache[] owners;
+        // hits served since the last report to the owner
+        private final int[] hits;
+
+        private Slots(final int size) {
+            this.keys = new CacheKey[size];
+            this.entries = new MemoryCache.Entry[size];
+            this.owners = new MemoryCache[size];
+            this.hits = new int[size];
+        }
+    }
+}
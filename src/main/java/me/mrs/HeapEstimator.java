@@ -0,0 +1,158 @@
+package me.mrs;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cheap estimate of the heap retained by cached values, assuming a 64-bit JVM with compressed references: 12-byte
+ * object headers, 4-byte references and 8-byte alignment.
+ * <p>
+ * Strings, boxed primitives, arrays, collections, maps, {@link Optional}s and completed futures are measured, nesting
+ * up to {@value #MAXIMUM_DEPTH} levels deep; collections of more than {@value #SAMPLE} elements are extrapolated from
+ * their first ones. Any other object counts as {@value #OBJECT} bytes, so entries holding large domain objects need a
+ * {@link Weigher} of their own.
+ */
+final class HeapEstimator {
+    /**
+     * Map node and cache entry around every value.
+     */
+    private static final long ENTRY = 96;
+    private static final long OBJECT = 64;
+    private static final int MAXIMUM_DEPTH = 4;
+    private static final int SAMPLE = 64;
+
+    static final Weigher UNIT = (key, value) -> 1;
+    static final Weigher WEIGHER = (key, value) -> (int) Math.min(Integer.MAX_VALUE, ENTRY + estimate(key) + estimate(value));
+
+    private HeapEstimator() {
+    }
+
+    static long estimate(final Object value) {
+        return estimate(value, 0);
+    }
+
+    private static long estimate(final Object value, final int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 24 + array(latin1((String) value) ? ((String) value).length() : 2L * ((String) value).length());
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return 24;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return 16;
+        }
+        if (value instanceof byte[]) {
+            return array(((byte[]) value).length);
+        }
+        if (value instanceof ValueCompressor.Compressed) {
+            // the dictionary is shared by the namespace's values
+            return 32 + array(((ValueCompressor.Compressed) value).data.length);
+        }
+        if (value instanceof CacheKey) {
+            final var key = (CacheKey) value;
+            long size = align(16 + 4L * Math.min(key.size(), 3)) + (key.size() > 3 ? array(4L * key.size()) : 0);
+            for (int i = 0; i < key.size(); i++) {
+                size += depth < MAXIMUM_DEPTH ? estimate(key.get(i), depth + 1) : OBJECT;
+            }
+            return size;
+        }
+        if (depth >= MAXIMUM_DEPTH) {
+            return OBJECT;
+        }
+        if (value instanceof Map) {
+            final var map = (Map<?, ?>) value;
+            // entry nodes plus a table kept at most three quarters full
+            return 48 + array(4L * map.size() * 4 / 3) + 32L * map.size() + elements(map.keySet(), depth) + elements(map.values(), depth);
+        }
+        if (value instanceof Collection) {
+            final var collection = (Collection<?>) value;
+            return 24 + array(4L * collection.size()) + elements(collection, depth);
+        }
+        if (value instanceof Object[]) {
+            final var array = (Object[]) value;
+            long size = array(4L * array.length);
+            final int sampled = Math.min(array.length, SAMPLE);
+            long sample = 0;
+            for (int i = 0; i < sampled; i++) {
+                sample += estimate(array[i], depth + 1);
+            }
+            return size + (sampled == 0 ? 0 : sample * array.length / sampled);
+        }
+        if (value.getClass()
+                .isArray()) {
+            return primitiveArray(value);
+        }
+        if (value instanceof Optional) {
+            return 16 + estimate(((Optional<?>) value).orElse(null), depth + 1);
+        }
+        if (value instanceof CompletableFuture) {
+            final var future = (CompletableFuture<?>) value;
+            return 24 + (future.isDone() && !future.isCompletedExceptionally() ? estimate(future.join(), depth + 1) : 0);
+        }
+        return OBJECT;
+    }
+
+    private static long elements(final Collection<?> elements, final int depth) {
+        final int size = elements.size();
+        if (size == 0) {
+            return 0;
+        }
+        long sample = 0;
+        int sampled = 0;
+        for (final var element : elements) {
+            if (sampled == SAMPLE) {
+                break;
+            }
+            sample += estimate(element, depth + 1);
+            sampled++;
+        }
+        return sampled == 0 ? 0 : sample * size / sampled;
+    }
+
+    private static long primitiveArray(final Object array) {
+        if (array instanceof long[]) {
+            return array(8L * ((long[]) array).length);
+        }
+        if (array instanceof double[]) {
+            return array(8L * ((double[]) array).length);
+        }
+        if (array instanceof int[]) {
+            return array(4L * ((int[]) array).length);
+        }
+        if (array instanceof float[]) {
+            return array(4L * ((float[]) array).length);
+        }
+        if (array instanceof char[]) {
+            return array(2L * ((char[]) array).length);
+        }
+        if (array instanceof short[]) {
+            return array(2L * ((short[]) array).length);
+        }
+        return array(((boolean[]) array).length);
+    }
+
+    /**
+     * @return whether compact strings store {@code value} with one byte per char
+     */
+    private static boolean latin1(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xff) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long array(final long bytes) {
+        return align(16 + bytes);
+    }
+
+    private static long align(final long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,17 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+import java.util.function.IntFunction;
+
+/**
+ * {@code int} counterpart of {@link LongCacheService}, obtained from {@link CacheService#intKeys(String)}.
+ */
+public interface IntCacheService {
+    /**
+     * Returns the cached value for {@code key}, calling {@code resolver} on a miss. Only the {@link CacheSpec#ttl()} of
+     * {@code spec} applies.
+     */
+    Object apply(@Nonnull CacheSpec spec, int key, @Nonnull IntFunction<Object> resolver);
+
+    void invalidate(int key);
+}
@@ -0,0 +1,13 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Thrown instead of loading a value when its namespace already runs and queues as many loads as it allows. Built
+ * without a stack trace, so shedding load stays cheap.
+ */
+public class LoadRejectedException extends RuntimeException {
+    public LoadRejectedException(@Nonnull final String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,14 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Thrown when a load of a namespace with a deadline didn't finish in time, see
+ * {@link NamespaceConfig#withLoadDeadline(long, java.util.concurrent.TimeUnit)}. Callers waiting on the same key get it
+ * too. Built without a stack trace, as it says nothing about its caller.
+ */
+public class LoadTimeoutException extends RuntimeException {
+    public LoadTimeoutException(@Nonnull final String message) {
+        super(message, null, false, false);
+    }
+}
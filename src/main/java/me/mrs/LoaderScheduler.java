@@ -0,0 +1,348 @@
+package me.mrs;
+
+import lombok.extern.slf4j.Slf4j;
+import me.mrs.metrics.LatencyHistogram;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the resolvers of one namespace on its own threads, at most {@code maximumConcurrency} at a time with at most
+ * {@code maximumQueued} more waiting; further loads are rejected at once with a {@link LoadRejectedException}.
+ * <p>
+ * Loads run on virtual threads when asked and the JDK has them, otherwise on a pool of daemon platform threads that
+ * time out when idle. Loads started by a resolver of the same namespace run inline, so they can't wait on a slot their
+ * caller holds.
+ * <p>
+ * With a deadline, a load still running after it fails with a {@link LoadTimeoutException}, releasing its caller and
+ * the callers waiting on the same key; the resolver keeps its thread and slot until it returns. With hedging, a load
+ * still running once it took longer than the given percentile of the namespace's loads gets a second attempt, and
+ * whichever succeeds first is used. The delay is computed again every {@value #HEDGE_DELAY_REFRESH} loads, from the
+ * {@value #HEDGE_MINIMUM_LOADS}th on.
+ */
+@Slf4j
+final class LoaderScheduler {
+    private static final ThreadLocal<LoaderScheduler> CURRENT = new ThreadLocal<>();
+    private static final int HEDGE_MINIMUM_LOADS = 100;
+    private static final int HEDGE_DELAY_REFRESH = 64;
+
+    private final String namespace;
+    private final int limit;
+    private final long staleRetry;
+    private final long deadline;
+    private final double hedgePercentile;
+    private final ExecutorService executor;
+    // bounds virtual threads, which aren't pooled
+    private final Semaphore permits;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    // successful load times, only with hedging
+    private final LatencyHistogram latencies;
+    private final AtomicInteger sinceHedgeDelay = new AtomicInteger();
+    // nanoseconds before a load is hedged, non-positive until enough loads are known
+    private volatile long hedgeDelay;
+
+    LoaderScheduler(final String namespace, final int maximumConcurrency, final int maximumQueued, final boolean virtualThreads,
+                    final long staleRetry) {
+        this(namespace, maximumConcurrency, maximumQueued, virtualThreads, staleRetry, 0, 0);
+    }
+
+    /**
+     * @param staleRetry      milliseconds an expired value is served again after a rejected reload, non-positive to
+     *                        rethrow the rejection instead
+     * @param deadline        milliseconds a load may take, non-positive for no deadline
+     * @param hedgePercentile percentile of load times after which a load is hedged, non-positive for no hedging
+     */
+    LoaderScheduler(final String namespace, final int maximumConcurrency, final int maximumQueued, final boolean virtualThreads,
+                    final long staleRetry, final long deadline, final double hedgePercentile) {
+        this.namespace = namespace;
+        this.limit = maximumConcurrency + maximumQueued;
+        this.staleRetry = staleRetry;
+        this.deadline = deadline;
+        this.hedgePercentile = hedgePercentile;
+        this.latencies = hedgePercentile > 0 ? new LatencyHistogram() : null;
+        final var virtual = virtualThreads ? virtualThreadExecutor() : null;
+        if (virtual != null) {
+            this.executor = virtual;
+            this.permits = new Semaphore(maximumConcurrency);
+        } else {
+            final var threads = new AtomicInteger();
+            final var pool = new ThreadPoolExecutor(maximumConcurrency, maximumConcurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                final var thread = new Thread(r, "cache-loader-" + namespace + "-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+            this.permits = null;
+        }
+    }
+
+    /**
+     * Runs {@code resolver} on a loader thread and waits for its result.
+     *
+     * @throws LoadRejectedException if the queue is full
+     * @throws LoadTimeoutException  if the load missed the deadline
+     */
+    <K, V> V load(final Function<K, V> resolver, final K key) {
+        if (CURRENT.get() == this) {
+            return resolver.apply(key);
+        }
+        return MemoryCache.join(schedule(() -> attempt(resolver, key), true));
+    }
+
+    /**
+     * Runs the bulk {@code resolver} of {@code keys} on a loader thread and waits for its result, like {@link #load}
+     * but never hedged: bulk resolvers may not be safe to run twice at once, and their times would skew the hedge
+     * delay of single-key loads.
+     */
+    <K, V> V loadAll(final Function<K, V> resolver, final K keys) {
+        if (CURRENT.get() == this) {
+            return resolver.apply(keys);
+        }
+        return MemoryCache.join(schedule(() -> attempt(resolver, keys), false));
+    }
+
+    /**
+     * Starts {@code resolver} on a loader thread, holding its slot until the returned future completes.
+     *
+     * @return the resolver's result, or a future failed with a {@link LoadRejectedException} if the queue is full or
+     * with a {@link LoadTimeoutException} if the load missed the deadline
+     */
+    <K, V> CompletableFuture<V> loadAsync(final Function<K, CompletableFuture<V>> resolver, final K key) {
+        if (CURRENT.get() == this) {
+            return resolver.apply(key);
+        }
+        try {
+            return schedule(() -> attemptAsync(resolver, key), true);
+        } catch (LoadRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Starts a load with {@code attempt}, hedged with another one if it runs late and {@code hedged}, and failed once
+     * past the deadline.
+     *
+     * @throws LoadRejectedException if the first attempt is rejected
+     */
+    private <V> CompletableFuture<V> schedule(final Supplier<CompletableFuture<V>> attempt, final boolean hedged) {
+        final var first = hedged ? timed(attempt) : attempt.get();
+        final long hedgeDelay = hedged ? this.hedgeDelay : 0;
+        if (hedgeDelay <= 0 && deadline <= 0) {
+            return first;
+        }
+        final var result = new CompletableFuture<V>();
+        // attempts that may still succeed; the last one to fail fails the load
+        final var pending = new AtomicInteger(1);
+        first.whenComplete((value, e) -> settle(result, pending, value, e, false));
+        if (hedgeDelay > 0) {
+            CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.NANOSECONDS)
+                    .execute(() -> hedge(result, pending, attempt));
+        }
+        if (deadline <= 0) {
+            return result;
+        }
+        final var bounded = new CompletableFuture<V>();
+        result.orTimeout(deadline, TimeUnit.MILLISECONDS)
+                .whenComplete((value, e) -> {
+                    if (e instanceof TimeoutException) {
+                        timeouts.increment();
+                        bounded.completeExceptionally(new LoadTimeoutException("Load of " + namespace + " took over " + deadline + "ms"));
+                    } else if (e != null) {
+                        bounded.completeExceptionally(e);
+                    } else {
+                        bounded.complete(value);
+                    }
+                });
+        return bounded;
+    }
+
+    private <V> void hedge(final CompletableFuture<V> result, final AtomicInteger pending, final Supplier<CompletableFuture<V>> attempt) {
+        if (result.isDone()) {
+            return;
+        }
+        pending.incrementAndGet();
+        hedges.increment();
+        final CompletableFuture<V> second;
+        try {
+            second = timed(attempt);
+        } catch (LoadRejectedException e) {
+            // no slot left for a hedge, the first attempt goes on alone
+            hedges.decrement();
+            settle(result, pending, null, e, true);
+            return;
+        }
+        second.whenComplete((value, e) -> settle(result, pending, value, e, true));
+    }
+
+    private <V> void settle(final CompletableFuture<V> result, final AtomicInteger pending, final V value, final Throwable failure,
+                            final boolean hedged) {
+        if (failure == null) {
+            if (result.complete(value) && hedged) {
+                hedgeWins.increment();
+            }
+        } else if (pending.decrementAndGet() == 0) {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Starts {@code attempt}, recording how long it takes to succeed when hedging.
+     */
+    private <V> CompletableFuture<V> timed(final Supplier<CompletableFuture<V>> attempt) {
+        final long start = System.nanoTime();
+        final var future = attempt.get();
+        if (latencies != null) {
+            future.whenComplete((value, e) -> {
+                if (e == null) {
+                    recordLatency(System.nanoTime() - start);
+                }
+            });
+        }
+        return future;
+    }
+
+    private void recordLatency(final long nanos) {
+        latencies.record(nanos);
+        if (sinceHedgeDelay.incrementAndGet() % HEDGE_DELAY_REFRESH == 0) {
+            final var snapshot = latencies.snapshot();
+            if (snapshot.count() >= HEDGE_MINIMUM_LOADS) {
+                hedgeDelay = Math.max(1, snapshot.valueAt(hedgePercentile));
+            }
+        }
+    }
+
+    /**
+     * Runs {@code resolver} on a loader thread.
+     */
+    private <K, V> CompletableFuture<V> attempt(final Function<K, V> resolver, final K key) {
+        final var result = new CompletableFuture<V>();
+        submit(() -> {
+            // frees the slot before waking the caller, which may load again at once
+            final V value;
+            try {
+                value = resolver.apply(key);
+            } catch (RuntimeException | Error e) {
+                finish();
+                result.completeExceptionally(e);
+                return;
+            }
+            finish();
+            result.complete(value);
+        });
+        return result;
+    }
+
+    /**
+     * Starts {@code resolver} on a loader thread, holding its slot until its future completes.
+     */
+    private <K, V> CompletableFuture<V> attemptAsync(final Function<K, CompletableFuture<V>> resolver, final K key) {
+        final var result = new CompletableFuture<V>();
+        submit(() -> {
+            final CompletableFuture<V> loaded;
+            try {
+                loaded = resolver.apply(key);
+            } catch (RuntimeException | Error e) {
+                finish();
+                result.completeExceptionally(e);
+                return;
+            }
+            loaded.whenComplete((value, e) -> {
+                finish();
+                if (e == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * @return milliseconds an expired value is served again after a rejected reload, non-positive for never
+     */
+    long staleRetry() {
+        return staleRetry;
+    }
+
+    void recordStale() {
+        stale.increment();
+    }
+
+    LoaderStats stats() {
+        final int running = this.running.get();
+        return new LoaderStats(running, Math.max(0, admitted.get() - running), completed.sum(), rejected.sum(), stale.sum(), timeouts.sum(),
+                hedges.sum(), hedgeWins.sum());
+    }
+
+    private void submit(final Runnable load) {
+        int n;
+        do {
+            n = admitted.get();
+            if (n >= limit) {
+                rejected.increment();
+                throw new LoadRejectedException("Too many loads of " + namespace + ": " + n);
+            }
+        } while (!admitted.compareAndSet(n, n + 1));
+        try {
+            executor.execute(() -> {
+                if (permits != null) {
+                    permits.acquireUninterruptibly();
+                }
+                running.incrementAndGet();
+                CURRENT.set(this);
+                try {
+                    load.run();
+                } finally {
+                    CURRENT.remove();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admitted.decrementAndGet();
+            rejected.increment();
+            throw new LoadRejectedException("Loader of " + namespace + " is shut down");
+        }
+    }
+
+    private void finish() {
+        completed.increment();
+        running.decrementAndGet();
+        admitted.decrementAndGet();
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return {@code Executors.newVirtualThreadPerTaskExecutor()}, or {@code null} before Java 21
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.debug("No virtual threads, loading on platform threads", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package me.mrs;
+
+/**
+ * Point-in-time state of the loads of a namespace with a load limit, see {@link NamespaceConfig#withLoadLimit(int, int)}.
+ */
+public final class LoaderStats {
+    static final LoaderStats EMPTY = new LoaderStats(0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final int running;
+    private final int queued;
+    private final long completedCount;
+    private final long rejectedCount;
+    private final long staleCount;
+    private final long timeoutCount;
+    private final long hedgeCount;
+    private final long hedgeWinCount;
+
+    LoaderStats(final int running, final int queued, final long completedCount, final long rejectedCount, final long staleCount,
+                final long timeoutCount, final long hedgeCount, final long hedgeWinCount) {
+        this.running = running;
+        this.queued = queued;
+        this.completedCount = completedCount;
+        this.rejectedCount = rejectedCount;
+        this.staleCount = staleCount;
+        this.timeoutCount = timeoutCount;
+        this.hedgeCount = hedgeCount;
+        this.hedgeWinCount = hedgeWinCount;
+    }
+
+    /**
+     * @return loads running their resolver
+     */
+    public int running() {
+        return running;
+    }
+
+    /**
+     * @return loads waiting for a free slot
+     */
+    public int queued() {
+        return queued;
+    }
+
+    /**
+     * @return loads that ran, successfully or not
+     */
+    public long completedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @return loads refused because the queue was full
+     */
+    public long rejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return refused loads answered with an expired value instead
+     */
+    public long staleCount() {
+        return staleCount;
+    }
+
+    /**
+     * @return loads failed with a {@link LoadTimeoutException} as they missed the deadline
+     */
+    public long timeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * @return second attempts started for loads running late
+     */
+    public long hedgeCount() {
+        return hedgeCount;
+    }
+
+    /**
+     * @return loads answered by their second attempt
+     */
+    public long hedgeWinCount() {
+        return hedgeWinCount;
+    }
+
+    @Override
+    public String toString() {
+        return "LoaderStats{running=" + running + ", queued=" + queued + ", completed=" + completedCount + ", rejected=" + rejectedCount
+                + ", stale=" + staleCount + ", timeouts=" + timeoutCount + ", hedges=" + hedgeCount + ", hedgeWins=" + hedgeWinCount + '}';
+    }
+}
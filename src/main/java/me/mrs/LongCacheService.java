@@ -0,0 +1,20 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+import java.util.function.LongFunction;
+
+/**
+ * Cache of one namespace keyed by a {@code long}, so lookups neither box the key nor build a {@link CacheKey}.
+ * <p>
+ * Obtained from {@link CacheService#longKeys(String)}. Its entries are separate from the ones cached under
+ * {@link CacheKey}s, but {@link CacheService#invalidate(CacheKey)} of {@code CacheKey.of(namespace, key)} reaches them.
+ */
+public interface LongCacheService {
+    /**
+     * Returns the cached value for {@code key}, calling {@code resolver} on a miss. Only the {@link CacheSpec#ttl()} of
+     * {@code spec} applies.
+     */
+    Object apply(@Nonnull CacheSpec spec, long key, @Nonnull LongFunction<Object> resolver);
+
+    void invalidate(long key);
+}
@@ -2,15 +2,918 @@ package me.mrs;
 
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 
+/**
+ * Concurrent, TTL-honoring {@link CacheService}.
+ * <p>
+ * Entries live in a {@link ConcurrentHashMap} so readers never lock and writers only contend per bin. Resolvers
+ * always run outside of the map, so a slow resolver never blocks unrelated keys sharing its bin. Concurrent misses on
+ * the same key are coalesced: one caller loads while the others wait for its value or failure. Expired entries are
+ * dropped lazily on access and by an amortized sweep triggered from the write path.
+ * <p>
+ * With a {@link CacheSpec} entries can also be refreshed ahead of expiry, or served stale after it, while a single
+ * reload runs on the {@code executor}. Entries of {@link #pin(CacheKey) pinned} keys are also reloaded ahead once four
+ * fifths of their TTL passed, so hot keys don't miss when they expire. After a failed reload the entry waits
+ * a second before the next one, so a down backend isn't called on every hit.
+ * <p>
+ * {@link #invalidateAll()} takes constant time: it bumps a generation counter that every entry is stamped with, and
+ * entries of older generations are treated as absent and reclaimed by the same lazy paths as expired ones.
+ * <p>
+ * Keys made of a single {@code long} or {@code int} can also be cached in per-namespace {@link PrimitiveCache} tables,
+ * handed out by {@link #longKeys(String)} and {@link #intKeys(String)}.
+ * <p>
+ * Given a {@link LoaderScheduler}, resolvers run on its threads within its limits; a rejected load of an expired key
+ * can be answered with the expired value instead.
+ */
 @Slf4j
 public class MemoryCache implements CacheService {
-    private final HashMap<String, Object> cache = new HashMap<>();
+    static final long NO_EXPIRY = Long.MAX_VALUE;
+    /**
+     * Milliseconds a failed background reload waits before a hit may start the next one.
+     */
+    static final long RELOAD_BACKOFF_MILLIS = 1_000;
 
+    private final ConcurrentHashMap<CacheKey, Entry> cache = new ConcurrentHashMap<>();
+    private final Executor executor;
+    private final LongSupplier ticker;
+    private final AtomicLong writesSinceSweep = new AtomicLong();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final ConcurrentHashMap<String, PrimitiveCache> longTables = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, PrimitiveCache> intTables = new ConcurrentHashMap<>();
+    private final Set<CacheKey> pinned = ConcurrentHashMap.newKeySet();
+    private volatile LoaderScheduler loader;
+
+    public MemoryCache() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor runs background reloads of refresh-ahead and stale entries
+     */
+    public MemoryCache(@Nonnull final Executor executor) {
+        this(executor, System::nanoTime);
+    }
+
+    /**
+     * @param ticker nanosecond time source, {@link System#nanoTime()} unless testing
+     */
+    protected MemoryCache(@Nonnull final Executor executor, @Nonnull final LongSupplier ticker) {
+        this.executor = executor;
+        this.ticker = ticker;
+    }
+
+    @Override
+    public Object apply(final long ttl, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        return get(key, ttl, 0, 0, resolver, false);
+    }
+
+    /**
+     * Remembers {@code null} results and failures as the {@code spec} asks, rethrowing the very same exception
+     * instance on hits.
+     */
+    @Override
+    public Object apply(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        return get(key, spec.ttl(), spec.refreshAfter(), spec.staleFor(), spec.cachesNegatives() ? Negative.resolver(spec, resolver) : resolver, false);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(final long ttl, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        return getAsync(key, ttl, 0, 0, resolver);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        return getAsync(key, spec.ttl(), spec.refreshAfter(), spec.staleFor(), resolver);
+    }
+
+    /**
+     * Looks every key up once, then resolves all misses with a single resolver call. Keys being loaded by other callers,
+     * in bulk or not, are awaited instead of loaded again, and due entries are refreshed one key at a time.
+     */
+    @Nonnull
+    @Override
+    public Map<CacheKey, Object> applyAll(@Nonnull final CacheSpec spec, @Nonnull final Collection<CacheKey> keys,
+                                          @Nonnull final Function<Set<CacheKey>, Map<CacheKey, Object>> resolver) {
+        final long now = ticker.getAsLong();
+        final long current = generation.get();
+        final Function<CacheKey, Object> reloader = k -> resolver.apply(Set.of(k))
+                .get(k);
+        final var values = new HashMap<CacheKey, Object>();
+        final var claimed = new LinkedHashMap<CacheKey, Loading>();
+        final var awaited = new HashMap<CacheKey, Loading>();
+        for (final var key : keys) {
+            if (values.containsKey(key) || claimed.containsKey(key) || awaited.containsKey(key)) {
+                continue;
+            }
+            final var found = probe(key, now, current, spec.ttl(), spec.refreshAfter(), spec.staleFor(), reloader, false);
+            // remembered failures are only rethrown once the claimed keys are loaded, so their waiters don't hang
+            if (!(found instanceof Loading)) {
+                values.put(key, found);
+            } else if (((Loading) found).takeClaim()) {
+                claimed.put(key, (Loading) found);
+            } else {
+                awaited.put(key, (Loading) found);
+            }
+        }
+        if (!claimed.isEmpty()) {
+            loadAll(claimed, spec, resolver, values);
+        }
+        awaited.forEach((key, loading) -> {
+            final var value = loading.await();
+            if (value != null) {
+                values.put(key, value);
+            }
+        });
+
+        final var ordered = new LinkedHashMap<CacheKey, Object>(values.size() * 2);
+        for (final var key : keys) {
+            var value = values.get(key);
+            if (value instanceof Negative) {
+                value = ((Negative) value).unwrap();
+            }
+            if (value != null) {
+                ordered.put(key, value);
+            }
+        }
+        return ordered;
+    }
+
+    @Nullable
+    @Override
+    public LongCacheService longKeys(@Nonnull final String namespace) {
+        return table(longTables, namespace);
+    }
+
+    @Nullable
+    @Override
+    public IntCacheService intKeys(@Nonnull final String namespace) {
+        return table(intTables, namespace);
+    }
+
+    @Override
+    public void invalidate(@Nonnull final CacheKey key) {
+        discard(key);
+        final var table = primitiveTable(key);
+        if (table != null) {
+            table.invalidate(((Number) key.get(0)).longValue());
+        }
+    }
+
+    /**
+     * Only knows the entries of the map, not those of the primitive tables.
+     */
+    @Override
+    public long timeToLive(@Nonnull final CacheKey key) {
+        final var entry = cache.get(key);
+        if (entry == null || entry instanceof Loading || entry.generation != generation.get()) {
+            return -1;
+        }
+        return entry.timeToLive(ticker.getAsLong());
+    }
+
+    /**
+     * Removes the keys from the map, then from each primitive table taking the lock of every segment involved once.
+     */
     @Override
-    public Object apply(final long ttl, final String key, Function<String, Object> resolver) {
-        return cache.computeIfAbsent(key, resolver);
+    public void invalidateAll(@Nonnull final Collection<CacheKey> keys) {
+        Map<PrimitiveCache, List<Long>> primitive = null;
+        for (final var key : keys) {
+            discard(key);
+            final var table = primitiveTable(key);
+            if (table != null) {
+                if (primitive == null) {
+                    primitive = new HashMap<>();
+                }
+                primitive.computeIfAbsent(table, t -> new ArrayList<>())
+                        .add(((Number) key.get(0)).longValue());
+            }
+        }
+        if (primitive != null) {
+            primitive.forEach((table, tableKeys) -> table.invalidateAll(tableKeys.stream()
+                    .mapToLong(Long::longValue)
+                    .toArray()));
+        }
+    }
+
+    /**
+     * Drops the entries of {@code namespace} in one pass over the map, plus its primitive tables. Unlike
+     * {@link #invalidateAll()} this takes time proportional to the size of the cache.
+     */
+    @Override
+    public void invalidateNamespace(@Nonnull final String namespace) {
+        cache.forEach((key, entry) -> {
+            if (key.namespace()
+                    .equals(namespace) && cache.remove(key, entry) && !(entry instanceof Loading)) {
+                retire(entry);
+            }
+        });
+        final var longTable = longTables.get(namespace);
+        if (longTable != null) {
+            longTable.clear();
+        }
+        final var intTable = intTables.get(namespace);
+        if (intTable != null) {
+            intTable.clear();
+        }
+    }
+
+    /**
+     * Replaces the entry of {@code key} at once; a load of the key still running completes for its callers but isn't
+     * stored. Keys of a primitive table are only invalidated there, as those tables cache nothing but loaded values.
+     */
+    @Override
+    public void put(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nullable final Object value) {
+        if (value == null || primitiveTable(key) != null) {
+            invalidate(key);
+            return;
+        }
+        final var fresh = entry(key, value, spec.ttl(), spec.refreshAfter(), spec.staleFor());
+        fresh.generation = generation.get();
+        final var previous = cache.put(key, fresh);
+        if (previous != null && !(previous instanceof Loading)) {
+            retire(previous);
+        }
+        onWrite(fresh);
+        afterWrite(fresh.writeTime);
+    }
+
+    /**
+     * Pins {@code key}, which doesn't reach the keys of primitive tables: cache them as {@link CacheKey}s to pin them.
+     */
+    @Override
+    public void pin(@Nonnull final CacheKey key) {
+        pinned.add(key);
+    }
+
+    @Override
+    public void unpin(@Nonnull final CacheKey key) {
+        pinned.remove(key);
+    }
+
+    /**
+     * Drops every entry in constant time, plus the primitive tables; loads already running complete for their callers
+     * but aren't stored.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        longTables.values()
+                .forEach(PrimitiveCache::clear);
+        intTables.values()
+                .forEach(PrimitiveCache::clear);
+    }
+
+    /**
+     * @return entries in the map and the primitive tables, including invalidated or expired ones not reclaimed yet
+     */
+    public long size() {
+        long size = cache.mappingCount();
+        for (final var table : longTables.values()) {
+            size += table.size();
+        }
+        for (final var table : intTables.values()) {
+            size += table.size();
+        }
+        return size;
+    }
+
+    @Nonnull
+    public CacheStats stats() {
+        var stats = new CacheStats(hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(), evictions.sum(), expirations.sum(),
+                cache.mappingCount());
+        for (final var table : longTables.values()) {
+            stats = stats.plus(table.stats());
+        }
+        for (final var table : intTables.values()) {
+            stats = stats.plus(table.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * @return entries a primitive table of {@code namespace} keeps before evicting, {@link Long#MAX_VALUE} for no bound,
+     * or {@code 0} to cache its {@code long} and {@code int} keys as {@link CacheKey}s
+     */
+    long primitiveCapacity(@Nonnull final String namespace) {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Runs the resolvers of this cache on {@code loader} from now on, which also turns the primitive tables off as they
+     * load on the caller thread.
+     */
+    void useLoader(@Nonnull final LoaderScheduler loader) {
+        this.loader = loader;
+    }
+
+    private PrimitiveCache table(final ConcurrentHashMap<String, PrimitiveCache> tables, final String namespace) {
+        final var table = tables.get(namespace);
+        if (table != null) {
+            return table;
+        }
+        final long capacity = primitiveCapacity(namespace);
+        return capacity <= 0 || loader != null ? null : tables.computeIfAbsent(namespace, ns -> new PrimitiveCache(ticker, capacity));
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> getAsync(final CacheKey key, final long ttl, final long refreshAfter, final long staleFor,
+                                               final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        final var future = (CompletableFuture<Object>) get(key, ttl, refreshAfter, staleFor, k -> {
+            final var loader = this.loader;
+            final var loaded = loader == null ? resolver.apply(k) : loader.loadAsync(resolver, k);
+            loaded.whenComplete((v, e) -> {
+                if (e == null) {
+                    loads.increment();
+                } else {
+                    if (!(e instanceof LoadRejectedException)) {
+                        loadFailures.increment();
+                    }
+                    removeValue(k, loaded);
+                }
+            });
+            return loaded;
+        }, true);
+        if (future.isCompletedExceptionally()) {
+            // failed before it was stored, the callback above found nothing to remove
+            removeValue(key, future);
+        }
+        return future;
+    }
+
+    private Object get(final CacheKey key, final long ttl, final long refreshAfter, final long staleFor, final Function<CacheKey, Object> resolver,
+                       final boolean async) {
+        var found = probe(key, ticker.getAsLong(), generation.get(), ttl, refreshAfter, staleFor, resolver, async);
+        if (found instanceof Loading) {
+            final var loading = (Loading) found;
+            found = loading.takeClaim() ? load(key, ttl, refreshAfter, staleFor, loading, resolver, async) : loading.await();
+        }
+        return found instanceof Negative ? ((Negative) found).unwrap() : found;
+    }
+
+    /**
+     * Finds the live value of {@code key}, starting a background reload if it is due. Otherwise returns a
+     * {@link Loading} placeholder: a claimed one the caller must load, or another caller's one to await.
+     */
+    private Object probe(final CacheKey key, final long now, final long current, final long ttl, final long refreshAfter, final long staleFor,
+                         final Function<CacheKey, Object> resolver, final boolean async) {
+        Loading loading = null;
+        for (; ; ) {
+            var entry = cache.get(key);
+            if (entry == null) {
+                if (loading == null) {
+                    loading = new Loading(current);
+                }
+                if (cache.putIfAbsent(key, loading) == null) {
+                    misses.increment();
+                    return loading;
+                }
+            } else if (entry.generation != current) {
+                if (loading == null) {
+                    loading = new Loading(current);
+                }
+                if (cache.replace(key, entry, loading)) {
+                    if (!(entry instanceof Loading)) {
+                        retire(entry);
+                    }
+                    misses.increment();
+                    return loading;
+                }
+            } else if (entry instanceof Loading) {
+                hits.increment();
+                return entry;
+            } else if (!entry.isExpired(now)) {
+                hits.increment();
+                onHit(entry);
+                if (!entry.isFresh(now) || isPinned(key) && entry.isNearExpiry(now)) {
+                    reload(key, entry, now, ttl, refreshAfter, staleFor, resolver, async);
+                }
+                return entry.value;
+            } else {
+                if (loading == null) {
+                    loading = new Loading(current);
+                }
+                if (cache.replace(key, entry, loading)) {
+                    loading.stale = entry;
+                    retire(entry);
+                    expirations.increment();
+                    misses.increment();
+                    return loading;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the resolver for a key this thread has claimed with {@code loading}. Concurrent callers wait on the
+     * placeholder, so every miss reaches the resolver exactly once and nothing but that key is blocked.
+     */
+    private Object load(final CacheKey key, final long ttl, final long refreshAfter, final long staleFor, final Loading loading,
+                        final Function<CacheKey, Object> resolver, final boolean async) {
+        final Object value;
+        try {
+            value = resolve(key, resolver, async);
+        } catch (LoadRejectedException e) {
+            final var loader = this.loader;
+            if (loading.stale != null && loader != null && loader.staleRetry() > 0) {
+                return serveStale(key, loading, loader);
+            }
+            cache.remove(key, loading);
+            loading.future.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            loadFailures.increment();
+            cache.remove(key, loading);
+            loading.future.completeExceptionally(e);
+            throw e;
+        }
+        if (value instanceof Negative && ((Negative) value).failure != null) {
+            loadFailures.increment();
+        } else if (!async) {
+            // futures are counted by getAsync once they complete
+            loads.increment();
+        }
+        store(key, loading, value, ttl, refreshAfter, staleFor);
+        return value;
+    }
+
+    /**
+     * Answers a rejected load with the expired value it was replacing, kept for the loader's retry delay so that
+     * callers meanwhile don't retry the load either.
+     */
+    private Object serveStale(final CacheKey key, final Loading loading, final LoaderScheduler loader) {
+        final var value = loading.stale.value;
+        final var fresh = newEntry(key, value, ticker.getAsLong(), loader.staleRetry(), 0, 0);
+        fresh.generation = loading.generation;
+        if (cache.replace(key, loading, fresh)) {
+            onWrite(fresh);
+        }
+        loader.recordStale();
+        loading.future.complete(value);
+        return value;
+    }
+
+    /**
+     * Runs a resolver on the loader, if any; async resolvers were already wrapped by {@link #getAsync}.
+     */
+    private Object resolve(final CacheKey key, final Function<CacheKey, Object> resolver, final boolean async) {
+        final var loader = this.loader;
+        return async || loader == null ? resolver.apply(key) : loader.load(resolver, key);
+    }
+
+    /**
+     * Resolves every key this thread has claimed in {@code claimed} with one resolver call.
+     */
+    private void loadAll(final Map<CacheKey, Loading> claimed, final CacheSpec spec, final Function<Set<CacheKey>, Map<CacheKey, Object>> resolver,
+                         final Map<CacheKey, Object> values) {
+        final Map<CacheKey, Object> loaded;
+        try {
+            final var loader = this.loader;
+            final var missing = Collections.unmodifiableSet(claimed.keySet());
+            loaded = loader == null ? resolver.apply(missing) : loader.loadAll(resolver, missing);
+        } catch (RuntimeException | Error e) {
+            if (!(e instanceof LoadRejectedException)) {
+                loadFailures.increment();
+            }
+            claimed.forEach((key, loading) -> {
+                cache.remove(key, loading);
+                loading.future.completeExceptionally(e);
+            });
+            throw e;
+        }
+        loads.increment();
+        claimed.forEach((key, loading) -> {
+            final var value = loaded == null ? null : loaded.get(key);
+            store(key, loading, value, spec.ttl(), spec.refreshAfter(), spec.staleFor());
+            if (value != null) {
+                values.put(key, value);
+            }
+        });
+    }
+
+    /**
+     * Replaces a claimed placeholder with the loaded value, or drops it for {@code null}, and wakes its waiters.
+     */
+    private void store(final CacheKey key, final Loading loading, final Object value, final long ttl, final long refreshAfter, final long staleFor) {
+        if (value == null) {
+            cache.remove(key, loading);
+        } else {
+            final var fresh = entry(key, value, ttl, refreshAfter, staleFor);
+            fresh.generation = loading.generation;
+            if (cache.replace(key, loading, fresh)) {
+                onWrite(fresh);
+                afterWrite(fresh.writeTime);
+            }
+        }
+        loading.future.complete(value);
+    }
+
+    /**
+     * Reloads a due or stale entry on the executor while callers keep being served the current value. Only the first
+     * caller noticing it starts the reload; an async reload replaces the entry once its future succeeded.
+     */
+    private void reload(final CacheKey key, final Entry current, final long now, final long ttl, final long refreshAfter, final long staleFor,
+                        final Function<CacheKey, Object> resolver, final boolean async) {
+        if (!current.tryStartReload(now)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    final var value = resolve(key, resolver, async);
+                    if (async) {
+                        ((CompletableFuture<?>) value).whenComplete((v, e) -> {
+                            if (e == null) {
+                                replace(key, current, value, ttl, refreshAfter, staleFor);
+                            } else {
+                                reloadFailed(key, current, e);
+                            }
+                        });
+                    } else {
+                        loads.increment();
+                        replace(key, current, value, ttl, refreshAfter, staleFor);
+                    }
+                } catch (RuntimeException | Error e) {
+                    if (!(e instanceof LoadRejectedException)) {
+                        loadFailures.increment();
+                    }
+                    reloadFailed(key, current, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reloadFailed(key, current, e);
+        }
+    }
+
+    private void replace(final CacheKey key, final Entry current, final Object value, final long ttl, final long refreshAfter, final long staleFor) {
+        if (value == null) {
+            if (cache.remove(key, current)) {
+                retire(current);
+            }
+            return;
+        }
+        final var fresh = entry(key, value, ttl, refreshAfter, staleFor);
+        fresh.generation = current.generation;
+        if (cache.replace(key, current, fresh)) {
+            retire(current);
+            onWrite(fresh);
+            afterWrite(fresh.writeTime);
+        }
+    }
+
+    private void reloadFailed(final CacheKey key, final Entry current, final Throwable e) {
+        if (e instanceof LoadRejectedException || e instanceof LoadTimeoutException) {
+            log.debug("Background reload of {} failed: {}", key, e.getMessage());
+        } else {
+            log.warn("Background reload of {} failed", key, e);
+        }
+        current.reloadFailed(ticker.getAsLong());
+    }
+
+    /**
+     * Creates the entry of a loaded value; a {@link Negative} one lives for its own TTL and is never refreshed.
+     */
+    private Entry entry(final CacheKey key, final Object value, final long ttl, final long refreshAfter, final long staleFor) {
+        final long now = ticker.getAsLong();
+        return value instanceof Negative
+                ? newEntry(key, value, now, ((Negative) value).ttl, 0, 0)
+                : newEntry(key, value, now, ttl, refreshAfter, staleFor);
+    }
+
+    Entry newEntry(final CacheKey key, final Object value, final long now, final long ttl, final long refreshAfter, final long staleFor) {
+        return new Entry(value, now, ttl, refreshAfter, staleFor);
+    }
+
+    /**
+     * Called after a live entry was read.
+     */
+    void onHit(final Entry entry) {
+    }
+
+    /**
+     * Called after an entry was inserted into the map.
+     */
+    void onWrite(final Entry entry) {
+    }
+
+    /**
+     * Called after an entry was removed from the map, whether replaced, expired or evicted.
+     */
+    void onRemoval(final Entry entry) {
+    }
+
+    final boolean isPinned(final CacheKey key) {
+        return !pinned.isEmpty() && pinned.contains(key);
+    }
+
+    /**
+     * Marks an entry removed from the map, so that references held elsewhere, like a {@link FrontCache}'s, stop serving
+     * it, and notifies {@link #onRemoval(Entry)}.
+     */
+    private void retire(final Entry entry) {
+        entry.retired = true;
+        onRemoval(entry);
+    }
+
+    /**
+     * Counts an entry removed by a size-bounding policy.
+     */
+    final void recordEviction() {
+        evictions.increment();
+    }
+
+    /**
+     * Removes {@code entry} unless it was already replaced, without retiring it or notifying {@link #onRemoval(Entry)}.
+     */
+    final boolean remove(final CacheKey key, final Entry entry) {
+        return cache.remove(key, entry);
+    }
+
+    /**
+     * @return the entry of {@code key} in the map, {@code null} while it is being loaded
+     */
+    @Nullable
+    final Entry peek(final CacheKey key) {
+        final var entry = cache.get(key);
+        return entry instanceof Loading ? null : entry;
+    }
+
+    final long generation() {
+        return generation.get();
+    }
+
+    final long now() {
+        return ticker.getAsLong();
+    }
+
+    /**
+     * Accounts for {@code count} hits on {@code entry} served without this cache, recording them with the policy once.
+     */
+    final void recordHits(final Entry entry, final int count) {
+        hits.add(count);
+        onHit(entry);
+    }
+
+    private void discard(final CacheKey key) {
+        final var entry = cache.remove(key);
+        if (entry != null && !(entry instanceof Loading)) {
+            retire(entry);
+        }
+    }
+
+    @Nullable
+    private PrimitiveCache primitiveTable(final CacheKey key) {
+        if (key.size() != 1) {
+            return null;
+        }
+        final var argument = key.get(0);
+        final var tables = argument instanceof Long ? longTables : argument instanceof Integer ? intTables : null;
+        return tables == null ? null : tables.get(key.namespace());
+    }
+
+    private void removeValue(final CacheKey key, final Object value) {
+        final var entry = cache.get(key);
+        if (entry != null && entry.value == value && cache.remove(key, entry)) {
+            retire(entry);
+        }
+    }
+
+    private void afterWrite(final long now) {
+        if (writesSinceSweep.incrementAndGet() > Math.max(64, cache.size() / 2) && sweeping.compareAndSet(false, true)) {
+            try {
+                writesSinceSweep.set(0);
+                final long current = generation.get();
+                cache.forEach((key, entry) -> {
+                    if (entry instanceof Loading) {
+                        return;
+                    }
+                    final boolean invalidated = entry.generation != current;
+                    if ((invalidated || entry.isExpired(now)) && cache.remove(key, entry)) {
+                        if (!invalidated) {
+                            expirations.increment();
+                        }
+                        retire(entry);
+                    }
+                });
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+
+    static class Entry {
+        private static final AtomicIntegerFieldUpdater<Entry> RELOADING = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "reloading");
+
+        final Object value;
+        final long writeTime;
+        private final long refreshAt;
+        private final long expiresAt;
+        private final long staleUntil;
+        // set before the entry is published to the map
+        long generation;
+        // set once the entry left the map
+        volatile boolean retired;
+        private volatile int reloading;
+        // no reload starts before, in nanoseconds
+        private volatile long retryAt;
+
+        /**
+         * @param now          write time in nanoseconds
+         * @param ttl          milliseconds, non-positive never expires
+         * @param refreshAfter milliseconds, non-positive never refreshes ahead
+         * @param staleFor     milliseconds an expired value is still served, non-positive for none
+         */
+        Entry(final Object value, final long now, final long ttl, final long refreshAfter, final long staleFor) {
+            this.value = value;
+            this.writeTime = now;
+            this.refreshAt = deadline(now, refreshAfter);
+            this.expiresAt = deadline(now, ttl);
+            this.staleUntil = expiresAt == NO_EXPIRY || staleFor <= 0 ? expiresAt : deadline(expiresAt, staleFor);
+            this.retryAt = now;
+        }
+
+        /**
+         * @return whether the entry can't be served anymore, not even stale
+         */
+        final boolean isExpired(final long now) {
+            return staleUntil != NO_EXPIRY && now - staleUntil >= 0;
+        }
+
+        /**
+         * @return whether the entry is neither due for refresh nor stale
+         */
+        final boolean isFresh(final long now) {
+            return (refreshAt == NO_EXPIRY || now - refreshAt < 0) && (expiresAt == NO_EXPIRY || now - expiresAt < 0);
+        }
+
+        /**
+         * @return whether the entry is never refreshed and never expires, so {@link #isFresh(long)} needs no clock
+         */
+        final boolean isAlwaysFresh() {
+            return refreshAt == NO_EXPIRY && expiresAt == NO_EXPIRY;
+        }
+
+        /**
+         * @return milliseconds left until expiry, {@code 0} once expired even if still served stale, or
+         * {@link Long#MAX_VALUE} for never
+         */
+        final long timeToLive(final long now) {
+            return expiresAt == NO_EXPIRY ? Long.MAX_VALUE : Math.max(0, (expiresAt - now) / 1_000_000L);
+        }
+
+        /**
+         * @return whether four fifths of the TTL passed, when pinned entries are reloaded ahead
+         */
+        final boolean isNearExpiry(final long now) {
+            return expiresAt != NO_EXPIRY && now - (expiresAt - (expiresAt - writeTime) / 5) >= 0;
+        }
+
+        /**
+         * @return whether the caller claimed the reload: none is running and the back-off of a failed one passed
+         */
+        final boolean tryStartReload(final long now) {
+            return now - retryAt >= 0 && RELOADING.compareAndSet(this, 0, 1);
+        }
+
+        final void reloadFailed(final long now) {
+            retryAt = deadline(now, RELOAD_BACKOFF_MILLIS);
+            reloading = 0;
+        }
+
+        static long deadline(final long now, final long millis) {
+            if (millis <= 0) {
+                return NO_EXPIRY;
+            }
+            final long nanos = millis * 1_000_000L;
+            return nanos / 1_000_000L != millis || now + nanos < now ? NO_EXPIRY : now + nanos;
+        }
+    }
+
+    /**
+     * Placeholder of a key being resolved by {@link #owner}.
+     */
+    private static final class Loading extends Entry {
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final Thread owner = Thread.currentThread();
+        // expired entry this placeholder replaced, set before it is returned to the owner
+        private Entry stale;
+        // only accessed by the owner, which installs the placeholder and then takes the claim to load it
+        private boolean claimed = true;
+
+        private Loading(final long generation) {
+            super(null, 0, 0, 0, 0);
+            this.generation = generation;
+        }
+
+        /**
+         * @return whether the caller just installed this placeholder and must load it; later lookups await it
+         */
+        private boolean takeClaim() {
+            if (owner == Thread.currentThread() && claimed) {
+                claimed = false;
+                return true;
+            }
+            return false;
+        }
+
+        private Object await() {
+            if (owner == Thread.currentThread()) {
+                throw new IllegalStateException("Recursive load of the same key");
+            }
+            return join(future);
+        }
+    }
+
+    /**
+     * Remembered {@code null} result or failure, stored like a value but living for its own TTL.
+     */
+    private static final class Negative {
+        private final Throwable failure;
+        private final long ttl;
+
+        private Negative(final Throwable failure, final long ttl) {
+            this.failure = failure;
+            this.ttl = ttl;
+        }
+
+        /**
+         * Wraps {@code resolver} to turn the negative results {@code spec} caches into values.
+         */
+        private static Function<CacheKey, Object> resolver(final CacheSpec spec, final Function<CacheKey, Object> resolver) {
+            return k -> {
+                final Object value;
+                try {
+                    value = resolver.apply(k);
+                } catch (RuntimeException | Error e) {
+                    if (spec.cachesException(e)) {
+                        return new Negative(e, spec.exceptionTtl());
+                    }
+                    throw e;
+                }
+                return value == null && spec.nullTtl() > 0 ? new Negative(null, spec.nullTtl()) : value;
+            };
+        }
+
+        /**
+         * @return {@code null}, or rethrows the remembered failure without building a new stack trace
+         */
+        private Object unwrap() {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Waits for a load, rethrowing its failure as is.
+     */
+    static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            final var cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
     }
 }
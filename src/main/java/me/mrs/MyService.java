@@ -2,7 +2,13 @@ package me.mrs;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class MyService implements Runnable, UppercaseService {
@@ -13,7 +19,7 @@ public class MyService implements Runnable, UppercaseService {
     }
 
     @Override
-    @Cacheable(namespace = "cache1", ttl = 20)
+    @Cacheable(namespace = "cache1", ttl = 20, refreshAfter = 15, staleFor = 5)
     public String apply(String source) {
         log.trace("apply: {}", source);
         return Instant.now()
@@ -22,11 +28,83 @@ public class MyService implements Runnable, UppercaseService {
     }
 
     @Override
-    @Cacheable(namespace = "cache2", ttl = 20)
+    @Cacheable(namespace = "cache2", ttl = 20, refreshAfter = 15, staleFor = 5)
     public String applyWithPrefix(@Cacheable.Key final String source, final String prefix) {
         log.trace("applyWithPrefix: {}", source);
         return prefix + '@' + Instant.now()
                 .toString() + ":" + String.valueOf(source)
                 .toUpperCase();
     }
+
+    @Override
+    @Cacheable(namespace = "cache3", ttl = 20)
+    public CompletableFuture<String> applyAsync(final String source) {
+        log.trace("applyAsync: {}", source);
+        return CompletableFuture.supplyAsync(() -> apply(source));
+    }
+
+    @Override
+    @Cacheable(namespace = "cache4", ttl = 20)
+    public Map<String, String> applyAll(@Cacheable.Key final Set<String> sources) {
+        log.trace("applyAll: {}", sources);
+        final var now = Instant.now()
+                .toString();
+        final var values = new LinkedHashMap<String, String>();
+        for (final var source : sources) {
+            values.put(source, now + ":" + String.valueOf(source)
+                    .toUpperCase());
+        }
+        return values;
+    }
+
+    @Override
+    @Cacheable(namespace = "cache5", ttl = 20)
+    public String applyById(final long id) {
+        log.trace("applyById: {}", id);
+        return Instant.now()
+                .toString() + ":#" + id;
+    }
+
+    @Override
+    @CacheEvict(namespace = "cache1")
+    public void evict(final String source) {
+        log.trace("evict: {}", source);
+    }
+
+    @Override
+    @CachePut(namespace = "cache1", ttl = 20)
+    public String refresh(final String source) {
+        log.trace("refresh: {}", source);
+        return Instant.now()
+                .toString() + ":" + String.valueOf(source)
+                .toUpperCase();
+    }
+
+    @Override
+    @CacheEvict(namespace = "cache5")
+    public void evictById(final long id) {
+        log.trace("evictById: {}", id);
+    }
+
+    @Override
+    @Cacheable(namespace = "cache6", ttl = 20, nullTtl = 5, exceptionTtl = 1, cacheExceptions = IllegalArgumentException.class)
+    public String applyStrict(final String source) {
+        log.trace("applyStrict: {}", source);
+        if (source == null || source.isBlank()) {
+            throw new IllegalArgumentException("Blank source");
+        }
+        return source.startsWith("?") ? null : Instant.now()
+                .toString() + ":" + source.toUpperCase();
+    }
+
+    @Override
+    @Cacheable(namespace = "cache7", ttl = 20)
+    public String read(final String path) throws IOException {
+        log.trace("read: {}", path);
+        if (path.isEmpty()) {
+            throw new FileNotFoundException("Empty path");
+        }
+        return Instant.now()
+                .toString() + ":/" + path;
+    }
 }
@@ -0,0 +1,209 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Settings of one namespace of a {@link SegmentedCache}: the engine holding its entries, which decides capacity and
+ * eviction, the TTL used by methods that don't set one, and optionally how many of its loads may run at once, how long
+ * they may take and whether its large values are stored compressed.
+ */
+public final class NamespaceConfig {
+    private final Supplier<? extends MemoryCache> engine;
+    private final long defaultTtl;
+    private final int maximumLoads;
+    private final int maximumQueued;
+    private final boolean virtualThreads;
+    private final long staleRetry;
+    private final int compressionThreshold;
+    private final long loadDeadline;
+    private final double hedgePercentile;
+
+    private NamespaceConfig(final Supplier<? extends MemoryCache> engine, final long defaultTtl, final int maximumLoads, final int maximumQueued,
+                            final boolean virtualThreads, final long staleRetry, final int compressionThreshold, final long loadDeadline,
+                            final double hedgePercentile) {
+        this.engine = engine;
+        this.defaultTtl = defaultTtl;
+        this.maximumLoads = maximumLoads;
+        this.maximumQueued = maximumQueued;
+        this.virtualThreads = virtualThreads;
+        this.staleRetry = staleRetry;
+        this.compressionThreshold = compressionThreshold;
+        this.loadDeadline = loadDeadline;
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * @return a namespace bounded by TTLs only
+     */
+    @Nonnull
+    public static NamespaceConfig unbounded() {
+        return of(MemoryCache::new);
+    }
+
+    /**
+     * @return a namespace of at most {@code maximumSize} entries, evicted by W-TinyLFU
+     */
+    @Nonnull
+    public static NamespaceConfig bounded(final long maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        return of(() -> new BoundedCache(maximumSize));
+    }
+
+    /**
+     * @return a namespace of at most {@code maximumBytes} of estimated heap, see {@link Weigher#heapSize()}
+     */
+    @Nonnull
+    public static NamespaceConfig boundedBytes(final long maximumBytes) {
+        if (maximumBytes <= 0) {
+            throw new IllegalArgumentException("maximumBytes must be positive: " + maximumBytes);
+        }
+        return of(() -> BoundedCache.ofBytes(maximumBytes));
+    }
+
+    /**
+     * @return a namespace of at most {@code fraction} of the maximum heap, as estimated by {@link Weigher#heapSize()}
+     */
+    @Nonnull
+    public static NamespaceConfig heapFraction(final double fraction) {
+        if (!(fraction > 0 && fraction < 1)) {
+            throw new IllegalArgumentException("fraction must be between 0 and 1: " + fraction);
+        }
+        return boundedBytes((long) (Runtime.getRuntime()
+                .maxMemory() * fraction));
+    }
+
+    /**
+     * @param engine creates the namespace's cache, called once per {@link SegmentedCache}
+     */
+    @Nonnull
+    public static NamespaceConfig of(@Nonnull final Supplier<? extends MemoryCache> engine) {
+        return new NamespaceConfig(engine, 0, 0, 0, false, 0, 0, 0, 0);
+    }
+
+    /**
+     * @param ttl used for methods leaving {@link Cacheable#ttl()} unset
+     */
+    @Nonnull
+    public NamespaceConfig withDefaultTtl(final long ttl, @Nonnull final TimeUnit unit) {
+        return new NamespaceConfig(engine, unit.toMillis(ttl), maximumLoads, maximumQueued, virtualThreads, staleRetry, compressionThreshold,
+                loadDeadline, hedgePercentile);
+    }
+
+    /**
+     * Runs the namespace's resolvers on loader threads, at most {@code maximumConcurrency} at a time, and rejects loads
+     * with a {@link LoadRejectedException} once {@code maximumQueued} more are waiting.
+     */
+    @Nonnull
+    public NamespaceConfig withLoadLimit(final int maximumConcurrency, final int maximumQueued) {
+        if (maximumConcurrency <= 0 || maximumQueued < 0) {
+            throw new IllegalArgumentException("Invalid load limit: " + maximumConcurrency + " running, " + maximumQueued + " queued");
+        }
+        return new NamespaceConfig(engine, defaultTtl, maximumConcurrency, maximumQueued, virtualThreads, staleRetry, compressionThreshold,
+                loadDeadline, hedgePercentile);
+    }
+
+    /**
+     * Runs limited loads on virtual threads when the JDK has them, on platform threads otherwise.
+     */
+    @Nonnull
+    public NamespaceConfig withVirtualThreads() {
+        return new NamespaceConfig(engine, defaultTtl, maximumLoads, maximumQueued, true, staleRetry, compressionThreshold, loadDeadline,
+                hedgePercentile);
+    }
+
+    /**
+     * Answers a rejected load of an expired key with its expired value, served for {@code retryAfter} before loading is
+     * tried again, instead of throwing.
+     */
+    @Nonnull
+    public NamespaceConfig withStaleOnRejection(final long retryAfter, @Nonnull final TimeUnit unit) {
+        return new NamespaceConfig(engine, defaultTtl, maximumLoads, maximumQueued, virtualThreads, unit.toMillis(retryAfter),
+                compressionThreshold, loadDeadline, hedgePercentile);
+    }
+
+    /**
+     * Fails loads still running after {@code deadline} with a {@link LoadTimeoutException}, so a hanging resolver
+     * releases its caller and the callers waiting on the same key. The resolver itself keeps its loader thread until it
+     * returns. Needs a {@link #withLoadLimit(int, int) load limit}.
+     */
+    @Nonnull
+    public NamespaceConfig withLoadDeadline(final long deadline, @Nonnull final TimeUnit unit) {
+        if (deadline <= 0) {
+            throw new IllegalArgumentException("deadline must be positive: " + deadline);
+        }
+        return new NamespaceConfig(engine, defaultTtl, maximumLoads, maximumQueued, virtualThreads, staleRetry, compressionThreshold,
+                Math.max(1, unit.toMillis(deadline)), hedgePercentile);
+    }
+
+    /**
+     * Starts a second attempt of a load still running once it took longer than {@code percentile} percent of the
+     * namespace's loads, and uses whichever attempt succeeds first, e.g. {@code withHedging(95)}. Resolvers must cope
+     * with running twice at once, and each hedge takes a slot of the {@link #withLoadLimit(int, int) load limit} this
+     * needs. Bulk loads are never hedged.
+     */
+    @Nonnull
+    public NamespaceConfig withHedging(final double percentile) {
+        if (!(percentile > 0 && percentile < 100)) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+        }
+        return new NamespaceConfig(engine, defaultTtl, maximumLoads, maximumQueued, virtualThreads, staleRetry, compressionThreshold, loadDeadline,
+                percentile);
+    }
+
+    /**
+     * Stores the namespace's strings and byte arrays of at least {@code thresholdBytes} deflated, with a dictionary
+     * trained from its first values, and inflates them on hit. Applies to synchronous calls only.
+     *
+     * @see SegmentedCache#compressionStats(String)
+     */
+    @Nonnull
+    public NamespaceConfig withCompression(final int thresholdBytes) {
+        if (thresholdBytes <= 0) {
+            throw new IllegalArgumentException("thresholdBytes must be positive: " + thresholdBytes);
+        }
+        return new NamespaceConfig(engine, defaultTtl, maximumLoads, maximumQueued, virtualThreads, staleRetry, thresholdBytes, loadDeadline,
+                hedgePercentile);
+    }
+
+    /**
+     * @return default TTL in milliseconds, non-positive for none
+     */
+    public long defaultTtl() {
+        return defaultTtl;
+    }
+
+    MemoryCache newEngine() {
+        return engine.get();
+    }
+
+    /**
+     * @return the loader of {@code namespace}, or {@code null} without a load limit
+     * @throws IllegalStateException if a deadline or hedging is set without a load limit
+     */
+    LoaderScheduler newLoader(final String namespace) {
+        if (maximumLoads <= 0) {
+            if (loadDeadline > 0 || hedgePercentile > 0) {
+                throw new IllegalStateException("Load deadlines and hedging of " + namespace + " need a load limit");
+            }
+            return null;
+        }
+        return new LoaderScheduler(namespace, maximumLoads, maximumQueued, virtualThreads, staleRetry, loadDeadline, hedgePercentile);
+    }
+
+    /**
+     * @return the compressor of the namespace's values, or {@code null} without compression
+     */
+    ValueCompressor newCompressor() {
+        return compressionThreshold <= 0 ? null : new ValueCompressor(compressionThreshold);
+    }
+
+    @Override
+    public String toString() {
+        return "NamespaceConfig{defaultTtl=" + defaultTtl + ", maximumLoads=" + maximumLoads + ", maximumQueued=" + maximumQueued
+                + ", loadDeadline=" + loadDeadline + ", hedgePercentile=" + hedgePercentile + ", compressionThreshold=" + compressionThreshold + '}';
+    }
+}
@@ -0,0 +1,462 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+import static me.mrs.MemoryCache.NO_EXPIRY;
+
+/**
+ * Table of {@code long} keys behind the {@link LongCacheService} and {@link IntCacheService} of a {@link MemoryCache};
+ * {@code int} keys are widened.
+ * <p>
+ * Keys, values and deadlines sit in parallel arrays probed linearly, so a hit neither boxes the key nor allocates. The
+ * table is split into segments guarded by a {@link StampedLock}: readers probe under an optimistic stamp and only lock
+ * when a writer interfered. Removals shift the following entries back instead of leaving tombstones. Concurrent misses
+ * are coalesced through a placeholder value, as in {@link MemoryCache}. Once a segment is full a CLOCK hand evicts,
+ * sparing entries hit since its last pass. Every {@value #SWEEP_EVERY} inserts a segment also drops the expired entries
+ * among the next {@value #SWEEP_SLOTS} slots of a sweep cursor, so keys never read again don't pile up in unbounded
+ * tables.
+ */
+final class PrimitiveCache implements LongCacheService, IntCacheService {
+    private static final int MAXIMUM_TABLE = 1 << 30;
+    private static final int INITIAL_TABLE = 16;
+    private static final int SWEEP_EVERY = 16;
+    private static final int SWEEP_SLOTS = 64;
+
+    private final LongSupplier ticker;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param ticker      nanosecond time source
+     * @param maximumSize entries kept before evicting, {@link Long#MAX_VALUE} for no bound
+     */
+    PrimitiveCache(@Nonnull final LongSupplier ticker, final long maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.ticker = ticker;
+        this.segments = new Segment[maximumSize < 256 ? 1 : 16];
+        final long perSegment = Math.min((maximumSize - 1) / segments.length + 1, MAXIMUM_TABLE / 4 * 3);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment((int) perSegment);
+        }
+    }
+
+    @Override
+    public Object apply(@Nonnull final CacheSpec spec, final long key, @Nonnull final LongFunction<Object> resolver) {
+        final int hash = hash(key);
+        final long now = ticker.getAsLong();
+        final var segment = segmentFor(hash);
+        final var value = segment.find(key, hash, now);
+        if (value != null && !(value instanceof Loading)) {
+            hits.increment();
+            return value;
+        }
+        return segment.load(key, hash, now, spec.ttl(), resolver);
+    }
+
+    @Override
+    public Object apply(@Nonnull final CacheSpec spec, final int key, @Nonnull final IntFunction<Object> resolver) {
+        final int hash = hash(key);
+        final long now = ticker.getAsLong();
+        final var segment = segmentFor(hash);
+        final var value = segment.find(key, hash, now);
+        if (value != null && !(value instanceof Loading)) {
+            hits.increment();
+            return value;
+        }
+        return segment.load(key, hash, now, spec.ttl(), k -> resolver.apply((int) k));
+    }
+
+    @Override
+    public void invalidate(final long key) {
+        final int hash = hash(key);
+        segmentFor(hash).invalidate(key, hash);
+    }
+
+    @Override
+    public void invalidate(final int key) {
+        invalidate((long) key);
+    }
+
+    /**
+     * Invalidates {@code keys}, taking the write lock of each segment involved once.
+     */
+    void invalidateAll(@Nonnull final long[] keys) {
+        final int count = keys.length;
+        final int[] hashes = new int[count];
+        int involved = 0;
+        for (int i = 0; i < count; i++) {
+            hashes[i] = hash(keys[i]);
+            involved |= 1 << segmentIndex(hashes[i]);
+        }
+        for (int index = 0; index < segments.length; index++) {
+            if ((involved & 1 << index) != 0) {
+                segments[index].invalidateAll(keys, hashes, count, index);
+            }
+        }
+    }
+
+    /**
+     * Drops every entry; loads already running complete for their callers but aren't stored.
+     */
+    void clear() {
+        for (final var segment : segments) {
+            segment.clear();
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (final var segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    @Nonnull
+    CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(), evictions.sum(), expirations.sum(), size());
+    }
+
+    private Segment segmentFor(final int hash) {
+        return segments[segmentIndex(hash)];
+    }
+
+    private int segmentIndex(final int hash) {
+        return (hash >>> 28) & (segments.length - 1);
+    }
+
+    private static int hash(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static boolean isExpired(final long deadline, final long now) {
+        return deadline != NO_EXPIRY && now - deadline >= 0;
+    }
+
+    private final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private final int maximumSize;
+        // replaced on resize, read by optimistic readers that validate their stamp afterwards
+        private Table table = new Table(INITIAL_TABLE);
+        private volatile int size;
+        private int hand;
+        private int sweep;
+        private int insertsSinceSweep;
+
+        private Segment(final int maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        /**
+         * @return the live value or placeholder of {@code key}, {@code null} if absent or expired
+         */
+        private Object find(final long key, final int hash, final long now) {
+            long stamp = lock.tryOptimisticRead();
+            var value = table.find(key, hash, now);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    value = table.find(key, hash, now);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return value;
+        }
+
+        private Object load(final long key, final int hash, final long now, final long ttl, final LongFunction<Object> resolver) {
+            Loading loading = null;
+            boolean claimed = false;
+            final long stamp = lock.writeLock();
+            try {
+                final int slot = table.slot(key, hash);
+                if (slot >= 0) {
+                    final var value = table.values[slot];
+                    if (value instanceof Loading) {
+                        loading = (Loading) value;
+                    } else if (!isExpired(table.deadlines[slot], now)) {
+                        hits.increment();
+                        return value;
+                    } else {
+                        removeAt(slot);
+                        expirations.increment();
+                    }
+                }
+                if (loading != null) {
+                    hits.increment();
+                } else {
+                    loading = new Loading();
+                    claimed = true;
+                    insert(key, hash, loading, now);
+                    misses.increment();
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            if (!claimed) {
+                return loading.await();
+            }
+
+            final Object value;
+            try {
+                value = resolver.apply(key);
+            } catch (RuntimeException | Error e) {
+                loadFailures.increment();
+                store(key, hash, loading, null, 0);
+                loading.future.completeExceptionally(e);
+                throw e;
+            }
+            loads.increment();
+            store(key, hash, loading, value, ttl);
+            loading.future.complete(value);
+            return value;
+        }
+
+        /**
+         * Replaces {@code loading} with {@code value}, or drops it for {@code null}, unless it was invalidated meanwhile.
+         */
+        private void store(final long key, final int hash, final Loading loading, final Object value, final long ttl) {
+            final long stamp = lock.writeLock();
+            try {
+                final int slot = table.slot(key, hash);
+                if (slot < 0 || table.values[slot] != loading) {
+                    return;
+                }
+                if (value == null) {
+                    removeAt(slot);
+                } else {
+                    table.values[slot] = value;
+                    table.deadlines[slot] = MemoryCache.Entry.deadline(ticker.getAsLong(), ttl);
+                    table.referenced[slot] = 0;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void invalidate(final long key, final int hash) {
+            final long stamp = lock.writeLock();
+            try {
+                final int slot = table.slot(key, hash);
+                if (slot >= 0) {
+                    removeAt(slot);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void invalidateAll(final long[] keys, final int[] hashes, final int count, final int index) {
+            final long stamp = lock.writeLock();
+            try {
+                for (int i = 0; i < count; i++) {
+                    if (segmentIndex(hashes[i]) != index) {
+                        continue;
+                    }
+                    final int slot = table.slot(keys[i], hashes[i]);
+                    if (slot >= 0) {
+                        removeAt(slot);
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void clear() {
+            final long stamp = lock.writeLock();
+            try {
+                table = new Table(INITIAL_TABLE);
+                size = 0;
+                hand = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void insert(final long key, final int hash, final Object value, final long now) {
+            if (++insertsSinceSweep >= SWEEP_EVERY) {
+                insertsSinceSweep = 0;
+                sweepExpired(now);
+            }
+            if (size >= maximumSize) {
+                evict(now);
+            }
+            if ((size + 1) * 4L > table.values.length * 3L && table.values.length < MAXIMUM_TABLE) {
+                table = table.resize();
+            }
+            final var table = this.table;
+            int slot = hash & table.mask;
+            while (table.values[slot] != null) {
+                slot = (slot + 1) & table.mask;
+            }
+            table.keys[slot] = key;
+            table.deadlines[slot] = NO_EXPIRY;
+            table.referenced[slot] = 0;
+            table.values[slot] = value;
+            size++;
+        }
+
+        /**
+         * Removes the expired entries among the next {@value #SWEEP_SLOTS} slots of the sweep cursor. A removal shifts
+         * the following entry back into the slot, so the cursor only moves past slots it kept.
+         */
+        private void sweepExpired(final long now) {
+            final var table = this.table;
+            sweep &= table.mask;
+            for (int i = 0; i < SWEEP_SLOTS && size > 0; i++) {
+                final var value = table.values[sweep];
+                if (value != null && !(value instanceof Loading) && isExpired(table.deadlines[sweep], now)) {
+                    removeAt(sweep);
+                    expirations.increment();
+                } else {
+                    sweep = (sweep + 1) & table.mask;
+                }
+            }
+        }
+
+        /**
+         * Removes the first expired or unreferenced entry after the hand, clearing reference bits on its way. Gives up
+         * after two rounds, when every entry is still loading.
+         */
+        private void evict(final long now) {
+            final var table = this.table;
+            for (int i = 0; i <= 2 * table.mask + 1; i++) {
+                hand = (hand + 1) & table.mask;
+                final var value = table.values[hand];
+                if (value == null || value instanceof Loading) {
+                    continue;
+                }
+                if (isExpired(table.deadlines[hand], now)) {
+                    removeAt(hand);
+                    expirations.increment();
+                    return;
+                }
+                if (table.referenced[hand] != 0) {
+                    table.referenced[hand] = 0;
+                    continue;
+                }
+                removeAt(hand);
+                evictions.increment();
+                return;
+            }
+        }
+
+        /**
+         * Empties {@code slot}, shifting back the following entries of its probe run that would otherwise become
+         * unreachable.
+         */
+        private void removeAt(final int slot) {
+            final var table = this.table;
+            final int mask = table.mask;
+            int hole = slot;
+            for (int i = (slot + 1) & mask; table.values[i] != null; i = (i + 1) & mask) {
+                final int home = hash(table.keys[i]) & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    table.keys[hole] = table.keys[i];
+                    table.deadlines[hole] = table.deadlines[i];
+                    table.referenced[hole] = table.referenced[i];
+                    table.values[hole] = table.values[i];
+                    hole = i;
+                }
+            }
+            table.values[hole] = null;
+            size--;
+        }
+    }
+
+    private static final class Table {
+        private final long[] keys;
+        private final Object[] values;
+        private final long[] deadlines;
+        private final byte[] referenced;
+        private final int mask;
+
+        private Table(final int length) {
+            this.keys = new long[length];
+            this.values = new Object[length];
+            this.deadlines = new long[length];
+            this.referenced = new byte[length];
+            this.mask = length - 1;
+        }
+
+        private int slot(final long key, final int hash) {
+            for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                if (values[i] == null) {
+                    return -1;
+                }
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Bounded by the table length, so it ends even while a writer interferes with an optimistic reader.
+         */
+        private Object find(final long key, final int hash, final long now) {
+            final int slot = slot(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            final var value = values[slot];
+            if (value instanceof Loading) {
+                return value;
+            }
+            if (isExpired(deadlines[slot], now)) {
+                return null;
+            }
+            if (referenced[slot] == 0) {
+                referenced[slot] = 1;
+            }
+            return value;
+        }
+
+        private Table resize() {
+            final var resized = new Table(values.length * 2);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    int slot = hash(keys[i]) & resized.mask;
+                    while (resized.values[slot] != null) {
+                        slot = (slot + 1) & resized.mask;
+                    }
+                    resized.keys[slot] = keys[i];
+                    resized.values[slot] = values[i];
+                    resized.deadlines[slot] = deadlines[i];
+                    resized.referenced[slot] = referenced[i];
+                }
+            }
+            return resized;
+        }
+    }
+
+    /**
+     * Placeholder of a key being resolved by {@link #owner}.
+     */
+    private static final class Loading {
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final Thread owner = Thread.currentThread();
+
+        private Object await() {
+            if (owner == Thread.currentThread()) {
+                throw new IllegalStateException("Recursive load of the same key");
+            }
+            return MemoryCache.join(future);
+        }
+    }
+}
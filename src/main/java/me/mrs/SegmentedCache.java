@@ -0,0 +1,334 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+
+/**
+ * {@link CacheService} giving each {@link CacheKey#namespace()} its own segment, with its own capacity, eviction,
+ * default TTL and statistics as set by a {@link NamespaceConfig}.
+ * <p>
+ * Segments of configured namespaces are created upfront, others from the default config on first use. A whole
+ * namespace is dropped in constant time by {@link #invalidateNamespace(String)}, without touching the others. A
+ * namespace with a load limit runs its resolvers on its own loader, see {@link #loaderStats(String)}, and one with
+ * compression stores its large values deflated, see {@link #compressionStats(String)}.
+ */
+public class SegmentedCache implements CacheService {
+    private final NamespaceConfig defaults;
+    private final ConcurrentHashMap<String, Segment> segments = new ConcurrentHashMap<>();
+
+    public SegmentedCache(@Nonnull final NamespaceConfig defaults) {
+        this(defaults, Map.of());
+    }
+
+    /**
+     * @param defaults   config of namespaces missing in {@code namespaces}
+     * @param namespaces config by {@link Cacheable#namespace()}
+     */
+    public SegmentedCache(@Nonnull final NamespaceConfig defaults, @Nonnull final Map<String, NamespaceConfig> namespaces) {
+        this.defaults = defaults;
+        namespaces.forEach((namespace, config) -> segments.put(namespace, new Segment(namespace, config)));
+    }
+
+    @Override
+    public Object apply(final long ttl, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        final var segment = segmentFor(key.namespace());
+        return segment.decode(segment.engine.apply(segment.ttl(ttl), key, segment.encoding(resolver)));
+    }
+
+    @Override
+    public Object apply(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        final var segment = segmentFor(key.namespace());
+        return segment.decode(segment.engine.apply(segment.spec(spec), key, segment.encoding(resolver)));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(final long ttl, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        final var segment = segmentFor(key.namespace());
+        return segment.engine.applyAsync(segment.ttl(ttl), key, resolver);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        final var segment = segmentFor(key.namespace());
+        return segment.engine.applyAsync(segment.spec(spec), key, resolver);
+    }
+
+    /**
+     * Keys are expected to share a namespace, as they do for a bulk {@link Cacheable} method; mixed namespaces are
+     * batched per namespace.
+     */
+    @Nonnull
+    @Override
+    public Map<CacheKey, Object> applyAll(@Nonnull final CacheSpec spec, @Nonnull final Collection<CacheKey> keys,
+                                          @Nonnull final Function<Set<CacheKey>, Map<CacheKey, Object>> resolver) {
+        if (keys.isEmpty()) {
+            return Map.of();
+        }
+        final var namespace = keys.iterator()
+                .next()
+                .namespace();
+        if (keys.stream()
+                .allMatch(key -> key.namespace()
+                        .equals(namespace))) {
+            return segmentFor(namespace).applyAll(spec, keys, resolver);
+        }
+        final var byNamespace = new LinkedHashMap<String, List<CacheKey>>();
+        keys.forEach(key -> byNamespace.computeIfAbsent(key.namespace(), ns -> new ArrayList<>())
+                .add(key));
+        final var values = new HashMap<CacheKey, Object>();
+        byNamespace.forEach((ns, nsKeys) -> {
+            values.putAll(segmentFor(ns).applyAll(spec, nsKeys, resolver));
+        });
+        final var ordered = new LinkedHashMap<CacheKey, Object>();
+        keys.forEach(key -> {
+            final var value = values.get(key);
+            if (value != null) {
+                ordered.put(key, value);
+            }
+        });
+        return ordered;
+    }
+
+    @Nullable
+    @Override
+    public LongCacheService longKeys(@Nonnull final String namespace) {
+        return segmentFor(namespace).longKeys(namespace);
+    }
+
+    @Nullable
+    @Override
+    public IntCacheService intKeys(@Nonnull final String namespace) {
+        return segmentFor(namespace).intKeys(namespace);
+    }
+
+    @Override
+    public void invalidate(@Nonnull final CacheKey key) {
+        final var segment = segments.get(key.namespace());
+        if (segment != null) {
+            segment.engine.invalidate(key);
+        }
+    }
+
+    @Override
+    public long timeToLive(@Nonnull final CacheKey key) {
+        final var segment = segments.get(key.namespace());
+        return segment == null ? -1 : segment.engine.timeToLive(key);
+    }
+
+    /**
+     * Removes the keys from the engine of their namespace, one pass per namespace.
+     */
+    @Override
+    public void invalidateAll(@Nonnull final Collection<CacheKey> keys) {
+        final var byNamespace = new HashMap<String, List<CacheKey>>();
+        for (final var key : keys) {
+            byNamespace.computeIfAbsent(key.namespace(), ns -> new ArrayList<>())
+                    .add(key);
+        }
+        byNamespace.forEach((namespace, namespaceKeys) -> {
+            final var segment = segments.get(namespace);
+            if (segment != null) {
+                segment.engine.invalidateAll(namespaceKeys);
+            }
+        });
+    }
+
+    @Override
+    public void put(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nullable final Object value) {
+        if (value == null) {
+            invalidate(key);
+            return;
+        }
+        final var segment = segmentFor(key.namespace());
+        segment.engine.put(segment.spec(spec), key, segment.encode(value));
+    }
+
+    @Override
+    public void pin(@Nonnull final CacheKey key) {
+        segmentFor(key.namespace()).engine.pin(key);
+    }
+
+    @Override
+    public void unpin(@Nonnull final CacheKey key) {
+        final var segment = segments.get(key.namespace());
+        if (segment != null) {
+            segment.engine.unpin(key);
+        }
+    }
+
+    /**
+     * Drops every entry of {@code namespace} in constant time; they are reclaimed lazily.
+     */
+    @Override
+    public void invalidateNamespace(@Nonnull final String namespace) {
+        final var segment = segments.get(namespace);
+        if (segment != null) {
+            segment.engine.invalidateAll();
+        }
+    }
+
+    /**
+     * @return statistics of {@code namespace}, empty if it was never used
+     */
+    @Nonnull
+    public CacheStats stats(@Nonnull final String namespace) {
+        final var segment = segments.get(namespace);
+        return segment == null ? CacheStats.EMPTY : segment.engine.stats();
+    }
+
+    /**
+     * @return load queue of {@code namespace}, empty without a load limit
+     */
+    @Nonnull
+    public LoaderStats loaderStats(@Nonnull final String namespace) {
+        final var segment = segments.get(namespace);
+        return segment == null || segment.loader == null ? LoaderStats.EMPTY : segment.loader.stats();
+    }
+
+    /**
+     * @return compression of the values of {@code namespace}, empty without compression
+     */
+    @Nonnull
+    public CompressionStats compressionStats(@Nonnull final String namespace) {
+        final var segment = segments.get(namespace);
+        return segment == null || segment.compressor == null ? CompressionStats.EMPTY : segment.compressor.stats();
+    }
+
+    @Nonnull
+    public Set<String> namespaces() {
+        return Set.copyOf(segments.keySet());
+    }
+
+    /**
+     * @return the engine holding the entries of {@code namespace}
+     */
+    MemoryCache engine(@Nonnull final String namespace) {
+        return segmentFor(namespace).engine;
+    }
+
+    private Segment segmentFor(final String namespace) {
+        final var segment = segments.get(namespace);
+        return segment != null ? segment : segments.computeIfAbsent(namespace, ns -> new Segment(ns, defaults));
+    }
+
+    private static final class Segment {
+        private final MemoryCache engine;
+        private final String namespace;
+        private final long defaultTtl;
+        private final LoaderScheduler loader;
+        private final ValueCompressor compressor;
+        private volatile LongCacheService longKeys;
+        private volatile IntCacheService intKeys;
+
+        private Segment(final String namespace, final NamespaceConfig config) {
+            this.engine = config.newEngine();
+            this.namespace = namespace;
+            this.defaultTtl = config.defaultTtl();
+            this.loader = config.newLoader(namespace);
+            this.compressor = config.newCompressor();
+            if (loader != null) {
+                engine.useLoader(loader);
+            }
+        }
+
+        private long ttl(final long ttl) {
+            if (ttl != CacheSpec.DEFAULT_TTL) {
+                return ttl;
+            }
+            if (defaultTtl <= 0) {
+                throw new IllegalStateException("No TTL: the method leaves it to the default of namespace " + namespace + ", which has none");
+            }
+            return defaultTtl;
+        }
+
+        private CacheSpec spec(final CacheSpec spec) {
+            return spec.usesDefaultTtl() ? spec.withTtl(ttl(CacheSpec.DEFAULT_TTL)) : spec;
+        }
+
+        private Object encode(final Object value) {
+            return compressor == null ? value : compressor.encode(value);
+        }
+
+        private Object decode(final Object stored) {
+            return compressor == null ? stored : compressor.decode(stored);
+        }
+
+        private Function<CacheKey, Object> encoding(final Function<CacheKey, Object> resolver) {
+            return compressor == null ? resolver : key -> compressor.encode(resolver.apply(key));
+        }
+
+        private Map<CacheKey, Object> applyAll(final CacheSpec spec, final Collection<CacheKey> keys,
+                                               final Function<Set<CacheKey>, Map<CacheKey, Object>> resolver) {
+            if (compressor == null) {
+                return engine.applyAll(spec(spec), keys, resolver);
+            }
+            final var stored = engine.applyAll(spec(spec), keys, missing -> mapValues(resolver.apply(missing), compressor::encode));
+            return mapValues(stored, compressor::decode);
+        }
+
+        private static Map<CacheKey, Object> mapValues(final Map<CacheKey, Object> values, final Function<Object, Object> mapper) {
+            final var mapped = new LinkedHashMap<CacheKey, Object>(values.size() * 2);
+            values.forEach((key, value) -> mapped.put(key, mapper.apply(value)));
+            return mapped;
+        }
+
+        /**
+         * @return the engine's primitive cache of the namespace, applying the default TTL and compression
+         */
+        private LongCacheService longKeys(final String namespace) {
+            var keys = longKeys;
+            if (keys == null) {
+                final var engineKeys = engine.longKeys(namespace);
+                keys = engineKeys == null || defaultTtl <= 0 && compressor == null ? engineKeys : new LongCacheService() {
+                    @Override
+                    public Object apply(@Nonnull final CacheSpec spec, final long key, @Nonnull final LongFunction<Object> resolver) {
+                        return decode(engineKeys.apply(spec(spec), key, compressor == null ? resolver : k -> compressor.encode(resolver.apply(k))));
+                    }
+
+                    @Override
+                    public void invalidate(final long key) {
+                        engineKeys.invalidate(key);
+                    }
+                };
+                longKeys = keys;
+            }
+            return keys;
+        }
+
+        private IntCacheService intKeys(final String namespace) {
+            var keys = intKeys;
+            if (keys == null) {
+                final var engineKeys = engine.intKeys(namespace);
+                keys = engineKeys == null || defaultTtl <= 0 && compressor == null ? engineKeys : new IntCacheService() {
+                    @Override
+                    public Object apply(@Nonnull final CacheSpec spec, final int key, @Nonnull final IntFunction<Object> resolver) {
+                        return decode(engineKeys.apply(spec(spec), key, compressor == null ? resolver : k -> compressor.encode(resolver.apply(k))));
+                    }
+
+                    @Override
+                    public void invalidate(final int key) {
+                        engineKeys.invalidate(key);
+                    }
+                };
+                intKeys = keys;
+            }
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Two-level {@link CacheService}: misses of the first level are resolved through the second one, which only calls the
+ * real resolver when it misses too.
+ * <p>
+ * Typically a small {@link BoundedCache} in front of a large {@link me.mrs.offheap.OffHeapCache}, so only the hottest
+ * entries stay on the heap while the rest are one deserialization away.
+ * <p>
+ * A value the second level already held keeps its remaining lifetime there, as told by
+ * {@link CacheService#timeToLive(CacheKey)}: the first level holds it wrapped with that deadline and drops it once
+ * passed, so a value is never served longer than its TTL, and refreshes of the first level can't renew an old value of
+ * the second one. The first level should be on the heap, since it may hold such wrappers.
+ */
+public class TieredCache implements CacheService {
+    private final CacheService first;
+    private final CacheService second;
+    private final LongSupplier ticker;
+
+    public TieredCache(@Nonnull final CacheService first, @Nonnull final CacheService second) {
+        this(first, second, System::nanoTime);
+    }
+
+    /**
+     * @param ticker nanosecond time source, {@link System#nanoTime()} unless testing
+     */
+    protected TieredCache(@Nonnull final CacheService first, @Nonnull final CacheService second, @Nonnull final LongSupplier ticker) {
+        this.first = first;
+        this.second = second;
+        this.ticker = ticker;
+    }
+
+    @Override
+    public Object apply(final long ttl, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        return apply(CacheSpec.ofTtl(ttl), key, resolver);
+    }
+
+    @Override
+    public Object apply(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        final var value = first.apply(spec, key, k -> bound(spec, k, second.apply(spec, k, resolver)));
+        if (!(value instanceof Bounded)) {
+            return value;
+        }
+        final var bounded = (Bounded) value;
+        if (!bounded.isExpired(ticker.getAsLong())) {
+            return bounded.value;
+        }
+        first.invalidate(key);
+        // a second level serving an expired value stale is trusted rather than asked again
+        return unwrap(first.apply(spec, key, k -> bound(spec, k, second.apply(spec, k, resolver))));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(final long ttl, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        return applyAsync(CacheSpec.ofTtl(ttl), key, resolver);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        final Function<CacheKey, CompletableFuture<Object>> throughSecond = k -> second.applyAsync(spec, k, resolver)
+                .thenApply(value -> bound(spec, k, value));
+        return first.applyAsync(spec, key, throughSecond)
+                .thenCompose(value -> {
+                    if (!(value instanceof Bounded) || !((Bounded) value).isExpired(ticker.getAsLong())) {
+                        return CompletableFuture.completedFuture(unwrap(value));
+                    }
+                    first.invalidate(key);
+                    return first.applyAsync(spec, key, throughSecond)
+                            .thenApply(TieredCache::unwrap);
+                });
+    }
+
+    @Nonnull
+    @Override
+    public Map<CacheKey, Object> applyAll(@Nonnull final CacheSpec spec, @Nonnull final Collection<CacheKey> keys,
+                                          @Nonnull final Function<Set<CacheKey>, Map<CacheKey, Object>> resolver) {
+        final var values = first.applyAll(spec, keys, missing -> {
+            final var loaded = second.applyAll(spec, missing, resolver);
+            final var bounded = new LinkedHashMap<CacheKey, Object>(loaded.size() * 2);
+            loaded.forEach((key, value) -> bounded.put(key, bound(spec, key, value)));
+            return bounded;
+        });
+        final long now = ticker.getAsLong();
+        final var unwrapped = new LinkedHashMap<CacheKey, Object>(values.size() * 2);
+        values.forEach((key, value) -> {
+            if (value instanceof Bounded && ((Bounded) value).isExpired(now)) {
+                unwrapped.put(key, apply(spec, key, k -> resolver.apply(Set.of(k))
+                        .get(k)));
+            } else {
+                unwrapped.put(key, unwrap(value));
+            }
+        });
+        return unwrapped;
+    }
+
+    /**
+     * @return the lifetime left in the second level, which bounds the first one
+     */
+    @Override
+    public long timeToLive(@Nonnull final CacheKey key) {
+        return second.timeToLive(key);
+    }
+
+    @Override
+    public void invalidate(@Nonnull final CacheKey key) {
+        second.invalidate(key);
+        first.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll(@Nonnull final Collection<CacheKey> keys) {
+        second.invalidateAll(keys);
+        first.invalidateAll(keys);
+    }
+
+    @Override
+    public void invalidateNamespace(@Nonnull final String namespace) {
+        second.invalidateNamespace(namespace);
+        first.invalidateNamespace(namespace);
+    }
+
+    @Override
+    public void put(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nullable final Object value) {
+        second.put(spec, key, value);
+        first.put(spec, key, value);
+    }
+
+    @Override
+    public void pin(@Nonnull final CacheKey key) {
+        first.pin(key);
+        second.pin(key);
+    }
+
+    @Override
+    public void unpin(@Nonnull final CacheKey key) {
+        first.unpin(key);
+        second.unpin(key);
+    }
+
+    /**
+     * Wraps {@code value} with the deadline of its copy in the second level when that comes before the TTL the first
+     * level would give it.
+     */
+    private Object bound(final CacheSpec spec, final CacheKey key, final Object value) {
+        if (value == null) {
+            return null;
+        }
+        final long left = second.timeToLive(key);
+        if (left < 0 || left == Long.MAX_VALUE || !spec.usesDefaultTtl() && spec.ttl() > 0 && left >= spec.ttl()) {
+            return value;
+        }
+        final long nanos = left * 1_000_000L;
+        return nanos / 1_000_000L != left ? value : new Bounded(value, ticker.getAsLong() + nanos);
+    }
+
+    private static Object unwrap(final Object value) {
+        return value instanceof Bounded ? ((Bounded) value).value : value;
+    }
+
+    /**
+     * Value of the first level expiring with its copy in the second one.
+     */
+    private static final class Bounded {
+        private final Object value;
+        private final long deadline;
+
+        private Bounded(final Object value, final long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        private boolean isExpired(final long now) {
+            return now - deadline >= 0;
+        }
+    }
+}
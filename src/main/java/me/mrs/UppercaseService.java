@@ -1,7 +1,28 @@
 package me.mrs;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
 public interface UppercaseService {
     String apply(String source);
 
     String applyWithPrefix(String source, String prefix);
+
+    CompletableFuture<String> applyAsync(String source);
+
+    Map<String, String> applyAll(Set<String> sources);
+
+    String applyById(long id);
+
+    String applyStrict(String source);
+
+    String read(String path) throws IOException;
+
+    void evict(String source);
+
+    String refresh(String source);
+
+    void evictById(long id);
 }
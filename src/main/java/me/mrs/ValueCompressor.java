@@ -0,0 +1,217 @@
+package me.mrs;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores the large strings and byte arrays of a namespace deflated, see {@link NamespaceConfig#withCompression(int)}.
+ * <p>
+ * Values of at least {@code threshold} bytes are deflated at the fastest level, and kept as is if that doesn't make them
+ * smaller. The first {@value #SAMPLES} of them are also collected as samples; once they are in, later values are
+ * deflated with a preset dictionary made of those samples, so the phrases a namespace's values share are compressed
+ * even in short values. Values deflated before keep referencing no dictionary.
+ * <p>
+ * Hits inflate the value again, unless it is one of the recently inflated ones kept in a small direct-mapped array of
+ * {@value #HOT_SLOTS} slots, which holds on to the hottest values as long as they keep being read.
+ * <p>
+ * Deflaters and inflaters hold native zlib streams, so they are borrowed from small shared pools rather than kept per
+ * thread, which would leak one per virtual thread. Those the full pools can't take back are ended at once.
+ */
+final class ValueCompressor {
+    private static final int SAMPLES = 16;
+    private static final int MAXIMUM_DICTIONARY = 32 * 1024;
+    private static final int HOT_SLOTS = 256;
+    private static final int POOLED = 2 * Runtime.getRuntime()
+            .availableProcessors();
+    private static final ArrayBlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOLED);
+    private static final ArrayBlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOLED);
+
+    private final int threshold;
+    private final Decoded[] hot = new Decoded[HOT_SLOTS];
+    private final List<byte[]> samples = new ArrayList<>();
+    private volatile byte[] dictionary;
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder incompressible = new LongAdder();
+    private final LongAdder originalBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+    private final LongAdder decompressions = new LongAdder();
+    private final LongAdder decompressionNanos = new LongAdder();
+    private final LongAdder hotHits = new LongAdder();
+
+    /**
+     * @param threshold size in bytes from which values are compressed
+     */
+    ValueCompressor(final int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return what to cache for {@code value}: a {@link Compressed} one, or {@code value} itself
+     */
+    @Nullable
+    Object encode(@Nullable final Object value) {
+        final byte[] bytes;
+        if (value instanceof String && ((String) value).length() >= threshold) {
+            bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+        } else if (value instanceof byte[] && ((byte[]) value).length >= threshold) {
+            bytes = (byte[]) value;
+        } else {
+            return value;
+        }
+        final long start = System.nanoTime();
+        var dictionary = this.dictionary;
+        if (dictionary == null) {
+            sample(bytes);
+        }
+        final var buffer = new byte[bytes.length];
+        final int length;
+        final boolean smaller;
+        var deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(bytes);
+            deflater.finish();
+            length = deflater.deflate(buffer);
+            smaller = deflater.finished() && length < bytes.length;
+        } finally {
+            deflater.reset();
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+        compressionNanos.add(System.nanoTime() - start);
+        if (!smaller) {
+            incompressible.increment();
+            return value;
+        }
+        compressed.increment();
+        originalBytes.add(bytes.length);
+        compressedBytes.add(length);
+        return new Compressed(Arrays.copyOf(buffer, length), bytes.length, value instanceof String, dictionary);
+    }
+
+    /**
+     * @return the value {@code stored} was encoded from
+     */
+    @Nullable
+    Object decode(@Nullable final Object stored) {
+        if (!(stored instanceof Compressed)) {
+            return stored;
+        }
+        final var value = (Compressed) stored;
+        final int slot = value.slot & (HOT_SLOTS - 1);
+        final var decoded = hot[slot];
+        if (decoded != null && decoded.source == value) {
+            hotHits.increment();
+            return decoded.value;
+        }
+        final long start = System.nanoTime();
+        final var inflated = inflate(value);
+        final Object result = value.string ? new String(inflated, StandardCharsets.UTF_8) : inflated;
+        decompressions.increment();
+        decompressionNanos.add(System.nanoTime() - start);
+        hot[slot] = new Decoded(value, result);
+        return result;
+    }
+
+    CompressionStats stats() {
+        return new CompressionStats(compressed.sum(), incompressible.sum(), originalBytes.sum(), compressedBytes.sum(), compressionNanos.sum(),
+                decompressions.sum(), decompressionNanos.sum(), hotHits.sum());
+    }
+
+    private void sample(final byte[] bytes) {
+        synchronized (samples) {
+            if (dictionary != null) {
+                return;
+            }
+            samples.add(bytes.length > MAXIMUM_DICTIONARY / SAMPLES ? Arrays.copyOf(bytes, MAXIMUM_DICTIONARY / SAMPLES) : bytes.clone());
+            if (samples.size() == SAMPLES) {
+                // deflate looks back from the end of the dictionary, so the samples are laid out oldest first
+                final var trained = new byte[samples.stream()
+                        .mapToInt(sample -> sample.length)
+                        .sum()];
+                int offset = 0;
+                for (final var sample : samples) {
+                    System.arraycopy(sample, 0, trained, offset, sample.length);
+                    offset += sample.length;
+                }
+                samples.clear();
+                dictionary = trained;
+            }
+        }
+    }
+
+    private static byte[] inflate(final Compressed value) {
+        var inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.setInput(value.data);
+        final var bytes = new byte[value.length];
+        try {
+            int length = inflater.inflate(bytes);
+            if (inflater.needsDictionary()) {
+                inflater.setDictionary(value.dictionary);
+                length += inflater.inflate(bytes, length, bytes.length - length);
+            }
+            if (length != value.length) {
+                throw new IllegalStateException("Compressed value of " + value.length + " bytes inflated to " + length);
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed value", e);
+        } finally {
+            inflater.reset();
+            if (!INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Deflated string or byte array, as cached.
+     */
+    static final class Compressed {
+        final byte[] data;
+        private final int length;
+        private final boolean string;
+        private final byte[] dictionary;
+        private final int slot = ThreadLocalRandom.current()
+                .nextInt();
+
+        private Compressed(final byte[] data, final int length, final boolean string, final byte[] dictionary) {
+            this.data = data;
+            this.length = length;
+            this.string = string;
+            this.dictionary = dictionary;
+        }
+    }
+
+    private static final class Decoded {
+        private final Compressed source;
+        private final Object value;
+
+        private Decoded(final Compressed source, final Object value) {
+            this.source = source;
+            this.value = value;
+        }
+    }
+}
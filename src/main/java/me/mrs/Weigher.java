@@ -0,0 +1,36 @@
+package me.mrs;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Weight of a cache entry, counted against the capacity of a {@link BoundedCache} instead of one per entry.
+ * <p>
+ * Called once when an entry is written; the weight stays the same while the entry is cached, so values must not grow
+ * in place.
+ */
+@FunctionalInterface
+public interface Weigher {
+    /**
+     * @return weight of the entry, negative weights count as zero
+     */
+    int weigh(@Nonnull CacheKey key, @Nonnull Object value);
+
+    /**
+     * @return a weigher counting every entry as one, bounding the number of entries
+     */
+    @Nonnull
+    static Weigher unit() {
+        return HeapEstimator.UNIT;
+    }
+
+    /**
+     * Estimates strings, boxed primitives, arrays, collections, maps, {@link java.util.Optional}s and completed futures;
+     * other objects count as a fixed 64 bytes.
+     *
+     * @return a weigher estimating the heap bytes retained by an entry, its key and its value
+     */
+    @Nonnull
+    static Weigher heapSize() {
+        return HeapEstimator.WEIGHER;
+    }
+}
@@ -1,100 +1,117 @@
 package me.mrs.aop;
 
 import lombok.extern.slf4j.Slf4j;
+import me.mrs.AccessListener;
+import me.mrs.CacheKey;
+import me.mrs.CachePlan;
 import me.mrs.CacheService;
-import me.mrs.Cacheable;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 
 import javax.annotation.Nullable;
 import javax.inject.Provider;
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 @Slf4j
 public class AopCacheInterceptorService implements MethodInterceptor {
     private final Provider<CacheService> cacheServiceProvider;
-    private final Map<Method, List<Integer>> parametersIndexMap;
+    @Nullable
+    private final AccessListener listener;
 
     public AopCacheInterceptorService(final Provider<CacheService> cacheServiceProvider) {
-        parametersIndexMap = new ConcurrentHashMap<>();
+        this(cacheServiceProvider, null);
+    }
+
+    /**
+     * @param listener notified of the keys of cached calls and the time their loads took, bulk calls excepted
+     */
+    public AopCacheInterceptorService(final Provider<CacheService> cacheServiceProvider, @Nullable final AccessListener listener) {
         this.cacheServiceProvider = cacheServiceProvider;
+        this.listener = listener;
     }
 
     @Override
     public Object invoke(final MethodInvocation methodInvocation) throws Throwable {
         var method = (Method) methodInvocation.getStaticPart();
 
-        @Nullable final Cacheable annotation = method.getAnnotation(Cacheable.class);
-        if (annotation == null) {
+        var plan = CachePlan.of(method.getDeclaringClass(), method);
+        if (plan.updatesCache()) {
+            return plan.update(cacheServiceProvider.get(), methodInvocation.getArguments(), methodInvocation::proceed);
+        }
+        if (!plan.isCacheable()) {
             return methodInvocation.proceed();
         }
 
-        var arguments = methodInvocation.getArguments();
-        var key = createKey(method, arguments, annotation);
-        var ttl = annotation.ttl();
-
-        return cacheServiceProvider.get()
-                .apply(ttl, key, valueResolver(methodInvocation, method));
+        if (plan.isBulk()) {
+            return plan.applyAll(cacheServiceProvider.get(), methodInvocation.getArguments(), arguments -> proceed(methodInvocation, plan.method(), arguments));
+        }
+        if (listener != null && listener.sampled()) {
+            listener.access(plan.key(methodInvocation.getArguments()));
+        }
+        if (plan.isAsync()) {
+            return cacheServiceProvider.get()
+                    .applyAsync(plan.spec(), plan.key(methodInvocation.getArguments()), asyncResolver(methodInvocation, plan));
+        }
+        return plan.apply(cacheServiceProvider.get(), methodInvocation.getArguments(), valueResolver(methodInvocation, plan));
     }
 
-    private Function<String, Object> valueResolver(final MethodInvocation methodInvocation, final Method method) {
+    @SuppressWarnings("unchecked")
+    private Function<CacheKey, CompletableFuture<Object>> asyncResolver(final MethodInvocation methodInvocation, final CachePlan plan) {
         return k -> {
-            try {
-                log.trace("Retrieving key {}", k);
-                return methodInvocation.proceed();
-            } catch (RuntimeException e) {
-                throw e;
-            } catch (Throwable e) {
-                log.error("Can't invoke method {}", method, e);
-                throw new CacheException(e);
+            final long start = System.nanoTime();
+            final var future = plan.loadTimer()
+                    .recordOnCompletion(start, (CompletableFuture<Object>) proceed(methodInvocation, plan.method(), k));
+            if (listener != null) {
+                future.whenComplete((v, e) -> listener.load(k, System.nanoTime() - start));
             }
+            return future;
         };
     }
 
-    private String createKey(final Method method, final Object[] arguments, final Cacheable annotation) {
-        var cachePrefix = annotation.namespace();
-        var argumentsIndex = parametersIndexMap.computeIfAbsent(method, AopCacheInterceptorService::extractParametersIndex);
-        return createKey(cachePrefix, arguments, argumentsIndex);
+    private Function<CacheKey, Object> valueResolver(final MethodInvocation methodInvocation, final CachePlan plan) {
+        return k -> {
+            final long start = System.nanoTime();
+            try {
+                return proceed(methodInvocation, plan.method(), k);
+            } finally {
+                final long elapsed = System.nanoTime() - start;
+                plan.loadTimer()
+                        .record(elapsed);
+                if (listener != null) {
+                    listener.load(k, elapsed);
+                }
+            }
+        };
     }
 
-    private static String createKey(final String cachePrefix, final Object[] arguments, final List<Integer> argumentsIndex) {
-        final var sb = new StringBuilder(cachePrefix);
-        for (var i : argumentsIndex) {
-            sb.append('.')
-                    .append(arguments[i]);
+    private static Object proceed(final MethodInvocation methodInvocation, final Method method, final CacheKey k) {
+        try {
+            log.trace("Retrieving key {}", k);
+            return methodInvocation.proceed();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            log.error("Can't invoke method {}", method, e);
+            throw new CacheException(e);
         }
-        return sb.toString();
     }
 
-    @SuppressWarnings("java:S881")
-    private static List<Integer> extractParametersIndex(final Method serviceMethod) {
-        final Annotation[][] annotations = serviceMethod.getParameterAnnotations();
-        final List<Integer> index = new ArrayList<>(annotations.length);
-
-        for (int pi = annotations.length; --pi >= 0; ) {
-            for (int ai = annotations[pi].length; --ai >= 0; ) {
-                if (annotations[pi][ai].annotationType() == Cacheable.Key.class) {
-                    index.add(pi);
-                    break;
-                }
-            }
+    /**
+     * Proceeds with other arguments. Guice hands out its live argument array, so they are swapped in place for the call:
+     * going through the proxy again would be intercepted and recurse into the cache. Bulk loads are never hedged, so
+     * the swap can't run twice at once.
+     */
+    private static Object proceed(final MethodInvocation methodInvocation, final Method method, final Object[] arguments) {
+        final var live = methodInvocation.getArguments();
+        final var saved = live.clone();
+        System.arraycopy(arguments, 0, live, 0, live.length);
+        try {
+            return proceed(methodInvocation, method, (CacheKey) null);
+        } finally {
+            System.arraycopy(saved, 0, live, 0, live.length);
         }
-
-        if (index.isEmpty()) {
-            for (int pi = annotations.length; --pi >= 0; ) {
-                index.add(pi);
-            }
-        }
-
-        assert !index.isEmpty() : "Key arguments required";
-
-        return index;
     }
 
     private static class CacheException extends RuntimeException {
@@ -0,0 +1,61 @@
+package me.mrs.hotkeys;
+
+/**
+ * Count-Min sketch of {@code long} counters, estimating the total added for a hash with a bounded overestimate and
+ * a fixed footprint. Not thread-safe.
+ */
+final class CountMinSketch {
+    private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final long[][] rows = new long[SEED.length][];
+    private final int mask;
+
+    /**
+     * @param width counters per row, rounded up to a power of two
+     */
+    CountMinSketch(final int width) {
+        final int size = 1 << -Integer.numberOfLeadingZeros(Math.max(width, 16) - 1);
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new long[size];
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return the estimate of {@code hash} after adding {@code amount}
+     */
+    long add(final int hash, final long amount) {
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < rows.length; i++) {
+            final int index = indexOf(hash, i);
+            rows[i][index] += amount;
+            estimate = Math.min(estimate, rows[i][index]);
+        }
+        return estimate;
+    }
+
+    long estimate(final int hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < rows.length; i++) {
+            estimate = Math.min(estimate, rows[i][indexOf(hash, i)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Halves every counter, so older counts weigh less than recent ones.
+     */
+    void decay() {
+        for (final var row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+    }
+
+    private int indexOf(final int hash, final int row) {
+        long h = (hash + SEED[row]) * SEED[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+}
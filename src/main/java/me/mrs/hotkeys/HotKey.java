@@ -0,0 +1,51 @@
+package me.mrs.hotkeys;
+
+import me.mrs.CacheKey;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Decayed estimates of the traffic of a key reported by a {@link HotKeyTracker}. Hits are extrapolated from sampled
+ * requests less the misses, so they are approximate for keys with few requests.
+ */
+public final class HotKey {
+    private final CacheKey key;
+    private final long hits;
+    private final long misses;
+    private final long loadNanos;
+
+    HotKey(final CacheKey key, final long hits, final long misses, final long loadNanos) {
+        this.key = key;
+        this.hits = hits;
+        this.misses = misses;
+        this.loadNanos = loadNanos;
+    }
+
+    @Nonnull
+    public CacheKey key() {
+        return key;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return loads of the key, the misses that reached its resolver
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * @return total time its loads took, in nanoseconds
+     */
+    public long loadNanos() {
+        return loadNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "HotKey{key=" + key + ", hits=" + hits + ", misses=" + misses + ", load=" + loadNanos / 1_000_000 + "ms}";
+    }
+}
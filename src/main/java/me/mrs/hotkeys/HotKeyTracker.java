@@ -0,0 +1,354 @@
+package me.mrs.hotkeys;
+
+import lombok.extern.slf4j.Slf4j;
+import me.mrs.AccessListener;
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the keys dominating the traffic of each namespace, handed to an interceptor as its {@link AccessListener}.
+ * <p>
+ * Per namespace, Count-Min sketches estimate the requests, misses and load time of every key in fixed memory, and the
+ * keys with the largest estimates are kept in top-K tables. Every period all counts are halved, so the reports follow
+ * the current traffic. Only one request in {@code sampleRate} is counted, chosen with a thread-local random number
+ * before the key is even built, so hits cost next to nothing; loads are all counted, as they are slow anyway.
+ * <p>
+ * Requests never lock: they queue their counts, which a maintenance thread adds to the sketches every second, or the
+ * request filling the queue if no one else holds the sketches. The maintenance thread also halves the counts every
+ * period. With {@link #promoteTo(CacheService, int)} it then {@link CacheService#pin(CacheKey) pins} the hottest keys
+ * of every namespace, and unpins them once they cooled down, so the cache is only called from that thread.
+ */
+@Slf4j
+public class HotKeyTracker implements AccessListener, AutoCloseable {
+    private static final int DEFAULT_TOP = 16;
+    private static final int DEFAULT_SAMPLE_RATE = 16;
+    private static final long DEFAULT_DECAY_SECONDS = 60;
+    // counters per sketch row for every reported key, keeping collisions with colder keys rare
+    private static final int WIDTH_PER_KEY = 64;
+    private static final int BUFFER_MAX = 1024;
+    private static final long MAINTENANCE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int top;
+    private final int sampleRate;
+    private final long decayNanos;
+    private final LongSupplier ticker;
+    private final ConcurrentHashMap<String, Tracked> namespaces = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService maintainer;
+    private volatile Promotion promotion;
+
+    public HotKeyTracker() {
+        this(DEFAULT_TOP, DEFAULT_SAMPLE_RATE, DEFAULT_DECAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param top        keys reported per namespace
+     * @param sampleRate one in how many requests is counted, a power of two
+     * @param decay      period after which every count is halved
+     */
+    public HotKeyTracker(final int top, final int sampleRate, final long decay, @Nonnull final TimeUnit unit) {
+        this(top, sampleRate, decay, unit, System::nanoTime);
+    }
+
+    /**
+     * @param ticker nanosecond time source
+     */
+    protected HotKeyTracker(final int top, final int sampleRate, final long decay, @Nonnull final TimeUnit unit, @Nonnull final LongSupplier ticker) {
+        if (top <= 0) {
+            throw new IllegalArgumentException("top must be positive: " + top);
+        }
+        if (sampleRate <= 0 || Integer.bitCount(sampleRate) != 1) {
+            throw new IllegalArgumentException("sampleRate must be a power of two: " + sampleRate);
+        }
+        if (decay <= 0) {
+            throw new IllegalArgumentException("decay must be positive: " + decay);
+        }
+        this.top = top;
+        this.sampleRate = sampleRate;
+        this.decayNanos = unit.toNanos(decay);
+        this.ticker = ticker;
+        this.maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            final var thread = new Thread(r, "cache-hot-keys");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long period = Math.min(decayNanos, MAINTENANCE_NANOS);
+        maintainer.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Pins the {@code hottest} keys by requests of every namespace in {@code cache} from the next period on, so it
+     * keeps them through eviction and refreshes them ahead of expiry, and unpins them once others are hotter.
+     */
+    public void promoteTo(@Nonnull final CacheService cache, final int hottest) {
+        if (hottest <= 0 || hottest > top) {
+            throw new IllegalArgumentException("hottest must be between 1 and " + top + ": " + hottest);
+        }
+        promotion = new Promotion(cache, hottest);
+    }
+
+    @Override
+    public boolean sampled() {
+        return sampleRate == 1 || (ThreadLocalRandom.current()
+                .nextInt() & (sampleRate - 1)) == 0;
+    }
+
+    @Override
+    public void access(@Nonnull final CacheKey key) {
+        tracked(key.namespace()).record(key, sampleRate, 0, 0);
+    }
+
+    @Override
+    public void load(@Nonnull final CacheKey key, final long nanos) {
+        tracked(key.namespace()).record(key, 0, 1, Math.max(0, nanos));
+    }
+
+    /**
+     * @return keys of {@code namespace} with the most hits, hottest first
+     */
+    @Nonnull
+    public List<HotKey> topByHits(@Nonnull final String namespace) {
+        return top(namespace, HotKey::hits);
+    }
+
+    /**
+     * @return keys of {@code namespace} with the most misses, the likely causes of miss storms first
+     */
+    @Nonnull
+    public List<HotKey> topByMisses(@Nonnull final String namespace) {
+        return top(namespace, HotKey::misses);
+    }
+
+    /**
+     * @return keys of {@code namespace} whose loads took the longest in total, costliest first
+     */
+    @Nonnull
+    public List<HotKey> topByLoadTime(@Nonnull final String namespace) {
+        return top(namespace, HotKey::loadNanos);
+    }
+
+    /**
+     * @return keys of {@code namespace} pinned by the last promotion
+     */
+    @Nonnull
+    public Set<CacheKey> promoted(@Nonnull final String namespace) {
+        final var tracked = namespaces.get(namespace);
+        return tracked == null ? Set.of() : tracked.promoted();
+    }
+
+    @Nonnull
+    public Set<String> namespaces() {
+        return Set.copyOf(namespaces.keySet());
+    }
+
+    /**
+     * Stops the maintenance thread; counts recorded afterwards are still reported, but no longer decay.
+     */
+    @Override
+    public void close() {
+        maintainer.shutdown();
+    }
+
+    /**
+     * Adds the queued counts to the sketches and, once a period passed, promotes the hottest keys and halves every
+     * count. Run by the maintenance thread.
+     */
+    void maintain() {
+        final var promotion = this.promotion;
+        for (final var tracked : namespaces.values()) {
+            try {
+                tracked.maintain(promotion);
+            } catch (RuntimeException e) {
+                log.warn("Hot key maintenance failed", e);
+            }
+        }
+    }
+
+    private List<HotKey> top(final String namespace, final ToLongFunction<HotKey> measure) {
+        final var tracked = namespaces.get(namespace);
+        if (tracked == null) {
+            return List.of();
+        }
+        return tracked.candidates()
+                .stream()
+                .filter(key -> measure.applyAsLong(key) > 0)
+                .sorted(Comparator.comparingLong(measure)
+                        .reversed())
+                .limit(top)
+                .collect(Collectors.toList());
+    }
+
+    private Tracked tracked(final String namespace) {
+        final var tracked = namespaces.get(namespace);
+        return tracked != null ? tracked : namespaces.computeIfAbsent(namespace, ns -> new Tracked());
+    }
+
+    private static final class Promotion {
+        private final CacheService cache;
+        private final int hottest;
+
+        private Promotion(final CacheService cache, final int hottest) {
+            this.cache = cache;
+            this.hottest = hottest;
+        }
+    }
+
+    /**
+     * Sketches and top keys of one namespace, guarded by its lock, and the counts queued for them.
+     */
+    private final class Tracked {
+        private final CountMinSketch requests = new CountMinSketch(top * WIDTH_PER_KEY);
+        private final CountMinSketch misses = new CountMinSketch(top * WIDTH_PER_KEY);
+        private final CountMinSketch loadNanos = new CountMinSketch(top * WIDTH_PER_KEY);
+        private final TopK topRequests = new TopK(top);
+        private final TopK topMisses = new TopK(top);
+        private final TopK topLoadNanos = new TopK(top);
+        private final Set<CacheKey> pinned = new HashSet<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Queue<Sample> buffer = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger buffered = new AtomicInteger();
+        private long lastDecay = ticker.getAsLong();
+
+        private void record(final CacheKey key, final long requested, final long missed, final long nanos) {
+            buffer.add(new Sample(key, requested, missed, nanos));
+            if (buffered.incrementAndGet() >= BUFFER_MAX && lock.tryLock()) {
+                try {
+                    drain();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private List<HotKey> candidates() {
+            lock.lock();
+            try {
+                drain();
+                final var keys = new LinkedHashSet<>(topRequests.keys());
+                keys.addAll(topMisses.keys());
+                keys.addAll(topLoadNanos.keys());
+                final var candidates = new ArrayList<HotKey>(keys.size());
+                for (final var key : keys) {
+                    candidates.add(estimate(key));
+                }
+                return candidates;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Set<CacheKey> promoted() {
+            lock.lock();
+            try {
+                return Set.copyOf(pinned);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private HotKey estimate(final CacheKey key) {
+            final int hash = key.hashCode();
+            final long missed = misses.estimate(hash);
+            return new HotKey(key, Math.max(0, requests.estimate(hash) - missed), missed, loadNanos.estimate(hash));
+        }
+
+        private void drain() {
+            for (var sample = buffer.poll(); sample != null; sample = buffer.poll()) {
+                buffered.decrementAndGet();
+                final int hash = sample.key.hashCode();
+                if (sample.requested > 0) {
+                    topRequests.offer(sample.key, requests.add(hash, sample.requested));
+                }
+                if (sample.missed > 0) {
+                    topMisses.offer(sample.key, misses.add(hash, sample.missed));
+                    topLoadNanos.offer(sample.key, loadNanos.add(hash, sample.nanos));
+                }
+            }
+        }
+
+        /**
+         * Drains the queued counts and, once a period passed, pins the hottest keys of the period that just ended
+         * before halving its counts. The cache is called after the lock is released.
+         */
+        private void maintain(final Promotion promotion) {
+            final Set<CacheKey> unpinned = new HashSet<>();
+            final Set<CacheKey> newlyPinned = new HashSet<>();
+            lock.lock();
+            try {
+                drain();
+                final long now = ticker.getAsLong();
+                if (now - lastDecay < decayNanos) {
+                    return;
+                }
+                lastDecay = now;
+                if (promotion != null) {
+                    final var hottest = topRequests.keys()
+                            .stream()
+                            .sorted(Comparator.comparingLong((CacheKey key) -> requests.estimate(key.hashCode()))
+                                    .reversed())
+                            .limit(promotion.hottest)
+                            .collect(Collectors.toSet());
+                    for (final var key : pinned) {
+                        if (!hottest.contains(key)) {
+                            unpinned.add(key);
+                        }
+                    }
+                    for (final var key : hottest) {
+                        if (!pinned.contains(key)) {
+                            newlyPinned.add(key);
+                        }
+                    }
+                    pinned.clear();
+                    pinned.addAll(hottest);
+                }
+                requests.decay();
+                misses.decay();
+                loadNanos.decay();
+                topRequests.decay();
+                topMisses.decay();
+                topLoadNanos.decay();
+            } finally {
+                lock.unlock();
+            }
+            for (final var key : unpinned) {
+                promotion.cache.unpin(key);
+            }
+            for (final var key : newlyPinned) {
+                promotion.cache.pin(key);
+            }
+        }
+    }
+
+    private static final class Sample {
+        private final CacheKey key;
+        private final long requested;
+        private final long missed;
+        private final long nanos;
+
+        private Sample(final CacheKey key, final long requested, final long missed, final long nanos) {
+            this.key = key;
+            this.requested = requested;
+            this.missed = missed;
+            this.nanos = nanos;
+        }
+    }
+}
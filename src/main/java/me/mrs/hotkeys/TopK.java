@@ -0,0 +1,66 @@
+package me.mrs.hotkeys;
+
+import me.mrs.CacheKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code k} keys with the largest estimates seen so far. Small enough to scan, so it is kept as two parallel
+ * arrays rather than a heap: an offer updates the key in place or replaces the smallest one. Not thread-safe.
+ */
+final class TopK {
+    private final CacheKey[] keys;
+    private final long[] counts;
+    private int size;
+
+    TopK(final int k) {
+        this.keys = new CacheKey[k];
+        this.counts = new long[k];
+    }
+
+    void offer(final CacheKey key, final long estimate) {
+        int smallest = -1;
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                counts[i] = estimate;
+                return;
+            }
+            if (smallest < 0 || counts[i] < counts[smallest]) {
+                smallest = i;
+            }
+        }
+        if (size < keys.length) {
+            keys[size] = key;
+            counts[size++] = estimate;
+        } else if (estimate > counts[smallest]) {
+            keys[smallest] = key;
+            counts[smallest] = estimate;
+        }
+    }
+
+    /**
+     * Halves the counts, in step with {@link CountMinSketch#decay()}, and forgets keys left at zero.
+     */
+    void decay() {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (counts[i] > 1) {
+                keys[kept] = keys[i];
+                counts[kept++] = counts[i] >>> 1;
+            }
+        }
+        for (int i = kept; i < size; i++) {
+            keys[i] = null;
+        }
+        size = kept;
+    }
+
+    List<CacheKey> keys() {
+        final var list = new ArrayList<CacheKey>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(keys[i]);
+        }
+        return list;
+    }
+}
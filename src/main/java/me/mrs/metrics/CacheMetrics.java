@@ -0,0 +1,313 @@
+package me.mrs.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import me.mrs.CacheStats;
+import me.mrs.CompressionStats;
+import me.mrs.LoaderStats;
+
+import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Process-wide registry of cache metrics, published as platform MBeans under the {@value #DOMAIN} domain and
+ * available as a {@link #snapshot()}.
+ * <p>
+ * Resolver latencies are tracked per {@link me.mrs.Cacheable#namespace()} and per method through {@link LoadTimer}s,
+ * which interceptors and generated decorators obtain once per method. Cache statistics come from caches registered
+ * with {@link #register(String, Supplier)}, load queues of limited namespaces with
+ * {@link #registerLoader(String, Supplier)}, and value compression with {@link #registerCompression(String, Supplier)}.
+ */
+@Slf4j
+public final class CacheMetrics {
+    static final String DOMAIN = "me.mrs";
+
+    private static final ConcurrentHashMap<String, LatencyHistogram> NAMESPACE_LOADS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LatencyHistogram> METHOD_LOADS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Supplier<CacheStats>> CACHES = new ConcurrentHashMap<>();
+
+    private CacheMetrics() {
+    }
+
+    @Nonnull
+    public static LoadTimer loadTimer(@Nonnull final String namespace, @Nonnull final Method method) {
+        final var namespaceLoads = NAMESPACE_LOADS.computeIfAbsent(namespace, ns -> publish(new LatencyHistogram(), "namespace", ns));
+        final var methodLoads = METHOD_LOADS.computeIfAbsent(name(method), m -> publish(new LatencyHistogram(), "method", m));
+        return new LoadTimer(namespaceLoads, methodLoads);
+    }
+
+    /**
+     * Variant for generated code, which names the method instead of holding it.
+     */
+    @Nonnull
+    public static LoadTimer loadTimer(@Nonnull final String namespace, @Nonnull final Class<?> type, @Nonnull final String name,
+                                      @Nonnull final Class<?>... parameterTypes) {
+        try {
+            return loadTimer(namespace, type.getMethod(name, parameterTypes));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No public method " + name + Arrays.toString(parameterTypes) + " in " + type, e);
+        }
+    }
+
+    /**
+     * Publishes the statistics of a cache, replacing any registered under the same name, e.g.
+     * {@code register("main", memoryCache::stats)}.
+     */
+    public static void register(@Nonnull final String name, @Nonnull final Supplier<CacheStats> stats) {
+        CACHES.put(name, stats);
+        final var bean = new CacheStatsMXBean() {
+            @Override
+            public long getHitCount() {
+                return stats.get().hitCount();
+            }
+
+            @Override
+            public long getMissCount() {
+                return stats.get().missCount();
+            }
+
+            @Override
+            public double getHitRate() {
+                return stats.get().hitRate();
+            }
+
+            @Override
+            public long getLoadCount() {
+                return stats.get().loadCount();
+            }
+
+            @Override
+            public long getLoadFailureCount() {
+                return stats.get().loadFailureCount();
+            }
+
+            @Override
+            public long getEvictionCount() {
+                return stats.get().evictionCount();
+            }
+
+            @Override
+            public long getExpirationCount() {
+                return stats.get().expirationCount();
+            }
+
+            @Override
+            public long getSize() {
+                return stats.get().size();
+            }
+        };
+        publish(objectName("type=Cache,name=" + ObjectName.quote(name)), bean, CacheStatsMXBean.class);
+    }
+
+    /**
+     * Publishes the load queue of a namespace, e.g. {@code registerLoader("users", () -> cache.loaderStats("users"))}.
+     */
+    public static void registerLoader(@Nonnull final String name, @Nonnull final Supplier<LoaderStats> stats) {
+        final var bean = new LoaderMXBean() {
+            @Override
+            public int getRunning() {
+                return stats.get().running();
+            }
+
+            @Override
+            public int getQueued() {
+                return stats.get().queued();
+            }
+
+            @Override
+            public long getCompletedCount() {
+                return stats.get().completedCount();
+            }
+
+            @Override
+            public long getRejectedCount() {
+                return stats.get().rejectedCount();
+            }
+
+            @Override
+            public long getStaleCount() {
+                return stats.get().staleCount();
+            }
+
+            @Override
+            public long getTimeoutCount() {
+                return stats.get().timeoutCount();
+            }
+
+            @Override
+            public long getHedgeCount() {
+                return stats.get().hedgeCount();
+            }
+
+            @Override
+            public long getHedgeWinCount() {
+                return stats.get().hedgeWinCount();
+            }
+        };
+        publish(objectName("type=Loader,name=" + ObjectName.quote(name)), bean, LoaderMXBean.class);
+    }
+
+    public static void unregisterLoader(@Nonnull final String name) {
+        try {
+            final var server = ManagementFactory.getPlatformMBeanServer();
+            final var objectName = objectName("type=Loader,name=" + ObjectName.quote(name));
+            if (objectName != null && server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.debug("Can't unregister MBean of loader {}", name, e);
+        }
+    }
+
+    /**
+     * Publishes the value compression of a namespace, e.g.
+     * {@code registerCompression("pages", () -> cache.compressionStats("pages"))}.
+     */
+    public static void registerCompression(@Nonnull final String name, @Nonnull final Supplier<CompressionStats> stats) {
+        final var bean = new CompressionMXBean() {
+            @Override
+            public long getCompressedCount() {
+                return stats.get().compressedCount();
+            }
+
+            @Override
+            public long getIncompressibleCount() {
+                return stats.get().incompressibleCount();
+            }
+
+            @Override
+            public long getSavedBytes() {
+                return stats.get().savedBytes();
+            }
+
+            @Override
+            public long getCompressionNanos() {
+                return stats.get().compressionNanos();
+            }
+
+            @Override
+            public long getDecompressionCount() {
+                return stats.get().decompressionCount();
+            }
+
+            @Override
+            public long getDecompressionNanos() {
+                return stats.get().decompressionNanos();
+            }
+
+            @Override
+            public long getHotHitCount() {
+                return stats.get().hotHitCount();
+            }
+        };
+        publish(objectName("type=Compression,name=" + ObjectName.quote(name)), bean, CompressionMXBean.class);
+    }
+
+    public static void unregisterCompression(@Nonnull final String name) {
+        try {
+            final var server = ManagementFactory.getPlatformMBeanServer();
+            final var objectName = objectName("type=Compression,name=" + ObjectName.quote(name));
+            if (objectName != null && server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.debug("Can't unregister MBean of compression {}", name, e);
+        }
+    }
+
+    public static void unregister(@Nonnull final String name) {
+        if (CACHES.remove(name) != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .unregisterMBean(objectName("type=Cache,name=" + ObjectName.quote(name)));
+            } catch (JMException e) {
+                log.debug("Can't unregister MBean of cache {}", name, e);
+            }
+        }
+    }
+
+    @Nonnull
+    public static MetricsSnapshot snapshot() {
+        final var caches = new HashMap<String, CacheStats>();
+        CACHES.forEach((name, stats) -> caches.put(name, stats.get()));
+        final var namespaceLoads = new HashMap<String, LatencyHistogram.Snapshot>();
+        NAMESPACE_LOADS.forEach((namespace, histogram) -> namespaceLoads.put(namespace, histogram.snapshot()));
+        final var methodLoads = new HashMap<String, LatencyHistogram.Snapshot>();
+        METHOD_LOADS.forEach((method, histogram) -> methodLoads.put(method, histogram.snapshot()));
+        return new MetricsSnapshot(caches, namespaceLoads, methodLoads);
+    }
+
+    static String name(final Method method) {
+        return method.getDeclaringClass().getName() + '#' + method.getName() + Arrays.stream(method.getParameterTypes())
+                .map(Class::getSimpleName)
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+
+    private static LatencyHistogram publish(final LatencyHistogram histogram, final String kind, final String name) {
+        final var bean = new LoadLatencyMXBean() {
+            @Override
+            public long getCount() {
+                return histogram.snapshot().count();
+            }
+
+            @Override
+            public double getMean() {
+                return histogram.snapshot().mean();
+            }
+
+            @Override
+            public long getMax() {
+                return histogram.snapshot().max();
+            }
+
+            @Override
+            public long get50thPercentile() {
+                return histogram.snapshot().valueAt(50);
+            }
+
+            @Override
+            public long get99thPercentile() {
+                return histogram.snapshot().valueAt(99);
+            }
+
+            @Override
+            public long get999thPercentile() {
+                return histogram.snapshot().valueAt(99.9);
+            }
+        };
+        publish(objectName("type=LoadLatency," + kind + '=' + ObjectName.quote(name)), bean, LoadLatencyMXBean.class);
+        return histogram;
+    }
+
+    private static <T> void publish(final ObjectName name, final T bean, final Class<T> type) {
+        if (name == null) {
+            return;
+        }
+        try {
+            final var server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(bean, type, true), name);
+        } catch (JMException | RuntimeException e) {
+            log.warn("Can't register MBean {}", name, e);
+        }
+    }
+
+    private static ObjectName objectName(final String properties) {
+        try {
+            return new ObjectName(DOMAIN + ':' + properties);
+        } catch (JMException e) {
+            log.warn("Invalid MBean name {}", properties, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package me.mrs.metrics;
+
+/**
+ * JMX view of a registered cache's {@link me.mrs.CacheStats}.
+ */
+public interface CacheStatsMXBean {
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadCount();
+
+    long getLoadFailureCount();
+
+    long getEvictionCount();
+
+    long getExpirationCount();
+
+    long getSize();
+}
@@ -0,0 +1,20 @@
+package me.mrs.metrics;
+
+/**
+ * JMX view of a registered namespace's {@link me.mrs.CompressionStats}.
+ */
+public interface CompressionMXBean {
+    long getCompressedCount();
+
+    long getIncompressibleCount();
+
+    long getSavedBytes();
+
+    long getCompressionNanos();
+
+    long getDecompressionCount();
+
+    long getDecompressionNanos();
+
+    long getHotHitCount();
+}
@@ -0,0 +1,113 @@
+package me.mrs.metrics;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent latency histogram with HDR-style log-linear buckets: each power of two is split in 32 buckets, so any
+ * recorded nanosecond value is kept within about 3% using a fixed array and no allocation.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    @Nonnull
+    public Snapshot snapshot() {
+        final var copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, total.sum(), max.get());
+    }
+
+    static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the highest value falling in bucket {@code index}
+     */
+    static long highestValue(final int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Immutable copy of a histogram, in nanoseconds.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(final long[] counts, final long count, final long total, final long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        /**
+         * @param percentile between {@code 0} and {@code 100}
+         * @return the value at or below which {@code percentile} percent of the recorded values fall
+         */
+        public long valueAt(final double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{count=" + count + ", mean=" + (long) mean() + ", p50=" + valueAt(50) + ", p99=" + valueAt(99)
+                    + ", max=" + max + '}';
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package me.mrs.metrics;
+
+/**
+ * JMX view of a {@link LatencyHistogram} of resolver times, in nanoseconds.
+ */
+public interface LoadLatencyMXBean {
+    long getCount();
+
+    double getMean();
+
+    long getMax();
+
+    long get50thPercentile();
+
+    long get99thPercentile();
+
+    long get999thPercentile();
+}
@@ -0,0 +1,34 @@
+package me.mrs.metrics;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Records resolver latencies of one cached method into its own histogram and its namespace's one. Callers time the
+ * resolver from inside it, so cache hits pay nothing for the timing.
+ */
+public final class LoadTimer {
+    private final LatencyHistogram namespace;
+    private final LatencyHistogram method;
+
+    LoadTimer(final LatencyHistogram namespace, final LatencyHistogram method) {
+        this.namespace = namespace;
+        this.method = method;
+    }
+
+    public void record(final long nanos) {
+        namespace.record(nanos);
+        method.record(nanos);
+    }
+
+    /**
+     * Records the time from {@code startNanos} to the completion of {@code future}.
+     *
+     * @return {@code future}
+     */
+    @Nonnull
+    public <V> CompletableFuture<V> recordOnCompletion(final long startNanos, @Nonnull final CompletableFuture<V> future) {
+        future.whenComplete((v, e) -> record(System.nanoTime() - startNanos));
+        return future;
+    }
+}
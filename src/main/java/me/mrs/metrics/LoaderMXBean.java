@@ -0,0 +1,22 @@
+package me.mrs.metrics;
+
+/**
+ * JMX view of a registered namespace's {@link me.mrs.LoaderStats}.
+ */
+public interface LoaderMXBean {
+    int getRunning();
+
+    int getQueued();
+
+    long getCompletedCount();
+
+    long getRejectedCount();
+
+    long getStaleCount();
+
+    long getTimeoutCount();
+
+    long getHedgeCount();
+
+    long getHedgeWinCount();
+}
@@ -0,0 +1,51 @@
+package me.mrs.metrics;
+
+import me.mrs.CacheStats;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of everything {@link CacheMetrics} tracks.
+ */
+public final class MetricsSnapshot {
+    private final Map<String, CacheStats> caches;
+    private final Map<String, LatencyHistogram.Snapshot> namespaceLoads;
+    private final Map<String, LatencyHistogram.Snapshot> methodLoads;
+
+    MetricsSnapshot(final Map<String, CacheStats> caches, final Map<String, LatencyHistogram.Snapshot> namespaceLoads,
+                    final Map<String, LatencyHistogram.Snapshot> methodLoads) {
+        this.caches = Map.copyOf(caches);
+        this.namespaceLoads = Map.copyOf(namespaceLoads);
+        this.methodLoads = Map.copyOf(methodLoads);
+    }
+
+    /**
+     * @return statistics by registered cache name
+     */
+    @Nonnull
+    public Map<String, CacheStats> caches() {
+        return caches;
+    }
+
+    /**
+     * @return resolver latencies by {@link me.mrs.Cacheable#namespace()}
+     */
+    @Nonnull
+    public Map<String, LatencyHistogram.Snapshot> namespaceLoads() {
+        return namespaceLoads;
+    }
+
+    /**
+     * @return resolver latencies by method, named like {@code me.mrs.MyService#apply(String)}
+     */
+    @Nonnull
+    public Map<String, LatencyHistogram.Snapshot> methodLoads() {
+        return methodLoads;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{caches=" + caches + ", namespaceLoads=" + namespaceLoads + ", methodLoads=" + methodLoads + '}';
+    }
+}
@@ -0,0 +1,115 @@
+package me.mrs.near;
+
+import me.mrs.CacheKey;
+
+import javax.annotation.Nonnull;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Closed wire format of the keys carried by invalidation messages: arguments may only be {@code null}, {@link String},
+ * {@link Long}, {@link Integer} or {@code byte[]}, and any other tag is rejected, so nothing received from the network
+ * is ever handed to Java deserialization.
+ */
+final class KeyCodec {
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte BYTES = 4;
+
+    private KeyCodec() {
+    }
+
+    /**
+     * @return whether every argument of {@code key} has an encoding
+     */
+    static boolean supports(@Nonnull final CacheKey key) {
+        for (int i = 0; i < key.size(); i++) {
+            final var argument = key.get(i);
+            if (argument != null && !(argument instanceof String) && !(argument instanceof Long) && !(argument instanceof Integer)
+                    && !(argument instanceof byte[])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void write(@Nonnull final CacheKey key, @Nonnull final DataOutput out) throws IOException {
+        out.writeUTF(key.namespace());
+        out.writeInt(key.size());
+        for (int i = 0; i < key.size(); i++) {
+            final var argument = key.get(i);
+            if (argument == null) {
+                out.writeByte(NULL);
+            } else if (argument instanceof String) {
+                out.writeByte(STRING);
+                writeBytes(((String) argument).getBytes(StandardCharsets.UTF_8), out);
+            } else if (argument instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) argument);
+            } else if (argument instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) argument);
+            } else if (argument instanceof byte[]) {
+                out.writeByte(BYTES);
+                writeBytes((byte[]) argument, out);
+            } else {
+                throw new IOException("Can't encode key argument of " + argument.getClass()
+                        .getName());
+            }
+        }
+    }
+
+    /**
+     * Reads one key from a fully buffered message, bounding every length by the bytes left in it.
+     */
+    @Nonnull
+    static CacheKey read(@Nonnull final DataInputStream in) throws IOException {
+        final var namespace = in.readUTF();
+        final int size = in.readInt();
+        if (size < 0 || size > in.available()) {
+            throw new IOException("Invalid key argument count " + size);
+        }
+        final var arguments = new Object[size];
+        for (int i = 0; i < size; i++) {
+            final byte tag = in.readByte();
+            switch (tag) {
+                case NULL:
+                    break;
+                case STRING:
+                    arguments[i] = new String(readBytes(in), StandardCharsets.UTF_8);
+                    break;
+                case LONG:
+                    arguments[i] = in.readLong();
+                    break;
+                case INTEGER:
+                    arguments[i] = in.readInt();
+                    break;
+                case BYTES:
+                    arguments[i] = readBytes(in);
+                    break;
+                default:
+                    throw new IOException("Unsupported key argument tag " + tag);
+            }
+        }
+        return CacheKey.of(namespace, arguments, null);
+    }
+
+    private static void writeBytes(final byte[] bytes, final DataOutput out) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid key argument length " + length);
+        }
+        final var bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,55 @@
+package me.mrs.near;
+
+import javax.annotation.Nonnull;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+/**
+ * In-process {@link Transport} delivering synchronously to the other members of its group, for tests and for several
+ * caches within one JVM.
+ */
+public final class LoopbackTransport implements Transport {
+    private final Set<LoopbackTransport> group;
+    private volatile Consumer<byte[]> receiver = message -> {
+    };
+
+    /**
+     * Starts a new group, joined by other nodes through {@link #join()}.
+     */
+    public LoopbackTransport() {
+        this(new CopyOnWriteArraySet<>());
+    }
+
+    private LoopbackTransport(final Set<LoopbackTransport> group) {
+        this.group = group;
+        group.add(this);
+    }
+
+    /**
+     * @return a new node of this group
+     */
+    @Nonnull
+    public LoopbackTransport join() {
+        return new LoopbackTransport(group);
+    }
+
+    @Override
+    public void broadcast(@Nonnull final byte[] message) {
+        for (final var peer : group) {
+            if (peer != this) {
+                peer.receiver.accept(message.clone());
+            }
+        }
+    }
+
+    @Override
+    public void listen(@Nonnull final Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void close() {
+        group.remove(this);
+    }
+}
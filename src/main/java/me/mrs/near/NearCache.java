@@ -0,0 +1,267 @@
+package me.mrs.near;
+
+import lombok.extern.slf4j.Slf4j;
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import me.mrs.CacheSpec;
+import me.mrs.IntCacheService;
+import me.mrs.LongCacheService;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * {@link CacheService} keeping a node's local cache consistent with its peers: invalidations and namespace flushes are
+ * applied locally at once and published to the other nodes through a {@link Transport}.
+ * <p>
+ * Reads go straight to the local cache, so hits stay as lock-free as the local engine. Published invalidations are
+ * collected in concurrent sets, coalescing repeated keys and keys of flushed namespaces, and sent in batches once per
+ * {@code delay} from a single background thread, so a burst of writes costs a few messages. Invalidations received
+ * from peers are applied to the local cache only, never published again.
+ * <p>
+ * Namespace flushes go to {@link CacheService#invalidateNamespace(String)} of the local cache.
+ * <p>
+ * Keys travel in a closed format accepting only {@code null}, {@link String}, {@link Long}, {@link Integer} and
+ * {@code byte[]} arguments; invalidating a key with any other argument flushes its namespace on the peers instead.
+ */
+@Slf4j
+public class NearCache implements CacheService, Closeable {
+    private static final byte VERSION = 2;
+    private static final int MAXIMUM_BATCH = 1024;
+
+    private final CacheService local;
+    private final Transport transport;
+    private final long delayMillis;
+    private final Set<CacheKey> pendingKeys = ConcurrentHashMap.newKeySet();
+    private final Set<String> pendingNamespaces = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ScheduledExecutorService publisher;
+
+    public NearCache(@Nonnull final CacheService local, @Nonnull final Transport transport) {
+        this(local, transport, 10);
+    }
+
+    /**
+     * @param delayMillis how long invalidations are collected before being published
+     */
+    public NearCache(@Nonnull final CacheService local, @Nonnull final Transport transport, final long delayMillis) {
+        this.local = local;
+        this.transport = transport;
+        this.delayMillis = delayMillis;
+        this.publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            final var thread = new Thread(r, "cache-invalidation-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        transport.listen(this::receive);
+    }
+
+    @Override
+    public Object apply(final long ttl, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        return local.apply(ttl, key, resolver);
+    }
+
+    @Override
+    public Object apply(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        return local.apply(spec, key, resolver);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(final long ttl, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        return local.applyAsync(ttl, key, resolver);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        return local.applyAsync(spec, key, resolver);
+    }
+
+    @Nonnull
+    @Override
+    public Map<CacheKey, Object> applyAll(@Nonnull final CacheSpec spec, @Nonnull final Collection<CacheKey> keys,
+                                          @Nonnull final Function<Set<CacheKey>, Map<CacheKey, Object>> resolver) {
+        return local.applyAll(spec, keys, resolver);
+    }
+
+    @Nullable
+    @Override
+    public LongCacheService longKeys(@Nonnull final String namespace) {
+        return local.longKeys(namespace);
+    }
+
+    @Nullable
+    @Override
+    public IntCacheService intKeys(@Nonnull final String namespace) {
+        return local.intKeys(namespace);
+    }
+
+    /**
+     * Discards the entry of {@code key} here and, shortly after, on every peer.
+     */
+    @Override
+    public void invalidate(@Nonnull final CacheKey key) {
+        local.invalidate(key);
+        pendingKeys.add(key);
+        schedule();
+    }
+
+    @Override
+    public long timeToLive(@Nonnull final CacheKey key) {
+        return local.timeToLive(key);
+    }
+
+    /**
+     * Discards the entries of {@code keys} here in one pass and, shortly after, on every peer.
+     */
+    @Override
+    public void invalidateAll(@Nonnull final Collection<CacheKey> keys) {
+        local.invalidateAll(keys);
+        pendingKeys.addAll(keys);
+        schedule();
+    }
+
+    /**
+     * Caches {@code value} here and, shortly after, discards the entry of {@code key} on every peer.
+     */
+    @Override
+    public void put(@Nonnull final CacheSpec spec, @Nonnull final CacheKey key, @Nullable final Object value) {
+        local.put(spec, key, value);
+        pendingKeys.add(key);
+        schedule();
+    }
+
+    /**
+     * Pins {@code key} here only; every peer tracks its own hot keys.
+     */
+    @Override
+    public void pin(@Nonnull final CacheKey key) {
+        local.pin(key);
+    }
+
+    @Override
+    public void unpin(@Nonnull final CacheKey key) {
+        local.unpin(key);
+    }
+
+    /**
+     * Drops every entry of {@code namespace} here and, shortly after, on every peer.
+     */
+    @Override
+    public void invalidateNamespace(@Nonnull final String namespace) {
+        local.invalidateNamespace(namespace);
+        pendingNamespaces.add(namespace);
+        schedule();
+    }
+
+    /**
+     * Publishes the pending invalidations now.
+     */
+    public synchronized void flush() {
+        scheduled.set(false);
+        final var namespaces = new ArrayList<String>();
+        for (final var it = pendingNamespaces.iterator(); it.hasNext(); ) {
+            namespaces.add(it.next());
+            it.remove();
+        }
+        final var flushed = new HashSet<>(namespaces);
+        final var keys = new ArrayList<CacheKey>();
+        for (final var it = pendingKeys.iterator(); it.hasNext(); ) {
+            final var key = it.next();
+            it.remove();
+            if (!KeyCodec.supports(key) && flushed.add(key.namespace())) {
+                namespaces.add(key.namespace());
+            }
+            keys.add(key);
+        }
+        keys.removeIf(key -> flushed.contains(key.namespace()));
+        if (namespaces.isEmpty() && keys.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from == 0 || from < keys.size(); from += MAXIMUM_BATCH) {
+            final var batch = keys.subList(from, Math.min(keys.size(), from + MAXIMUM_BATCH));
+            try {
+                transport.broadcast(encode(from == 0 ? namespaces : List.of(), batch));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Can't publish {} cache invalidations", batch.size(), e);
+            }
+        }
+    }
+
+    /**
+     * Publishes the pending invalidations, then stops publishing and closes the transport.
+     */
+    @Override
+    public void close() throws IOException {
+        publisher.shutdown();
+        flush();
+        transport.close();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                publisher.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                log.warn("Cache invalidations not published, the near cache is closed");
+            }
+        }
+    }
+
+    private void receive(final byte[] message) {
+        try (var in = new DataInputStream(new ByteArrayInputStream(message))) {
+            final byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unknown invalidation message version " + version);
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                local.invalidateNamespace(in.readUTF());
+            }
+            final var keys = new ArrayList<CacheKey>();
+            for (int n = in.readInt(); n > 0; n--) {
+                keys.add(KeyCodec.read(in));
+            }
+            local.invalidateAll(keys);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Dropping unreadable cache invalidation message of {} bytes", message.length, e);
+        }
+    }
+
+    private byte[] encode(final List<String> namespaces, final List<CacheKey> keys) throws IOException {
+        final var bytes = new ByteArrayOutputStream(64 + keys.size() * 32);
+        final var out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeInt(namespaces.size());
+        for (final var namespace : namespaces) {
+            out.writeUTF(namespace);
+        }
+        out.writeInt(keys.size());
+        for (final var key : keys) {
+            KeyCodec.write(key, out);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,226 @@
+package me.mrs.near;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * {@link Transport} over TCP: every node listens on its own address and keeps one outgoing connection per peer,
+ * writing length-prefixed frames.
+ * <p>
+ * Connections are opened on the first broadcast and reopened on the next one after a failure; a message that can't be
+ * written to a peer is dropped for that peer. Incoming connections are read by one daemon thread each.
+ * <p>
+ * Without a shared secret the transport only listens on the loopback interface. With one, every frame carries an
+ * HMAC-SHA256 tag over its payload, and a connection sending a frame with a wrong tag is dropped, so only nodes
+ * knowing the secret can invalidate entries; the frames themselves are not encrypted.
+ */
+@Slf4j
+public final class SocketTransport implements Transport {
+    private static final int CONNECT_TIMEOUT_MILLIS = 1_000;
+    private static final int MAXIMUM_FRAME = 16 << 20;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+
+    private final ServerSocket server;
+    @Nullable
+    private final SecretKeySpec secret;
+    private final List<Peer> peers = new ArrayList<>();
+    private final Set<Socket> accepted = ConcurrentHashMap.newKeySet();
+    private volatile Consumer<byte[]> receiver = message -> {
+    };
+    private volatile boolean closed;
+
+    /**
+     * Listens on the loopback interface, for peers running on the same host.
+     *
+     * @param port  port to listen on, {@code 0} picks a free one
+     * @param peers addresses of the other nodes
+     */
+    public SocketTransport(final int port, @Nonnull final Collection<InetSocketAddress> peers) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), peers, null);
+    }
+
+    /**
+     * @param bind   address to listen on, port {@code 0} picks a free one; must be a loopback address without a secret
+     * @param peers  addresses of the other nodes
+     * @param secret key shared by every node and authenticating their frames, {@code null} to trust any local process
+     */
+    public SocketTransport(@Nonnull final InetSocketAddress bind, @Nonnull final Collection<InetSocketAddress> peers,
+                           @Nullable final byte[] secret) throws IOException {
+        if (secret == null && !bind.getAddress()
+                .isLoopbackAddress()) {
+            throw new IllegalArgumentException("Listening on " + bind + " needs a shared secret");
+        }
+        if (secret != null && secret.length == 0) {
+            throw new IllegalArgumentException("Empty shared secret");
+        }
+        this.secret = secret == null ? null : new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.server = new ServerSocket();
+        server.bind(bind);
+        for (final var address : peers) {
+            this.peers.add(new Peer(address));
+        }
+        final var acceptor = new Thread(this::acceptLoop, "cache-transport-" + server.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Nonnull
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) server.getLocalSocketAddress();
+    }
+
+    @Override
+    public void broadcast(@Nonnull final byte[] message) {
+        for (final var peer : peers) {
+            peer.send(message);
+        }
+    }
+
+    @Override
+    public void listen(@Nonnull final Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        peers.forEach(Peer::close);
+        for (final var socket : accepted) {
+            socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                final var socket = server.accept();
+                accepted.add(socket);
+                final var reader = new Thread(() -> readLoop(socket), "cache-transport-" + server.getLocalPort() + "-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Can't accept cache transport connection on {}", server.getLocalSocketAddress(), e);
+                }
+            }
+        }
+    }
+
+    private void readLoop(final Socket socket) {
+        try (socket; var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            final var mac = newMac();
+            for (; ; ) {
+                final int length = in.readInt();
+                if (length < 0 || length > MAXIMUM_FRAME) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                final var message = new byte[length];
+                in.readFully(message);
+                if (mac != null) {
+                    final var tag = new byte[MAC_LENGTH];
+                    in.readFully(tag);
+                    if (!MessageDigest.isEqual(tag, mac.doFinal(message))) {
+                        throw new IOException("Frame failed authentication");
+                    }
+                }
+                try {
+                    receiver.accept(message);
+                } catch (RuntimeException e) {
+                    log.warn("Cache transport receiver failed", e);
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            log.debug("Cache transport connection from {} closed", socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            log.warn("Dropping cache transport connection from {}", socket.getRemoteSocketAddress(), e);
+        } finally {
+            accepted.remove(socket);
+        }
+    }
+
+    @Nullable
+    private Mac newMac() {
+        if (secret == null) {
+            return null;
+        }
+        try {
+            final var mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(secret);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final class Peer {
+        private final InetSocketAddress address;
+        @Nullable
+        private final Mac mac = newMac();
+        private Socket socket;
+        private DataOutputStream out;
+
+        private Peer(final InetSocketAddress address) {
+            this.address = address;
+        }
+
+        private synchronized void send(final byte[] message) {
+            if (closed) {
+                return;
+            }
+            try {
+                if (out == null) {
+                    socket = new Socket();
+                    socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                    socket.setTcpNoDelay(true);
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                }
+                out.writeInt(message.length);
+                out.write(message);
+                if (mac != null) {
+                    out.write(mac.doFinal(message));
+                }
+                out.flush();
+            } catch (IOException e) {
+                log.warn("Can't send cache invalidations to {}: {}", address, e.toString());
+                close();
+            }
+        }
+
+        private synchronized void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    log.debug("Can't close connection to {}", address, e);
+                }
+            }
+            socket = null;
+            out = null;
+        }
+    }
+}
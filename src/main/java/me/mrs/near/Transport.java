@@ -0,0 +1,23 @@
+package me.mrs.near;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * Carries the invalidation messages of a {@link NearCache} between nodes.
+ * <p>
+ * Delivery is best effort: a peer that can't be reached misses the message, and the TTL of its entries bounds how
+ * long it serves them stale.
+ */
+public interface Transport extends Closeable {
+    /**
+     * Sends {@code message} to every peer, but not back to this node.
+     */
+    void broadcast(@Nonnull byte[] message);
+
+    /**
+     * Sets the receiver of messages from peers, called on a transport thread.
+     */
+    void listen(@Nonnull Consumer<byte[]> receiver);
+}
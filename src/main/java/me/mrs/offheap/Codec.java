@@ -0,0 +1,68 @@
+package me.mrs.offheap;
+
+import me.mrs.CacheKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Turns keys and values into bytes with a {@link Serializer}.
+ */
+final class Codec {
+    private final Serializer serializer;
+
+    Codec(final Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    byte[] key(final CacheKey key) {
+        try {
+            final var bytes = new ByteArrayOutputStream(32);
+            final var out = new DataOutputStream(bytes);
+            serializer.write(key.namespace(), out);
+            out.writeInt(key.size());
+            for (int i = 0; i < key.size(); i++) {
+                serializer.write(key.get(i), out);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't serialize key " + key, e);
+        }
+    }
+
+    /**
+     * @return the bytes every serialized key of {@code namespace} starts with; serialized values are self-delimiting,
+     * so no other namespace shares them
+     */
+    byte[] namespace(final String namespace) {
+        try {
+            final var bytes = new ByteArrayOutputStream(32);
+            serializer.write(namespace, new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't serialize namespace " + namespace, e);
+        }
+    }
+
+    byte[] value(final Object value) {
+        try {
+            final var bytes = new ByteArrayOutputStream(64);
+            serializer.write(value, new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't serialize value of " + value.getClass(), e);
+        }
+    }
+
+    Object read(final byte[] bytes) {
+        try {
+            return serializer.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package me.mrs.offheap;
+
+import lombok.extern.slf4j.Slf4j;
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import me.mrs.CacheSpec;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link CacheService} keeping serialized keys and values outside of the Java heap, so large caches don't add to GC
+ * work.
+ * <p>
+ * The cache is split into lock-striped segments. Each one appends records to a ring of direct {@link ByteBuffer}
+ * slabs and finds them through an open-addressing index of on-heap primitive arrays. When the ring is full the eldest
+ * slab is evicted whole, so the size bound costs one sequential scan per slab instead of per-entry bookkeeping.
+ * Expired records are dropped when read. Values are deserialized outside of the segment lock.
+ * <p>
+ * It does not coalesce concurrent misses; put it behind an on-heap cache with a {@link me.mrs.TieredCache} to get
+ * single-flight loading and keep only the hottest entries on the heap.
+ */
+@Slf4j
+public class OffHeapCache implements CacheService {
+    private static final int SEGMENTS = 16;
+    private static final int MIN_SLAB = 4 * 1024;
+    private static final int MAX_SLAB = 4 * 1024 * 1024;
+    // hash, key length, value length, expiry
+    private static final int HEADER = 4 + 4 + 4 + 8;
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Codec codec;
+    private final LongSupplier ticker;
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity off-heap bytes for records, rounded to whole slabs
+     */
+    public OffHeapCache(final long capacity) {
+        this(capacity, StandardSerializer.INSTANCE);
+    }
+
+    public OffHeapCache(final long capacity, @Nonnull final Serializer serializer) {
+        this(capacity, serializer, System::nanoTime);
+    }
+
+    protected OffHeapCache(final long capacity, @Nonnull final Serializer serializer, @Nonnull final LongSupplier ticker) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.codec = new Codec(serializer);
+        this.ticker = ticker;
+        final long perSegment = Math.max(MIN_SLAB, capacity / SEGMENTS);
+        final int slabSize = (int) Math.max(MIN_SLAB, Math.min(MAX_SLAB, perSegment / 8));
+        final int slabs = (int) Math.max(2, perSegment / slabSize);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(slabSize, slabs);
+        }
+    }
+
+    @Override
+    public Object apply(final long ttl, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        final var keyBytes = codec.key(key);
+        final int hash = spread(key.hashCode());
+        final var segment = segmentFor(hash);
+
+        final var valueBytes = segment.get(hash, keyBytes, ticker.getAsLong());
+        if (valueBytes != null) {
+            return codec.read(valueBytes);
+        }
+
+        final var value = resolver.apply(key);
+        if (value != null) {
+            segment.put(hash, keyBytes, codec.value(value), expiresAt(ttl));
+        }
+        return value;
+    }
+
+    /**
+     * Futures can't be stored off-heap: hits complete immediately and misses store the value once the resolver's
+     * future succeeded.
+     */
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(final long ttl, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        final var keyBytes = codec.key(key);
+        final int hash = spread(key.hashCode());
+        final var segment = segmentFor(hash);
+
+        final var valueBytes = segment.get(hash, keyBytes, ticker.getAsLong());
+        if (valueBytes != null) {
+            return CompletableFuture.completedFuture(codec.read(valueBytes));
+        }
+        final var future = resolver.apply(key);
+        future.thenAccept(value -> {
+            if (value != null) {
+                segment.put(hash, keyBytes, codec.value(value), expiresAt(ttl));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Looks every key up, then resolves all misses with one resolver call.
+     */
+    @Nonnull
+    @Override
+    public Map<CacheKey, Object> applyAll(@Nonnull final CacheSpec spec, @Nonnull final Collection<CacheKey> keys,
+                                          @Nonnull final Function<Set<CacheKey>, Map<CacheKey, Object>> resolver) {
+        final long now = ticker.getAsLong();
+        final var values = new HashMap<CacheKey, Object>();
+        final var missing = new LinkedHashMap<CacheKey, byte[]>();
+        for (final var key : keys) {
+            if (values.containsKey(key) || missing.containsKey(key)) {
+                continue;
+            }
+            final var keyBytes = codec.key(key);
+            final int hash = spread(key.hashCode());
+            final var valueBytes = segmentFor(hash).get(hash, keyBytes, now);
+            if (valueBytes != null) {
+                values.put(key, codec.read(valueBytes));
+            } else {
+                missing.put(key, keyBytes);
+            }
+        }
+        if (!missing.isEmpty()) {
+            final var loaded = resolver.apply(Collections.unmodifiableSet(missing.keySet()));
+            final long expiresAt = expiresAt(spec.ttl());
+            missing.forEach((key, keyBytes) -> {
+                final var value = loaded == null ? null : loaded.get(key);
+                if (value != null) {
+                    final int hash = spread(key.hashCode());
+                    segmentFor(hash).put(hash, keyBytes, codec.value(value), expiresAt);
+                    values.put(key, value);
+                }
+            });
+        }
+        final var ordered = new LinkedHashMap<CacheKey, Object>(values.size() * 2);
+        for (final var key : keys) {
+            final var value = values.get(key);
+            if (value != null) {
+                ordered.put(key, value);
+            }
+        }
+        return ordered;
+    }
+
+    @Override
+    public void invalidate(@Nonnull final CacheKey key) {
+        final int hash = spread(key.hashCode());
+        segmentFor(hash).remove(hash, codec.key(key));
+    }
+
+    /**
+     * Unindexes the records whose key starts with the serialized namespace; their bytes are reclaimed with their slab.
+     */
+    @Override
+    public void invalidateNamespace(@Nonnull final String namespace) {
+        final var prefix = codec.namespace(namespace);
+        for (final var segment : segments) {
+            segment.removeNamespace(prefix);
+        }
+    }
+
+    @Override
+    public long timeToLive(@Nonnull final CacheKey key) {
+        final int hash = spread(key.hashCode());
+        final long nanos = segmentFor(hash).timeToLive(hash, codec.key(key), ticker.getAsLong());
+        return nanos < 0 || nanos == NO_EXPIRY ? nanos : nanos / 1_000_000L;
+    }
+
+    public long size() {
+        long size = 0;
+        for (final var segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return off-heap bytes currently allocated to slabs
+     */
+    public long allocatedBytes() {
+        long bytes = 0;
+        for (final var segment : segments) {
+            bytes += segment.allocatedBytes();
+        }
+        return bytes;
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment segmentFor(final int hash) {
+        // top bits pick the segment, low bits the index slot
+        return segments[hash >>> (Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS))];
+    }
+
+    private static int spread(final int hash) {
+        final int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private long expiresAt(final long ttl) {
+        if (ttl <= 0) {
+            return NO_EXPIRY;
+        }
+        final long now = ticker.getAsLong();
+        final long nanos = ttl * 1_000_000L;
+        return nanos / 1_000_000L != ttl || now + nanos < now ? NO_EXPIRY : now + nanos;
+    }
+
+    /**
+     * One lock stripe: a ring of slabs plus the index of the records they hold, located by {@code slab << 32 | offset}.
+     */
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int slabSize;
+        private final ByteBuffer[] slabs;
+        private final int[] slabLimits;
+        private final RecordIndex index = new RecordIndex() {
+            @Override
+            boolean keyEquals(final long location, final byte[] key) {
+                final var slab = slabs[(int) (location >>> 32)];
+                final int offset = (int) location;
+                if (slab.getInt(offset + 4) != key.length) {
+                    return false;
+                }
+                final int start = offset + HEADER;
+                for (int i = 0; i < key.length; i++) {
+                    if (slab.get(start + i) != key[i]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+        private int writeSlab;
+        private int writeOffset;
+
+        private Segment(final int slabSize, final int slabCount) {
+            this.slabSize = slabSize;
+            this.slabs = new ByteBuffer[slabCount];
+            this.slabLimits = new int[slabCount];
+        }
+
+        /**
+         * @return nanoseconds the record of {@code key} has left, {@link #NO_EXPIRY} for never, {@code -1} if absent
+         * or expired
+         */
+        private long timeToLive(final int hash, final byte[] key, final long now) {
+            lock.lock();
+            try {
+                final long location = index.get(hash, key);
+                if (location == RecordIndex.EMPTY) {
+                    return -1;
+                }
+                final long expiresAt = slabs[(int) (location >>> 32)].getLong((int) location + 12);
+                return expiresAt == NO_EXPIRY ? NO_EXPIRY : now - expiresAt >= 0 ? -1 : expiresAt - now;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private byte[] get(final int hash, final byte[] key, final long now) {
+            lock.lock();
+            try {
+                final long location = index.get(hash, key);
+                if (location == RecordIndex.EMPTY) {
+                    return null;
+                }
+                final var slab = slabs[(int) (location >>> 32)];
+                final int offset = (int) location;
+                final long expiresAt = slab.getLong(offset + 12);
+                if (expiresAt != NO_EXPIRY && now - expiresAt >= 0) {
+                    index.remove(hash, key);
+                    return null;
+                }
+                final var value = new byte[slab.getInt(offset + 8)];
+                slab.duplicate()
+                        .position(offset + HEADER + slab.getInt(offset + 4))
+                        .get(value);
+                return value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(final int hash, final byte[] key, final byte[] value, final long expiresAt) {
+            final int length = HEADER + key.length + value.length;
+            if (length > slabSize) {
+                log.debug("Record of {} bytes exceeds the slab size {}, not cached", length, slabSize);
+                return;
+            }
+            lock.lock();
+            try {
+                if (writeOffset + length > slabSize || slabs[writeSlab] == null) {
+                    nextSlab();
+                }
+                final var slab = slabs[writeSlab];
+                final long location = (long) writeSlab << 32 | writeOffset;
+                slab.putInt(writeOffset, hash)
+                        .putInt(writeOffset + 4, key.length)
+                        .putInt(writeOffset + 8, value.length)
+                        .putLong(writeOffset + 12, expiresAt);
+                slab.duplicate()
+                        .position(writeOffset + HEADER)
+                        .put(key)
+                        .put(value);
+                writeOffset += length;
+                slabLimits[writeSlab] = writeOffset;
+                index.put(hash, key, location);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove(final int hash, final byte[] key) {
+            lock.lock();
+            try {
+                index.remove(hash, key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void removeNamespace(final byte[] prefix) {
+            lock.lock();
+            try {
+                index.removeIf(location -> {
+                    final var slab = slabs[(int) (location >>> 32)];
+                    final int offset = (int) location;
+                    if (slab.getInt(offset + 4) < prefix.length) {
+                        return false;
+                    }
+                    for (int i = 0; i < prefix.length; i++) {
+                        if (slab.get(offset + HEADER + i) != prefix[i]) {
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long size() {
+            lock.lock();
+            try {
+                return index.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long allocatedBytes() {
+            lock.lock();
+            try {
+                return Arrays.stream(slabs)
+                        .filter(slab -> slab != null)
+                        .count() * slabSize;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Moves writes to the next slab of the ring, evicting every record still indexed in it.
+         */
+        private void nextSlab() {
+            if (slabs[writeSlab] != null) {
+                writeSlab = (writeSlab + 1) % slabs.length;
+            }
+            if (slabs[writeSlab] == null) {
+                slabs[writeSlab] = ByteBuffer.allocateDirect(slabSize);
+            } else {
+                evictSlab(writeSlab);
+            }
+            writeOffset = 0;
+            slabLimits[writeSlab] = 0;
+        }
+
+        private void evictSlab(final int slabIndex) {
+            final var slab = slabs[slabIndex];
+            int offset = 0;
+            while (offset < slabLimits[slabIndex]) {
+                if (index.removeLocation(slab.getInt(offset), (long) slabIndex << 32 | offset)) {
+                    evictions.increment();
+                }
+                offset += HEADER + slab.getInt(offset + 4) + slab.getInt(offset + 8);
+            }
+        }
+    }
+}
@@ -0,0 +1,481 @@
+package me.mrs.offheap;
+
+import lombok.extern.slf4j.Slf4j;
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import me.mrs.CacheSpec;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link CacheService} persisting entries to a memory-mapped snapshot file, so a restarted process starts warm.
+ * <p>
+ * Opening the snapshot rebuilds its index from record headers and keys without deserializing any value; values are
+ * deserialized on first access. Expiry is kept as wall-clock time, so restored entries expire when they originally
+ * would have. Misses are serialized and appended by a background writer: {@code apply} never waits for the file, and
+ * writes are dropped when the writer can't keep up. Until appended, queued values are served from memory, and an
+ * invalidation cancels the queued writes of its key. Once dead records outweigh the live ones, the writer rewrites
+ * the file with the live records only, so a long-running process doesn't grow it without bound.
+ * <p>
+ * Concurrent misses of a key are resolved once; still, values are deserialized on every hit, so put it behind an
+ * on-heap cache with a {@link me.mrs.TieredCache}.
+ */
+@Slf4j
+public class PersistentCache implements CacheService, Closeable {
+    private static final int DEFAULT_REGION_SIZE = 4 * 1024 * 1024;
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+    private static final long FORCE_INTERVAL_MILLIS = 1000;
+    private static final Write STOP = new Write(null, null, 0);
+
+    private final Codec codec;
+    private final LongSupplier clock;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BlockingQueue<Write> writes = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Map<ByteBuffer, Write> pending = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    // replaced by compaction, under the write lock
+    private SnapshotFile file;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public PersistentCache(@Nonnull final Path path) throws IOException {
+        this(path, StandardSerializer.INSTANCE);
+    }
+
+    public PersistentCache(@Nonnull final Path path, @Nonnull final Serializer serializer) throws IOException {
+        this(path, serializer, DEFAULT_REGION_SIZE, System::currentTimeMillis);
+    }
+
+    /**
+     * @param regionSize bytes mapped at a time, which also bounds the size of a record
+     * @param clock      wall-clock milliseconds
+     */
+    protected PersistentCache(@Nonnull final Path path, @Nonnull final Serializer serializer, final int regionSize,
+                              @Nonnull final LongSupplier clock) throws IOException {
+        this.codec = new Codec(serializer);
+        this.clock = clock;
+        this.file = SnapshotFile.open(path, regionSize, clock.getAsLong());
+        this.writer = new Thread(this::writeLoop, "cache-snapshot-" + path.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public Object apply(final long ttl, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+        final var keyBytes = codec.key(key);
+        final var cached = read(keyBytes);
+        if (cached != null) {
+            return cached;
+        }
+        final var id = ByteBuffer.wrap(keyBytes);
+        final var load = new CompletableFuture<Object>();
+        final var current = loading.putIfAbsent(id, load);
+        if (current != null) {
+            return join(current);
+        }
+        try {
+            var value = read(keyBytes);
+            if (value == null) {
+                value = resolver.apply(key);
+                if (value != null) {
+                    enqueue(new Write(keyBytes, value, expiresAt(ttl)));
+                }
+            }
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(id, load);
+        }
+    }
+
+    /**
+     * Futures can't be persisted: hits complete immediately and misses are written once the resolver's future
+     * succeeded. Callers missing the same key meanwhile share that future.
+     */
+    @Nonnull
+    @Override
+    public CompletableFuture<Object> applyAsync(final long ttl, @Nonnull final CacheKey key,
+                                                @Nonnull final Function<CacheKey, CompletableFuture<Object>> resolver) {
+        final var keyBytes = codec.key(key);
+        final var cached = read(keyBytes);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        final var id = ByteBuffer.wrap(keyBytes);
+        final var load = new CompletableFuture<Object>();
+        final var current = loading.putIfAbsent(id, load);
+        if (current != null) {
+            return current;
+        }
+        final long expiresAt = expiresAt(ttl);
+        final CompletableFuture<Object> future;
+        try {
+            future = resolver.apply(key);
+        } catch (RuntimeException | Error e) {
+            loading.remove(id, load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+        future.whenComplete((value, failure) -> {
+            if (failure != null) {
+                loading.remove(id, load);
+                load.completeExceptionally(failure);
+                return;
+            }
+            if (value != null) {
+                enqueue(new Write(keyBytes, value, expiresAt));
+            }
+            loading.remove(id, load);
+            load.complete(value);
+        });
+        return future;
+    }
+
+    /**
+     * Looks every key up, then resolves all misses with one resolver call.
+     */
+    @Nonnull
+    @Override
+    public Map<CacheKey, Object> applyAll(@Nonnull final CacheSpec spec, @Nonnull final Collection<CacheKey> keys,
+                                          @Nonnull final Function<Set<CacheKey>, Map<CacheKey, Object>> resolver) {
+        final var values = new HashMap<CacheKey, Object>();
+        final var missing = new LinkedHashMap<CacheKey, byte[]>();
+        for (final var key : keys) {
+            if (values.containsKey(key) || missing.containsKey(key)) {
+                continue;
+            }
+            final var keyBytes = codec.key(key);
+            final var cached = read(keyBytes);
+            if (cached != null) {
+                values.put(key, cached);
+            } else {
+                missing.put(key, keyBytes);
+            }
+        }
+        if (!missing.isEmpty()) {
+            final var loaded = resolver.apply(Collections.unmodifiableSet(missing.keySet()));
+            final long expiresAt = expiresAt(spec.ttl());
+            missing.forEach((key, keyBytes) -> {
+                final var value = loaded == null ? null : loaded.get(key);
+                if (value != null) {
+                    enqueue(new Write(keyBytes, value, expiresAt));
+                    values.put(key, value);
+                }
+            });
+        }
+        final var ordered = new LinkedHashMap<CacheKey, Object>(values.size() * 2);
+        for (final var key : keys) {
+            final var value = values.get(key);
+            if (value != null) {
+                ordered.put(key, value);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Hides the entry at once and appends its removal, so it stays removed after a restart. A write of the key still
+     * queued is cancelled: the writer only appends a write that is still the pending one of its key.
+     */
+    @Override
+    public void invalidate(@Nonnull final CacheKey key) {
+        final var keyBytes = codec.key(key);
+        pending.remove(ByteBuffer.wrap(keyBytes));
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                file.remove(keyBytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Like {@link #invalidate(CacheKey)} for every key of {@code namespace}, found by the serialized namespace their
+     * bytes start with.
+     */
+    @Override
+    public void invalidateNamespace(@Nonnull final String namespace) {
+        final var prefix = ByteBuffer.wrap(codec.namespace(namespace));
+        pending.keySet()
+                .removeIf(id -> id.remaining() >= prefix.remaining() && id.duplicate()
+                        .limit(prefix.remaining())
+                        .equals(prefix));
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                file.removePrefix(prefix.array());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long timeToLive(@Nonnull final CacheKey key) {
+        if (closed) {
+            return -1;
+        }
+        final var keyBytes = codec.key(key);
+        final long now = clock.getAsLong();
+        final var write = pending.get(ByteBuffer.wrap(keyBytes));
+        if (write != null) {
+            return write.expiresAt == SnapshotFile.NO_EXPIRY ? Long.MAX_VALUE : now >= write.expiresAt ? -1 : write.expiresAt - now;
+        }
+        lock.readLock().lock();
+        try {
+            return closed ? -1 : file.timeToLive(keyBytes, now);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return file.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return writes dropped because the writer was behind or the cache closed
+     */
+    public long droppedWrites() {
+        return dropped.sum();
+    }
+
+    /**
+     * Waits until every write queued so far is in the file.
+     */
+    public void flush() throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+        final var done = new CompletableFuture<Void>();
+        writes.put(new Write(null, done, 0));
+        try {
+            done.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the queued entries, syncs the file and releases it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writes.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            file.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the value queued for {@code keyBytes} or else the one in the file, {@code null} when absent or expired
+     */
+    private Object read(final byte[] keyBytes) {
+        if (closed) {
+            return null;
+        }
+        final var write = pending.get(ByteBuffer.wrap(keyBytes));
+        final long now = clock.getAsLong();
+        if (write != null) {
+            return write.expiresAt == SnapshotFile.NO_EXPIRY || now < write.expiresAt ? write.value : null;
+        }
+        final byte[] valueBytes;
+        lock.readLock().lock();
+        try {
+            valueBytes = closed ? null : file.get(keyBytes, now);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return valueBytes == null ? null : codec.read(valueBytes);
+    }
+
+    private void enqueue(final Write write) {
+        final var id = ByteBuffer.wrap(write.keyBytes);
+        pending.put(id, write);
+        if (closed || !writes.offer(write)) {
+            pending.remove(id, write);
+            dropped.increment();
+        }
+    }
+
+    private static Object join(final CompletableFuture<Object> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Appends queued writes in batches until stopped; the writer thread is never interrupted, as that would close
+     * the file channel.
+     */
+    private void writeLoop() {
+        final var batch = new ArrayList<Write>();
+        long lastForce = clock.getAsLong();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(writes.take());
+            } catch (InterruptedException e) {
+                log.warn("Cache snapshot writer interrupted, {} writes pending", writes.size());
+                return;
+            }
+            writes.drainTo(batch);
+            running = write(batch);
+            batch.clear();
+            if (clock.getAsLong() - lastForce >= FORCE_INTERVAL_MILLIS) {
+                lock.readLock().lock();
+                try {
+                    file.force();
+                } finally {
+                    lock.readLock().unlock();
+                }
+                lastForce = clock.getAsLong();
+            }
+        }
+    }
+
+    /**
+     * Serializes each value before taking the write lock, which is held for one append only, so readers wait for a
+     * single record rather than for a whole batch.
+     *
+     * @return {@code false} once the batch held {@link #STOP}
+     */
+    private boolean write(final List<Write> batch) {
+        for (final var write : batch) {
+            if (write == STOP) {
+                return false;
+            }
+            if (write.keyBytes == null) {
+                compactIfDue();
+                ((CompletableFuture<?>) write.value).complete(null);
+                continue;
+            }
+            final var id = ByteBuffer.wrap(write.keyBytes);
+            if (pending.get(id) != write) {
+                continue;
+            }
+            try {
+                final var valueBytes = codec.value(write.value);
+                lock.writeLock().lock();
+                try {
+                    if (pending.get(id) == write) {
+                        file.put(write.keyBytes, valueBytes, write.expiresAt);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Can't persist cache entry of {}", write.value.getClass(), e);
+            } finally {
+                pending.remove(id, write);
+            }
+        }
+        compactIfDue();
+        return true;
+    }
+
+    /**
+     * Rewrites the file with its live records once dead ones outweigh them; readers wait meanwhile.
+     */
+    private void compactIfDue() {
+        lock.readLock().lock();
+        try {
+            if (!file.needsCompaction()) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            if (!closed && file.needsCompaction()) {
+                file = file.compact(clock.getAsLong());
+            }
+        } catch (IOException e) {
+            log.warn("Can't compact cache snapshot", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long expiresAt(final long ttl) {
+        if (ttl <= 0) {
+            return SnapshotFile.NO_EXPIRY;
+        }
+        final long now = clock.getAsLong();
+        return now + ttl < now ? SnapshotFile.NO_EXPIRY : now + ttl;
+    }
+
+    /**
+     * Queued append; without key bytes it is a flush marker carrying the future to complete.
+     */
+    private static final class Write {
+        private final byte[] keyBytes;
+        private final Object value;
+        private final long expiresAt;
+
+        private Write(final byte[] keyBytes, final Object value, final long expiresAt) {
+            this.keyBytes = keyBytes;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package me.mrs.offheap;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Open-addressing hash index from serialized keys to the location of their record, kept in two primitive arrays.
+ * <p>
+ * Only hashes and locations are stored; keys are compared against the record through {@link #keyEquals(long, byte[])}.
+ * Not thread-safe.
+ */
+abstract class RecordIndex {
+    static final long EMPTY = -1;
+    private static final long DELETED = -2;
+
+    private int[] hashes = new int[64];
+    private long[] locations = newLocations(64);
+    private int size;
+    private int deleted;
+
+    /**
+     * @return whether the record at {@code location} has the serialized {@code key}
+     */
+    abstract boolean keyEquals(long location, byte[] key);
+
+    final long get(final int hash, final byte[] key) {
+        final int slot = find(hash, key);
+        return slot < 0 ? EMPTY : locations[slot];
+    }
+
+    final void put(final int hash, final byte[] key, final long location) {
+        final int slot = find(hash, key);
+        if (slot >= 0) {
+            locations[slot] = location;
+            return;
+        }
+        if ((size + deleted + 1) * 2 > locations.length) {
+            rehash(size * 4 > locations.length ? locations.length * 2 : locations.length);
+        }
+        final int mask = locations.length - 1;
+        int free = hash & mask;
+        while (locations[free] >= 0) {
+            free = (free + 1) & mask;
+        }
+        if (locations[free] == DELETED) {
+            deleted--;
+        }
+        hashes[free] = hash;
+        locations[free] = location;
+        size++;
+    }
+
+    final boolean remove(final int hash, final byte[] key) {
+        final int slot = find(hash, key);
+        if (slot >= 0) {
+            delete(slot);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the entry pointing at {@code location}, unless its key was written again elsewhere since.
+     */
+    final boolean removeLocation(final int hash, final long location) {
+        final int mask = locations.length - 1;
+        for (int slot = hash & mask; locations[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (locations[slot] == location) {
+                delete(slot);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    final void forEachLocation(final LongConsumer action) {
+        for (final long location : locations) {
+            if (location >= 0) {
+                action.accept(location);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry whose location matches {@code filter}.
+     */
+    final void removeIf(final LongPredicate filter) {
+        for (int slot = 0; slot < locations.length; slot++) {
+            if (locations[slot] >= 0 && filter.test(locations[slot])) {
+                delete(slot);
+            }
+        }
+    }
+
+    final int size() {
+        return size;
+    }
+
+    private int find(final int hash, final byte[] key) {
+        final int mask = locations.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final long location = locations[slot];
+            if (location == EMPTY) {
+                return -1;
+            }
+            if (location >= 0 && hashes[slot] == hash && keyEquals(location, key)) {
+                return slot;
+            }
+        }
+    }
+
+    private void delete(final int slot) {
+        locations[slot] = DELETED;
+        size--;
+        deleted++;
+    }
+
+    private void rehash(final int capacity) {
+        final var oldHashes = hashes;
+        final var oldLocations = locations;
+        hashes = new int[capacity];
+        locations = newLocations(capacity);
+        deleted = 0;
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldLocations.length; i++) {
+            if (oldLocations[i] >= 0) {
+                int slot = oldHashes[i] & mask;
+                while (locations[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                locations[slot] = oldLocations[i];
+            }
+        }
+    }
+
+    private static long[] newLocations(final int capacity) {
+        final var array = new long[capacity];
+        Arrays.fill(array, EMPTY);
+        return array;
+    }
+}
@@ -0,0 +1,19 @@
+package me.mrs.offheap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Converts cached values and key arguments to and from the bytes stored by {@link OffHeapCache}.
+ * <p>
+ * Equal values must serialize to equal bytes, since serialized keys are compared byte by byte.
+ */
+public interface Serializer {
+    void write(@Nullable Object value, @Nonnull DataOutput out) throws IOException;
+
+    @Nullable
+    Object read(@Nonnull DataInput in) throws IOException;
+}
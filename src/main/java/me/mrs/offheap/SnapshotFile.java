@@ -0,0 +1,360 @@
+package me.mrs.offheap;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only file of serialized records, mapped in fixed-size regions and found through a {@link RecordIndex} of
+ * file positions.
+ * <p>
+ * Opening a file only scans record headers and keys to rebuild the index; values are read when asked for. Records
+ * never straddle regions, a record type byte is written last so a torn tail reads as the end of data, and writing a
+ * key again or removing it appends a newer record. Not thread-safe.
+ */
+@Slf4j
+final class SnapshotFile implements Closeable {
+    private static final int MAGIC = 0x4d525343;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER = 4 + 4;
+    // type, hash, key length, value length, expiry
+    private static final int HEADER = 1 + 4 + 4 + 4 + 8;
+    private static final byte END = 0;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte PADDING = 3;
+    static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int regionSize;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private final RecordIndex index = new RecordIndex() {
+        @Override
+        boolean keyEquals(final long location, final byte[] key) {
+            final var region = region(location);
+            final int offset = offset(location);
+            if (region.getInt(offset + 5) != key.length) {
+                return false;
+            }
+            final int start = offset + HEADER;
+            for (int i = 0; i < key.length; i++) {
+                if (region.get(start + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    };
+    private long writePosition = FILE_HEADER;
+    private long liveBytes;
+
+    private SnapshotFile(final Path path, final FileChannel channel, final int regionSize) {
+        this.path = path;
+        this.channel = channel;
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Opens or creates the file at {@code path}, dropping records expired at {@code now} from the index. The file is
+     * rewritten without dead records when they outweigh the live ones.
+     */
+    static SnapshotFile open(@Nonnull final Path path, final int regionSize, final long now) throws IOException {
+        final var file = openUncompacted(path, regionSize, now);
+        return file.needsCompaction() ? file.compact(now) : file;
+    }
+
+    /**
+     * @return whether the file grew past one region and dead records outweigh the live ones
+     */
+    boolean needsCompaction() {
+        return writePosition > regionSize && liveBytes * 2 < writePosition;
+    }
+
+    private static SnapshotFile openUncompacted(final Path path, final int regionSize, final long now) throws IOException {
+        final var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        final var file = new SnapshotFile(path, channel, regionSize);
+        try {
+            final long size = channel.size();
+            if (size > 0 && !file.hasValidHeader(size)) {
+                log.warn("Ignoring unreadable cache snapshot {}", path);
+                channel.truncate(0);
+            }
+            if (channel.size() == 0) {
+                file.mapRegion(0).putInt(0, MAGIC).putInt(4, VERSION);
+            } else {
+                for (long start = 0; start < channel.size(); start += regionSize) {
+                    file.mapRegion(start / regionSize);
+                }
+                file.scan(now);
+            }
+            return file;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return milliseconds the record of {@code key} has left at {@code now}, {@link #NO_EXPIRY} for never, {@code -1}
+     * when absent or expired
+     */
+    long timeToLive(final byte[] key, final long now) {
+        final long location = index.get(hash(key), key);
+        if (location == RecordIndex.EMPTY) {
+            return -1;
+        }
+        final long expiresAt = region(location).getLong(offset(location) + 13);
+        return expiresAt == NO_EXPIRY ? NO_EXPIRY : now >= expiresAt ? -1 : expiresAt - now;
+    }
+
+    /**
+     * @return the value of {@code key}, or {@code null} when absent or expired at {@code now}
+     */
+    byte[] get(final byte[] key, final long now) {
+        final int hash = hash(key);
+        final long location = index.get(hash, key);
+        if (location == RecordIndex.EMPTY) {
+            return null;
+        }
+        final var region = region(location);
+        final int offset = offset(location);
+        final long expiresAt = region.getLong(offset + 13);
+        if (expiresAt != NO_EXPIRY && now >= expiresAt) {
+            return null;
+        }
+        final var value = new byte[region.getInt(offset + 9)];
+        region.duplicate()
+                .position(offset + HEADER + key.length)
+                .get(value);
+        return value;
+    }
+
+    void put(final byte[] key, final byte[] value, final long expiresAt) throws IOException {
+        final int hash = hash(key);
+        final long location = append(PUT, hash, key, value, expiresAt);
+        if (location >= 0) {
+            final long previous = index.get(hash, key);
+            if (previous != RecordIndex.EMPTY) {
+                liveBytes -= length(previous);
+            }
+            index.put(hash, key, location);
+            liveBytes += length(location);
+        }
+    }
+
+    void remove(final byte[] key) throws IOException {
+        final int hash = hash(key);
+        final long previous = index.get(hash, key);
+        if (previous != RecordIndex.EMPTY) {
+            index.remove(hash, key);
+            liveBytes -= length(previous);
+            append(REMOVE, hash, key, new byte[0], NO_EXPIRY);
+        }
+    }
+
+    /**
+     * Removes every key starting with {@code prefix}, appending a removal record for each.
+     */
+    void removePrefix(final byte[] prefix) throws IOException {
+        final var keys = new ArrayList<byte[]>();
+        index.forEachLocation(location -> {
+            final var region = region(location);
+            final int offset = offset(location);
+            final int keyLength = region.getInt(offset + 5);
+            if (keyLength < prefix.length) {
+                return;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (region.get(offset + HEADER + i) != prefix[i]) {
+                    return;
+                }
+            }
+            final var key = new byte[keyLength];
+            region.duplicate()
+                    .position(offset + HEADER)
+                    .get(key);
+            keys.add(key);
+        });
+        for (final var key : keys) {
+            remove(key);
+        }
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * @return bytes used by records, live or not
+     */
+    long length() {
+        return writePosition;
+    }
+
+    void force() {
+        for (final var region : regions) {
+            region.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private boolean hasValidHeader(final long size) throws IOException {
+        if (size < FILE_HEADER) {
+            return false;
+        }
+        final var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER);
+        return header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+    }
+
+    private void scan(final long now) {
+        long position = FILE_HEADER;
+        while (position / regionSize < regions.size()) {
+            final var region = regions.get((int) (position / regionSize));
+            final int offset = (int) (position % regionSize);
+            if (regionSize - offset < HEADER) {
+                position += regionSize - offset;
+                continue;
+            }
+            final byte type = region.get(offset);
+            final int keyLength = region.getInt(offset + 5);
+            final int valueLength = region.getInt(offset + 9);
+            final long length = (long) HEADER + keyLength + valueLength;
+            if (type == END || type > PADDING || keyLength < 0 || valueLength < 0 || offset + length > regionSize) {
+                break;
+            }
+            if (type != PADDING) {
+                final int hash = region.getInt(offset + 1);
+                final var key = new byte[keyLength];
+                region.duplicate().position(offset + HEADER).get(key);
+                final long previous = index.get(hash, key);
+                if (previous != RecordIndex.EMPTY) {
+                    index.remove(hash, key);
+                    liveBytes -= length(previous);
+                }
+                final long expiresAt = region.getLong(offset + 13);
+                if (type == PUT && (expiresAt == NO_EXPIRY || now < expiresAt)) {
+                    index.put(hash, key, position);
+                    liveBytes += length;
+                }
+            }
+            position += length;
+        }
+        writePosition = position;
+        log.debug("Opened cache snapshot {} with {} records in {} bytes", path, index.size(), writePosition);
+    }
+
+    /**
+     * Copies the live records to a new file, in file order, and replaces this one with it. This file is closed, so
+     * callers must switch to the returned one.
+     */
+    SnapshotFile compact(final long now) throws IOException {
+        final var locations = new long[index.size()];
+        final int[] count = {0};
+        index.forEachLocation(location -> locations[count[0]++] = location);
+        Arrays.sort(locations);
+
+        final var target = path.resolveSibling(path.getFileName() + ".compact");
+        Files.deleteIfExists(target);
+        try (var compacted = openUncompacted(target, regionSize, now)) {
+            for (final long location : locations) {
+                final var region = region(location);
+                final int offset = offset(location);
+                final var key = new byte[region.getInt(offset + 5)];
+                final var value = new byte[region.getInt(offset + 9)];
+                region.duplicate()
+                        .position(offset + HEADER)
+                        .get(key)
+                        .get(value);
+                compacted.put(key, value, region.getLong(offset + 13));
+            }
+        }
+        log.debug("Compacting cache snapshot {} from {} to {} live bytes", path, writePosition, liveBytes);
+        close();
+        Files.move(target, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return openUncompacted(path, regionSize, now);
+    }
+
+    /**
+     * @return the position of the new record, or {@code -1} when it can't fit in a region
+     */
+    private long append(final byte type, final int hash, final byte[] key, final byte[] value, final long expiresAt)
+            throws IOException {
+        final int length = HEADER + key.length + value.length;
+        if (length > regionSize) {
+            log.debug("Record of {} bytes exceeds the region size {}, not persisted", length, regionSize);
+            return -1;
+        }
+        int offset = (int) (writePosition % regionSize);
+        if (offset + length > regionSize) {
+            if (regionSize - offset >= HEADER) {
+                regions.get((int) (writePosition / regionSize))
+                        .putInt(offset + 5, 0)
+                        .putInt(offset + 9, regionSize - offset - HEADER)
+                        .put(offset, PADDING);
+            }
+            writePosition += regionSize - offset;
+            offset = 0;
+        }
+        final long regionIndex = writePosition / regionSize;
+        final var region = regionIndex < regions.size() ? regions.get((int) regionIndex) : mapRegion(regionIndex);
+        region.putInt(offset + 1, hash)
+                .putInt(offset + 5, key.length)
+                .putInt(offset + 9, value.length)
+                .putLong(offset + 13, expiresAt);
+        region.duplicate()
+                .position(offset + HEADER)
+                .put(key)
+                .put(value);
+        region.put(offset, type);
+
+        final long location = writePosition;
+        writePosition += length;
+        return location;
+    }
+
+    /**
+     * Hash of the serialized key, as {@link me.mrs.CacheKey#hashCode()} isn't stable across processes.
+     */
+    private static int hash(final byte[] key) {
+        final int h = Arrays.hashCode(key) * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private MappedByteBuffer mapRegion(final long regionIndex) throws IOException {
+        final var region = channel.map(FileChannel.MapMode.READ_WRITE, regionIndex * regionSize, regionSize);
+        regions.add(region);
+        return region;
+    }
+
+    private MappedByteBuffer region(final long location) {
+        return regions.get((int) (location / regionSize));
+    }
+
+    private int offset(final long location) {
+        return (int) (location % regionSize);
+    }
+
+    private long length(final long location) {
+        final var region = region(location);
+        final int offset = offset(location);
+        return (long) HEADER + region.getInt(offset + 5) + region.getInt(offset + 9);
+    }
+}
@@ -0,0 +1,95 @@
+package me.mrs.offheap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tagged {@link Serializer} with compact encodings for {@link String}, boxed integers and {@code byte[]}, falling back
+ * to Java serialization for any other {@link Serializable}.
+ */
+public class StandardSerializer implements Serializer {
+    public static final StandardSerializer INSTANCE = new StandardSerializer();
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte BYTES = 4;
+    private static final byte SERIALIZED = 5;
+
+    @Override
+    public void write(@Nullable final Object value, @Nonnull final DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeBytes(((String) value).getBytes(StandardCharsets.UTF_8), out);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes((byte[]) value, out);
+        } else if (value instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            final var bytes = new ByteArrayOutputStream();
+            try (var objects = new ObjectOutputStream(bytes)) {
+                objects.writeObject(value);
+            }
+            writeBytes(bytes.toByteArray(), out);
+        } else {
+            throw new NotSerializableException(value.getClass()
+                    .getName());
+        }
+    }
+
+    @Nullable
+    @Override
+    public Object read(@Nonnull final DataInput in) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case BYTES:
+                return readBytes(in);
+            case SERIALIZED:
+                try (var objects = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+                    return objects.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            default:
+                throw new IOException("Unknown tag " + tag);
+        }
+    }
+
+    private static void writeBytes(final byte[] bytes, final DataOutput out) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(final DataInput in) throws IOException {
+        final var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,615 @@
+package me.mrs.processor;
+
+import me.mrs.CacheSpec;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Generates a caching decorator for every class declaring {@code @Cacheable} methods.
+ * <p>
+ * The decorator {@code <Class>CacheDecorator} implements the interfaces of the class and wraps an instance of it. Its
+ * cacheable methods build their {@code CacheKey} from the key parameters and call the delegate directly, with the
+ * namespace and {@code CacheSpec} hard-coded as constants, so nothing is resolved reflectively at runtime. Every other
+ * interface method just delegates. Bulk methods, returning a {@code Map} keyed by the elements of their only
+ * {@code @Cacheable.Key} collection parameter, are cached per element through {@code BulkLoad}.
+ * <p>
+ * Methods annotated with {@code @CacheEvict} or {@code @CachePut} call the delegate, then evict the entry of their key
+ * or cache their result, keyed like a {@code @Cacheable} method with the same key parameters. For a method returning a
+ * future that happens once the future completed normally.
+ */
+@SupportedAnnotationTypes({CacheableProcessor.CACHEABLE, CacheableProcessor.CACHE_EVICT, CacheableProcessor.CACHE_PUT})
+public class CacheableProcessor extends AbstractProcessor {
+    static final String CACHEABLE = "me.mrs.Cacheable";
+    static final String CACHE_EVICT = "me.mrs.CacheEvict";
+    static final String CACHE_PUT = "me.mrs.CachePut";
+    private static final String KEY = "me.mrs.Cacheable.Key";
+    private static final String SUFFIX = "CacheDecorator";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        final Set<TypeElement> classes = new LinkedHashSet<>();
+        for (final var name : List.of(CACHEABLE, CACHE_EVICT, CACHE_PUT)) {
+            final var annotation = processingEnv.getElementUtils()
+                    .getTypeElement(name);
+            if (annotation == null) {
+                continue;
+            }
+            for (final Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                final var type = (TypeElement) element.getEnclosingElement();
+                if (type.getKind() == ElementKind.CLASS && !type.getModifiers()
+                        .contains(Modifier.ABSTRACT)) {
+                    classes.add(type);
+                }
+            }
+        }
+        for (final TypeElement type : classes) {
+            try {
+                new Generator(type).write();
+            } catch (IOException | RuntimeException e) {
+                messager().printMessage(Diagnostic.Kind.ERROR, "Can't generate cache decorator: " + e, type);
+            }
+        }
+        return false;
+    }
+
+    private Messager messager() {
+        return processingEnv.getMessager();
+    }
+
+    private final class Generator {
+        private final Elements elements = processingEnv.getElementUtils();
+        private final Types types = processingEnv.getTypeUtils();
+        private final Filer filer = processingEnv.getFiler();
+        private final TypeElement type;
+        private final List<String> constants = new ArrayList<>();
+        private final List<String> methods = new ArrayList<>();
+
+        private Generator(final TypeElement type) {
+            this.type = type;
+        }
+
+        private void write() throws IOException {
+            final var interfaces = type.getInterfaces();
+            if (interfaces.isEmpty()) {
+                messager().printMessage(Diagnostic.Kind.WARNING, "@Cacheable methods of a class without interfaces can't be decorated", type);
+                return;
+            }
+
+            final Map<String, ExecutableElement> interfaceMethods = new LinkedHashMap<>();
+            for (final TypeMirror iface : interfaces) {
+                final var element = (TypeElement) types.asElement(iface);
+                for (final ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(element))) {
+                    if (method.getModifiers()
+                            .contains(Modifier.STATIC) || method.getEnclosingElement()
+                            .getKind() != ElementKind.INTERFACE) {
+                        continue;
+                    }
+                    interfaceMethods.putIfAbsent(signature(method), method);
+                }
+            }
+            for (final ExecutableElement method : interfaceMethods.values()) {
+                methods.add(method(method, implementation(method)));
+            }
+
+            final var packageName = elements.getPackageOf(type)
+                    .getQualifiedName()
+                    .toString();
+            final var simpleName = type.getSimpleName() + SUFFIX;
+            final var source = filer.createSourceFile((packageName.isEmpty() ? "" : packageName + '.') + simpleName, type);
+            try (var out = new PrintWriter(source.openWriter())) {
+                if (!packageName.isEmpty()) {
+                    out.println("package " + packageName + ';');
+                    out.println();
+                }
+                out.println("/**");
+                out.println(" * Caching decorator of {@link " + type.getQualifiedName() + "}, generated by {@code " + CacheableProcessor.class.getName() + "}.");
+                out.println(" */");
+                out.println("@javax.annotation.processing.Generated(\"" + CacheableProcessor.class.getName() + "\")");
+                out.println("@SuppressWarnings(\"unchecked\")");
+                out.println("public final class " + simpleName + " implements " + interfaces.stream()
+                        .map(TypeMirror::toString)
+                        .collect(Collectors.joining(", ")) + " {");
+                constants.forEach(out::println);
+                out.println("    private final " + type.getQualifiedName() + " delegate;");
+                out.println("    private final javax.inject.Provider<me.mrs.CacheService> cacheService;");
+                out.println();
+                out.println("    public " + simpleName + "(final " + type.getQualifiedName() + " delegate, final javax.inject.Provider<me.mrs.CacheService> cacheService) {");
+                out.println("        this.delegate = delegate;");
+                out.println("        this.cacheService = cacheService;");
+                out.println("    }");
+                methods.forEach(out::print);
+                out.println("}");
+            }
+        }
+
+        private ExecutableElement implementation(final ExecutableElement method) {
+            for (final ExecutableElement candidate : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+                if (candidate.equals(method) || elements.overrides(candidate, method, type)) {
+                    return candidate;
+                }
+            }
+            return method;
+        }
+
+        private String method(final ExecutableElement method, final ExecutableElement implementation) {
+            final var executable = (ExecutableType) types.asMemberOf((DeclaredType) type.asType(), method);
+            final var parameters = method.getParameters();
+            final var returnType = executable.getReturnType();
+            final var name = method.getSimpleName()
+                    .toString();
+
+            final var declaration = new StringBuilder("\n    @Override\n    public ");
+            if (!method.getTypeParameters()
+                    .isEmpty()) {
+                declaration.append(method.getTypeParameters()
+                        .stream()
+                        .map(this::typeParameter)
+                        .collect(Collectors.joining(", ", "<", "> ")));
+            }
+            declaration.append(returnType)
+                    .append(' ')
+                    .append(name)
+                    .append('(');
+            final List<String> names = new ArrayList<>();
+            for (int i = 0; i < parameters.size(); i++) {
+                final var parameterName = parameters.get(i)
+                        .getSimpleName()
+                        .toString();
+                names.add(parameterName);
+                declaration.append(i == 0 ? "" : ", ")
+                        .append("final ")
+                        .append(executable.getParameterTypes()
+                                .get(i))
+                        .append(' ')
+                        .append(parameterName);
+            }
+            declaration.append(')');
+            if (!executable.getThrownTypes()
+                    .isEmpty()) {
+                declaration.append(executable.getThrownTypes()
+                        .stream()
+                        .map(TypeMirror::toString)
+                        .collect(Collectors.joining(", ", " throws ", "")));
+            }
+            declaration.append(" {\n");
+
+            final var call = "delegate." + name + '(' + String.join(", ", names) + ')';
+            final var cacheable = annotation(implementation, CACHEABLE);
+            final var isVoid = returnType.getKind() == TypeKind.VOID;
+            final var evict = annotation(implementation, CACHE_EVICT);
+            if (evict != null) {
+                return declaration.append(evict(evict, implementation, names, call, returnType))
+                        .toString();
+            }
+            final var put = annotation(implementation, CACHE_PUT);
+            if (put != null) {
+                return declaration.append(put(put, implementation, names, call, returnType))
+                        .toString();
+            }
+            if (cacheable == null || isVoid) {
+                declaration.append("        ")
+                        .append(isVoid ? "" : "return ")
+                        .append(call)
+                        .append(";\n    }\n");
+                return declaration.toString();
+            }
+
+            final int body = declaration.length();
+            final var constant = constantName(name, "_SPEC");
+            constants.add("    private static final me.mrs.CacheSpec " + constant + " = " + spec(cacheable) + ';');
+            final var namespace = stringValue(cacheable, "namespace");
+            final var timer = constantName(name, "_LOADS");
+            constants.add("    private static final me.mrs.metrics.LoadTimer " + timer + " = me.mrs.metrics.CacheMetrics.loadTimer("
+                    + elements.getConstantExpression(namespace) + ", " + types.erasure(type.asType()) + ".class, \"" + name + '"'
+                    + implementation.getParameters()
+                    .stream()
+                    .map(p -> ", " + types.erasure(p.asType()) + ".class")
+                    .collect(Collectors.joining()) + ");");
+            final int bulk = bulkParameter(implementation, returnType);
+            if (bulk >= 0) {
+                final var arguments = new ArrayList<>(names);
+                arguments.set(bulk, "(" + executable.getParameterTypes()
+                        .get(bulk) + ") missing");
+                final var bulkCall = "delegate." + name + '(' + String.join(", ", arguments) + ')';
+                declaration.append("        if (")
+                        .append(names.get(bulk))
+                        .append(" == null) {\n            return ")
+                        .append(call)
+                        .append(";\n        }\n        return (")
+                        .append(returnType)
+                        .append(") (java.util.Map<?, ?>) me.mrs.BulkLoad.apply(cacheService.get(), ")
+                        .append(constant)
+                        .append(", ")
+                        .append(elements.getConstantExpression(namespace))
+                        .append(", ")
+                        .append(names.get(bulk))
+                        .append(",\n                missing -> ")
+                        .append(executable.getThrownTypes()
+                                .isEmpty() ? bulkCall : "me.mrs.processor.Decorators.unchecked(() -> " + bulkCall + ')')
+                        .append(", ")
+                        .append(timer)
+                        .append(");\n    }\n");
+                return rethrowDeclared(declaration, body, executable);
+            }
+            final var key = key(namespace, implementation, names);
+            final var loader = executable.getThrownTypes()
+                    .isEmpty() ? call : "me.mrs.processor.Decorators.unchecked(() -> " + call + ')';
+            if (isFuture(returnType)) {
+                declaration.append("        return (")
+                        .append(returnType)
+                        .append(") (java.util.concurrent.CompletableFuture<?>) cacheService.get()\n")
+                        .append("                .applyAsync(")
+                        .append(constant)
+                        .append(", ")
+                        .append(key)
+                        .append(", k -> ")
+                        .append(timer)
+                        .append(".recordOnCompletion(System.nanoTime(), (java.util.concurrent.CompletableFuture<Object>) (java.util.concurrent.CompletableFuture<?>) ")
+                        .append(loader)
+                        .append("));\n    }\n");
+            } else {
+                final var resolver = new StringBuilder("k -> {\n")
+                        .append("                    final long start = System.nanoTime();\n")
+                        .append("                    try {\n")
+                        .append("                        return ")
+                        .append(loader)
+                        .append(";\n                    } finally {\n                        ")
+                        .append(timer)
+                        .append(".record(System.nanoTime() - start);\n")
+                        .append("                    }\n")
+                        .append("                }");
+                final int primitive = primitiveKeyParameter(implementation, cacheable);
+                if (primitive >= 0) {
+                    final var keyType = implementation.getParameters()
+                            .get(primitive)
+                            .asType();
+                    final var isLong = keyType.getKind() == TypeKind.LONG || "java.lang.Long".equals(keyType.toString());
+                    declaration.append("        final me.mrs.CacheService cache = cacheService.get();\n")
+                            .append("        final me.mrs.")
+                            .append(isLong ? "LongCacheService" : "IntCacheService")
+                            .append(" primitive = cache.")
+                            .append(isLong ? "longKeys(" : "intKeys(")
+                            .append(elements.getConstantExpression(namespace))
+                            .append(");\n        if (primitive != null")
+                            .append(keyType.getKind()
+                                    .isPrimitive() ? "" : " && " + names.get(primitive) + " != null")
+                            .append(") {\n            return (")
+                            .append(returnType)
+                            .append(") primitive.apply(")
+                            .append(constant)
+                            .append(", ")
+                            .append(names.get(primitive))
+                            .append(", ")
+                            .append(resolver)
+                            .append(");\n        }\n        return (")
+                            .append(returnType)
+                            .append(") cache\n");
+                } else {
+                    declaration.append("        return (")
+                            .append(returnType)
+                            .append(") cacheService.get()\n");
+                }
+                declaration.append("                .apply(")
+                        .append(constant)
+                        .append(", ")
+                        .append(key)
+                        .append(", ")
+                        .append(resolver)
+                        .append(");\n    }\n");
+            }
+            return rethrowDeclared(declaration, body, executable);
+        }
+
+        /**
+         * Wraps the method body from {@code body} on in a block rethrowing the checked exceptions the method declares,
+         * which {@code Decorators.unchecked} wrapped to get them through the cache.
+         */
+        private String rethrowDeclared(final StringBuilder declaration, final int body, final ExecutableType executable) {
+            if (executable.getThrownTypes()
+                    .isEmpty()) {
+                return declaration.toString();
+            }
+            final var statements = declaration.substring(body, declaration.length() - "    }\n".length());
+            declaration.setLength(body);
+            declaration.append("        try {\n");
+            statements.lines()
+                    .forEach(line -> declaration.append("    ")
+                            .append(line)
+                            .append('\n'));
+            declaration.append("        } catch (java.lang.reflect.UndeclaredThrowableException e) {\n");
+            for (final TypeMirror thrown : executable.getThrownTypes()) {
+                final var type = types.erasure(thrown);
+                declaration.append("            if (e.getUndeclaredThrowable() instanceof ")
+                        .append(type)
+                        .append(") {\n                throw (")
+                        .append(type)
+                        .append(") e.getUndeclaredThrowable();\n            }\n");
+            }
+            return declaration.append("            throw e;\n        }\n    }\n")
+                    .toString();
+        }
+
+        private String evict(final AnnotationMirror evict, final ExecutableElement implementation, final List<String> names, final String call,
+                             final TypeMirror returnType) {
+            final var namespace = stringValue(evict, "namespace");
+            final var eviction = Boolean.TRUE.equals(value(evict, "allEntries").getValue())
+                    ? "cacheService.get().invalidateNamespace(" + elements.getConstantExpression(namespace) + ")"
+                    : "cacheService.get().invalidate(" + key(namespace, implementation, names) + ")";
+            final var isVoid = returnType.getKind() == TypeKind.VOID;
+            final var body = new StringBuilder();
+            if (Boolean.TRUE.equals(value(evict, "beforeInvocation").getValue())) {
+                body.append("        ")
+                        .append(eviction)
+                        .append(";\n        ")
+                        .append(isVoid ? "" : "return ")
+                        .append(call)
+                        .append(";\n    }\n");
+            } else if (isVoid) {
+                body.append("        ")
+                        .append(call)
+                        .append(";\n        ")
+                        .append(eviction)
+                        .append(";\n    }\n");
+            } else if (isFuture(returnType)) {
+                body.append("        return (")
+                        .append(returnType)
+                        .append(") me.mrs.processor.Decorators.evictOnCompletion(")
+                        .append(call)
+                        .append(", () -> ")
+                        .append(eviction)
+                        .append(");\n    }\n");
+            } else {
+                body.append("        final ")
+                        .append(returnType)
+                        .append(" result = ")
+                        .append(call)
+                        .append(";\n        ")
+                        .append(eviction)
+                        .append(";\n        return result;\n    }\n");
+            }
+            return body.toString();
+        }
+
+        private String put(final AnnotationMirror put, final ExecutableElement implementation, final List<String> names, final String call,
+                           final TypeMirror returnType) {
+            final var name = implementation.getSimpleName()
+                    .toString();
+            final var constant = constantName(name, "_SPEC");
+            final var unit = TimeUnit.valueOf(stringValue(put, "unit"));
+            constants.add("    private static final me.mrs.CacheSpec " + constant + " = me.mrs.CacheSpec.ofTtl(" + ttl(put, unit) + ");");
+            final var key = key(stringValue(put, "namespace"), implementation, names);
+            if (returnType.getKind() == TypeKind.VOID) {
+                return "        " + call + ";\n        cacheService.get().put(" + constant + ", " + key + ", null);\n    }\n";
+            }
+            return "        return (" + returnType + ") me.mrs.processor.Decorators." + (isFuture(returnType) ? "putOnCompletion" : "put")
+                    + "(cacheService.get(), " + constant + ", " + key + ", " + call + ");\n    }\n";
+        }
+
+        private String typeParameter(final TypeParameterElement parameter) {
+            final var bounds = parameter.getBounds()
+                    .stream()
+                    .map(TypeMirror::toString)
+                    .filter(bound -> !"java.lang.Object".equals(bound))
+                    .collect(Collectors.joining(" & "));
+            return parameter.getSimpleName() + (bounds.isEmpty() ? "" : " extends " + bounds);
+        }
+
+        private String key(final String namespace, final ExecutableElement implementation, final List<String> names) {
+            final List<String> keyNames = new ArrayList<>();
+            final var implementationParameters = implementation.getParameters();
+            for (int i = 0; i < implementationParameters.size(); i++) {
+                if (annotation(implementationParameters.get(i), KEY) != null) {
+                    keyNames.add(names.get(i));
+                }
+            }
+            if (keyNames.isEmpty()) {
+                keyNames.addAll(names);
+            }
+            final var literal = elements.getConstantExpression(namespace);
+            if (keyNames.size() <= 3) {
+                return "me.mrs.CacheKey.of(" + literal + keyNames.stream()
+                        .map(n -> ", " + n)
+                        .collect(Collectors.joining()) + ')';
+            }
+            return "me.mrs.CacheKey.of(" + literal + ", new Object[]{" + String.join(", ", keyNames) + "}, null)";
+        }
+
+        /**
+         * @return index of the only key parameter if it is a {@code long} or {@code int}, or their wrapper, and the
+         * method needs neither background reloads nor negative caching; otherwise {@code -1}
+         */
+        private int primitiveKeyParameter(final ExecutableElement implementation, final AnnotationMirror cacheable) {
+            if (longValue(cacheable, "refreshAfter") > 0 || longValue(cacheable, "staleFor") > 0 || longValue(cacheable, "nullTtl") > 0
+                    || longValue(cacheable, "exceptionTtl") > 0) {
+                return -1;
+            }
+            final var parameters = implementation.getParameters();
+            int key = -1;
+            for (int i = 0; i < parameters.size(); i++) {
+                if (annotation(parameters.get(i), KEY) != null) {
+                    if (key >= 0) {
+                        return -1;
+                    }
+                    key = i;
+                }
+            }
+            if (key < 0) {
+                if (parameters.size() != 1) {
+                    return -1;
+                }
+                key = 0;
+            }
+            final var type = parameters.get(key)
+                    .asType();
+            final var name = type.toString();
+            return type.getKind() == TypeKind.LONG || type.getKind() == TypeKind.INT || "java.lang.Long".equals(name)
+                    || "java.lang.Integer".equals(name) ? key : -1;
+        }
+
+        private int bulkParameter(final ExecutableElement implementation, final TypeMirror returnType) {
+            if (!"java.util.Map".equals(types.erasure(returnType)
+                    .toString())) {
+                return -1;
+            }
+            final var parameters = implementation.getParameters();
+            int bulk = -1;
+            for (int i = 0; i < parameters.size(); i++) {
+                if (annotation(parameters.get(i), KEY) != null) {
+                    if (bulk >= 0) {
+                        return -1;
+                    }
+                    bulk = i;
+                }
+            }
+            if (bulk < 0) {
+                return -1;
+            }
+            final var type = types.erasure(parameters.get(bulk)
+                    .asType())
+                    .toString();
+            return "java.util.Collection".equals(type) || "java.util.List".equals(type) || "java.util.Set".equals(type) ? bulk : -1;
+        }
+
+        private String ttl(final AnnotationMirror annotation, final TimeUnit unit) {
+            final long ttl = longValue(annotation, "ttl");
+            return ttl == CacheSpec.DEFAULT_TTL ? "me.mrs.CacheSpec.DEFAULT_TTL" : unit.toMillis(ttl) + "L";
+        }
+
+        private String spec(final AnnotationMirror cacheable) {
+            final var unit = TimeUnit.valueOf(stringValue(cacheable, "unit"));
+            final var spec = new StringBuilder("me.mrs.CacheSpec.ofTtl(").append(ttl(cacheable, unit))
+                    .append(')');
+            final var refreshAfter = unit.toMillis(longValue(cacheable, "refreshAfter"));
+            if (refreshAfter > 0) {
+                spec.append(".withRefreshAfter(")
+                        .append(refreshAfter)
+                        .append("L)");
+            }
+            final var staleFor = unit.toMillis(longValue(cacheable, "staleFor"));
+            if (staleFor > 0) {
+                spec.append(".withStaleFor(")
+                        .append(staleFor)
+                        .append("L)");
+            }
+            final var nullTtl = unit.toMillis(longValue(cacheable, "nullTtl"));
+            if (nullTtl > 0) {
+                spec.append(".withNullTtl(")
+                        .append(nullTtl)
+                        .append("L)");
+            }
+            final var exceptionTtl = unit.toMillis(longValue(cacheable, "exceptionTtl"));
+            if (exceptionTtl > 0) {
+                spec.append(".withExceptionTtl(")
+                        .append(exceptionTtl)
+                        .append('L');
+                for (final var type : (List<?>) value(cacheable, "cacheExceptions").getValue()) {
+                    spec.append(", ")
+                            .append(types.erasure((TypeMirror) ((AnnotationValue) type).getValue()))
+                            .append(".class");
+                }
+                spec.append(')');
+            }
+            return spec.toString();
+        }
+
+        private String constantName(final String methodName, final String suffix) {
+            final var base = methodName.replaceAll("([a-z0-9])([A-Z])", "$1_$2")
+                    .toUpperCase() + suffix;
+            var name = base;
+            for (int i = 2; containsConstant(name); i++) {
+                name = base + i;
+            }
+            return name;
+        }
+
+        private boolean containsConstant(final String name) {
+            return constants.stream()
+                    .anyMatch(c -> c.contains(" " + name + " = "));
+        }
+
+        private boolean isFuture(final TypeMirror returnType) {
+            final var future = elements.getTypeElement("java.util.concurrent.CompletableFuture");
+            return returnType.getKind() == TypeKind.DECLARED && types.isAssignable(types.erasure(returnType), types.erasure(future.asType()));
+        }
+
+        private String signature(final ExecutableElement method) {
+            return method.getSimpleName() + method.getParameters()
+                    .stream()
+                    .map(p -> types.erasure(p.asType())
+                            .toString())
+                    .collect(Collectors.joining(",", "(", ")"));
+        }
+    }
+
+    private AnnotationMirror annotation(final Element element, final String annotationType) {
+        for (final AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            final var annotation = (TypeElement) mirror.getAnnotationType()
+                    .asElement();
+            if (annotation.getQualifiedName()
+                    .contentEquals(annotationType)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private AnnotationValue value(final AnnotationMirror mirror, final String name) {
+        for (final var entry : processingEnv.getElementUtils()
+                .getElementValuesWithDefaults(mirror)
+                .entrySet()) {
+            if (entry.getKey()
+                    .getSimpleName()
+                    .contentEquals(name)) {
+                return entry.getValue();
+            }
+        }
+        throw new IllegalArgumentException("No " + name + " in " + mirror);
+    }
+
+    private String stringValue(final AnnotationMirror mirror, final String name) {
+        final var value = value(mirror, name).getValue();
+        return value instanceof VariableElement ? ((VariableElement) value).getSimpleName()
+                .toString() : value.toString();
+    }
+
+    private long longValue(final AnnotationMirror mirror, final String name) {
+        return ((Number) value(mirror, name).getValue()).longValue();
+    }
+}
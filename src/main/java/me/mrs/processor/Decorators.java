@@ -0,0 +1,65 @@
+package me.mrs.processor;
+
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import me.mrs.CacheSpec;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runtime support of the decorators generated by {@link CacheableProcessor}.
+ */
+public final class Decorators {
+    private Decorators() {
+    }
+
+    /**
+     * Calls a delegate method declaring checked exceptions from inside a cache resolver, wrapping them in an
+     * {@link UndeclaredThrowableException} the decorator unwraps again once out of the cache.
+     */
+    public static <T> T unchecked(final Callable<T> call) {
+        try {
+            return call.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    /**
+     * Caches the result of a {@code @CachePut} method, evicting the entry when it is {@code null}.
+     */
+    public static <T> T put(final CacheService cache, final CacheSpec spec, final CacheKey key, final T value) {
+        cache.put(spec, key, value);
+        return value;
+    }
+
+    /**
+     * Caches the value of the future returned by a {@code @CachePut} method once it completed normally, as if loaded by
+     * {@link CacheService#applyAsync}; the returned future completes after that.
+     */
+    public static <T> CompletableFuture<T> putOnCompletion(final CacheService cache, final CacheSpec spec, final CacheKey key,
+                                                           final CompletableFuture<T> future) {
+        return future == null ? null : future.thenApply(value -> {
+            cache.invalidate(key);
+            if (value != null) {
+                cache.applyAsync(spec, key, k -> CompletableFuture.completedFuture(value));
+            }
+            return value;
+        });
+    }
+
+    /**
+     * Runs the eviction of a {@code @CacheEvict} method once the future it returned completed normally; the returned
+     * future completes after that.
+     */
+    public static <T> CompletableFuture<T> evictOnCompletion(final CompletableFuture<T> future, final Runnable eviction) {
+        return future == null ? null : future.thenApply(value -> {
+            eviction.run();
+            return value;
+        });
+    }
+}
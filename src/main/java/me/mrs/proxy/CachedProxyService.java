@@ -1,33 +1,40 @@
 package me.mrs.proxy;
 
 import lombok.extern.slf4j.Slf4j;
+import me.mrs.AccessListener;
+import me.mrs.CacheKey;
+import me.mrs.CachePlan;
 import me.mrs.CacheService;
-import me.mrs.Cacheable;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Provider;
-import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 @Slf4j
 public class CachedProxyService implements InvocationHandler {
     private final Provider<CacheService> cacheService;
-    private final Map<Method, List<Integer>> parametersIndexMap;
     private final Object target;
+    private final Class<?> targetClass;
+    @Nullable
+    private final AccessListener listener;
 
     public CachedProxyService(final Provider<CacheService> cacheService, final Object target) {
-        parametersIndexMap = new ConcurrentHashMap<>();
+        this(cacheService, target, null);
+    }
+
+    /**
+     * @param listener notified of the keys of cached calls and the time their loads took, bulk calls excepted
+     */
+    public CachedProxyService(final Provider<CacheService> cacheService, final Object target, @Nullable final AccessListener listener) {
         this.cacheService = cacheService;
         this.target = target;
+        this.targetClass = target.getClass();
+        this.listener = listener;
     }
 
     @SuppressWarnings("unchecked")
@@ -37,71 +44,80 @@ public class CachedProxyService implements InvocationHandler {
                 .getClassLoader(), interfaces, new CachedProxyService(cacheService, base));
     }
 
-    @Override
-    public Object invoke(@Nonnull final Object me, @Nonnull final Method method, @Nonnull final Object[] arguments) throws Throwable {
-        var targetMethod = target.getClass()
-                .getMethod(method.getName(), method.getParameterTypes());
+    @SuppressWarnings("unchecked")
+    @Nonnull
+    public static <T> T instance(@Nonnull T base, @Nonnull final Provider<CacheService> cacheService, @Nonnull final AccessListener listener,
+                                 final Class<T>... interfaces) {
+        return (T) Proxy.newProxyInstance(base.getClass()
+                .getClassLoader(), interfaces, new CachedProxyService(cacheService, base, listener));
+    }
 
-        @Nullable final var annotation = targetMethod.getAnnotation(Cacheable.class);
-        if (annotation == null) {
-            return method.invoke(target, arguments);
+    @Override
+    public Object invoke(@Nonnull final Object me, @Nonnull final Method method, @Nullable final Object[] arguments) throws Throwable {
+        var plan = CachePlan.of(targetClass, method);
+        if (plan.updatesCache()) {
+            return plan.update(cacheService.get(), arguments, () -> plan.invoke(target, arguments));
+        }
+        if (!plan.isCacheable()) {
+            return plan.invoke(target, arguments);
         }
 
-        var key = createKey(annotation, targetMethod, arguments);
-
-        return cacheService.get()
-                .apply(annotation.ttl(), key, keyResolver(method, arguments));
+        if (plan.isBulk()) {
+            return plan.applyAll(cacheService.get(), arguments, a -> invoke(plan, a, null));
+        }
+        if (listener != null && listener.sampled()) {
+            listener.access(plan.key(arguments));
+        }
+        if (plan.isAsync()) {
+            return cacheService.get()
+                    .applyAsync(plan.spec(), plan.key(arguments), asyncResolver(plan, arguments));
+        }
+        return plan.apply(cacheService.get(), arguments, keyResolver(plan, arguments));
     }
 
-    private Function<String, Object> keyResolver(final Method method, final Object[] arguments) {
+    @SuppressWarnings("unchecked")
+    private Function<CacheKey, CompletableFuture<Object>> asyncResolver(final CachePlan plan, final Object[] arguments) {
         return k -> {
-            try {
-                log.trace("Retrieving key {}", k);
-                return method.invoke(target, arguments);
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                log.error("Can't invoke method {}", method, e);
-                throw new CacheRuntimeException(e);
+            final long start = System.nanoTime();
+            final var future = plan.loadTimer()
+                    .recordOnCompletion(start, (CompletableFuture<Object>) invoke(plan, arguments, k));
+            if (listener != null) {
+                future.whenComplete((v, e) -> listener.load(k, System.nanoTime() - start));
             }
+            return future;
         };
     }
 
-    private String createKey(@Nonnull final Cacheable annotation, @Nonnull final Method targetMethod, @Nonnull final Object[] arguments) {
-        var cachePrefix = annotation.namespace();
-        var argumentsIndex = parametersIndexMap.computeIfAbsent(targetMethod, CachedProxyService::extractParametersIndex);
-        return createKey(cachePrefix, arguments, argumentsIndex);
-    }
-
-    private static String createKey(final String cachePrefix, final Object[] arguments, final List<Integer> argumentsIndex) {
-        var sb = new StringBuilder(cachePrefix);
-        for (var i : argumentsIndex) {
-            sb.append('.')
-                    .append(arguments[i]);
-        }
-        return sb.toString();
-    }
-
-    @SuppressWarnings("java:S881")
-    private static List<Integer> extractParametersIndex(final Method serviceMethod) {
-        final Annotation[][] annotations = serviceMethod.getParameterAnnotations();
-        var index = new ArrayList<Integer>(annotations.length);
-        for (int pi = annotations.length; --pi >= 0; ) {
-            for (int ai = annotations[pi].length; --ai >= 0; ) {
-                if (annotations[pi][ai].annotationType() == Cacheable.Key.class) {
-                    index.add(pi);
-                    break;
+    private Function<CacheKey, Object> keyResolver(final CachePlan plan, final Object[] arguments) {
+        return k -> {
+            final long start = System.nanoTime();
+            try {
+                return invoke(plan, arguments, k);
+            } finally {
+                final long elapsed = System.nanoTime() - start;
+                plan.loadTimer()
+                        .record(elapsed);
+                if (listener != null) {
+                    listener.load(k, elapsed);
                 }
             }
+        };
+    }
+
+    private Object invoke(final CachePlan plan, final Object[] arguments, @Nullable final CacheKey k) {
+        try {
+            log.trace("Retrieving key {}", k);
+            return plan.invoke(target, arguments);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            log.error("Can't invoke method {}", plan.method(), e);
+            throw new CacheRuntimeException(e);
         }
-        if (index.isEmpty()) {
-            for (int pi = annotations.length; --pi >= 0; ) {
-                index.add(pi);
-            }
-        }
-        return index;
     }
 
     private static class CacheRuntimeException extends RuntimeException {
-        public CacheRuntimeException(final ReflectiveOperationException e) {
+        public CacheRuntimeException(final Throwable e) {
             super(e);
         }
     }
@@ -0,0 +1,83 @@
+package me.mrs.trace;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Outcome of replaying the accesses of one namespace against one policy and capacity.
+ */
+public final class SimulationResult {
+    private final String namespace;
+    private final TraceSimulator.Policy policy;
+    private final long capacity;
+    private final long accesses;
+    private final long misses;
+    private final long backendNanos;
+    private final long evictions;
+
+    SimulationResult(final String namespace, final TraceSimulator.Policy policy, final long capacity, final long accesses, final long misses,
+                     final long backendNanos, final long evictions) {
+        this.namespace = namespace;
+        this.policy = policy;
+        this.capacity = capacity;
+        this.accesses = accesses;
+        this.misses = misses;
+        this.backendNanos = backendNanos;
+        this.evictions = evictions;
+    }
+
+    @Nonnull
+    public String namespace() {
+        return namespace;
+    }
+
+    @Nonnull
+    public TraceSimulator.Policy policy() {
+        return policy;
+    }
+
+    /**
+     * @return entries the cache could hold, {@code 0} for {@link TraceSimulator.Policy#UNBOUNDED}
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    public long accesses() {
+        return accesses;
+    }
+
+    public long hits() {
+        return accesses - misses;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * @return {@link #hits()} over {@link #accesses()}, {@code 1} without accesses
+     */
+    public double hitRatio() {
+        return accesses == 0 ? 1 : (double) hits() / accesses;
+    }
+
+    /**
+     * @return modelled time the backend spent loading the misses, in nanoseconds
+     */
+    public long backendNanos() {
+        return backendNanos;
+    }
+
+    /**
+     * @return entries the policy evicted to stay within its capacity
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-16s %-10s %10s %10d %7.2f%% %12.3fms %10d", namespace, policy, capacity == 0 ? "-" : Long.toString(capacity), accesses,
+                hitRatio() * 100, backendNanos / 1e6, evictions);
+    }
+}
@@ -0,0 +1,54 @@
+package me.mrs.trace;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Access to a key, or load of it, read back from a trace.
+ */
+public final class TraceEvent {
+    private final String namespace;
+    private final int key;
+    private final long time;
+    private final long cost;
+
+    /**
+     * @param key  hash of the {@link me.mrs.CacheKey}
+     * @param time nanoseconds, on the recording process' {@link System#nanoTime()} scale
+     * @param cost duration of a load in nanoseconds, negative for an access
+     */
+    public TraceEvent(@Nonnull final String namespace, final int key, final long time, final long cost) {
+        this.namespace = namespace;
+        this.key = key;
+        this.time = time;
+        this.cost = cost;
+    }
+
+    @Nonnull
+    public String namespace() {
+        return namespace;
+    }
+
+    public int key() {
+        return key;
+    }
+
+    public long time() {
+        return time;
+    }
+
+    /**
+     * @return whether the event is a load, whose duration is {@link #cost()}, rather than an access
+     */
+    public boolean isLoad() {
+        return cost >= 0;
+    }
+
+    public long cost() {
+        return cost;
+    }
+
+    @Override
+    public String toString() {
+        return (isLoad() ? "load " : "access ") + namespace + '#' + Integer.toHexString(key) + '@' + time + (isLoad() ? " in " + cost + "ns" : "");
+    }
+}
@@ -0,0 +1,54 @@
+package me.mrs.trace;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of a trace file: a magic number and a version, then records of a type byte and varint fields.
+ * <p>
+ * A namespace record assigns the next id to a namespace name the first time it appears. Access and load records hold
+ * that id, the key's 32-bit hash and the zigzag-encoded nanoseconds since the previous record; a load record then holds
+ * its duration in nanoseconds.
+ */
+final class TraceFormat {
+    static final int MAGIC = 0x4d525354;
+    static final byte VERSION = 1;
+    static final int HEADER = 4 + 1;
+    static final byte NAMESPACE = 1;
+    static final byte ACCESS = 2;
+    static final byte LOAD = 3;
+    /**
+     * Largest access or load record: type, namespace id, key, time delta and cost.
+     */
+    static final int MAXIMUM_RECORD = 1 + 5 + 4 + 10 + 10;
+
+    private TraceFormat() {
+    }
+
+    static void putVarLong(final ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarLong(final ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
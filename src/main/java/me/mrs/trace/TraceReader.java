@@ -0,0 +1,126 @@
+package me.mrs.trace;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static me.mrs.trace.TraceFormat.LOAD;
+import static me.mrs.trace.TraceFormat.MAXIMUM_RECORD;
+import static me.mrs.trace.TraceFormat.NAMESPACE;
+import static me.mrs.trace.TraceFormat.getVarLong;
+import static me.mrs.trace.TraceFormat.unzigzag;
+
+/**
+ * Reads the events of a trace written by {@link TraceRecorder} in order, through a buffer refilled from a
+ * {@link FileChannel}. A record cut short at the end of the file, as left by a process that died while recording, ends
+ * the trace. Not thread-safe.
+ */
+public final class TraceReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Map<Integer, String> namespaces = new HashMap<>();
+    private long time;
+    private boolean eof;
+
+    private TraceReader(final FileChannel channel) {
+        this.channel = channel;
+        buffer.flip();
+    }
+
+    /**
+     * @throws IOException if {@code path} isn't a trace of a supported version
+     */
+    @Nonnull
+    public static TraceReader open(@Nonnull final Path path) throws IOException {
+        final var reader = new TraceReader(FileChannel.open(path, StandardOpenOption.READ));
+        try {
+            reader.fill(TraceFormat.HEADER);
+            if (reader.buffer.remaining() < TraceFormat.HEADER || reader.buffer.getInt() != TraceFormat.MAGIC) {
+                throw new IOException("Not a cache trace: " + path);
+            }
+            final byte version = reader.buffer.get();
+            if (version != TraceFormat.VERSION) {
+                throw new IOException("Unknown cache trace version " + version + ": " + path);
+            }
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the next event, {@code null} at the end of the trace
+     */
+    @Nullable
+    public TraceEvent next() throws IOException {
+        for (; ; ) {
+            fill(MAXIMUM_RECORD);
+            if (!buffer.hasRemaining()) {
+                return null;
+            }
+            final int start = buffer.position();
+            try {
+                final byte type = buffer.get();
+                if (type == NAMESPACE) {
+                    getVarLong(buffer);
+                    final int length = (int) getVarLong(buffer);
+                    // the name may not be buffered yet, read the record again once it is
+                    buffer.position(start);
+                    fill(length + 11);
+                    buffer.get();
+                    final int id = (int) getVarLong(buffer);
+                    getVarLong(buffer);
+                    final var name = new byte[length];
+                    buffer.get(name);
+                    namespaces.put(id, new String(name, StandardCharsets.UTF_8));
+                    continue;
+                }
+                final var namespace = namespaces.get((int) getVarLong(buffer));
+                final int key = buffer.getInt();
+                time += unzigzag(getVarLong(buffer));
+                final long cost = type == LOAD ? getVarLong(buffer) : -1;
+                if (namespace == null) {
+                    throw new IOException("Undefined namespace in cache trace");
+                }
+                return new TraceEvent(namespace, key, time, cost);
+            } catch (BufferUnderflowException e) {
+                // torn tail
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads more of the file unless {@code bytes} are buffered already or the file ended.
+     */
+    private void fill(final int bytes) throws IOException {
+        if (buffer.remaining() >= bytes || eof) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes && buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                eof = true;
+                break;
+            }
+        }
+        buffer.flip();
+    }
+}
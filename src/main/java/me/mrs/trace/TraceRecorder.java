@@ -0,0 +1,308 @@
+package me.mrs.trace;
+
+import lombok.extern.slf4j.Slf4j;
+import me.mrs.AccessListener;
+import me.mrs.CacheKey;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static me.mrs.trace.TraceFormat.ACCESS;
+import static me.mrs.trace.TraceFormat.LOAD;
+import static me.mrs.trace.TraceFormat.MAXIMUM_RECORD;
+import static me.mrs.trace.TraceFormat.NAMESPACE;
+import static me.mrs.trace.TraceFormat.putVarLong;
+import static me.mrs.trace.TraceFormat.zigzag;
+
+/**
+ * Records the keys served by an interceptor, and how long their loads took, to a compact binary trace replayed by
+ * {@link TraceSimulator}.
+ * <p>
+ * Calling threads only timestamp an event and offer it to a bounded queue. A background writer encodes the queued
+ * events into a direct buffer and writes it to a {@link FileChannel} once full, or after a second without events, so
+ * recording never waits for the disk; events are dropped when the writer can't keep up. Keys are recorded as their
+ * 32-bit hash, which is enough to replay their distribution.
+ * <p>
+ * On busy services, a {@code sampleRate} above one records only one request in that many, chosen with a thread-local
+ * random number before the key is even built, so the other requests neither allocate an event nor contend on the
+ * queue. Loads are all recorded.
+ */
+@Slf4j
+public class TraceRecorder implements AccessListener, Closeable {
+    private static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_FLUSH_MILLIS = 1000;
+    private static final Event STOP = new Event(null, 0, 0, 0, null);
+
+    private final FileChannel channel;
+    private final LongSupplier ticker;
+    private final int sampleRate;
+    private final BlockingQueue<Event> events;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    // owned by the writer thread
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Map<String, Integer> namespaces = new HashMap<>();
+    private long previousTime;
+    // time of the last record written to the file, and whether the header was
+    private long writtenTime;
+    private boolean started;
+    private volatile boolean closed;
+
+    public TraceRecorder(@Nonnull final Path path) throws IOException {
+        this(path, 1);
+    }
+
+    /**
+     * @param sampleRate one in how many requests is recorded, a power of two
+     */
+    public TraceRecorder(@Nonnull final Path path, final int sampleRate) throws IOException {
+        this(path, DEFAULT_QUEUE_CAPACITY, sampleRate, System::nanoTime);
+    }
+
+    /**
+     * @param queueCapacity events waiting for the writer before new ones are dropped
+     * @param ticker        nanosecond time source
+     */
+    protected TraceRecorder(@Nonnull final Path path, final int queueCapacity, final int sampleRate, @Nonnull final LongSupplier ticker)
+            throws IOException {
+        if (sampleRate <= 0 || Integer.bitCount(sampleRate) != 1) {
+            throw new IllegalArgumentException("sampleRate must be a power of two: " + sampleRate);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.ticker = ticker;
+        this.sampleRate = sampleRate;
+        this.events = new LinkedBlockingQueue<>(queueCapacity);
+        putHeader();
+        this.writer = new Thread(this::writeLoop, "cache-trace-" + path.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public boolean sampled() {
+        return sampleRate == 1 || (ThreadLocalRandom.current()
+                .nextInt() & (sampleRate - 1)) == 0;
+    }
+
+    /**
+     * Records a request for {@code key}, whether it hits or not.
+     */
+    @Override
+    public void access(@Nonnull final CacheKey key) {
+        enqueue(new Event(key.namespace(), key.hashCode(), ticker.getAsLong(), -1, null));
+    }
+
+    /**
+     * Records a load of {@code key} that took {@code nanos}.
+     */
+    @Override
+    public void load(@Nonnull final CacheKey key, final long nanos) {
+        enqueue(new Event(key.namespace(), key.hashCode(), ticker.getAsLong(), Math.max(0, nanos), null));
+    }
+
+    /**
+     * @return events dropped because the writer was behind or the recorder closed
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Waits until every event queued so far is written to the file.
+     */
+    public void flush() throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+        final var done = new CompletableFuture<Void>();
+        events.put(new Event(null, 0, 0, 0, done));
+        try {
+            done.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the queued events and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            events.put(STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void enqueue(final Event event) {
+        if (closed || !events.offer(event)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Encodes queued events in batches until stopped; the writer thread is never interrupted, as that would close the
+     * file channel.
+     */
+    private void writeLoop() {
+        final var batch = new ArrayList<Event>();
+        boolean running = true;
+        while (running) {
+            try {
+                final var first = events.poll(IDLE_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    drain();
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                log.warn("Cache trace writer interrupted, {} events pending", events.size());
+                return;
+            } catch (IOException e) {
+                log.warn("Can't write cache trace", e);
+                reset();
+                continue;
+            }
+            events.drainTo(batch);
+            running = write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * @return {@code false} once the batch held {@link #STOP}
+     */
+    private boolean write(final List<Event> batch) {
+        try {
+            for (final var event : batch) {
+                if (event == STOP) {
+                    drain();
+                    return false;
+                }
+                if (event.namespace == null) {
+                    drain();
+                    event.done.complete(null);
+                    continue;
+                }
+                encode(event);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Can't write cache trace", e);
+            reset();
+            for (final var event : batch) {
+                if (event.done != null) {
+                    event.done.completeExceptionally(e);
+                }
+            }
+            return batch.stream()
+                    .noneMatch(event -> event == STOP);
+        }
+        return true;
+    }
+
+    private void encode(final Event event) throws IOException {
+        var id = namespaces.get(event.namespace);
+        if (id == null) {
+            final var name = event.namespace.getBytes(StandardCharsets.UTF_8);
+            if (name.length + 11 > BUFFER_SIZE) {
+                dropped.increment();
+                return;
+            }
+            id = namespaces.size();
+            ensure(name.length + 11);
+            buffer.put(NAMESPACE);
+            putVarLong(buffer, id);
+            putVarLong(buffer, name.length);
+            buffer.put(name);
+            namespaces.put(event.namespace, id);
+        }
+        ensure(MAXIMUM_RECORD);
+        buffer.put(event.cost < 0 ? ACCESS : LOAD);
+        putVarLong(buffer, id);
+        buffer.putInt(event.key);
+        putVarLong(buffer, zigzag(event.time - previousTime));
+        previousTime = event.time;
+        if (event.cost >= 0) {
+            putVarLong(buffer, event.cost);
+        }
+    }
+
+    /**
+     * Drops the buffered records after a failed write; namespaces are defined again, as their records may be lost, and
+     * time deltas count from the last record written. The header is buffered again if it wasn't written yet.
+     */
+    private void reset() {
+        buffer.clear();
+        namespaces.clear();
+        previousTime = writtenTime;
+        if (!started) {
+            putHeader();
+        }
+    }
+
+    private void putHeader() {
+        buffer.putInt(TraceFormat.MAGIC)
+                .put(TraceFormat.VERSION);
+    }
+
+    private void ensure(final int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        started = true;
+        writtenTime = previousTime;
+    }
+
+    /**
+     * Queued event; without a namespace it is a flush marker carrying the future to complete.
+     */
+    private static final class Event {
+        private final String namespace;
+        private final int key;
+        private final long time;
+        private final long cost;
+        private final CompletableFuture<Void> done;
+
+        private Event(final String namespace, final int key, final long time, final long cost, final CompletableFuture<Void> done) {
+            this.namespace = namespace;
+            this.key = key;
+            this.time = time;
+            this.cost = cost;
+            this.done = done;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package me.mrs.trace;
+
+import me.mrs.BoundedCache;
+import me.mrs.CacheKey;
+import me.mrs.CacheSpec;
+import me.mrs.LongCacheService;
+import me.mrs.MemoryCache;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Offline replay of a trace written by {@link TraceRecorder} against the eviction policies of this library, at several
+ * capacities, to size each namespace from its recorded traffic.
+ * <p>
+ * Every namespace is replayed into caches of its own, one per policy and capacity, reporting its hit ratio, the
+ * evictions its policy made and the modelled backend load: each miss costs the mean load time recorded for its key,
+ * or else for its namespace. Entries never expire during a replay, and loads run on the replaying thread, so the
+ * policies see the exact order of the trace.
+ * <p>
+ * Run as {@code TraceSimulator <trace> <capacity>...} to print one line per namespace, policy and capacity.
+ */
+public final class TraceSimulator {
+    private final Path trace;
+    private Map<String, Costs> costs;
+
+    public TraceSimulator(@Nonnull final Path trace) {
+        this.trace = trace;
+    }
+
+    public enum Policy {
+        /**
+         * {@link MemoryCache} evicting nothing, the best hit ratio any capacity can reach.
+         */
+        UNBOUNDED,
+        /**
+         * W-TinyLFU of a {@link BoundedCache}.
+         */
+        W_TINY_LFU,
+        /**
+         * CLOCK of the tables {@link BoundedCache#longKeys(String)} keeps for keys made of a single number.
+         */
+        CLOCK
+    }
+
+    /**
+     * Replays the trace unbounded once, then against every other policy at every capacity.
+     *
+     * @return results ordered by namespace, policy and capacity
+     */
+    @Nonnull
+    public List<SimulationResult> run(@Nonnull final long... capacities) throws IOException {
+        final var results = new ArrayList<>(replay(Policy.UNBOUNDED, 0));
+        for (final var policy : List.of(Policy.W_TINY_LFU, Policy.CLOCK)) {
+            for (final long capacity : capacities) {
+                results.addAll(replay(policy, capacity));
+            }
+        }
+        results.sort(Comparator.comparing(SimulationResult::namespace)
+                .thenComparing(SimulationResult::policy)
+                .thenComparingLong(SimulationResult::capacity));
+        return results;
+    }
+
+    /**
+     * @param capacity entries each namespace may hold, ignored by {@link Policy#UNBOUNDED}
+     * @return one result per namespace, in the order they appear in the trace
+     */
+    @Nonnull
+    public List<SimulationResult> replay(@Nonnull final Policy policy, final long capacity) throws IOException {
+        if (policy != Policy.UNBOUNDED && capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        final var costs = costs();
+        final var replays = new LinkedHashMap<String, Replay>();
+        try (var reader = TraceReader.open(trace)) {
+            for (var event = reader.next(); event != null; event = reader.next()) {
+                if (!event.isLoad()) {
+                    replays.computeIfAbsent(event.namespace(), ns -> new Replay(ns, policy, policy == Policy.UNBOUNDED ? 0 : capacity,
+                                    costs.getOrDefault(ns, Costs.NONE)))
+                            .access(event.key());
+                }
+            }
+        }
+        return replays.values()
+                .stream()
+                .map(Replay::result)
+                .collect(Collectors.toList());
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TraceSimulator <trace> <capacity>...");
+            System.exit(2);
+        }
+        final var capacities = new long[args.length - 1];
+        for (int i = 1; i < args.length; i++) {
+            capacities[i - 1] = Long.parseLong(args[i]);
+        }
+        System.out.printf("%-16s %-10s %10s %10s %8s %14s %10s%n", "namespace", "policy", "capacity", "accesses", "hits", "backend", "evictions");
+        for (final var result : new TraceSimulator(Path.of(args[0])).run(capacities)) {
+            System.out.println(result);
+        }
+    }
+
+    /**
+     * Reads the recorded load times on first use.
+     */
+    private Map<String, Costs> costs() throws IOException {
+        if (costs == null) {
+            final var loaded = new HashMap<String, Costs>();
+            try (var reader = TraceReader.open(trace)) {
+                for (var event = reader.next(); event != null; event = reader.next()) {
+                    if (event.isLoad()) {
+                        loaded.computeIfAbsent(event.namespace(), ns -> new Costs())
+                                .add(event.key(), event.cost());
+                    }
+                }
+            }
+            costs = loaded;
+        }
+        return costs;
+    }
+
+    /**
+     * Load times recorded for the keys of a namespace.
+     */
+    private static final class Costs {
+        private static final Costs NONE = new Costs();
+
+        // total nanoseconds and loads by key
+        private final Map<Integer, long[]> byKey = new HashMap<>();
+        private long total;
+        private long count;
+
+        private void add(final int key, final long cost) {
+            final var sums = byKey.computeIfAbsent(key, k -> new long[2]);
+            sums[0] += cost;
+            sums[1]++;
+            total += cost;
+            count++;
+        }
+
+        private long cost(final int key) {
+            final var sums = byKey.get(key);
+            if (sums != null) {
+                return sums[0] / sums[1];
+            }
+            return count == 0 ? 0 : total / count;
+        }
+    }
+
+    /**
+     * Accesses of one namespace replayed against one cache.
+     */
+    private static final class Replay {
+        private static final CacheSpec SPEC = CacheSpec.ofTtl(0);
+        private static final Object VALUE = Boolean.TRUE;
+
+        private final String namespace;
+        private final Policy policy;
+        private final long capacity;
+        private final Costs costs;
+        private final MemoryCache cache;
+        private final LongCacheService clock;
+        private final Function<CacheKey, Object> load = k -> loaded();
+        private final LongFunction<Object> loadLong = k -> loaded();
+        private long accesses;
+        private long misses;
+        private long backendNanos;
+        private int key;
+
+        private Replay(final String namespace, final Policy policy, final long capacity, final Costs costs) {
+            this.namespace = namespace;
+            this.policy = policy;
+            this.capacity = capacity;
+            this.costs = costs;
+            if (policy == Policy.UNBOUNDED) {
+                this.cache = new MemoryCache(Runnable::run);
+            } else if (policy == Policy.W_TINY_LFU) {
+                this.cache = new BoundedCache(capacity, Map.of(), Runnable::run);
+            } else {
+                this.cache = new BoundedCache(capacity, Map.of(namespace, capacity), Runnable::run);
+            }
+            this.clock = policy == Policy.CLOCK ? cache.longKeys(namespace) : null;
+        }
+
+        private void access(final int key) {
+            accesses++;
+            this.key = key;
+            if (clock != null) {
+                clock.apply(SPEC, key, loadLong);
+            } else {
+                cache.apply(0, CacheKey.of(namespace, key), load);
+            }
+        }
+
+        private Object loaded() {
+            misses++;
+            backendNanos += costs.cost(key);
+            return VALUE;
+        }
+
+        private SimulationResult result() {
+            if (cache instanceof BoundedCache) {
+                ((BoundedCache) cache).cleanUp();
+            }
+            return new SimulationResult(namespace, policy, capacity, accesses, misses, backendNanos, cache.stats()
+                    .evictionCount());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BoundedCacheTest implements WithAssertions {
+
+    @Test
+    public void testSizeIsBounded() {
+        var cache = new BoundedCache(100, Map.of(), Runnable::run);
+        for (int i = 0; i < 10_000; i++) {
+            cache.apply(0, CacheKey.of("ns", i), k -> k);
+        }
+        cache.cleanUp();
+
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+        assertThat(cache.stats()
+                .evictionCount()).isEqualTo(10_000 - cache.size());
+    }
+
+    @Test
+    public void testCapacityPerNamespace() {
+        var cache = new BoundedCache(1_000, Map.of("small", 10L), Runnable::run);
+        for (int i = 0; i < 500; i++) {
+            cache.apply(0, CacheKey.of("small", i), k -> k);
+            cache.apply(0, CacheKey.of("large", i), k -> k);
+        }
+        cache.cleanUp();
+
+        assertThat(cache.size()).isBetween(500L, 510L);
+    }
+
+    @Test
+    public void testFrequentKeysSurviveScan() {
+        var cache = new BoundedCache(100, Map.of(), Runnable::run);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                cache.apply(0, CacheKey.of("hot", i), k -> k);
+            }
+        }
+        for (int i = 0; i < 10_000; i++) {
+            cache.apply(0, CacheKey.of("scan", i), k -> k);
+        }
+        cache.cleanUp();
+
+        var loads = new AtomicInteger();
+        for (int i = 0; i < 50; i++) {
+            cache.apply(0, CacheKey.of("hot", i), k -> {
+                loads.incrementAndGet();
+                return k;
+            });
+        }
+        assertThat(loads.get()).isLessThan(5);
+    }
+
+    @Test
+    public void testZipfianHitRate() {
+        var cache = new BoundedCache(100, Map.of(), Runnable::run);
+        var random = new Random(42);
+        var zipf = zipfCdf(10_000, 1.0);
+        var misses = new AtomicInteger();
+        var requests = 100_000;
+        for (int i = 0; i < requests; i++) {
+            var key = CacheKey.of("z", sample(zipf, random.nextDouble()));
+            cache.apply(0, key, k -> {
+                misses.incrementAndGet();
+                return k;
+            });
+        }
+
+        // an optimal policy holding the top 100 of 10k keys hits ~53% of a zipf(1.0) stream
+        assertThat(1.0 - (double) misses.get() / requests).isGreaterThan(0.4);
+    }
+
+    @Test
+    public void testWeightIsBounded() {
+        Weigher weigher = (key, value) -> ((String) value).length();
+        var cache = new BoundedCache(100, Map.of(), weigher, Runnable::run);
+        for (int i = 0; i < 1_000; i++) {
+            cache.apply(0, CacheKey.of("ns", i), k -> "x".repeat(10));
+        }
+        cache.cleanUp();
+
+        assertThat(cache.weightedSize()).isLessThanOrEqualTo(100);
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+        assertThat(cache.longKeys("ns")).isNull();
+    }
+
+    @Test
+    public void testLargeValuesTakeMoreOfTheHeapBudget() {
+        var cache = new BoundedCache(1 << 20, Map.of(), Weigher.heapSize(), Runnable::run);
+        for (int i = 0; i < 1_000; i++) {
+            cache.apply(0, CacheKey.of("small", i), k -> "v".repeat(50));
+        }
+        cache.cleanUp();
+        assertThat(cache.size()).isEqualTo(1_000);
+
+        for (int i = 0; i < 100; i++) {
+            cache.apply(0, CacheKey.of("large", i), k -> "v".repeat(50_000));
+        }
+        cache.cleanUp();
+
+        // a megabyte holds a thousand small values but only twenty large ones
+        assertThat(cache.weightedSize()).isLessThanOrEqualTo(1 << 20);
+        assertThat(cache.size()).isLessThanOrEqualTo(1_020);
+    }
+
+    private static double[] zipfCdf(final int n, final double s) {
+        var cdf = new double[n];
+        var sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, s);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sample(final double[] cdf, final double u) {
+        int lo = 0;
+        int hi = cdf.length - 1;
+        while (lo < hi) {
+            var mid = (lo + hi) >>> 1;
+            if (cdf[mid] < u) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Test
+    public void testPinnedKeysAreNotEvicted() {
+        var cache = new BoundedCache(100, Map.of(), Runnable::run);
+        for (int i = 0; i < 10; i++) {
+            cache.apply(0, CacheKey.of("ns", "pinned", i), k -> k);
+            cache.pin(CacheKey.of("ns", "pinned", i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            cache.apply(0, CacheKey.of("ns", i), k -> k);
+        }
+        cache.cleanUp();
+
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+        var calls = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            cache.apply(0, CacheKey.of("ns", "pinned", i), k -> calls.incrementAndGet());
+        }
+        assertThat(calls).hasValue(0);
+    }
+}
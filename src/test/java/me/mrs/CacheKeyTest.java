@@ -0,0 +1,95 @@
+package me.mrs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.WithAssertions;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+@Slf4j
+public class CacheKeyTest implements WithAssertions {
+
+    @Test
+    public void testEqualsPerArgument() {
+        assertThat(CacheKey.of("ns", "a.b", "c")).isNotEqualTo(CacheKey.of("ns", "a", "b.c"));
+        assertThat(CacheKey.of("ns", "a", "b")).isEqualTo(CacheKey.of("ns", "a", "b"))
+                .hasSameHashCodeAs(CacheKey.of("ns", "a", "b"));
+        assertThat(CacheKey.of("ns", 1L)).isNotEqualTo(CacheKey.of("ns", "1"));
+        assertThat(CacheKey.of("ns1", "a")).isNotEqualTo(CacheKey.of("ns2", "a"));
+        assertThat(CacheKey.of("ns", (Object) null)).isEqualTo(CacheKey.of("ns", (Object) null));
+    }
+
+    @Test
+    public void testSmallAritiesMatchGenericFactory() {
+        var arguments = new Object[]{"x", 1, 2L, 'c', "y"};
+
+        assertThat(CacheKey.of("ns", arguments, new int[0])).isEqualTo(CacheKey.of("ns"));
+        assertThat(CacheKey.of("ns", arguments, new int[]{0})).isEqualTo(CacheKey.of("ns", "x"));
+        assertThat(CacheKey.of("ns", arguments, new int[]{1, 2})).isEqualTo(CacheKey.of("ns", 1, 2L));
+        assertThat(CacheKey.of("ns", arguments, new int[]{0, 3, 4})).isEqualTo(CacheKey.of("ns", "x", 'c', "y"));
+        assertThat(CacheKey.of("ns", arguments, null)).isEqualTo(CacheKey.of("ns", arguments.clone()))
+                .extracting(CacheKey::size)
+                .isEqualTo(5);
+    }
+
+    @Test
+    public void testArrayArgumentsCompareByContent() {
+        assertThat(CacheKey.of("ns", (Object) new int[]{1, 2})).isEqualTo(CacheKey.of("ns", (Object) new int[]{1, 2}))
+                .hasSameHashCodeAs(CacheKey.of("ns", (Object) new int[]{1, 2}));
+        assertThat(CacheKey.of("ns", "a", new String[]{"b"})).isEqualTo(CacheKey.of("ns", "a", new String[]{"b"}));
+    }
+
+    @Test
+    public void testToString() {
+        assertThat(CacheKey.of("ns")).hasToString("ns");
+        assertThat(CacheKey.of("ns", "a", 1)).hasToString("ns(a,1)");
+    }
+
+    /**
+     * Allocation of a hit through the old {@code StringBuilder} keys compared with {@link CacheKey}.
+     */
+    @Test
+    public void testAllocationPerHit() {
+        var threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        var allocation = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled());
+
+        var arguments = new Object[]{"text", "Prefix"};
+        var indexes = new int[]{0, 1};
+        var stringCache = new ConcurrentHashMap<String, Object>();
+        var keyCache = new ConcurrentHashMap<CacheKey, Object>();
+
+        var stringBytes = bytesPerHit(allocation, () -> stringCache.computeIfAbsent(stringKey("cache2", arguments, indexes), k -> "v"));
+        var keyBytes = bytesPerHit(allocation, () -> keyCache.computeIfAbsent(CacheKey.of("cache2", arguments, indexes), k -> "v"));
+        log.info("bytes per hit: string key = {}, CacheKey = {}", stringBytes, keyBytes);
+
+        assertThat(keyBytes).isLessThan(stringBytes);
+    }
+
+    private static double bytesPerHit(final com.sun.management.ThreadMXBean allocation, final Supplier<Object> hit) {
+        var id = Thread.currentThread()
+                .getId();
+        var iterations = 200_000;
+        for (int i = 0; i < iterations; i++) {
+            hit.get();
+        }
+        var before = allocation.getThreadAllocatedBytes(id);
+        for (int i = 0; i < iterations; i++) {
+            hit.get();
+        }
+        return (double) (allocation.getThreadAllocatedBytes(id) - before) / iterations;
+    }
+
+    private static String stringKey(final String cachePrefix, final Object[] arguments, final int[] argumentsIndex) {
+        var sb = new StringBuilder(cachePrefix);
+        for (var i : argumentsIndex) {
+            sb.append('.')
+                    .append(arguments[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+public class CachePlanTest implements WithAssertions {
+
+    @Test
+    public void testPlanIsCompiledOnce() throws NoSuchMethodException {
+        var method = UppercaseService.class.getMethod("apply", String.class);
+
+        assertThat(CachePlan.of(MyService.class, method)).isSameAs(CachePlan.of(MyService.class, method));
+    }
+
+    @Test
+    public void testPlanUsesImplementationAnnotations() throws Throwable {
+        var plan = CachePlan.of(MyService.class, UppercaseService.class.getMethod("applyWithPrefix", String.class, String.class));
+
+        assertThat(plan.isCacheable()).isTrue();
+        assertThat(plan.isAsync()).isFalse();
+        assertThat(plan.namespace()).isEqualTo("cache2");
+        assertThat(plan.spec()
+                .ttl()).isEqualTo(20_000L);
+        assertThat(plan.key(new Object[]{"text", "Prefix"})).isEqualTo(CacheKey.of("cache2", "text"));
+        assertThat(plan.invoke(new MyService(), new Object[]{"text", "Prefix"})).asString()
+                .startsWith("Prefix@")
+                .endsWith(":TEXT");
+    }
+
+    @Test
+    public void testNonCacheableMethodPassesThrough() throws Throwable {
+        var plan = CachePlan.of(MyService.class, Runnable.class.getMethod("run"));
+
+        assertThat(plan.isCacheable()).isFalse();
+        assertThat(plan.invoke(new MyService(), null)).isNull();
+        assertThatThrownBy(plan::spec).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testAsyncPlan() throws NoSuchMethodException {
+        var plan = CachePlan.of(MyService.class, UppercaseService.class.getMethod("applyAsync", String.class));
+
+        assertThat(plan.isAsync()).isTrue();
+    }
+
+    @Test
+    public void testUpdatePlansKeyLikeCacheableMethods() throws NoSuchMethodException {
+        var evict = CachePlan.of(MyService.class, UppercaseService.class.getMethod("evictById", long.class));
+        var put = CachePlan.of(MyService.class, UppercaseService.class.getMethod("refresh", String.class));
+
+        assertThat(evict.isCacheable()).isFalse();
+        assertThat(evict.updatesCache()).isTrue();
+        assertThat(evict.key(new Object[]{7L})).isEqualTo(CacheKey.of("cache5", 7L));
+        assertThat(put.updatesCache()).isTrue();
+        assertThat(put.spec()
+                .ttl()).isEqualTo(20_000L);
+        assertThat(put.key(new Object[]{"text"})).isEqualTo(CachePlan.of(MyService.class, UppercaseService.class.getMethod("apply", String.class))
+                .key(new Object[]{"text"}));
+    }
+}
@@ -0,0 +1,135 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class EvictionBatcherTest implements WithAssertions {
+    private final Executor threads = task -> new Thread(task).start();
+
+    @Test
+    public void testEvictionsQueuedDuringAPassAreAppliedTogether() throws Exception {
+        var batcher = new EvictionBatcher();
+        var passes = new CopyOnWriteArrayList<List<CacheKey>>();
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var cache = new CacheService() {
+            @Override
+            public Object apply(final long ttl, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+                return resolver.apply(key);
+            }
+
+            @Override
+            public void invalidateAll(@Nonnull final Collection<CacheKey> keys) {
+                passes.add(List.copyOf(keys));
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread()
+                            .interrupt();
+                }
+            }
+        };
+
+        var first = CompletableFuture.runAsync(() -> batcher.evict(cache, CacheKey.of("ns", 1)), threads);
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        var second = CompletableFuture.runAsync(() -> batcher.evict(cache, CacheKey.of("ns", 2)), threads);
+        var third = CompletableFuture.runAsync(() -> batcher.evict(cache, CacheKey.of("ns", 3)), threads);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (batcher.waitingThreads() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        CompletableFuture.allOf(first, second, third)
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(passes).hasSize(2);
+        assertThat(passes.get(0)).containsExactly(CacheKey.of("ns", 1));
+        assertThat(passes.get(1)).containsExactlyInAnyOrder(CacheKey.of("ns", 2), CacheKey.of("ns", 3));
+        assertThat(batcher.passes()).isEqualTo(2);
+    }
+
+    @Test
+    public void testKeyIsInvalidatedWhenEvictReturns() {
+        var batcher = new EvictionBatcher();
+        var cache = new MemoryCache();
+        cache.apply(0, CacheKey.of("ns", 1), k -> "v");
+
+        batcher.evict(cache, CacheKey.of("ns", 1));
+
+        assertThat(cache.apply(0, CacheKey.of("ns", 1), k -> "w")).isEqualTo("w");
+        assertThat(batcher.passes()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailureReachesTheEvictingCaller() {
+        var batcher = new EvictionBatcher();
+        var cache = new CacheService() {
+            @Override
+            public Object apply(final long ttl, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+                return resolver.apply(key);
+            }
+
+            @Override
+            public void invalidate(@Nonnull final CacheKey key) {
+                throw new UnsupportedOperationException("invalidate");
+            }
+        };
+
+        assertThatThrownBy(() -> batcher.evict(cache, CacheKey.of("ns", 1))).isInstanceOf(UnsupportedOperationException.class);
+        assertThat(batcher.waitingThreads()).isZero();
+    }
+
+    @Test
+    public void testEachCallerGetsOnlyItsOwnFailure() throws Exception {
+        var batcher = new EvictionBatcher();
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var cache = new CacheService() {
+            @Override
+            public Object apply(final long ttl, @Nonnull final CacheKey key, @Nonnull final Function<CacheKey, Object> resolver) {
+                return resolver.apply(key);
+            }
+
+            @Override
+            public void invalidate(@Nonnull final CacheKey key) {
+                if (key.equals(CacheKey.of("ns", 3))) {
+                    throw new IllegalStateException("down");
+                }
+                if (key.equals(CacheKey.of("ns", 1))) {
+                    entered.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread()
+                                .interrupt();
+                    }
+                }
+            }
+        };
+
+        var first = CompletableFuture.runAsync(() -> batcher.evict(cache, CacheKey.of("ns", 1)), threads);
+        assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+        var second = CompletableFuture.runAsync(() -> batcher.evict(cache, CacheKey.of("ns", 2)), threads);
+        var third = CompletableFuture.runAsync(() -> batcher.evict(cache, CacheKey.of("ns", 3)), threads);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (batcher.waitingThreads() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> third.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+    }
+}
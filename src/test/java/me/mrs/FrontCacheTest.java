@@ -0,0 +1,92 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FrontCacheTest implements WithAssertions {
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testHitsAreReportedToTheSharedCache() {
+        var shared = new MemoryCache();
+        var cache = new FrontCache(shared);
+        var loads = new AtomicInteger();
+        for (int i = 0; i < 101; i++) {
+            assertThat(cache.apply(0, CacheKey.of("ns", "k"), k -> "v" + loads.incrementAndGet())).isEqualTo("v1");
+        }
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(shared.stats()
+                .hitCount()).isEqualTo(96);
+        assertThat(shared.stats()
+                .missCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInvalidationFromAnotherThreadIsSeenAtOnce() throws Exception {
+        var shared = new MemoryCache();
+        var cache = new FrontCache(shared);
+        var key = CacheKey.of("ns", "k");
+        cache.apply(0, key, k -> "v1");
+        assertThat(cache.apply(0, key, k -> "v2")).isEqualTo("v1");
+
+        CompletableFuture.runAsync(() -> shared.invalidate(key))
+                .get(5, TimeUnit.SECONDS);
+        assertThat(cache.apply(0, key, k -> "v2")).isEqualTo("v2");
+
+        shared.invalidateAll();
+        assertThat(cache.apply(0, key, k -> "v3")).isEqualTo("v3");
+    }
+
+    @Test
+    public void testExpiredEntriesAreNotServed() {
+        var cache = new FrontCache(new MemoryCache(Runnable::run, now::get));
+        var key = CacheKey.of("ns", "k");
+        cache.apply(10, key, k -> "v1");
+        assertThat(cache.apply(10, key, k -> "v2")).isEqualTo("v1");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertThat(cache.apply(10, key, k -> "v2")).isEqualTo("v2");
+    }
+
+    @Test
+    public void testNamespaceFlushOfSegmentedCacheIsSeen() {
+        var shared = new SegmentedCache(NamespaceConfig.unbounded());
+        var cache = new FrontCache(shared, 8);
+        cache.apply(0, CacheKey.of("a", 1), k -> "a1");
+        cache.apply(0, CacheKey.of("b", 1), k -> "b1");
+
+        shared.invalidateNamespace("a");
+
+        assertThat(cache.apply(0, CacheKey.of("a", 1), k -> "a2")).isEqualTo("a2");
+        assertThat(cache.apply(0, CacheKey.of("b", 1), k -> "b2")).isEqualTo("b1");
+    }
+
+    @Test
+    public void testNullsAndCollidingKeysGoToTheSharedCache() {
+        var cache = new FrontCache(new MemoryCache(), 1);
+        var loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(cache.apply(0, CacheKey.of("ns", "null"), k -> {
+                loads.incrementAndGet();
+                return null;
+            })).isNull();
+            assertThat(cache.apply(0, CacheKey.of("ns", "a"), k -> "a")).isEqualTo("a");
+            assertThat(cache.apply(0, CacheKey.of("ns", "b"), k -> "b")).isEqualTo("b");
+        }
+
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void testOnlyMemoryEnginesAreSupported() {
+        assertThatThrownBy(() -> new FrontCache(new TieredCache(new MemoryCache(), new MemoryCache()))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,58 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class HeapEstimatorTest implements WithAssertions {
+    @Test
+    public void testStringsAndArrays() {
+        assertThat(HeapEstimator.estimate("")).isEqualTo(40);
+        assertThat(HeapEstimator.estimate("x".repeat(1000))).isEqualTo(24 + 1016);
+        assertThat(HeapEstimator.estimate("\u20ac".repeat(1000))).isEqualTo(24 + 2016);
+        assertThat(HeapEstimator.estimate(new byte[1000])).isEqualTo(1016);
+        assertThat(HeapEstimator.estimate(new long[10])).isEqualTo(96);
+        assertThat(HeapEstimator.estimate(42L)).isEqualTo(24);
+        assertThat(HeapEstimator.estimate(null)).isZero();
+    }
+
+    @Test
+    public void testCompressedValuesCountTheirDeflatedSize() {
+        var page = "x".repeat(10_000);
+
+        assertThat(HeapEstimator.estimate(new ValueCompressor(100).encode(page))).isLessThan(HeapEstimator.estimate(page) / 10);
+    }
+
+    @Test
+    public void testContainersIncludeTheirElements() {
+        var element = HeapEstimator.estimate("x".repeat(100));
+        assertThat(HeapEstimator.estimate(List.of("x".repeat(100), "y".repeat(100)))).isGreaterThan(2 * element);
+        assertThat(HeapEstimator.estimate(Map.of("k", "x".repeat(100)))).isGreaterThan(element);
+        assertThat(HeapEstimator.estimate(Optional.of("x".repeat(100)))).isEqualTo(16 + element);
+    }
+
+    @Test
+    public void testLargeCollectionsAreExtrapolated() {
+        var list = new ArrayList<String>();
+        for (int i = 0; i < 10_000; i++) {
+            list.add("x".repeat(100));
+        }
+
+        assertThat(HeapEstimator.estimate(list)).isBetween(10_000 * HeapEstimator.estimate("x".repeat(100)), 10_000 * 200L);
+    }
+
+    @Test
+    public void testWeigherCountsKeyValueAndEntry() {
+        var key = CacheKey.of("ns", "k");
+        var value = "x".repeat(1000);
+
+        assertThat(Weigher.heapSize()
+                .weigh(key, value)).isGreaterThan((int) (HeapEstimator.estimate(key) + HeapEstimator.estimate(value)));
+        assertThat(Weigher.unit()
+                .weigh(key, value)).isEqualTo(1);
+    }
+}
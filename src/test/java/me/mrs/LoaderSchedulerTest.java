@@ -0,0 +1,176 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoaderSchedulerTest implements WithAssertions {
+    private final AtomicLong now = new AtomicLong();
+
+    @Test(timeout = 10_000L)
+    public void testLoadsBeyondTheQueueAreRejected() throws Exception {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded(), Map.of("limited", NamespaceConfig.unbounded()
+                .withLoadLimit(2, 1)));
+        var release = new CountDownLatch(1);
+        var pending = new ArrayList<CompletableFuture<Object>>();
+        for (int i = 0; i < 3; i++) {
+            var key = CacheKey.of("limited", i);
+            pending.add(CompletableFuture.supplyAsync(() -> cache.apply(0, key, k -> await(release, k.get(0)))));
+        }
+        while (cache.loaderStats("limited")
+                .running() < 2 || cache.loaderStats("limited")
+                .queued() < 1) {
+            Thread.sleep(1);
+        }
+
+        assertThatThrownBy(() -> cache.apply(0, CacheKey.of("limited", 3), k -> "never")).isInstanceOf(LoadRejectedException.class);
+        release.countDown();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(pending.get(i)
+                    .get(5, TimeUnit.SECONDS)).isEqualTo(i);
+        }
+        assertThat(cache.apply(0, CacheKey.of("limited", 3), k -> "loaded")).isEqualTo("loaded");
+        var stats = cache.loaderStats("limited");
+        assertThat(stats.running()).isZero();
+        assertThat(stats.queued()).isZero();
+        assertThat(stats.completedCount()).isEqualTo(4);
+        assertThat(stats.rejectedCount()).isEqualTo(1);
+        assertThat(cache.stats("limited")
+                .loadFailureCount()).isZero();
+    }
+
+    @Test(timeout = 10_000L)
+    public void testRejectedReloadServesStaleValue() throws Exception {
+        var ticking = NamespaceConfig.of(() -> new MemoryCache(Runnable::run, now::get));
+        var cache = new SegmentedCache(ticking, Map.of("limited", ticking.withLoadLimit(1, 0)
+                .withStaleOnRejection(100, TimeUnit.MILLISECONDS)));
+        var key = CacheKey.of("limited", "k");
+        cache.apply(10, key, k -> "v1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+        var release = new CountDownLatch(1);
+        var blocking = CompletableFuture.supplyAsync(() -> cache.apply(0, CacheKey.of("limited", "slow"), k -> await(release, "slow")));
+        while (cache.loaderStats("limited")
+                .running() < 1) {
+            Thread.sleep(1);
+        }
+
+        assertThat(cache.apply(10, key, k -> "v2")).isEqualTo("v1");
+        assertThat(cache.apply(10, key, k -> "v2")).isEqualTo("v1");
+        assertThatThrownBy(() -> cache.apply(10, CacheKey.of("limited", "missing"), k -> "v2")).isInstanceOf(LoadRejectedException.class);
+        release.countDown();
+        blocking.get(5, TimeUnit.SECONDS);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertThat(cache.apply(10, key, k -> "v2")).isEqualTo("v2");
+        assertThat(cache.loaderStats("limited")
+                .staleCount()).isEqualTo(1);
+    }
+
+    @Test(timeout = 10_000L)
+    public void testNestedLoadsOfTheNamespaceRunInline() {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded()
+                .withLoadLimit(1, 0)
+                .withVirtualThreads());
+
+        var value = cache.apply(0, CacheKey.of("ns", "outer"), k -> "outer+" + cache.apply(0, CacheKey.of("ns", "inner"), i -> "inner"));
+
+        assertThat(value).isEqualTo("outer+inner");
+        assertThat(cache.apply(0, CacheKey.of("ns", "inner"), i -> "other")).isEqualTo("inner");
+    }
+
+    @Test(timeout = 10_000L)
+    public void testAsyncLoadsHoldTheirSlotUntilCompleted() throws Exception {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded()
+                .withLoadLimit(1, 0));
+        var loaded = new CompletableFuture<Object>();
+        var first = cache.applyAsync(0, CacheKey.of("ns", 1), k -> loaded);
+        while (cache.loaderStats("ns")
+                .running() < 1) {
+            Thread.sleep(1);
+        }
+
+        var rejected = cache.applyAsync(0, CacheKey.of("ns", 2), k -> CompletableFuture.completedFuture("two"));
+        assertThatThrownBy(() -> rejected.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(LoadRejectedException.class);
+        loaded.complete("one");
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("one");
+        assertThat(cache.applyAsync(0, CacheKey.of("ns", 2), k -> CompletableFuture.completedFuture("two"))
+                .get(5, TimeUnit.SECONDS)).isEqualTo("two");
+    }
+
+    @Test(timeout = 10_000L)
+    public void testHangingLoadFailsItsCallerAndWaitersAtTheDeadline() throws Exception {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded()
+                .withLoadLimit(2, 0)
+                .withLoadDeadline(100, TimeUnit.MILLISECONDS));
+        var release = new CountDownLatch(1);
+        var key = CacheKey.of("ns", "hanging");
+        var waiter = CompletableFuture.supplyAsync(() -> {
+            while (cache.loaderStats("ns")
+                    .running() < 1) {
+                Thread.onSpinWait();
+            }
+            return cache.apply(0, key, k -> "never");
+        });
+
+        assertThatThrownBy(() -> cache.apply(0, key, k -> await(release, "late"))).isInstanceOf(LoadTimeoutException.class);
+        assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(LoadTimeoutException.class);
+        release.countDown();
+
+        assertThat(cache.apply(0, key, k -> "loaded")).isEqualTo("loaded");
+        assertThat(cache.loaderStats("ns")
+                .timeoutCount()).isEqualTo(1);
+    }
+
+    @Test(timeout = 10_000L)
+    public void testLateLoadIsHedged() {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded()
+                .withLoadLimit(2, 0)
+                .withHedging(90));
+        for (int i = 0; i < 128; i++) {
+            cache.apply(0, CacheKey.of("ns", i), k -> k.get(0));
+        }
+        var release = new CountDownLatch(1);
+        var attempts = new AtomicLong();
+
+        var value = cache.apply(0, CacheKey.of("ns", "slow"), k -> attempts.incrementAndGet() == 1 ? await(release, "first") : "hedged");
+        release.countDown();
+
+        assertThat(value).isEqualTo("hedged");
+        assertThat(cache.loaderStats("ns")
+                .hedgeCount()).isEqualTo(1);
+        // counted once the hedge's value was handed over
+        while (cache.loaderStats("ns")
+                .hedgeWinCount() < 1) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Test
+    public void testDeadlinesNeedALoadLimit() {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded(), Map.of());
+        var config = NamespaceConfig.unbounded()
+                .withLoadDeadline(1, TimeUnit.SECONDS);
+
+        assertThatThrownBy(() -> new SegmentedCache(config, Map.of("ns", config))).isInstanceOf(IllegalStateException.class);
+        assertThat(cache.loaderStats("ns")
+                .timeoutCount()).isZero();
+    }
+
+    private static Object await(final CountDownLatch latch, final Object value) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                    .interrupt();
+        }
+        return value;
+    }
+}
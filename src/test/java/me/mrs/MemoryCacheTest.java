@@ -0,0 +1,598 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+public class MemoryCacheTest implements WithAssertions {
+    private final AtomicLong now = new AtomicLong();
+    private MemoryCache cache;
+
+    @Before
+    public void setup() {
+        cache = new MemoryCache(Runnable::run, now::get);
+    }
+
+    @Test
+    public void testHitWithinTtl() {
+        var v1 = cache.apply(20, key("k"), k -> "v1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(19));
+        var v2 = cache.apply(20, key("k"), k -> "v2");
+
+        assertThat(v2).isEqualTo(v1)
+                .isEqualTo("v1");
+    }
+
+    @Test
+    public void testExpiresAfterTtl() {
+        cache.apply(20, key("k"), k -> "v1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(20));
+
+        assertThat(cache.apply(20, key("k"), k -> "v2")).isEqualTo("v2");
+    }
+
+    @Test
+    public void testNonPositiveTtlNeverExpires() {
+        cache.apply(0, key("k"), k -> "v1");
+        now.addAndGet(TimeUnit.DAYS.toNanos(365));
+
+        assertThat(cache.apply(0, key("k"), k -> "v2")).isEqualTo("v1");
+    }
+
+    @Test
+    public void testNullIsNotCached() {
+        assertThat(cache.apply(20, key("k"), k -> null)).isNull();
+        assertThat(cache.apply(20, key("k"), k -> "v")).isEqualTo("v");
+    }
+
+    @Test
+    public void testSweepDropsExpiredEntries() {
+        for (int i = 0; i < 100; i++) {
+            cache.apply(1, CacheKey.of("old", i), k -> k);
+        }
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(2));
+        for (int i = 0; i < 200; i++) {
+            cache.apply(0, CacheKey.of("new", i), k -> k);
+        }
+
+        assertThat(cache.size()).isLessThan(300);
+    }
+
+    @Test(timeout = 10_000L)
+    public void testConcurrentAccess() throws InterruptedException {
+        var threads = 8;
+        var pool = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        var errors = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 10_000; i++) {
+                        var key = key("k" + (i % 500));
+                        if (!key.equals(cache.apply(0, key, k -> k))) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread()
+                            .interrupt();
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(errors).hasValue(0);
+        assertThat(cache.size()).isEqualTo(500);
+    }
+
+    @Test
+    public void testInvalidateAllDropsEveryEntry() {
+        cache.apply(0, key("a"), k -> "a1");
+        cache.apply(0, key("b"), k -> "b1");
+        cache.invalidateAll();
+
+        assertThat(cache.apply(0, key("a"), k -> "a2")).isEqualTo("a2");
+        assertThat(cache.apply(0, key("b"), k -> "b2")).isEqualTo("b2");
+        assertThat(cache.apply(0, key("a"), k -> "a3")).isEqualTo("a2");
+    }
+
+    @Test
+    public void testInvalidateAllDuringLoadDoesNotStoreIt() {
+        var value = cache.apply(0, key("k"), k -> {
+            cache.invalidateAll();
+            return "before";
+        });
+
+        assertThat(value).isEqualTo("before");
+        assertThat(cache.apply(0, key("k"), k -> "after")).isEqualTo("after");
+    }
+
+    @Test
+    public void testSweepReclaimsInvalidatedEntries() {
+        for (int i = 0; i < 100; i++) {
+            cache.apply(0, CacheKey.of("old", i), k -> k);
+        }
+        cache.invalidateAll();
+        for (int i = 0; i < 200; i++) {
+            cache.apply(0, CacheKey.of("new", i), k -> k);
+        }
+
+        assertThat(cache.size()).isLessThan(300);
+    }
+
+    @Test
+    public void testStatsCountHitsAndMisses() {
+        cache.apply(0, key("a"), k -> "a");
+        cache.apply(0, key("a"), k -> "a");
+        cache.apply(0, key("a"), k -> "a");
+        cache.apply(0, key("b"), k -> "b");
+
+        var stats = cache.stats();
+        assertThat(stats.hitCount()).isEqualTo(2);
+        assertThat(stats.missCount()).isEqualTo(2);
+        assertThat(stats.hitRate()).isEqualTo(0.5);
+        assertThat(stats.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testStatsCountLoadFailuresAndExpirations() {
+        assertThatThrownBy(() -> cache.apply(0, key("a"), k -> {
+            throw new IllegalStateException("backend down");
+        })).isInstanceOf(IllegalStateException.class);
+        cache.apply(20, key("b"), k -> "b1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(20));
+        cache.apply(20, key("b"), k -> "b2");
+        cache.applyAsync(0, key("c"), k -> CompletableFuture.failedFuture(new IllegalStateException()));
+
+        var stats = cache.stats();
+        assertThat(stats.loadCount()).isEqualTo(2);
+        assertThat(stats.loadFailureCount()).isEqualTo(2);
+        assertThat(stats.expirationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAsyncLoadIsSharedWhileRunning() throws Exception {
+        var signal = new CompletableFuture<Void>();
+        var calls = new AtomicInteger();
+        Function<CacheKey, CompletableFuture<Object>> resolver = k -> {
+            calls.incrementAndGet();
+            return signal.thenApply(n -> k.get(0) + " " + calls.get());
+        };
+
+        var first = cache.applyAsync(0, key("k"), resolver);
+        var second = cache.applyAsync(0, key("k"), resolver);
+        assertThat(second).isSameAs(first)
+                .isNotDone();
+
+        signal.complete(null);
+
+        assertThat(first.get(1, TimeUnit.SECONDS)).isEqualTo("k 1");
+        assertThat(cache.applyAsync(0, key("k"), resolver)).isSameAs(first);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    public void testFailedAsyncLoadIsEvicted() throws Exception {
+        var signal = new CompletableFuture<Void>();
+        var failing = cache.applyAsync(0, key("k"), k -> signal.thenApply(n -> {
+            throw new IllegalStateException("backend down");
+        }));
+
+        signal.complete(null);
+        assertThatThrownBy(() -> failing.get(1, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+
+        var retried = cache.applyAsync(0, key("k"), k -> CompletableFuture.completedFuture("recovered"));
+        assertThat(retried).isNotSameAs(failing);
+        assertThat(retried.get(1, TimeUnit.SECONDS)).isEqualTo("recovered");
+    }
+
+    @Test
+    public void testAlreadyFailedFutureIsNotCached() {
+        var failed = cache.applyAsync(0, key("k"), k -> CompletableFuture.failedFuture(new IllegalStateException("backend down")));
+        var next = cache.applyAsync(0, key("k"), k -> CompletableFuture.completedFuture("ok"));
+
+        assertThat(failed).hasFailed();
+        assertThat(next).isCompletedWithValue("ok");
+    }
+
+    @Test(timeout = 10_000L)
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        var threads = 64;
+        var pool = Executors.newFixedThreadPool(threads);
+        var barrier = new CyclicBarrier(threads);
+        var calls = new AtomicInteger();
+        var results = new ArrayList<Future<Object>>();
+        for (int round = 0; round < 20; round++) {
+            var key = key("k" + round);
+            results.clear();
+            for (int t = 0; t < threads; t++) {
+                results.add(pool.submit(() -> {
+                    barrier.await();
+                    return cache.apply(0, key, k -> {
+                        calls.incrementAndGet();
+                        sleep(20L);
+                        return k + "-" + System.nanoTime();
+                    });
+                }));
+            }
+            var expected = results.get(0)
+                    .get();
+            for (var result : results) {
+                assertThat(result.get()).isEqualTo(expected);
+            }
+            assertThat(calls).hasValue(round + 1);
+        }
+        pool.shutdown();
+    }
+
+    @Test(timeout = 10_000L)
+    public void testWaitersReceiveLoadFailure() throws Exception {
+        var threads = 16;
+        var pool = Executors.newFixedThreadPool(threads);
+        var barrier = new CyclicBarrier(threads);
+        var calls = new AtomicInteger();
+        var results = new ArrayList<Future<Object>>();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> {
+                barrier.await();
+                return cache.apply(0, key("k"), k -> {
+                    calls.incrementAndGet();
+                    sleep(50L);
+                    throw new IllegalStateException("backend down");
+                });
+            }));
+        }
+        for (var result : results) {
+            assertThatThrownBy(result::get).hasCauseInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("backend down");
+        }
+        pool.shutdown();
+
+        assertThat(calls.get()).isLessThan(threads);
+        assertThat(cache.apply(0, key("k"), k -> "recovered")).isEqualTo("recovered");
+    }
+
+    @Test(timeout = 10_000L)
+    public void testLoadDoesNotBlockOtherKeys() throws Exception {
+        var release = new CountDownLatch(1);
+        var slow = CompletableFuture.supplyAsync(() -> cache.apply(0, key("slow"), k -> {
+            await(release);
+            return "slow";
+        }));
+
+        assertThat(CompletableFuture.supplyAsync(() -> cache.apply(0, key("fast"), k -> k))
+                .get(5, TimeUnit.SECONDS)).isEqualTo(key("fast"));
+        assertThat(slow).isNotDone();
+        release.countDown();
+        assertThat(slow.get(5, TimeUnit.SECONDS)).isEqualTo("slow");
+    }
+
+    @Test
+    public void testRecursiveLoadFails() {
+        assertThatThrownBy(() -> cache.apply(0, key("k"), k -> cache.apply(0, key("k"), r -> r))).isInstanceOf(IllegalStateException.class);
+        assertThat(cache.apply(0, key("k"), k -> "v")).isEqualTo("v");
+    }
+
+    @Test
+    public void testRefreshAheadServesCurrentValueAndReloadsOnce() {
+        var tasks = new ArrayList<Runnable>();
+        var refreshing = new MemoryCache(tasks::add, now::get);
+        var spec = CacheSpec.ofTtl(100)
+                .withRefreshAfter(50);
+        var calls = new AtomicInteger();
+        Function<CacheKey, Object> resolver = k -> "v" + calls.incrementAndGet();
+
+        refreshing.apply(spec, key("k"), resolver);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+        for (int i = 0; i < 10; i++) {
+            assertThat(refreshing.apply(spec, key("k"), resolver)).isEqualTo("v1");
+        }
+        assertThat(tasks).hasSize(1);
+
+        tasks.get(0)
+                .run();
+        assertThat(refreshing.apply(spec, key("k"), resolver)).isEqualTo("v2");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    public void testStaleValueServedWhileReloading() {
+        var tasks = new ArrayList<Runnable>();
+        var stale = new MemoryCache(tasks::add, now::get);
+        var spec = CacheSpec.ofTtl(100)
+                .withStaleFor(50);
+        var calls = new AtomicInteger();
+        Function<CacheKey, Object> resolver = k -> "v" + calls.incrementAndGet();
+
+        stale.apply(spec, key("k"), resolver);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(120));
+        assertThat(stale.apply(spec, key("k"), resolver)).isEqualTo("v1");
+        assertThat(tasks).hasSize(1);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(40));
+        assertThat(stale.apply(spec, key("k"), resolver)).isEqualTo("v2");
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    public void testFailedReloadKeepsValueAndRetriesAfterBackOff() {
+        var tasks = new ArrayList<Runnable>();
+        var refreshing = new MemoryCache(tasks::add, now::get);
+        var spec = CacheSpec.ofTtl(10_000)
+                .withRefreshAfter(50);
+
+        refreshing.apply(spec, key("k"), k -> "v1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+        refreshing.apply(spec, key("k"), k -> {
+            throw new IllegalStateException("backend down");
+        });
+        tasks.remove(0)
+                .run();
+
+        assertThat(refreshing.apply(spec, key("k"), k -> "v2")).isEqualTo("v1");
+        assertThat(tasks).isEmpty();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(MemoryCache.RELOAD_BACKOFF_MILLIS));
+        assertThat(refreshing.apply(spec, key("k"), k -> "v2")).isEqualTo("v1");
+        assertThat(tasks).hasSize(1);
+        tasks.remove(0)
+                .run();
+        assertThat(refreshing.apply(spec, key("k"), k -> "v3")).isEqualTo("v2");
+    }
+
+    @Test
+    public void testReloadFailingWithErrorIsRetriedAfterBackOff() {
+        var tasks = new ArrayList<Runnable>();
+        var refreshing = new MemoryCache(tasks::add, now::get);
+        var spec = CacheSpec.ofTtl(10_000)
+                .withRefreshAfter(50);
+
+        refreshing.apply(spec, key("k"), k -> "v1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+        refreshing.apply(spec, key("k"), k -> {
+            throw new AssertionError("backend down");
+        });
+        tasks.remove(0)
+                .run();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(MemoryCache.RELOAD_BACKOFF_MILLIS));
+        assertThat(refreshing.apply(spec, key("k"), k -> "v2")).isEqualTo("v1");
+        assertThat(tasks).hasSize(1);
+        tasks.remove(0)
+                .run();
+        assertThat(refreshing.apply(spec, key("k"), k -> "v3")).isEqualTo("v2");
+    }
+
+    @Test
+    public void testApplyAllResolvesMissingKeysInOneCall() {
+        cache.apply(0, key("b"), k -> "b0");
+        var calls = new ArrayList<Set<CacheKey>>();
+        Function<Set<CacheKey>, Map<CacheKey, Object>> resolver = keys -> {
+            calls.add(Set.copyOf(keys));
+            var values = new HashMap<CacheKey, Object>();
+            keys.forEach(k -> values.put(k, k.get(0) + "1"));
+            values.remove(key("d"));
+            return values;
+        };
+
+        var values = cache.applyAll(CacheSpec.ofTtl(0), List.of(key("c"), key("b"), key("a"), key("d"), key("c")), resolver);
+
+        assertThat(values).containsExactly(entry(key("c"), "c1"), entry(key("b"), "b0"), entry(key("a"), "a1"));
+        assertThat(calls).containsExactly(Set.of(key("a"), key("c"), key("d")));
+        assertThat(cache.apply(0, key("a"), k -> "a2")).isEqualTo("a1");
+        assertThat(cache.apply(0, key("d"), k -> "d2")).isEqualTo("d2");
+        assertThat(cache.stats()
+                .loadCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testApplyAllFailureReleasesEveryKey() {
+        assertThatThrownBy(() -> cache.applyAll(CacheSpec.ofTtl(0), List.of(key("a"), key("b")), keys -> {
+            throw new IllegalStateException("backend down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(cache.apply(0, key("a"), k -> "a")).isEqualTo("a");
+        assertThat(cache.apply(0, key("b"), k -> "b")).isEqualTo("b");
+    }
+
+    @Test(timeout = 10_000L)
+    public void testApplyAllAwaitsKeysLoadedByOthers() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var slow = CompletableFuture.supplyAsync(() -> cache.apply(0, key("a"), k -> {
+            started.countDown();
+            await(release);
+            return "slow";
+        }));
+        started.await();
+        var calls = new AtomicInteger();
+        var bulk = CompletableFuture.supplyAsync(() -> cache.applyAll(CacheSpec.ofTtl(0), List.of(key("a"), key("b")), keys -> {
+            calls.incrementAndGet();
+            assertThat(keys).containsExactly(key("b"));
+            return Map.of(key("b"), "b");
+        }));
+
+        release.countDown();
+        assertThat(bulk.get(5, TimeUnit.SECONDS)).containsExactly(entry(key("a"), "slow"), entry(key("b"), "b"));
+        assertThat(slow.get()).isEqualTo("slow");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    public void testNullCachedForNullTtl() {
+        var spec = CacheSpec.ofTtl(100)
+                .withNullTtl(10);
+        var calls = new AtomicInteger();
+        Function<CacheKey, Object> resolver = k -> calls.incrementAndGet() < 3 ? null : "found";
+
+        assertThat(cache.apply(spec, key("k"), resolver)).isNull();
+        assertThat(cache.apply(spec, key("k"), resolver)).isNull();
+        assertThat(calls).hasValue(1);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(cache.apply(spec, key("k"), resolver)).isNull();
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(cache.apply(spec, key("k"), resolver)).isEqualTo("found");
+        assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    public void testListedFailureRethrownUntilExceptionTtl() {
+        var spec = CacheSpec.ofTtl(100)
+                .withExceptionTtl(10, IllegalStateException.class);
+        var calls = new AtomicInteger();
+        Function<CacheKey, Object> resolver = k -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("backend down");
+            }
+            return "v";
+        };
+
+        var first = catchThrowable(() -> cache.apply(spec, key("k"), resolver));
+        var second = catchThrowable(() -> cache.apply(spec, key("k"), resolver));
+        assertThat(first).isInstanceOf(IllegalStateException.class);
+        assertThat(second).isSameAs(first);
+        assertThat(calls).hasValue(1);
+        assertThat(cache.stats()
+                .loadFailureCount()).isEqualTo(1);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(cache.apply(spec, key("k"), resolver)).isEqualTo("v");
+    }
+
+    @Test
+    public void testBulkCallWithRememberedFailureStillLoadsClaimedKeys() {
+        var spec = CacheSpec.ofTtl(100)
+                .withExceptionTtl(10, IllegalStateException.class);
+        var failure = catchThrowable(() -> cache.apply(spec, key("a"), k -> {
+            throw new IllegalStateException("backend down");
+        }));
+
+        var thrown = catchThrowable(() -> cache.applyAll(spec, List.of(key("b"), key("a"), key("c")), keys -> {
+            var values = new HashMap<CacheKey, Object>();
+            keys.forEach(k -> values.put(k, k.get(0) + "1"));
+            return values;
+        }));
+
+        assertThat(thrown).isSameAs(failure);
+        assertThat(cache.apply(spec, key("b"), k -> "b2")).isEqualTo("b1");
+        assertThat(cache.apply(spec, key("c"), k -> "c2")).isEqualTo("c1");
+    }
+
+    @Test
+    public void testUnlistedFailureIsNotCached() {
+        var spec = CacheSpec.ofTtl(100)
+                .withExceptionTtl(10, IllegalStateException.class);
+
+        assertThatThrownBy(() -> cache.apply(spec, key("k"), k -> {
+            throw new IllegalArgumentException();
+        })).isInstanceOf(IllegalArgumentException.class);
+        assertThat(cache.apply(spec, key("k"), k -> "v")).isEqualTo("v");
+    }
+
+    @Test
+    public void testPutReplacesEntry() {
+        cache.apply(10, key("k"), k -> "v1");
+
+        cache.put(CacheSpec.ofTtl(20), key("k"), "v2");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(15));
+
+        assertThat(cache.apply(10, key("k"), k -> "v3")).isEqualTo("v2");
+
+        cache.put(CacheSpec.ofTtl(20), key("k"), null);
+
+        assertThat(cache.apply(10, key("k"), k -> "v3")).isEqualTo("v3");
+    }
+
+    @Test
+    public void testInvalidateAllKeysIncludingPrimitiveTables() {
+        cache.apply(0, key("a"), k -> "a");
+        cache.apply(0, key("b"), k -> "b");
+        cache.longKeys("ids")
+                .apply(CacheSpec.ofTtl(0), 7L, id -> "7");
+
+        cache.invalidateAll(List.of(key("a"), CacheKey.of("ids", 7L)));
+
+        assertThat(cache.apply(0, key("a"), k -> "a2")).isEqualTo("a2");
+        assertThat(cache.apply(0, key("b"), k -> "b2")).isEqualTo("b");
+        assertThat(cache.longKeys("ids")
+                .apply(CacheSpec.ofTtl(0), 7L, id -> "7b")).isEqualTo("7b");
+    }
+
+    @Test
+    public void testInvalidateNamespaceKeepsOtherNamespaces() {
+        cache.apply(0, CacheKey.of("a", 1), k -> "a1");
+        cache.apply(0, CacheKey.of("b", 1), k -> "b1");
+
+        cache.invalidateNamespace("a");
+
+        assertThat(cache.apply(0, CacheKey.of("a", 1), k -> "a2")).isEqualTo("a2");
+        assertThat(cache.apply(0, CacheKey.of("b", 1), k -> "b2")).isEqualTo("b1");
+    }
+
+    private static CacheKey key(final String key) {
+        return CacheKey.of("ns", key);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                    .interrupt();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                    .interrupt();
+        }
+    }
+
+    @Test
+    public void testPinnedKeyIsReloadedAheadOfExpiry() {
+        var tasks = new ArrayList<Runnable>();
+        var pinning = new MemoryCache(tasks::add, now::get);
+        var calls = new AtomicInteger();
+        Function<CacheKey, Object> resolver = k -> "v" + calls.incrementAndGet();
+        pinning.apply(100, key("hot"), resolver);
+        pinning.apply(100, key("cold"), resolver);
+        pinning.pin(key("hot"));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(70));
+        assertThat(pinning.apply(100, key("hot"), resolver)).isEqualTo("v1");
+        assertThat(tasks).isEmpty();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(15));
+        assertThat(pinning.apply(100, key("hot"), resolver)).isEqualTo("v1");
+        assertThat(pinning.apply(100, key("cold"), resolver)).isEqualTo("v2");
+        assertThat(tasks).hasSize(1);
+        tasks.remove(0)
+                .run();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(30));
+        assertThat(pinning.apply(100, key("hot"), resolver)).isEqualTo("v3");
+        assertThat(calls).hasValue(3);
+    }
+}
@@ -0,0 +1,176 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PrimitiveCacheTest implements WithAssertions {
+    private static final CacheSpec NO_TTL = CacheSpec.ofTtl(0);
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testHitWithinTtlAndExpiry() {
+        var cache = new PrimitiveCache(now::get, Long.MAX_VALUE);
+        var spec = CacheSpec.ofTtl(20);
+
+        assertThat(cache.apply(spec, 42L, k -> "v1")).isEqualTo("v1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(19));
+        assertThat(cache.apply(spec, 42L, k -> "v2")).isEqualTo("v1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(cache.apply(spec, 42L, k -> "v3")).isEqualTo("v3");
+
+        var stats = cache.stats();
+        assertThat(stats.hitCount()).isEqualTo(1);
+        assertThat(stats.missCount()).isEqualTo(2);
+        assertThat(stats.expirationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testExpiredKeysAreSweptWithoutBeingReadAgain() {
+        var cache = new PrimitiveCache(now::get, Long.MAX_VALUE);
+        var spec = CacheSpec.ofTtl(10);
+        for (long key = 0; key < 10_000; key++) {
+            cache.apply(spec, key, k -> k);
+        }
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+
+        for (long key = 10_000; key < 20_000; key++) {
+            cache.apply(spec, key, k -> k);
+        }
+
+        assertThat(cache.size()).isLessThan(15_000);
+        assertThat(cache.stats()
+                .expirationCount()).isPositive();
+        for (long key = 10_000; key < 20_000; key++) {
+            assertThat(cache.apply(spec, key, k -> -1L)).isEqualTo(key);
+        }
+    }
+
+    @Test
+    public void testRemovalsKeepOtherKeysReachable() {
+        var cache = new PrimitiveCache(now::get, Long.MAX_VALUE);
+        for (long key = 0; key < 10_000; key++) {
+            cache.apply(NO_TTL, key, k -> k);
+        }
+        for (long key = 0; key < 10_000; key += 3) {
+            cache.invalidate(key);
+        }
+
+        var loads = new AtomicInteger();
+        for (long key = 0; key < 10_000; key++) {
+            cache.apply(NO_TTL, key, k -> {
+                loads.incrementAndGet();
+                return k;
+            });
+        }
+        assertThat(loads).hasValue(3334);
+        assertThat(cache.size()).isEqualTo(10_000);
+    }
+
+    @Test
+    public void testIntKeysAreWidened() {
+        var cache = new PrimitiveCache(now::get, Long.MAX_VALUE);
+        cache.apply(NO_TTL, -1, (int k) -> "int");
+
+        assertThat(cache.apply(NO_TTL, -1L, k -> "long")).isEqualTo("int");
+        cache.invalidate(-1);
+        assertThat(cache.apply(NO_TTL, -1, (int k) -> "again")).isEqualTo("again");
+    }
+
+    @Test
+    public void testClockSparesReferencedEntries() {
+        var cache = new PrimitiveCache(now::get, 100);
+        for (long key = 0; key < 100; key++) {
+            cache.apply(NO_TTL, key, k -> k);
+        }
+        for (long key = 1_000; key < 1_050; key++) {
+            cache.apply(NO_TTL, 7L, k -> k);
+            cache.apply(NO_TTL, key, k -> k);
+        }
+
+        assertThat(cache.size()).isEqualTo(100);
+        assertThat(cache.stats()
+                .evictionCount()).isEqualTo(50);
+        assertThat(cache.apply(NO_TTL, 7L, k -> "reloaded")).isEqualTo(7L);
+    }
+
+    @Test
+    public void testNullIsNotCachedAndFailuresPropagate() {
+        var cache = new PrimitiveCache(now::get, Long.MAX_VALUE);
+
+        assertThat(cache.apply(NO_TTL, 1L, k -> null)).isNull();
+        assertThatThrownBy(() -> cache.apply(NO_TTL, 1L, k -> {
+            throw new IllegalStateException("backend down");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> cache.apply(NO_TTL, 2L, k -> cache.apply(NO_TTL, 2L, r -> r))).isInstanceOf(IllegalStateException.class);
+        assertThat(cache.apply(NO_TTL, 1L, k -> "v")).isEqualTo("v");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test(timeout = 10_000L)
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        var cache = new PrimitiveCache(System::nanoTime, Long.MAX_VALUE);
+        var threads = 16;
+        var pool = Executors.newFixedThreadPool(threads);
+        var barrier = new CyclicBarrier(threads);
+        var calls = new AtomicInteger();
+        var results = new ArrayList<Future<Object>>();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> {
+                barrier.await();
+                return cache.apply(NO_TTL, 5L, k -> {
+                    calls.incrementAndGet();
+                    sleep(20L);
+                    return "v" + System.nanoTime();
+                });
+            }));
+        }
+        var expected = results.get(0)
+                .get();
+        for (var result : results) {
+            assertThat(result.get()).isEqualTo(expected);
+        }
+        pool.shutdown();
+
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    public void testMemoryCacheInvalidationReachesPrimitiveTables() {
+        var memory = new MemoryCache(Runnable::run, now::get);
+        memory.longKeys("ns")
+                .apply(NO_TTL, 3L, k -> "long");
+        memory.intKeys("ns")
+                .apply(NO_TTL, 3, k -> "int");
+
+        assertThat(memory.size()).isEqualTo(2);
+        memory.invalidate(CacheKey.of("ns", 3L));
+        assertThat(memory.longKeys("ns")
+                .apply(NO_TTL, 3L, k -> "long2")).isEqualTo("long2");
+        assertThat(memory.intKeys("ns")
+                .apply(NO_TTL, 3, k -> "int2")).isEqualTo("int");
+
+        memory.invalidateAll();
+        assertThat(memory.intKeys("ns")
+                .apply(NO_TTL, 3, k -> "int3")).isEqualTo("int3");
+        assertThat(memory.stats()
+                .missCount()).isEqualTo(4);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                    .interrupt();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SegmentedCacheTest implements WithAssertions {
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testInvalidateNamespaceKeepsOtherNamespaces() {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded());
+        cache.apply(0, CacheKey.of("cache1", "k"), k -> "one");
+        cache.apply(0, CacheKey.of("cache2", "k"), k -> "two");
+
+        cache.invalidateNamespace("cache2");
+
+        assertThat(cache.apply(0, CacheKey.of("cache1", "k"), k -> "other")).isEqualTo("one");
+        assertThat(cache.apply(0, CacheKey.of("cache2", "k"), k -> "reloaded")).isEqualTo("reloaded");
+    }
+
+    @Test
+    public void testNamespacesHaveTheirOwnCapacity() {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded(), Map.of(
+                "small", NamespaceConfig.of(() -> new BoundedCache(10, Map.of(), Runnable::run))));
+        for (int i = 0; i < 1000; i++) {
+            final int value = i;
+            cache.apply(0, CacheKey.of("small", i), k -> value);
+            cache.apply(0, CacheKey.of("large", i), k -> value);
+        }
+
+        assertThat(cache.stats("small").size()).isLessThanOrEqualTo(10);
+        assertThat(cache.stats("large").size()).isEqualTo(1000);
+    }
+
+    @Test
+    public void testDefaultTtlAppliesWithoutMethodTtl() {
+        var ticking = NamespaceConfig.of(() -> new MemoryCache(Runnable::run, now::get));
+        var cache = new SegmentedCache(ticking, Map.of("short", ticking.withDefaultTtl(10, TimeUnit.MILLISECONDS)));
+        cache.apply(CacheSpec.DEFAULT_TTL, CacheKey.of("short", "k"), k -> "v1");
+        cache.apply(CacheSpec.ofTtl(CacheSpec.DEFAULT_TTL), CacheKey.of("short", "spec"), k -> "v1");
+        cache.apply(0, CacheKey.of("short", "forever"), k -> "v1");
+        cache.apply(1000, CacheKey.of("short", "explicit"), k -> "v1");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertThat(cache.apply(CacheSpec.DEFAULT_TTL, CacheKey.of("short", "k"), k -> "v2")).isEqualTo("v2");
+        assertThat(cache.apply(CacheSpec.ofTtl(CacheSpec.DEFAULT_TTL), CacheKey.of("short", "spec"), k -> "v2")).isEqualTo("v2");
+        assertThat(cache.apply(0, CacheKey.of("short", "forever"), k -> "v2")).isEqualTo("v1");
+        assertThat(cache.apply(1000, CacheKey.of("short", "explicit"), k -> "v2")).isEqualTo("v1");
+    }
+
+    @Test
+    public void testUnsetTtlIsRejectedWithoutDefault() {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded());
+
+        assertThatThrownBy(() -> cache.apply(CacheSpec.ofTtl(CacheSpec.DEFAULT_TTL), CacheKey.of("ns", "k"), k -> "v"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("ns");
+        assertThatThrownBy(() -> new MemoryCache().apply(CacheSpec.ofTtl(CacheSpec.DEFAULT_TTL), CacheKey.of("ns", "k"), k -> "v"))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(cache.apply(CacheSpec.ofTtl(0), CacheKey.of("ns", "k"), k -> "v")).isEqualTo("v");
+    }
+
+    @Test
+    public void testStatsArePerNamespace() {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded());
+        cache.apply(0, CacheKey.of("cache1", "k"), k -> "v");
+        cache.apply(0, CacheKey.of("cache1", "k"), k -> "v");
+        cache.apply(0, CacheKey.of("cache2", "k"), k -> "v");
+
+        assertThat(cache.stats("cache1").hitCount()).isEqualTo(1);
+        assertThat(cache.stats("cache2").hitCount()).isZero();
+        assertThat(cache.stats("cache2").missCount()).isEqualTo(1);
+        assertThat(cache.stats("unused").requestCount()).isZero();
+        assertThat(cache.namespaces()).containsOnly("cache1", "cache2");
+    }
+
+    @Test
+    public void testCompressedNamespaceStoresLargeValuesDeflated() {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded(), Map.of("pages", NamespaceConfig.unbounded()
+                .withCompression(64)));
+        var page = "<p>cached page</p>".repeat(100);
+
+        assertThat(cache.apply(0, CacheKey.of("pages", "home"), k -> page)).isEqualTo(page);
+        assertThat(cache.apply(0, CacheKey.of("pages", "home"), k -> "other")).isEqualTo(page);
+        assertThat(cache.applyAll(CacheSpec.ofTtl(0), List.of(CacheKey.of("pages", "about")),
+                keys -> Map.of(CacheKey.of("pages", "about"), page))).containsEntry(CacheKey.of("pages", "about"), page);
+        assertThat(cache.longKeys("pages")
+                .apply(CacheSpec.ofTtl(0), 1, k -> page)).isEqualTo(page);
+        assertThat(cache.apply(0, CacheKey.of("plain", "home"), k -> page)).isSameAs(page);
+
+        assertThat(cache.compressionStats("pages")
+                .compressedCount()).isEqualTo(3);
+        assertThat(cache.compressionStats("pages")
+                .savedBytes()).isGreaterThan(3 * 1000);
+        assertThat(cache.compressionStats("plain")
+                .compressedCount()).isZero();
+    }
+}
@@ -0,0 +1,66 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TieredCacheTest implements WithAssertions {
+    private final AtomicLong now = new AtomicLong();
+    private final MemoryCache first = new MemoryCache(Runnable::run, now::get);
+    private final MemoryCache second = new MemoryCache(Runnable::run, now::get);
+    private final TieredCache cache = new TieredCache(first, second, now::get);
+
+    @Test
+    public void testFirstLevelExpiresWithSecondLevel() {
+        var key = CacheKey.of("ns", 1);
+        second.apply(1000, key, k -> "v1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+
+        assertThat(cache.apply(1000, key, k -> "v2")).isEqualTo("v1");
+        assertThat(first.timeToLive(key)).isEqualTo(1000);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+        assertThat(cache.apply(1000, key, k -> "v2")).isEqualTo("v2");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertThat(cache.apply(1000, key, k -> "v3")).isEqualTo("v2");
+    }
+
+    @Test
+    public void testAsyncHitExpiresWithSecondLevel() throws Exception {
+        var key = CacheKey.of("ns", 1);
+        second.applyAsync(1000, key, k -> CompletableFuture.completedFuture("v1"));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+
+        assertThat(cache.applyAsync(1000, key, k -> CompletableFuture.completedFuture("v2"))
+                .get()).isEqualTo("v1");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+        assertThat(cache.applyAsync(1000, key, k -> CompletableFuture.completedFuture("v2"))
+                .get()).isEqualTo("v2");
+    }
+
+    @Test
+    public void testBulkHitExpiresWithSecondLevel() {
+        var key = CacheKey.of("ns", 1);
+        second.apply(1000, key, k -> "v1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+
+        assertThat(cache.applyAll(CacheSpec.ofTtl(1000), List.of(key), missing -> Map.of(key, "v2"))).containsEntry(key, "v1");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+        assertThat(cache.applyAll(CacheSpec.ofTtl(1000), List.of(key), missing -> Map.of(key, "v2"))).containsEntry(key, "v2");
+    }
+
+    @Test
+    public void testFreshLoadsAreNotWrapped() {
+        var key = CacheKey.of("ns", 1);
+
+        assertThat(cache.apply(1000, key, k -> "v1")).isEqualTo("v1");
+        assertThat(first.apply(1000, key, k -> "other")).isEqualTo("v1");
+    }
+}
@@ -0,0 +1,79 @@
+package me.mrs;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ValueCompressorTest implements WithAssertions {
+    private static String page(final int i) {
+        return "{\"id\":" + i + ",\"name\":\"user" + i + "\",\"roles\":[\"reader\",\"writer\"],\"active\":true}" + " padding".repeat(20);
+    }
+
+    @Test
+    public void testLargeValuesRoundTrip() {
+        var compressor = new ValueCompressor(100);
+        var text = page(1);
+        var bytes = "abc".repeat(100)
+                .getBytes();
+
+        var storedText = compressor.encode(text);
+        var storedBytes = compressor.encode(bytes);
+
+        assertThat(storedText).isInstanceOf(ValueCompressor.Compressed.class);
+        assertThat(storedBytes).isInstanceOf(ValueCompressor.Compressed.class);
+        assertThat(compressor.decode(storedText)).isEqualTo(text);
+        assertThat((byte[]) compressor.decode(storedBytes)).isEqualTo(bytes);
+        assertThat(compressor.stats()
+                .savedBytes()).isPositive();
+    }
+
+    @Test
+    public void testSmallAndIncompressibleValuesAreKeptAsIs() {
+        var compressor = new ValueCompressor(100);
+        var random = new byte[1000];
+        new Random(42).nextBytes(random);
+
+        assertThat(compressor.encode("short")).isEqualTo("short");
+        assertThat(compressor.encode(42)).isEqualTo(42);
+        assertThat(compressor.encode(null)).isNull();
+        assertThat(compressor.encode(random)).isSameAs(random);
+        assertThat(compressor.stats()
+                .incompressibleCount()).isEqualTo(1);
+        assertThat(compressor.decode("short")).isEqualTo("short");
+    }
+
+    @Test
+    public void testTrainedDictionaryShrinksLaterValues() {
+        var compressor = new ValueCompressor(100);
+        var early = new Object[16];
+        for (int i = 0; i < early.length; i++) {
+            early[i] = compressor.encode(page(i));
+        }
+        var before = compressor.stats()
+                .compressedBytes();
+        var late = compressor.encode(page(100));
+
+        assertThat(compressor.stats()
+                .compressedBytes() - before).isLessThan(before / early.length);
+        assertThat(compressor.decode(late)).isEqualTo(page(100));
+        for (int i = 0; i < early.length; i++) {
+            assertThat(compressor.decode(early[i])).isEqualTo(page(i));
+        }
+    }
+
+    @Test
+    public void testRepeatedHitsAreServedFromTheHotValues() {
+        var compressor = new ValueCompressor(100);
+        var stored = compressor.encode(page(1));
+
+        var first = compressor.decode(stored);
+        var second = compressor.decode(stored);
+
+        assertThat(second).isSameAs(first);
+        assertThat(compressor.stats()
+                .decompressionCount()).isEqualTo(1);
+        assertThat(compressor.stats()
+                .hotHitCount()).isEqualTo(1);
+    }
+}
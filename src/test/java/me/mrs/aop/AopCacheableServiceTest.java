@@ -12,11 +12,19 @@ import org.junit.Before;
 import org.junit.Test;
 
 import javax.inject.Singleton;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class AopCacheableServiceTest implements WithAssertions {
     @Inject
     private UppercaseService target;
+    @Inject
+    private CacheService cacheService;
 
     @Before
     public void setup() {
@@ -50,6 +58,127 @@ public class AopCacheableServiceTest implements WithAssertions {
                 .contains("Prefix")
                 .containsPattern("[0-9]");
     }
+
+    @Test
+    public void testInvokeAsync() throws Exception {
+        var f1 = target.applyAsync("text");
+        var f2 = target.applyAsync("text");
+        var v1 = f1.get(1, TimeUnit.SECONDS);
+        log.info("v1 = {}", v1);
+
+        assertThat(f2).isSameAs(f1);
+        assertThat(v1).containsPattern("[0-9]Z:TEXT");
+    }
+
+    @Test
+    public void testInvokeAll() throws InterruptedException {
+        var v1 = target.applyAll(Set.of("a", "b"));
+        log.info("v1 = {}", v1);
+        Thread.sleep(10L);
+        var v2 = target.applyAll(new LinkedHashSet<>(List.of("b", "c")));
+        log.info("v2 = {}", v2);
+
+        assertThat(v2).containsOnlyKeys("b", "c")
+                .containsEntry("b", v1.get("b"));
+        assertThat(v2.get("c")).isNotEqualTo(v2.get("b"))
+                .endsWith("Z:C");
+    }
+
+    @Test
+    public void testInvokeByLongId() throws InterruptedException {
+        var v1 = target.applyById(7L);
+        Thread.sleep(10L);
+        var v2 = target.applyById(7L);
+        cacheService.invalidate(CacheKey.of("cache5", 7L));
+        var v3 = target.applyById(7L);
+
+        assertThat(v2).isEqualTo(v1)
+                .endsWith(":#7");
+        assertThat(v3).isNotEqualTo(v1);
+        assertThat(cacheService.longKeys("cache5")
+                .apply(CacheSpec.ofTtl(0), 7L, id -> "uncached")).isEqualTo(v3);
+    }
+
+    @Test
+    public void testInvokeCachesFailure() {
+        var e1 = catchThrowable(() -> target.applyStrict(" "));
+        var e2 = catchThrowable(() -> target.applyStrict(" "));
+
+        assertThat(e1).isInstanceOf(IllegalArgumentException.class);
+        assertThat(e2).isSameAs(e1);
+        assertThat(target.applyStrict("?text")).isNull();
+    }
+
+    @Test
+    public void testEvictAndPut() throws InterruptedException {
+        var v1 = target.apply("text");
+        Thread.sleep(10L);
+        target.evict("text");
+        var v2 = target.apply("text");
+        Thread.sleep(10L);
+        var v3 = target.refresh("text");
+
+        assertThat(v2).isNotEqualTo(v1);
+        assertThat(v3).isNotEqualTo(v2)
+                .endsWith("Z:TEXT");
+        assertThat(target.apply("text")).isEqualTo(v3);
+    }
+
+    @Test
+    public void testEvictByLongId() throws InterruptedException {
+        var v1 = target.applyById(7L);
+        Thread.sleep(10L);
+        target.evictById(7L);
+
+        assertThat(target.applyById(7L)).isNotEqualTo(v1)
+                .endsWith(":#7");
+    }
+
+    @Test(timeout = 10_000L)
+    public void testLateLoadIsHedgedThroughTheInterceptor() throws InterruptedException {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded()
+                .withLoadLimit(2, 0)
+                .withHedging(90));
+        var lookup = Guice.createInjector(new AbstractModule() {
+                    @Override
+                    protected void configure() {
+                        bindInterceptor(Matchers.any(), Matchers.annotatedWith(Cacheable.class), new AopCacheInterceptorService(() -> cache));
+                    }
+                })
+                .getInstance(SlowLookup.class);
+        for (int i = 0; i < 128; i++) {
+            lookup.find("key-" + i);
+        }
+
+        var value = lookup.find("slow");
+        lookup.release.countDown();
+
+        assertThat(value).isEqualTo("hedged");
+        assertThat(cache.loaderStats("hedged")
+                .hedgeCount()).isEqualTo(1);
+    }
+
+    public interface Lookup {
+        String find(String key) throws InterruptedException;
+    }
+
+    public static class SlowLookup implements Lookup {
+        final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger slowCalls = new AtomicInteger();
+
+        @Override
+        @Cacheable(namespace = "hedged", ttl = 60)
+        public String find(final String key) throws InterruptedException {
+            if (!"slow".equals(key)) {
+                return key;
+            }
+            if (slowCalls.incrementAndGet() > 1) {
+                return "hedged";
+            }
+            release.await();
+            return "first";
+        }
+    }
 }
 
 @Slf4j
@@ -61,7 +190,9 @@ class AopModule extends AbstractModule {
         bind(CacheService.class).to(MemoryCache.class)
                 .in(Singleton.class);
 
-        bindInterceptor(Matchers.any(), Matchers.annotatedWith(Cacheable.class), new AopCacheInterceptorService(getProvider(CacheService.class)));
+        bindInterceptor(Matchers.any(), Matchers.annotatedWith(Cacheable.class)
+                .or(Matchers.annotatedWith(CacheEvict.class))
+                .or(Matchers.annotatedWith(CachePut.class)), new AopCacheInterceptorService(getProvider(CacheService.class)));
     }
 }
 
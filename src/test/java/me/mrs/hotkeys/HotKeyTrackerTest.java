@@ -0,0 +1,153 @@
+package me.mrs.hotkeys;
+
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import org.assertj.core.api.WithAssertions;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+public class HotKeyTrackerTest implements WithAssertions {
+    private final AtomicLong now = new AtomicLong();
+    private final List<HotKeyTracker> trackers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        trackers.forEach(HotKeyTracker::close);
+    }
+
+    private HotKeyTracker tracker(final int top, final int sampleRate) {
+        final var tracker = new HotKeyTracker(top, sampleRate, 1, TimeUnit.SECONDS, now::get) {
+        };
+        trackers.add(tracker);
+        return tracker;
+    }
+
+    @Test
+    public void testReportsTopKeysByHitsMissesAndLoadTime() {
+        var tracker = tracker(3, 1);
+        for (int i = 0; i < 10_000; i++) {
+            tracker.access(CacheKey.of("users", i % 10 == 0 ? 1 : 100 + i % 1000));
+        }
+        for (int i = 0; i < 50; i++) {
+            tracker.access(CacheKey.of("users", 2));
+            tracker.load(CacheKey.of("users", 2), 1_000);
+        }
+        tracker.access(CacheKey.of("users", 3));
+        tracker.load(CacheKey.of("users", 3), 1_000_000);
+
+        assertThat(tracker.topByHits("users")).hasSizeLessThanOrEqualTo(3)
+                .first()
+                .satisfies(hot -> {
+                    assertThat(hot.key()).isEqualTo(CacheKey.of("users", 1));
+                    assertThat(hot.hits()).isGreaterThanOrEqualTo(1000);
+                });
+        assertThat(tracker.topByMisses("users")
+                .get(0)
+                .key()).isEqualTo(CacheKey.of("users", 2));
+        assertThat(tracker.topByLoadTime("users")
+                .get(0)
+                .key()).isEqualTo(CacheKey.of("users", 3));
+        assertThat(tracker.topByHits("unused")).isEmpty();
+        assertThat(tracker.namespaces()).containsOnly("users");
+    }
+
+    @Test
+    public void testSampledRequestsAreExtrapolated() {
+        var tracker = tracker(4, 8);
+        int sampled = 0;
+        for (int i = 0; i < 80_000; i++) {
+            if (tracker.sampled()) {
+                sampled++;
+                tracker.access(CacheKey.of("users", 1));
+            }
+        }
+
+        assertThat(sampled).isBetween(9_000, 11_000);
+        assertThat(tracker.topByHits("users")
+                .get(0)
+                .hits()).isEqualTo(8L * sampled);
+    }
+
+    @Test
+    public void testCountsDecayEveryPeriod() {
+        var tracker = tracker(4, 1);
+        for (int i = 0; i < 100; i++) {
+            tracker.access(CacheKey.of("users", 1));
+        }
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        tracker.maintain();
+
+        assertThat(tracker.topByHits("users")
+                .get(0)
+                .hits()).isEqualTo(50);
+    }
+
+    @Test
+    public void testHottestKeysArePinnedUntilTheyCoolDown() {
+        var pinned = new HashSet<CacheKey>();
+        var tracker = tracker(4, 1);
+        tracker.promoteTo(pinning(pinned), 1);
+        for (int i = 0; i < 100; i++) {
+            tracker.access(CacheKey.of("users", 1));
+            tracker.access(CacheKey.of("users", i));
+        }
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        tracker.maintain();
+        assertThat(pinned).containsOnly(CacheKey.of("users", 1));
+        assertThat(tracker.promoted("users")).containsOnly(CacheKey.of("users", 1));
+
+        for (int i = 0; i < 1000; i++) {
+            tracker.access(CacheKey.of("users", 2));
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        tracker.maintain();
+        assertThat(pinned).containsOnly(CacheKey.of("users", 2));
+    }
+
+    @Test
+    public void testRequestsDontPromote() {
+        var pinned = new HashSet<CacheKey>();
+        var tracker = tracker(4, 1);
+        tracker.promoteTo(pinning(pinned), 1);
+        for (int i = 0; i < 10_000; i++) {
+            tracker.access(CacheKey.of("users", 1));
+        }
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        tracker.access(CacheKey.of("users", 1));
+
+        assertThat(pinned).isEmpty();
+        assertThat(tracker.topByHits("users")
+                .get(0)
+                .hits()).isEqualTo(10_001);
+    }
+
+    private static CacheService pinning(final Set<CacheKey> pinned) {
+        return new CacheService() {
+            @Override
+            public Object apply(final long ttl, final CacheKey key, final Function<CacheKey, Object> resolver) {
+                return resolver.apply(key);
+            }
+
+            @Override
+            public void pin(final CacheKey key) {
+                pinned.add(key);
+            }
+
+            @Override
+            public void unpin(final CacheKey key) {
+                pinned.remove(key);
+            }
+        };
+    }
+}
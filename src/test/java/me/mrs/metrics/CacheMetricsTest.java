@@ -0,0 +1,106 @@
+package me.mrs.metrics;
+
+import me.mrs.CacheKey;
+import me.mrs.MemoryCache;
+import me.mrs.MyService;
+import me.mrs.NamespaceConfig;
+import me.mrs.SegmentedCache;
+import me.mrs.UppercaseService;
+import me.mrs.proxy.CachedProxyService;
+import org.assertj.core.api.WithAssertions;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class CacheMetricsTest implements WithAssertions {
+    @After
+    public void tearDown() {
+        CacheMetrics.unregister("metrics-test");
+    }
+
+    @Test
+    public void testLoadsAreTimedByNamespaceAndMethod() throws Exception {
+        var cache = new MemoryCache();
+        @SuppressWarnings("unchecked") UppercaseService service = CachedProxyService.instance(new MyService(), () -> cache, UppercaseService.class);
+        var method = MyService.class.getMethod("applyWithPrefix", String.class, String.class);
+        var before = CacheMetrics.snapshot();
+
+        service.applyWithPrefix("metrics", "a");
+        service.applyWithPrefix("metrics", "b");
+        service.applyWithPrefix("metrics", "c");
+
+        var after = CacheMetrics.snapshot();
+        assertThat(after.methodLoads()
+                .get(CacheMetrics.name(method))
+                .count()).isEqualTo(count(before.methodLoads()
+                .get(CacheMetrics.name(method))) + 1);
+        assertThat(after.namespaceLoads()
+                .get("cache2")
+                .count()).isEqualTo(count(before.namespaceLoads()
+                .get("cache2")) + 1);
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName("me.mrs:type=LoadLatency,namespace=\"cache2\""), "Count")).isInstanceOf(Long.class);
+    }
+
+    @Test
+    public void testRegisteredCacheStatsArePublished() throws Exception {
+        var cache = new MemoryCache();
+        CacheMetrics.register("metrics-test", cache::stats);
+        cache.apply(0, CacheKey.of("ns", "k"), k -> "v");
+        cache.apply(0, CacheKey.of("ns", "k"), k -> "v");
+
+        assertThat(CacheMetrics.snapshot()
+                .caches()
+                .get("metrics-test")
+                .hitCount()).isEqualTo(1);
+        var name = new ObjectName("me.mrs:type=Cache,name=\"metrics-test\"");
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(name, "LoadCount")).isEqualTo(1L);
+
+        CacheMetrics.unregister("metrics-test");
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name)).isFalse();
+    }
+
+    @Test
+    public void testRegisteredLoaderIsPublished() throws Exception {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded()
+                .withLoadLimit(1, 0));
+        CacheMetrics.registerLoader("metrics-test", () -> cache.loaderStats("ns"));
+        cache.apply(0, CacheKey.of("ns", "k"), k -> "v");
+
+        var name = new ObjectName("me.mrs:type=Loader,name=\"metrics-test\"");
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(name, "CompletedCount")).isEqualTo(1L);
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(name, "Queued")).isEqualTo(0);
+
+        CacheMetrics.unregisterLoader("metrics-test");
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name)).isFalse();
+    }
+
+    @Test
+    public void testRegisteredCompressionIsPublished() throws Exception {
+        var cache = new SegmentedCache(NamespaceConfig.unbounded()
+                .withCompression(16));
+        CacheMetrics.registerCompression("metrics-test", () -> cache.compressionStats("ns"));
+        cache.apply(0, CacheKey.of("ns", "k"), k -> "v".repeat(100));
+
+        var name = new ObjectName("me.mrs:type=Compression,name=\"metrics-test\"");
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(name, "CompressedCount")).isEqualTo(1L);
+        assertThat((Long) ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(name, "SavedBytes")).isPositive();
+
+        CacheMetrics.unregisterCompression("metrics-test");
+        assertThat(ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name)).isFalse();
+    }
+
+    private static long count(final LatencyHistogram.Snapshot snapshot) {
+        return snapshot == null ? 0 : snapshot.count();
+    }
+}
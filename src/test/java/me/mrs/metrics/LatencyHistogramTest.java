@@ -0,0 +1,41 @@
+package me.mrs.metrics;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.Test;
+
+public class LatencyHistogramTest implements WithAssertions {
+    @Test
+    public void testBucketsKeepValuesWithinThreePercent() {
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            var index = LatencyHistogram.index(value);
+            assertThat(LatencyHistogram.highestValue(index)).isGreaterThanOrEqualTo(value)
+                    .isLessThanOrEqualTo(value + value / 32);
+            assertThat(LatencyHistogram.highestValue(index - 1)).isLessThan(value);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        var histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        var snapshot = histogram.snapshot();
+
+        assertThat(snapshot.count()).isEqualTo(1000);
+        assertThat(snapshot.mean()).isEqualTo(500_500.0);
+        assertThat(snapshot.max()).isEqualTo(1_000_000);
+        assertThat(snapshot.valueAt(50)).isCloseTo(500_000L, withinPercentage(3));
+        assertThat(snapshot.valueAt(99)).isCloseTo(990_000L, withinPercentage(3));
+        assertThat(snapshot.valueAt(100)).isEqualTo(1_000_000);
+    }
+
+    @Test
+    public void testEmptySnapshot() {
+        var snapshot = new LatencyHistogram().snapshot();
+
+        assertThat(snapshot.count()).isZero();
+        assertThat(snapshot.mean()).isZero();
+        assertThat(snapshot.valueAt(99)).isZero();
+    }
+}
@@ -0,0 +1,218 @@
+package me.mrs.near;
+
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import me.mrs.MemoryCache;
+import me.mrs.NamespaceConfig;
+import me.mrs.SegmentedCache;
+import org.assertj.core.api.WithAssertions;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class NearCacheTest implements WithAssertions {
+    private final List<NearCache> nodes = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (final var node : nodes) {
+            node.close();
+        }
+    }
+
+    @Test
+    public void testInvalidationReachesPeers() {
+        var hub = new LoopbackTransport();
+        var a = node(new MemoryCache(), hub, Long.MAX_VALUE);
+        var b = node(new MemoryCache(), hub.join(), Long.MAX_VALUE);
+        a.apply(0, CacheKey.of("ns", 1), k -> "a1");
+        b.apply(0, CacheKey.of("ns", 1), k -> "b1");
+        b.apply(0, CacheKey.of("ns", 2), k -> "b2");
+
+        a.invalidate(CacheKey.of("ns", 1));
+        assertThat(b.apply(0, CacheKey.of("ns", 1), k -> "b1'")).isEqualTo("b1");
+        a.flush();
+
+        assertThat(a.apply(0, CacheKey.of("ns", 1), k -> "a1'")).isEqualTo("a1'");
+        assertThat(b.apply(0, CacheKey.of("ns", 1), k -> "b1'")).isEqualTo("b1'");
+        assertThat(b.apply(0, CacheKey.of("ns", 2), k -> "b2'")).isEqualTo("b2");
+    }
+
+    @Test
+    public void testBurstIsCoalescedIntoOneMessage() {
+        var hub = new LoopbackTransport();
+        var sent = new ArrayList<byte[]>();
+        var a = node(new MemoryCache(), new Transport() {
+            @Override
+            public void broadcast(@Nonnull final byte[] message) {
+                sent.add(message);
+                hub.broadcast(message);
+            }
+
+            @Override
+            public void listen(@Nonnull final Consumer<byte[]> receiver) {
+                hub.listen(receiver);
+            }
+
+            @Override
+            public void close() {
+                hub.close();
+            }
+        }, Long.MAX_VALUE);
+        var b = node(new MemoryCache(), hub.join(), Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            b.apply(0, CacheKey.of("ns", i), k -> "old");
+        }
+
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 10; i++) {
+                a.invalidate(CacheKey.of("ns", i));
+            }
+        }
+        a.flush();
+        a.flush();
+
+        assertThat(sent).hasSize(1);
+        for (int i = 0; i < 10; i++) {
+            assertThat(b.apply(0, CacheKey.of("ns", i), k -> "new")).isEqualTo("new");
+        }
+    }
+
+    @Test
+    public void testNamespaceFlushReachesPeers() {
+        var hub = new LoopbackTransport();
+        var a = node(new SegmentedCache(NamespaceConfig.unbounded()), hub, Long.MAX_VALUE);
+        var b = node(new SegmentedCache(NamespaceConfig.unbounded()), hub.join(), Long.MAX_VALUE);
+        b.apply(0, CacheKey.of("users", 1), k -> "u1");
+        b.apply(0, CacheKey.of("orders", 1), k -> "o1");
+
+        a.invalidate(CacheKey.of("users", 1));
+        a.invalidateNamespace("users");
+        a.flush();
+
+        assertThat(b.apply(0, CacheKey.of("users", 1), k -> "u1'")).isEqualTo("u1'");
+        assertThat(b.apply(0, CacheKey.of("orders", 1), k -> "o1'")).isEqualTo("o1");
+    }
+
+    @Test(timeout = 10_000L)
+    public void testInvalidationIsPublishedAfterDelay() throws InterruptedException {
+        var hub = new LoopbackTransport();
+        var received = new CountDownLatch(1);
+        var a = node(new MemoryCache(), hub, 5);
+        hub.join()
+                .listen(message -> received.countDown());
+
+        a.invalidate(CacheKey.of("ns", 1));
+
+        assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test(timeout = 10_000L)
+    public void testSocketTransportDeliversToPeers() throws Exception {
+        var first = new SocketTransport(0, List.of());
+        var second = new SocketTransport(0, List.of(first.localAddress()));
+        var received = new CountDownLatch(2);
+        var messages = new ArrayList<String>();
+        first.listen(message -> {
+            synchronized (messages) {
+                messages.add(new String(message));
+            }
+            received.countDown();
+        });
+        try (first; second) {
+            second.broadcast("one".getBytes());
+            second.broadcast("two".getBytes());
+
+            assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+            synchronized (messages) {
+                assertThat(messages).containsExactly("one", "two");
+            }
+        }
+    }
+
+    @Test(timeout = 10_000L)
+    public void testSocketTransportDropsUnauthenticatedFrames() throws Exception {
+        var localhost = InetAddress.getLoopbackAddress();
+        var secret = "secret".getBytes();
+        var first = new SocketTransport(new InetSocketAddress(localhost, 0), List.of(), secret);
+        var intruder = new SocketTransport(new InetSocketAddress(localhost, 0), List.of(first.localAddress()), "guess".getBytes());
+        var second = new SocketTransport(new InetSocketAddress(localhost, 0), List.of(first.localAddress()), secret);
+        var messages = new ArrayList<String>();
+        var received = new CountDownLatch(1);
+        first.listen(message -> {
+            synchronized (messages) {
+                messages.add(new String(message));
+            }
+            received.countDown();
+        });
+        try (first; intruder; second) {
+            intruder.broadcast("forged".getBytes());
+            second.broadcast("genuine".getBytes());
+
+            assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+            synchronized (messages) {
+                assertThat(messages).containsExactly("genuine");
+            }
+        }
+    }
+
+    @Test
+    public void testSocketTransportNeedsSecretOutsideLoopback() {
+        assertThatThrownBy(() -> new SocketTransport(new InetSocketAddress(0), List.of(), null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testUnsupportedKeyArgumentFlushesNamespaceOnPeers() {
+        var hub = new LoopbackTransport();
+        var a = node(new SegmentedCache(NamespaceConfig.unbounded()), hub, Long.MAX_VALUE);
+        var b = node(new SegmentedCache(NamespaceConfig.unbounded()), hub.join(), Long.MAX_VALUE);
+        b.apply(0, CacheKey.of("ns", 1.5), k -> "b1");
+        b.apply(0, CacheKey.of("other", 1), k -> "o1");
+
+        a.invalidate(CacheKey.of("ns", 1.5));
+        a.flush();
+
+        assertThat(b.apply(0, CacheKey.of("ns", 1.5), k -> "b1'")).isEqualTo("b1'");
+        assertThat(b.apply(0, CacheKey.of("other", 1), k -> "o1'")).isEqualTo("o1");
+    }
+
+    @Test
+    public void testSerializedKeyArgumentIsRejected() {
+        var hub = new LoopbackTransport();
+        var b = node(new MemoryCache(), hub.join(), Long.MAX_VALUE);
+        b.apply(0, CacheKey.of("ns", 1), k -> "b1");
+        var forged = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(forged)) {
+            out.writeByte(2);
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeUTF("ns");
+            out.writeInt(1);
+            out.writeByte(5);
+            out.writeInt(0);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+
+        hub.broadcast(forged.toByteArray());
+
+        assertThat(b.apply(0, CacheKey.of("ns", 1), k -> "b1'")).isEqualTo("b1");
+    }
+
+    private NearCache node(final CacheService local, final Transport transport, final long delayMillis) {
+        var node = new NearCache(local, transport, delayMillis);
+        nodes.add(node);
+        return node;
+    }
+}
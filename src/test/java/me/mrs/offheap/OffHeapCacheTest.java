@@ -0,0 +1,135 @@
+package me.mrs.offheap;
+
+import me.mrs.BoundedCache;
+import me.mrs.CacheKey;
+import me.mrs.TieredCache;
+import org.assertj.core.api.WithAssertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class OffHeapCacheTest implements WithAssertions {
+    private final AtomicLong now = new AtomicLong();
+    private OffHeapCache cache;
+
+    @Before
+    public void setup() {
+        cache = new OffHeapCache(1024 * 1024, StandardSerializer.INSTANCE, now::get);
+    }
+
+    @Test
+    public void testHitReturnsEqualValue() {
+        var key = CacheKey.of("cache1", "text");
+        var v1 = cache.apply(0, key, k -> "2020-01-01T00:00:00Z:TEXT");
+        var v2 = cache.apply(0, CacheKey.of("cache1", "text"), k -> "other");
+
+        assertThat(v2).isEqualTo(v1)
+                .isNotSameAs(v1);
+    }
+
+    @Test
+    public void testKeyArgumentsAreNotConcatenated() {
+        cache.apply(0, CacheKey.of("ns", "a.b", "c"), k -> "first");
+
+        assertThat(cache.apply(0, CacheKey.of("ns", "a", "b.c"), k -> "second")).isEqualTo("second");
+    }
+
+    @Test
+    public void testValueTypes() {
+        var values = List.of(42L, 7, "text", Map.of("k", "v"));
+        for (int i = 0; i < values.size(); i++) {
+            var value = values.get(i);
+            cache.apply(0, CacheKey.of("ns", i), k -> value);
+            assertThat(cache.apply(0, CacheKey.of("ns", i), k -> "other")).isEqualTo(value);
+        }
+        cache.apply(0, CacheKey.of("ns", "bytes"), k -> new byte[]{1, 2, 3});
+        assertThat(cache.apply(0, CacheKey.of("ns", "bytes"), k -> null)).isEqualTo(new byte[]{1, 2, 3});
+    }
+
+    @Test
+    public void testExpiresAfterTtl() {
+        cache.apply(20, CacheKey.of("ns", "k"), k -> "v1");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(19));
+        assertThat(cache.apply(20, CacheKey.of("ns", "k"), k -> "v2")).isEqualTo("v1");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(cache.apply(20, CacheKey.of("ns", "k"), k -> "v2")).isEqualTo("v2");
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.apply(0, CacheKey.of("ns", "k"), k -> "v1");
+        cache.invalidate(CacheKey.of("ns", "k"));
+
+        assertThat(cache.apply(0, CacheKey.of("ns", "k"), k -> "v2")).isEqualTo("v2");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testInvalidateNamespace() {
+        cache.apply(0, CacheKey.of("ns", "k"), k -> "v1");
+        cache.apply(0, CacheKey.of("ns2", "k"), k -> "v1");
+        cache.apply(0, CacheKey.of("other", 1L), k -> "v1");
+
+        cache.invalidateNamespace("ns");
+
+        assertThat(cache.apply(0, CacheKey.of("ns", "k"), k -> "v2")).isEqualTo("v2");
+        assertThat(cache.apply(0, CacheKey.of("ns2", "k"), k -> "v2")).isEqualTo("v1");
+        assertThat(cache.apply(0, CacheKey.of("other", 1L), k -> "v2")).isEqualTo("v1");
+    }
+
+    @Test
+    public void testBoundedByCapacity() {
+        var payload = "x".repeat(200);
+        for (int i = 0; i < 50_000; i++) {
+            cache.apply(0, CacheKey.of("ns", i), k -> payload);
+        }
+
+        assertThat(cache.allocatedBytes()).isLessThanOrEqualTo(1024 * 1024);
+        assertThat(cache.evictionCount()).isPositive();
+        assertThat(cache.size()).isLessThan(50_000)
+                .isGreaterThan(1_000);
+
+        var loads = new AtomicInteger();
+        cache.apply(0, CacheKey.of("ns", 49_999), k -> {
+            loads.incrementAndGet();
+            return payload;
+        });
+        assertThat(loads).hasValue(0);
+    }
+
+    @Test
+    public void testAsyncStoresCompletedValue() {
+        var first = cache.applyAsync(0, CacheKey.of("ns", "k"), k -> java.util.concurrent.CompletableFuture.completedFuture("v1"));
+        var second = cache.applyAsync(0, CacheKey.of("ns", "k"), k -> java.util.concurrent.CompletableFuture.completedFuture("v2"));
+
+        assertThat(first).isCompletedWithValue("v1");
+        assertThat(second).isCompletedWithValue("v1");
+    }
+
+    @Test
+    public void testSecondLevelOfTieredCache() {
+        var tiered = new TieredCache(new BoundedCache(10, Map.of(), Runnable::run), cache);
+        var loads = new AtomicInteger();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                tiered.apply(0, CacheKey.of("ns", i), k -> {
+                    loads.incrementAndGet();
+                    return "value of " + k;
+                });
+            }
+        }
+
+        assertThat(loads).hasValue(1_000);
+        assertThat(cache.size()).isEqualTo(1_000);
+
+        tiered.invalidateNamespace("ns");
+        assertThat(cache.size()).isZero();
+        assertThat(tiered.apply(0, CacheKey.of("ns", 1), k -> "reloaded")).isEqualTo("reloaded");
+    }
+}
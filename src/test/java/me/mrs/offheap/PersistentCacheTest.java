@@ -0,0 +1,225 @@
+package me.mrs.offheap;
+
+import me.mrs.CacheKey;
+import org.assertj.core.api.WithAssertions;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PersistentCacheTest implements WithAssertions {
+    private static final int REGION_SIZE = 4096;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(1_600_000_000_000L);
+    private final AtomicInteger reads = new AtomicInteger();
+    private final Serializer serializer = new Serializer() {
+        @Override
+        public void write(final Object value, final DataOutput out) throws IOException {
+            StandardSerializer.INSTANCE.write(value, out);
+        }
+
+        @Override
+        public Object read(final DataInput in) throws IOException {
+            reads.incrementAndGet();
+            return StandardSerializer.INSTANCE.read(in);
+        }
+    };
+    private PersistentCache cache;
+
+    @After
+    public void tearDown() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testRestartRestoresEntriesLazily() throws Exception {
+        var path = reopen(null);
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            cache.apply(0, CacheKey.of("ns", i), k -> "value-" + value);
+        }
+        cache.flush();
+
+        reopen(path);
+        assertThat(cache.size()).isEqualTo(100);
+        assertThat(reads).hasValue(0);
+
+        assertThat(cache.apply(0, CacheKey.of("ns", 42), k -> "other")).isEqualTo("value-42");
+        assertThat(reads).hasValue(1);
+    }
+
+    @Test
+    public void testRestartHonoursOriginalExpiry() throws Exception {
+        var path = reopen(null);
+        cache.apply(1000, CacheKey.of("ns", "k"), k -> "v1");
+        cache.flush();
+
+        now.addAndGet(600);
+        reopen(path);
+        assertThat(cache.apply(1000, CacheKey.of("ns", "k"), k -> "v2")).isEqualTo("v1");
+
+        now.addAndGet(400);
+        assertThat(cache.apply(1000, CacheKey.of("ns", "k"), k -> "v3")).isEqualTo("v3");
+    }
+
+    @Test
+    public void testInvalidateSurvivesRestart() throws Exception {
+        var path = reopen(null);
+        cache.apply(0, CacheKey.of("ns", "k"), k -> "v1");
+        cache.flush();
+        cache.invalidate(CacheKey.of("ns", "k"));
+        assertThat(cache.apply(0, CacheKey.of("ns", "k"), k -> "v2")).isEqualTo("v2");
+        cache.flush();
+        cache.invalidate(CacheKey.of("ns", "k"));
+
+        reopen(path);
+        assertThat(cache.size()).isZero();
+        assertThat(cache.apply(0, CacheKey.of("ns", "k"), k -> "v3")).isEqualTo("v3");
+    }
+
+    @Test
+    public void testInvalidateNamespaceSurvivesRestart() throws Exception {
+        var path = reopen(null);
+        cache.apply(0, CacheKey.of("ns", "k"), k -> "v1");
+        cache.apply(0, CacheKey.of("ns2", "k"), k -> "v1");
+        cache.flush();
+        cache.apply(0, CacheKey.of("ns", "queued"), k -> "v1");
+        cache.invalidateNamespace("ns");
+        cache.flush();
+
+        reopen(path);
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.apply(0, CacheKey.of("ns", "k"), k -> "v2")).isEqualTo("v2");
+        assertThat(cache.apply(0, CacheKey.of("ns", "queued"), k -> "v2")).isEqualTo("v2");
+        assertThat(cache.apply(0, CacheKey.of("ns2", "k"), k -> "v2")).isEqualTo("v1");
+    }
+
+    @Test
+    public void testInvalidateCancelsQueuedWrite() throws Exception {
+        var path = reopen(null);
+        cache.apply(0, CacheKey.of("ns", "k"), k -> "v1");
+        cache.invalidate(CacheKey.of("ns", "k"));
+        cache.flush();
+
+        reopen(path);
+        assertThat(cache.apply(0, CacheKey.of("ns", "k"), k -> "v2")).isEqualTo("v2");
+    }
+
+    @Test
+    public void testQueuedWriteIsReadBeforeItIsAppended() throws Exception {
+        reopen(null);
+        var resolved = new AtomicInteger();
+        assertThat(cache.apply(0, CacheKey.of("ns", "k"), k -> "v" + resolved.incrementAndGet())).isEqualTo("v1");
+
+        assertThat(cache.apply(0, CacheKey.of("ns", "k"), k -> "v" + resolved.incrementAndGet())).isEqualTo("v1");
+        assertThat(resolved).hasValue(1);
+    }
+
+    @Test(timeout = 10_000L)
+    public void testConcurrentMissesResolveOnce() throws Exception {
+        reopen(null);
+        var resolved = new AtomicInteger();
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var first = CompletableFuture.supplyAsync(() -> cache.apply(0, CacheKey.of("ns", "k"), k -> {
+            resolved.incrementAndGet();
+            entered.countDown();
+            await(release);
+            return "v1";
+        }));
+        entered.await();
+        var second = CompletableFuture.supplyAsync(() -> cache.apply(0, CacheKey.of("ns", "k"), k -> "v" + resolved.incrementAndGet()));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertThat(first.get()).isEqualTo("v1");
+        assertThat(second.get()).isEqualTo("v1");
+        assertThat(resolved).hasValue(1);
+    }
+
+    @Test
+    public void testOverwrittenRecordsAreCompactedOnOpen() throws Exception {
+        var path = folder.getRoot()
+                .toPath()
+                .resolve("cache.snapshot");
+        var codec = new Codec(serializer);
+        try (var file = SnapshotFile.open(path, REGION_SIZE, now.get())) {
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 50; i++) {
+                    file.put(codec.key(CacheKey.of("ns", i)), codec.value("round-" + round + "-" + "x".repeat(40)), SnapshotFile.NO_EXPIRY);
+                }
+            }
+        }
+        var grown = Files.size(path);
+
+        reopen(path);
+        assertThat(Files.size(path)).isLessThan(grown / 4);
+        assertThat(cache.size()).isEqualTo(50);
+        for (int i = 0; i < 50; i++) {
+            assertThat(cache.apply(0, CacheKey.of("ns", i), k -> "other")).asString().startsWith("round-19-");
+        }
+    }
+
+    @Test
+    public void testRewritingFewKeysDoesntGrowTheFile() throws Exception {
+        var path = reopen(null);
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 10; i++) {
+                final int value = round;
+                cache.invalidate(CacheKey.of("ns", i));
+                cache.apply(0, CacheKey.of("ns", i), k -> "round-" + value + "-" + "x".repeat(40));
+            }
+            cache.flush();
+        }
+
+        assertThat(Files.size(path)).isLessThanOrEqualTo(2L * REGION_SIZE);
+        assertThat(cache.size()).isEqualTo(10);
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.apply(0, CacheKey.of("ns", i), k -> "other")).asString().startsWith("round-99-");
+        }
+        reopen(path);
+        assertThat(cache.size()).isEqualTo(10);
+    }
+
+    @Test
+    public void testUnreadableFileStartsEmpty() throws Exception {
+        var path = folder.newFile("garbage.snapshot").toPath();
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        reopen(path);
+        assertThat(cache.size()).isZero();
+        assertThat(cache.apply(0, CacheKey.of("ns", "k"), k -> "v")).isEqualTo("v");
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Path reopen(final Path path) throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        final var file = path != null ? path : folder.getRoot().toPath().resolve("cache.snapshot");
+        cache = new PersistentCache(file, serializer, REGION_SIZE, now::get);
+        return file;
+    }
+}
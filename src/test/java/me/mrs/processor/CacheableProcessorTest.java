@@ -0,0 +1,166 @@
+package me.mrs.processor;
+
+import lombok.extern.slf4j.Slf4j;
+import me.mrs.CacheKey;
+import me.mrs.CacheService;
+import me.mrs.CacheSpec;
+import me.mrs.MemoryCache;
+import me.mrs.MyService;
+import me.mrs.MyServiceCacheDecorator;
+import me.mrs.UppercaseService;
+import org.assertj.core.api.WithAssertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Provider;
+import java.io.FileNotFoundException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+public class CacheableProcessorTest implements WithAssertions {
+    CacheService cacheService;
+    Provider<CacheService> cacheServiceProvider = () -> cacheService;
+
+    @Before
+    public void setup() {
+        cacheService = new MemoryCache();
+        log.trace("Test started");
+    }
+
+    @Test
+    public void testInvoke() throws InterruptedException {
+        UppercaseService cachedService = new MyServiceCacheDecorator(new MyService(), cacheServiceProvider);
+
+        var v1 = cachedService.apply("text");
+        log.info("v1 = {}", v1);
+        Thread.sleep(10L);
+        var v2 = cachedService.apply("text");
+        log.info("v2 = {}", v2);
+
+        assertThat(v1).isEqualTo(v2)
+                .containsPattern("[0-9]Z:");
+    }
+
+    @Test
+    public void testInvokeWithPrefix() throws InterruptedException {
+        UppercaseService cachedService = new MyServiceCacheDecorator(new MyService(), cacheServiceProvider);
+
+        var v1 = cachedService.applyWithPrefix("text", "Prefix");
+        log.info("v1 = {}", v1);
+        Thread.sleep(10L);
+        var v2 = cachedService.applyWithPrefix("text", "Prefix");
+        log.info("v2 = {}", v2);
+        var v3 = cachedService.applyWithPrefix("text", "X-Prefix");
+        log.info("v3 = {}", v3);
+
+        assertThat(v1).isEqualTo(v2)
+                .isEqualTo(v3)
+                .contains("Prefix")
+                .containsPattern("[0-9]");
+    }
+
+    @Test
+    public void testInvokeAsync() throws Exception {
+        UppercaseService cachedService = new MyServiceCacheDecorator(new MyService(), cacheServiceProvider);
+
+        var f1 = cachedService.applyAsync("text");
+        var v1 = f1.get(1, TimeUnit.SECONDS);
+        var f2 = cachedService.applyAsync("text");
+
+        assertThat(f2).isSameAs(f1);
+        assertThat(v1).containsPattern("[0-9]Z:TEXT");
+    }
+
+    @Test
+    public void testDecoratorImplementsServiceInterfaces() {
+        assertThat(new MyServiceCacheDecorator(new MyService(), cacheServiceProvider)).isInstanceOf(Runnable.class)
+                .isInstanceOf(UppercaseService.class);
+    }
+
+    @Test
+    public void testInvokeAll() throws InterruptedException {
+        UppercaseService cachedService = new MyServiceCacheDecorator(new MyService(), cacheServiceProvider);
+
+        var v1 = cachedService.applyAll(Set.of("a", "b"));
+        log.info("v1 = {}", v1);
+        Thread.sleep(10L);
+        var v2 = cachedService.applyAll(new LinkedHashSet<>(List.of("b", "c")));
+        log.info("v2 = {}", v2);
+
+        assertThat(v2).containsOnlyKeys("b", "c")
+                .containsEntry("b", v1.get("b"));
+        assertThat(v2.get("c")).isNotEqualTo(v2.get("b"))
+                .endsWith("Z:C");
+    }
+
+    @Test
+    public void testInvokeByLongId() throws InterruptedException {
+        UppercaseService cachedService = new MyServiceCacheDecorator(new MyService(), cacheServiceProvider);
+
+        var v1 = cachedService.applyById(7L);
+        Thread.sleep(10L);
+        var v2 = cachedService.applyById(7L);
+        cacheService.invalidate(CacheKey.of("cache5", 7L));
+        var v3 = cachedService.applyById(7L);
+
+        assertThat(v2).isEqualTo(v1)
+                .endsWith(":#7");
+        assertThat(v3).isNotEqualTo(v1);
+        assertThat(cacheService.longKeys("cache5")
+                .apply(CacheSpec.ofTtl(0), 7L, id -> "uncached")).isEqualTo(v3);
+    }
+
+    @Test
+    public void testInvokeCachesFailure() {
+        UppercaseService cachedService = new MyServiceCacheDecorator(new MyService(), cacheServiceProvider);
+
+        var e1 = catchThrowable(() -> cachedService.applyStrict(" "));
+        var e2 = catchThrowable(() -> cachedService.applyStrict(" "));
+
+        assertThat(e1).isInstanceOf(IllegalArgumentException.class);
+        assertThat(e2).isSameAs(e1);
+        assertThat(cachedService.applyStrict("?text")).isNull();
+    }
+
+    @Test
+    public void testDeclaredExceptionIsRethrown() throws Exception {
+        UppercaseService cachedService = new MyServiceCacheDecorator(new MyService(), cacheServiceProvider);
+
+        assertThatThrownBy(() -> cachedService.read("")).isInstanceOf(FileNotFoundException.class)
+                .hasMessage("Empty path");
+        assertThat(cachedService.read("tmp")).isEqualTo(cachedService.read("tmp"))
+                .endsWith(":/tmp");
+    }
+
+    @Test
+    public void testEvictAndPut() throws InterruptedException {
+        UppercaseService cachedService = new MyServiceCacheDecorator(new MyService(), cacheServiceProvider);
+
+        var v1 = cachedService.apply("text");
+        Thread.sleep(10L);
+        cachedService.evict("text");
+        var v2 = cachedService.apply("text");
+        Thread.sleep(10L);
+        var v3 = cachedService.refresh("text");
+
+        assertThat(v2).isNotEqualTo(v1);
+        assertThat(v3).isNotEqualTo(v2)
+                .endsWith("Z:TEXT");
+        assertThat(cachedService.apply("text")).isEqualTo(v3);
+    }
+
+    @Test
+    public void testEvictByLongId() throws InterruptedException {
+        UppercaseService cachedService = new MyServiceCacheDecorator(new MyService(), cacheServiceProvider);
+
+        var v1 = cachedService.applyById(7L);
+        Thread.sleep(10L);
+        cachedService.evictById(7L);
+
+        assertThat(cachedService.applyById(7L)).isNotEqualTo(v1)
+                .endsWith(":#7");
+    }
+}
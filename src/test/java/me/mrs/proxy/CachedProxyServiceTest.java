@@ -1,7 +1,9 @@
 package me.mrs.proxy;
 
 import lombok.extern.slf4j.Slf4j;
+import me.mrs.CacheKey;
 import me.mrs.CacheService;
+import me.mrs.CacheSpec;
 import me.mrs.MemoryCache;
 import me.mrs.MyService;
 import me.mrs.UppercaseService;
@@ -10,6 +12,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import javax.inject.Provider;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class CachedProxyServiceTest implements WithAssertions {
@@ -55,4 +61,92 @@ public class CachedProxyServiceTest implements WithAssertions {
                 .contains("Prefix")
                 .containsPattern("[0-9]");
     }
+
+    @Test
+    public void testInvokeAsync() throws Exception {
+        var myService = new MyService();
+        @SuppressWarnings("unchecked") UppercaseService cachedService = CachedProxyService.instance(myService, cacheServiceProvider, UppercaseService.class);
+
+        var f1 = cachedService.applyAsync("text");
+        var v1 = f1.get(1, TimeUnit.SECONDS);
+        log.info("v1 = {}", v1);
+        var f2 = cachedService.applyAsync("text");
+
+        assertThat(f2).isSameAs(f1);
+        assertThat(v1).containsPattern("[0-9]Z:TEXT");
+    }
+
+    @Test
+    public void testInvokeAll() throws InterruptedException {
+        @SuppressWarnings("unchecked") UppercaseService cachedService = CachedProxyService.instance(new MyService(), cacheServiceProvider, UppercaseService.class);
+
+        var v1 = cachedService.applyAll(Set.of("a", "b"));
+        log.info("v1 = {}", v1);
+        Thread.sleep(10L);
+        var v2 = cachedService.applyAll(new LinkedHashSet<>(List.of("b", "c")));
+        log.info("v2 = {}", v2);
+
+        assertThat(v2).containsOnlyKeys("b", "c")
+                .containsEntry("b", v1.get("b"));
+        assertThat(v2.get("c")).isNotEqualTo(v2.get("b"))
+                .endsWith("Z:C");
+    }
+
+    @Test
+    public void testInvokeByLongId() throws InterruptedException {
+        @SuppressWarnings("unchecked") UppercaseService cachedService = CachedProxyService.instance(new MyService(), cacheServiceProvider, UppercaseService.class);
+
+        var v1 = cachedService.applyById(7L);
+        Thread.sleep(10L);
+        var v2 = cachedService.applyById(7L);
+        cacheService.invalidate(CacheKey.of("cache5", 7L));
+        var v3 = cachedService.applyById(7L);
+
+        assertThat(v2).isEqualTo(v1)
+                .endsWith(":#7");
+        assertThat(v3).isNotEqualTo(v1);
+        assertThat(cacheService.longKeys("cache5")
+                .apply(CacheSpec.ofTtl(0), 7L, id -> "uncached")).isEqualTo(v3);
+    }
+
+    @Test
+    public void testInvokeCachesFailure() {
+        @SuppressWarnings("unchecked") UppercaseService cachedService = CachedProxyService.instance(new MyService(), cacheServiceProvider, UppercaseService.class);
+
+        var e1 = catchThrowable(() -> cachedService.applyStrict(" "));
+        var e2 = catchThrowable(() -> cachedService.applyStrict(" "));
+
+        assertThat(e1).isInstanceOf(IllegalArgumentException.class);
+        assertThat(e2).isSameAs(e1);
+        assertThat(cachedService.applyStrict("?text")).isNull();
+    }
+
+    @Test
+    public void testEvictAndPut() throws InterruptedException {
+        @SuppressWarnings("unchecked") UppercaseService cachedService = CachedProxyService.instance(new MyService(), cacheServiceProvider, UppercaseService.class);
+
+        var v1 = cachedService.apply("text");
+        Thread.sleep(10L);
+        cachedService.evict("text");
+        var v2 = cachedService.apply("text");
+        Thread.sleep(10L);
+        var v3 = cachedService.refresh("text");
+
+        assertThat(v2).isNotEqualTo(v1);
+        assertThat(v3).isNotEqualTo(v2)
+                .endsWith("Z:TEXT");
+        assertThat(cachedService.apply("text")).isEqualTo(v3);
+    }
+
+    @Test
+    public void testEvictByLongId() throws InterruptedException {
+        @SuppressWarnings("unchecked") UppercaseService cachedService = CachedProxyService.instance(new MyService(), cacheServiceProvider, UppercaseService.class);
+
+        var v1 = cachedService.applyById(7L);
+        Thread.sleep(10L);
+        cachedService.evictById(7L);
+
+        assertThat(cachedService.applyById(7L)).isNotEqualTo(v1)
+                .endsWith(":#7");
+    }
 }
@@ -0,0 +1,131 @@
+package me.mrs.trace;
+
+import me.mrs.CacheKey;
+import me.mrs.MemoryCache;
+import me.mrs.MyService;
+import me.mrs.UppercaseService;
+import me.mrs.proxy.CachedProxyService;
+import org.assertj.core.api.WithAssertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TraceRecorderTest implements WithAssertions {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @Test
+    public void testEventsAreReadBackInOrder() throws Exception {
+        var path = folder.getRoot()
+                .toPath()
+                .resolve("trace");
+        try (var recorder = new TraceRecorder(path, 16, 1, now::get)) {
+            recorder.access(CacheKey.of("users", 7L));
+            now.addAndGet(500);
+            recorder.load(CacheKey.of("users", 7L), 250);
+            now.addAndGet(10);
+            recorder.access(CacheKey.of("orders", "a", 1));
+        }
+
+        var events = read(path);
+
+        assertThat(events).hasSize(3);
+        assertThat(events.get(0).namespace()).isEqualTo("users");
+        assertThat(events.get(0).key()).isEqualTo(CacheKey.of("users", 7L)
+                .hashCode());
+        assertThat(events.get(0).isLoad()).isFalse();
+        assertThat(events.get(1).isLoad()).isTrue();
+        assertThat(events.get(1).cost()).isEqualTo(250);
+        assertThat(events.get(1).time()).isEqualTo(1_500);
+        assertThat(events.get(2).namespace()).isEqualTo("orders");
+        assertThat(events.get(2).time()).isEqualTo(1_510);
+    }
+
+    @Test
+    public void testTornTailEndsTheTrace() throws Exception {
+        var path = folder.getRoot()
+                .toPath()
+                .resolve("trace");
+        try (var recorder = new TraceRecorder(path)) {
+            for (int i = 0; i < 100; i++) {
+                recorder.access(CacheKey.of("ns", i));
+            }
+            recorder.flush();
+            assertThat(recorder.dropped()).isZero();
+        }
+        try (var channel = Files.newByteChannel(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        assertThat(read(path)).hasSize(99);
+    }
+
+    @Test
+    public void testOneRequestInSampleRateIsRecorded() throws Exception {
+        var path = folder.getRoot()
+                .toPath()
+                .resolve("trace");
+        try (var recorder = new TraceRecorder(path, 4)) {
+            int sampled = 0;
+            for (int i = 0; i < 10_000; i++) {
+                if (recorder.sampled()) {
+                    sampled++;
+                }
+            }
+            assertThat(sampled).isBetween(2_000, 3_000);
+        }
+        assertThatThrownBy(() -> new TraceRecorder(path, 3)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testOtherFilesAreRejected() throws IOException {
+        var path = folder.newFile()
+                .toPath();
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6});
+
+        assertThatThrownBy(() -> TraceReader.open(path)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testProxyRecordsAccessesAndLoads() throws Exception {
+        var path = folder.getRoot()
+                .toPath()
+                .resolve("trace");
+        var cache = new MemoryCache();
+        try (var recorder = new TraceRecorder(path)) {
+            @SuppressWarnings("unchecked") UppercaseService service = CachedProxyService.instance(new MyService(), () -> cache, recorder,
+                    UppercaseService.class);
+            service.applyById(1L);
+            service.applyById(1L);
+            service.applyWithPrefix("a", "p");
+        }
+
+        var events = read(path);
+
+        assertThat(events).extracting(TraceEvent::namespace)
+                .containsExactly("cache5", "cache5", "cache5", "cache2", "cache2");
+        assertThat(events).extracting(TraceEvent::isLoad)
+                .containsExactly(false, true, false, false, true);
+        assertThat(events.get(0).key()).isEqualTo(CacheKey.of("cache5", 1L)
+                .hashCode());
+    }
+
+    static List<TraceEvent> read(final Path path) throws IOException {
+        final var events = new ArrayList<TraceEvent>();
+        try (var reader = TraceReader.open(path)) {
+            for (var event = reader.next(); event != null; event = reader.next()) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+}
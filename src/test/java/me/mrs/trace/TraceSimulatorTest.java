@@ -0,0 +1,79 @@
+package me.mrs.trace;
+
+import me.mrs.CacheKey;
+import org.assertj.core.api.WithAssertions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TraceSimulatorTest implements WithAssertions {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    private final AtomicLong now = new AtomicLong();
+    private Path trace;
+
+    /**
+     * Records 10 hot keys taking half of the accesses among 1000 cold ones, each load costing 1000ns, plus a namespace
+     * without recorded loads.
+     */
+    @Before
+    public void record() throws Exception {
+        trace = folder.getRoot()
+                .toPath()
+                .resolve("trace");
+        var random = new Random(42);
+        try (var recorder = new TraceRecorder(trace, 1 << 20, 1, now::incrementAndGet)) {
+            for (int i = 0; i < 20_000; i++) {
+                final var key = CacheKey.of("users", (long) (random.nextBoolean() ? random.nextInt(10) : 10 + random.nextInt(1000)));
+                recorder.access(key);
+                recorder.load(key, 1000);
+            }
+            recorder.access(CacheKey.of("other", 1L));
+            recorder.access(CacheKey.of("other", 1L));
+        }
+    }
+
+    @Test
+    public void testUnboundedMissesEveryKeyOnce() throws Exception {
+        var results = new TraceSimulator(trace).replay(TraceSimulator.Policy.UNBOUNDED, 0);
+
+        assertThat(results).extracting(SimulationResult::namespace)
+                .containsExactly("users", "other");
+        var users = results.get(0);
+        assertThat(users.accesses()).isEqualTo(20_000);
+        assertThat(users.misses()).isEqualTo(1010);
+        assertThat(users.backendNanos()).isEqualTo(1010 * 1000L);
+        assertThat(users.evictions()).isZero();
+        assertThat(results.get(1)
+                .hits()).isEqualTo(1);
+        assertThat(results.get(1)
+                .backendNanos()).isZero();
+    }
+
+    @Test
+    public void testBoundedPoliciesKeepTheHotKeys() throws Exception {
+        var results = new TraceSimulator(trace).run(50, 2000);
+
+        assertThat(results).hasSize(2 * 5);
+        for (var result : results) {
+            if (!result.namespace()
+                    .equals("users")) {
+                continue;
+            }
+            assertThat(result.backendNanos()).isEqualTo(result.misses() * 1000);
+            if (result.capacity() == 50) {
+                assertThat(result.hitRatio()).as(result.toString())
+                        .isGreaterThan(0.45);
+                assertThat(result.evictions()).isPositive();
+            } else {
+                assertThat(result.misses()).as(result.toString())
+                        .isEqualTo(1010);
+            }
+        }
+    }
+}